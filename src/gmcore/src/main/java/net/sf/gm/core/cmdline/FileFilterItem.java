@@ -8,6 +8,8 @@
 package net.sf.gm.core.cmdline;
 
 import net.sf.gm.core.utils.FileUtil;
+import net.sf.gm.core.utils.ParallelGzipOutputStream;
+import net.sf.gm.core.utils.ReadAheadGzipInputStream;
 import net.sf.gm.core.utils.StreamUtil;
 
 import java.io.*;
@@ -52,6 +54,11 @@ public class FileFilterItem {
      */
     private final boolean isStdOut;
 
+    /**
+     * The number of threads compressing the output ( 0: no compression ).
+     */
+    private int compressThreads;
+
     /**
      * The Constructor.
      *
@@ -67,34 +74,63 @@ public class FileFilterItem {
         this.tmpFile = null;
         this.is = null;
         this.os = null;
+        this.compressThreads = 0;
+    }
+
+    /**
+     * Sets the number of threads compressing the output.
+     *
+     * @param compressThreads the number of threads ( 0: no compression )
+     */
+    public void setCompressThreads(final int compressThreads) {
+        this.compressThreads = compressThreads;
     }
 
     /**
-     * Gets the input stream.
+     * Gets the input stream; a gzip compressed input is decompressed.
      *
      * @return inputstream from source file
-     * @throws FileNotFoundException the file not found exception
+     * @throws IOException the IO exception
      */
-    public InputStream getInputStream() throws FileNotFoundException {
+    public InputStream getInputStream() throws IOException {
 
         if (isStdIn)
-            return new BufferedInputStream(System.in);
+            return ReadAheadGzipInputStream.open(new BufferedInputStream(System.in));
         if (is != null)
             return new BufferedInputStream(is);
-        is = new BufferedInputStream(new FileInputStream(srcFile));
+        is = ReadAheadGzipInputStream.open(
+            new BufferedInputStream(new FileInputStream(srcFile)));
         return is;
     }
 
     /**
-     * Gets the output stream.
+     * Gets the output stream; the output is gzip compressed, if compressing
+     * threads are set.
      *
      * @return outputstream to target file
      * @throws Exception the exception
      */
     public OutputStream getOutputStream() throws Exception {
 
-        if (isStdOut)
+        if (isStdOut) {
+            if (compressThreads > 0) {
+                // closed by close(), which must not close System.out
+                os = new ParallelGzipOutputStream(new FilterOutputStream(System.out) {
+                    @Override
+                    public void write(final byte[] b, final int off, final int len)
+                        throws IOException {
+                        out.write(b, off, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        flush();
+                    }
+                }, compressThreads);
+                return os;
+            }
             return new BufferedOutputStream(System.out);
+        }
         if (os != null)
             return new BufferedOutputStream(os);
         File outputDirectory = trgFile.getParentFile();
@@ -105,6 +141,8 @@ public class FileFilterItem {
             outputDirectory.mkdir();
         tmpFile = File.createTempFile(".flt", ".tmp", outputDirectory);
         os = new BufferedOutputStream(new FileOutputStream(tmpFile));
+        if (compressThreads > 0)
+            os = new ParallelGzipOutputStream(os, compressThreads);
         return os;
     }
 
@@ -154,8 +192,9 @@ public class FileFilterItem {
     public void close() throws IOException {
 
         try {
+            // a failure to write the last compressed blocks is reported
             if (os != null)
-                StreamUtil.closeOutputStream(os);
+                os.close();
             if (tmpFile != null)
                 if (!tmpFile.renameTo(trgFile))
                     throw new IOException("failed to rename temporary file to '" + trgFile + "'");
@@ -41,6 +41,17 @@ public class FileFilterList extends ArrayList<FileFilterItem> {
         getList(this, args, newFileExtension, forceOverwrite, recursive);
     }
 
+    /**
+     * Sets the number of threads compressing the output of each item.
+     *
+     * @param compressThreads the number of threads ( 0: no compression )
+     */
+    public void setCompressThreads(final int compressThreads) {
+
+        for (final FileFilterItem item : this)
+            item.setCompressThreads(compressThreads);
+    }
+
     /**
      * Gets the list.
      *
@@ -0,0 +1,290 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.core.io;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Class DataCopyPipeline.
+ * <p>
+ * Copies the data of a reader to a writer using two threads: a reader thread
+ * fills reusable {@link DataRow} buffers while the calling thread hands the
+ * buffered rows over to the writer. The two threads are connected by bounded
+ * queues, so parsing the input and writing the output overlap.
+ */
+public class DataCopyPipeline {
+
+    /**
+     * The number of rows of a buffer.
+     */
+    private static final int BUFFER_ROWS = 64;
+
+    /**
+     * The Constant END_OF_DATA.
+     */
+    private static final RowBuffer END_OF_DATA = new RowBuffer(0);
+
+    /**
+     * The reader.
+     */
+    private final DataReader reader;
+
+    /**
+     * The writer.
+     */
+    private final DataWriter writer;
+
+    /**
+     * The number of buffers queued between the reader and the writer.
+     */
+    private final int queueSize;
+
+    /**
+     * The queue of the filled buffers.
+     */
+    private BlockingQueue<RowBuffer> fullQueue;
+
+    /**
+     * The queue of the free buffers.
+     */
+    private BlockingQueue<RowBuffer> freeQueue;
+
+    /**
+     * The column types.
+     */
+    private int[] columnTypes;
+
+    /**
+     * The columns requested by the writer or null for all columns.
+     */
+    private boolean[] requestedColumns;
+
+    /**
+     * The aborted flag, set if the writer failed.
+     */
+    private volatile boolean aborted;
+
+    /**
+     * The failure of the reader thread.
+     */
+    private volatile Throwable failure;
+
+    /**
+     * The Constructor.
+     *
+     * @param reader    the reader
+     * @param writer    the writer
+     * @param queueSize the number of buffers queued between the reader and the
+     *                  writer
+     */
+    public DataCopyPipeline(final DataReader reader, final DataWriter writer,
+        final int queueSize) {
+
+        this.reader = reader;
+        this.writer = writer;
+        this.queueSize = queueSize < 1 ? 1 : queueSize;
+    }
+
+    /**
+     * Copy data.
+     *
+     * @param reader    the reader
+     * @param writer    the writer
+     * @param queueSize the number of buffers queued between the reader and the
+     *                  writer
+     * @return row count
+     * @throws DataIOException the data IO exception
+     */
+    public static long copyData(final DataReader reader, final DataWriter writer,
+        final int queueSize) throws DataIOException {
+
+        return new DataCopyPipeline(reader, writer, queueSize).copyData();
+    }
+
+    /**
+     * Copy data.
+     *
+     * @return row count
+     * @throws DataIOException the data IO exception
+     */
+    public long copyData() throws DataIOException {
+
+        final MetaData metaData = reader.openDataReading();
+        // the writer may resolve unknown column types
+        writer.openDataWriting(metaData);
+        final int colCount = metaData.getColumnCount();
+        columnTypes = new int[colCount];
+        for (int idx = 1; idx <= colCount; idx++)
+            columnTypes[idx - 1] = metaData.getColumnType(idx);
+        requestedColumns = DataWriterAbstract.getRequestedColumns(writer, colCount);
+        reader.setRequestedColumns(requestedColumns);
+
+        fullQueue = new ArrayBlockingQueue<RowBuffer>(queueSize + 1);
+        freeQueue = new ArrayBlockingQueue<RowBuffer>(queueSize + 1);
+        for (int i = 0; i < queueSize; i++)
+            freeQueue.add(new RowBuffer(BUFFER_ROWS));
+        aborted = false;
+        failure = null;
+
+        final Thread readerThread = new Thread(new ReaderTask(), "pipeline-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+
+        final DataRowReader rowReader = new DataRowReader(metaData);
+        boolean done = false;
+        try {
+            RowBuffer buffer;
+            while ((buffer = fullQueue.take()) != END_OF_DATA) {
+                for (int i = 0; i < buffer.size; i++) {
+                    final DataRow row = buffer.rows[i];
+                    rowReader.setCurrentRow(row);
+                    writer.startRowWriting(row.getRowType());
+                    for (int idx = 1; idx <= colCount; idx++)
+                        writer.setColumnValue(idx, rowReader);
+                    writer.endRowWriting();
+                }
+                buffer.size = 0;
+                freeQueue.put(buffer);
+            }
+            done = true;
+        } catch (InterruptedException e) {
+            throw new DataIOException(e);
+        } finally {
+            if (!done) {
+                aborted = true;
+                fullQueue.clear();
+            }
+            join(readerThread);
+        }
+        checkFailure();
+        writer.closeDataWriting();
+        if (reader.getAllRowCount() != writer.getAllRowCount())
+            throw new DataIOException(
+                "copy failed: row(s) read:" + reader.getAllRowCount() +
+                    " written:" + writer.getAllRowCount());
+        return writer.getAllRowCount();
+    }
+
+    /**
+     * Join the reader thread.
+     *
+     * @param thread the thread
+     */
+    private void join(final Thread thread) {
+
+        try {
+            thread.join();
+        } catch (InterruptedException ignore) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Check failure of the reader thread.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    private void checkFailure() throws DataIOException {
+
+        final Throwable t = failure;
+        if (t == null)
+            return;
+        if (t instanceof DataIOException)
+            throw (DataIOException) t;
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        throw new DataIOException(t);
+    }
+
+    /**
+     * The Class RowBuffer.
+     */
+    private static class RowBuffer {
+
+        /**
+         * The rows.
+         */
+        final DataRow[] rows;
+
+        /**
+         * The size.
+         */
+        int size;
+
+        /**
+         * The Constructor.
+         *
+         * @param capacity the capacity
+         */
+        RowBuffer(final int capacity) {
+
+            rows = new DataRow[capacity];
+            size = 0;
+        }
+    }
+
+    /**
+     * The Class ReaderTask.
+     */
+    private class ReaderTask implements Runnable {
+
+        /**
+         * Run.
+         */
+        public void run() {
+
+            try {
+                RowBuffer buffer = null;
+                while (!aborted) {
+                    if (buffer == null) {
+                        buffer = freeQueue.poll(100, TimeUnit.MILLISECONDS);
+                        continue;
+                    }
+                    if (!reader.readNextRow())
+                        break;
+                    DataRow row = buffer.rows[buffer.size];
+                    if (row == null)
+                        row = buffer.rows[buffer.size] = new DataRow(columnTypes.length);
+                    row.readRow(reader, columnTypes, requestedColumns);
+                    if (++buffer.size == buffer.rows.length) {
+                        put(buffer);
+                        buffer = null;
+                    }
+                }
+                if (buffer != null && buffer.size > 0)
+                    put(buffer);
+            } catch (InterruptedException ignore) {
+                // aborted
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                try {
+                    put(END_OF_DATA);
+                } catch (InterruptedException ignore) {
+                    // aborted
+                }
+            }
+        }
+
+        /**
+         * Put a buffer into the queue of the filled buffers.
+         *
+         * @param buffer the buffer
+         * @throws InterruptedException the interrupted exception
+         */
+        private void put(final RowBuffer buffer) throws InterruptedException {
+
+            while (!aborted) {
+                if (fullQueue.offer(buffer, 100, TimeUnit.MILLISECONDS))
+                    return;
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.core.io;
+
+import net.sf.gm.core.ui.Progress;
+
+import java.io.File;
+
+//
+
+
+/**
+ * The Interface DataFileReaderFactory.
+ * <p>
+ * A reader factory able to read a file directly instead of a stream, e.g. in
+ * parallel chunks.
+ */
+public interface DataFileReaderFactory extends DataReaderFactory {
+
+    /**
+     * Gets the instance reading a file.
+     *
+     * @param file     the file
+     * @param progress the progress
+     * @return the instance or null, if the file has to be read as a stream
+     * ( see {@link #getInstance(java.io.InputStream, Progress)} )
+     * @throws DataIOException the data IO exception
+     */
+    DataReader getInstance(File file, Progress progress) throws DataIOException;
+}
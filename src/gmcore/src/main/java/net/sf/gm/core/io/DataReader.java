@@ -208,4 +208,14 @@ public interface DataReader {
      * @throws DataIOException the data IO exception
      */
     long readAllData(DataWriter writer) throws DataIOException;
+
+    /**
+     * Sets the columns requested by the writer, after the meta data has been
+     * read; the reader may skip the values of the other columns, their values
+     * are undefined.
+     *
+     * @param requested the requested flag of each column or null for all
+     *                  columns ( see {@link DataWriter#isColumnRequested} )
+     */
+    void setRequestedColumns(boolean[] requested);
 }
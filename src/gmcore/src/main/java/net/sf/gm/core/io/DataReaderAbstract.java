@@ -19,6 +19,11 @@ public abstract class DataReaderAbstract implements DataReader {
      */
     Progress progress;
 
+    /**
+     * The requested columns or null for all columns.
+     */
+    private boolean[] requestedColumns;
+
     /**
      * The Constructor.
      */
@@ -65,4 +70,23 @@ public abstract class DataReaderAbstract implements DataReader {
     public Progress getProgress() {
         return this.progress;
     }
+
+    /**
+     * Sets the requested columns.
+     *
+     * @param requested the requested flag of each column or null for all
+     *                  columns
+     */
+    public void setRequestedColumns(boolean[] requested) {
+        this.requestedColumns = requested;
+    }
+
+    /**
+     * Gets the requested columns.
+     *
+     * @return the requested flag of each column or null for all columns
+     */
+    public boolean[] getRequestedColumns() {
+        return requestedColumns;
+    }
 }
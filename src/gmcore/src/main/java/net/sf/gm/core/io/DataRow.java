@@ -0,0 +1,204 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.core.io;
+
+import net.sf.gm.core.io.DataTypes.rowType;
+
+import java.sql.Types;
+
+/**
+ * The Class DataRow.
+ * <p>
+ * A reusable buffer holding the values of one row read from a
+ * {@link DataReader}. The values are read using the getter matching the sql
+ * type of the column, so a {@link DataRowReader} can hand them over to a
+ * writer running on another thread.
+ */
+public class DataRow {
+
+    /**
+     * The row type.
+     */
+    private rowType type;
+
+    /**
+     * The values.
+     */
+    private final Object[] values;
+
+    /**
+     * The update columns.
+     */
+    private final boolean[] updateColumns;
+
+    /**
+     * The Constructor.
+     *
+     * @param columnCount the column count
+     */
+    public DataRow(final int columnCount) {
+
+        this.type = rowType.UNKNOWN;
+        this.values = new Object[columnCount];
+        this.updateColumns = new boolean[columnCount];
+    }
+
+    /**
+     * Reset the row.
+     *
+     * @param type the row type
+     */
+    public void reset(final rowType type) {
+
+        this.type = type;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = null;
+            updateColumns[i] = false;
+        }
+    }
+
+    /**
+     * Gets the row type.
+     *
+     * @return the row type
+     */
+    public rowType getRowType() {
+        return type;
+    }
+
+    /**
+     * Gets the column count.
+     *
+     * @return the column count
+     */
+    public int getColumnCount() {
+        return values.length;
+    }
+
+    /**
+     * Gets the value.
+     *
+     * @param idx the idx
+     * @return the value
+     */
+    public Object getValue(final int idx) {
+        return values[idx - 1];
+    }
+
+    /**
+     * Sets the value.
+     *
+     * @param idx   the idx
+     * @param value the value
+     */
+    public void setValue(final int idx, final Object value) {
+        values[idx - 1] = value;
+    }
+
+    /**
+     * Checks if is update column.
+     *
+     * @param idx the idx
+     * @return true, if is update column
+     */
+    public boolean isUpdateColumn(final int idx) {
+        return updateColumns[idx - 1];
+    }
+
+    /**
+     * Read the value of a column from the reader.
+     *
+     * @param idx     the idx
+     * @param reader  the reader
+     * @param sqlType the sql type of the column ( java.sql.Types )
+     * @throws DataIOException the data IO exception
+     */
+    public void readValue(final int idx, final DataReader reader,
+        final int sqlType) throws DataIOException {
+
+        Object value;
+        switch (sqlType) {
+            case Types.BOOLEAN:
+                value = reader.getColumnValueBoolean(idx);
+                break;
+            case Types.BIT:
+                value = reader.getColumnValueShort(idx);
+                break;
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                value = reader.getColumnValueInt(idx);
+                break;
+            case Types.BIGINT:
+                value = reader.getColumnValueLong(idx);
+                break;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                value = reader.getColumnValueDouble(idx);
+                break;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                value = reader.getColumnValueBigDecimal(idx);
+                break;
+            case Types.DATE:
+            case Types.TIME:
+            case Types.TIMESTAMP:
+                value = reader.getColumnValueTimestamp(idx);
+                break;
+            case Types.LONGVARBINARY:
+            case Types.VARBINARY:
+            case Types.BINARY:
+            case Types.BLOB:
+                value = reader.getColumnValueBytes(idx);
+                break;
+            default:
+                value = reader.getColumnValueString(idx);
+                break;
+        }
+        values[idx - 1] = reader.wasColumnValueNull() ? null : value;
+        updateColumns[idx - 1] = reader.isUpdateColumn(idx);
+    }
+
+    /**
+     * Read all values of the current row from the reader.
+     *
+     * @param reader   the reader
+     * @param sqlTypes the sql types of the columns
+     * @throws DataIOException the data IO exception
+     */
+    public void readRow(final DataReader reader, final int[] sqlTypes)
+        throws DataIOException {
+
+        readRow(reader, sqlTypes, null);
+    }
+
+    /**
+     * Read the values of the requested columns of the current row from the
+     * reader; the values of the other columns are null.
+     *
+     * @param reader    the reader
+     * @param sqlTypes  the sql types of the columns
+     * @param requested the requested flag of each column or null for all
+     *                  columns
+     * @throws DataIOException the data IO exception
+     */
+    public void readRow(final DataReader reader, final int[] sqlTypes,
+        final boolean[] requested) throws DataIOException {
+
+        type = reader.getCurrentRowType();
+        for (int idx = 1; idx <= values.length; idx++) {
+            if (requested == null || requested[idx - 1]) {
+                readValue(idx, reader, sqlTypes[idx - 1]);
+            } else {
+                values[idx - 1] = null;
+                updateColumns[idx - 1] = false;
+            }
+        }
+    }
+}
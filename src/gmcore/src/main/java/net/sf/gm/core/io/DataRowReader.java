@@ -0,0 +1,458 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.core.io;
+
+import net.sf.gm.core.base64.Base64Base;
+import net.sf.gm.core.io.DataTypes.rowType;
+import net.sf.gm.core.utils.DateTimeUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.text.ParseException;
+import java.util.Date;
+
+/**
+ * The Class DataRowReader.
+ * <p>
+ * Reads the rows buffered in {@link DataRow} objects.
+ */
+public class DataRowReader extends DataReaderAbstract implements DataReader {
+
+    /**
+     * The meta data.
+     */
+    private final MetaData metaData;
+
+    /**
+     * The rows.
+     */
+    private DataRow[] rows;
+
+    /**
+     * The row count.
+     */
+    private int rowCount;
+
+    /**
+     * The next row index.
+     */
+    private int nextRow;
+
+    /**
+     * The current row.
+     */
+    private DataRow currentRow;
+
+    /**
+     * The was null.
+     */
+    private boolean wasNull;
+
+    /**
+     * The all row count.
+     */
+    private long allRowCount;
+
+    /**
+     * The Constructor.
+     *
+     * @param metaData the meta data
+     */
+    public DataRowReader(final MetaData metaData) {
+
+        super();
+        this.metaData = metaData;
+        this.rows = null;
+        this.rowCount = 0;
+        this.nextRow = 0;
+        this.currentRow = null;
+        this.allRowCount = 0;
+    }
+
+    /**
+     * Sets the rows to read.
+     *
+     * @param rows     the rows
+     * @param rowCount the row count
+     */
+    public void setRows(final DataRow[] rows, final int rowCount) {
+
+        this.rows = rows;
+        this.rowCount = rowCount;
+        this.nextRow = 0;
+        this.currentRow = null;
+    }
+
+    /**
+     * Sets the current row.
+     *
+     * @param row the row
+     */
+    public void setCurrentRow(final DataRow row) {
+        this.currentRow = row;
+    }
+
+    /**
+     * Gets the current row.
+     *
+     * @return the current row
+     */
+    public DataRow getCurrentRow() {
+        return currentRow;
+    }
+
+    /**
+     * Open data reading.
+     *
+     * @return the meta data
+     */
+    public MetaData openDataReading() {
+
+        allRowCount = 0;
+        return metaData;
+    }
+
+    /**
+     * Close data reading.
+     */
+    public void closeDataReading() {
+
+        rows = null;
+        currentRow = null;
+    }
+
+    /**
+     * Read next row.
+     *
+     * @return true, if read next row
+     */
+    public boolean readNextRow() {
+
+        if (rows == null || nextRow >= rowCount) {
+            currentRow = null;
+            return false;
+        }
+        currentRow = rows[nextRow++];
+        allRowCount++;
+        return true;
+    }
+
+    /**
+     * Gets the current row type.
+     *
+     * @return the current row type
+     */
+    public rowType getCurrentRowType() {
+        return currentRow.getRowType();
+    }
+
+    /**
+     * Gets the row read count.
+     *
+     * @return the row read count
+     */
+    public long getAllRowCount() {
+        return allRowCount;
+    }
+
+    /**
+     * Was column value null.
+     *
+     * @return true, if was column value null
+     */
+    public boolean wasColumnValueNull() {
+        return wasNull;
+    }
+
+    /**
+     * Checks if is update column.
+     *
+     * @param idx the idx
+     * @return true if the current row type is UPDATE and the specified column
+     * should be updated
+     */
+    public boolean isUpdateColumn(final int idx) {
+        return currentRow.isUpdateColumn(idx);
+    }
+
+    /**
+     * Gets the value.
+     *
+     * @param idx the idx
+     * @return the value
+     */
+    private Object getValue(final int idx) {
+
+        final Object value = currentRow.getValue(idx);
+        wasNull = value == null;
+        return value;
+    }
+
+    /**
+     * Gets the column value string.
+     *
+     * @param idx the idx
+     * @return the column value string
+     */
+    public String getColumnValueString(final int idx) {
+
+        final Object value = getValue(idx);
+        if (value == null)
+            return null;
+        if (value instanceof byte[])
+            return Base64Base.encode((byte[]) value, 0, ((byte[]) value).length, 0);
+        return value.toString();
+    }
+
+    /**
+     * Gets the column value boolean.
+     *
+     * @param idx the idx
+     * @return the column value boolean
+     * @throws DataIOException the data IO exception
+     */
+    public boolean getColumnValueBoolean(final int idx) throws DataIOException {
+
+        final Object value = getValue(idx);
+        if (value == null)
+            return false;
+        if (value instanceof Boolean)
+            return (Boolean) value;
+        if (value instanceof Number)
+            return ((Number) value).intValue() != 0;
+        final String s = value.toString();
+        if (s.equals("0") || s.equalsIgnoreCase("false"))
+            return false;
+        if (s.equals("1") || s.equalsIgnoreCase("true"))
+            return true;
+        throw new DataIOException("not a boolean: '" + s + "'");
+    }
+
+    /**
+     * Gets the number value.
+     *
+     * @param idx the idx
+     * @return the number value or null
+     * @throws DataIOException the data IO exception
+     */
+    private Number getNumberValue(final int idx) throws DataIOException {
+
+        final Object value = getValue(idx);
+        if (value == null)
+            return null;
+        if (value instanceof Number)
+            return (Number) value;
+        if (value instanceof Boolean)
+            return (Boolean) value ? 1 : 0;
+        if (value instanceof Date)
+            return ((Date) value).getTime();
+        try {
+            return new BigDecimal(value.toString());
+        } catch (NumberFormatException e) {
+            throw new DataIOException(e);
+        }
+    }
+
+    /**
+     * Gets the column value short.
+     *
+     * @param idx the idx
+     * @return the column value short
+     * @throws DataIOException the data IO exception
+     */
+    public short getColumnValueShort(final int idx) throws DataIOException {
+
+        final Number value = getNumberValue(idx);
+        return value == null ? 0 : value.shortValue();
+    }
+
+    /**
+     * Gets the column value int.
+     *
+     * @param idx the idx
+     * @return the column value int
+     * @throws DataIOException the data IO exception
+     */
+    public int getColumnValueInt(final int idx) throws DataIOException {
+
+        final Number value = getNumberValue(idx);
+        return value == null ? 0 : value.intValue();
+    }
+
+    /**
+     * Gets the column value long.
+     *
+     * @param idx the idx
+     * @return the column value long
+     * @throws DataIOException the data IO exception
+     */
+    public long getColumnValueLong(final int idx) throws DataIOException {
+
+        final Number value = getNumberValue(idx);
+        return value == null ? 0L : value.longValue();
+    }
+
+    /**
+     * Gets the column value double.
+     *
+     * @param idx the idx
+     * @return the column value double
+     * @throws DataIOException the data IO exception
+     */
+    public double getColumnValueDouble(final int idx) throws DataIOException {
+
+        final Number value = getNumberValue(idx);
+        return value == null ? 0.0 : value.doubleValue();
+    }
+
+    /**
+     * Gets the column value big decimal.
+     *
+     * @param idx the idx
+     * @return the column value big decimal
+     * @throws DataIOException the data IO exception
+     */
+    public BigDecimal getColumnValueBigDecimal(final int idx) throws DataIOException {
+
+        final Number value = getNumberValue(idx);
+        if (value == null)
+            return null;
+        if (value instanceof BigDecimal)
+            return (BigDecimal) value;
+        return new BigDecimal(value.toString());
+    }
+
+    /**
+     * Gets the milliseconds since January 1, 1970 00:00:00.
+     *
+     * @param idx the idx
+     * @return the milliseconds or null
+     * @throws DataIOException the data IO exception
+     */
+    private Long getMillisValue(final int idx) throws DataIOException {
+
+        final Object value = getValue(idx);
+        if (value == null)
+            return null;
+        if (value instanceof Date)
+            return ((Date) value).getTime();
+        if (value instanceof Number)
+            return ((Number) value).longValue();
+        final String strValue = value.toString();
+        try {
+            return Long.parseLong(strValue);
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            return DateTimeUtil.isoDateToCalendar(strValue).getTimeInMillis();
+        } catch (ParseException e) {
+            throw new DataIOException(e);
+        }
+    }
+
+    /**
+     * Gets the column value date.
+     *
+     * @param idx the idx
+     * @return the column value date
+     * @throws DataIOException the data IO exception
+     */
+    public Date getColumnValueDate(final int idx) throws DataIOException {
+
+        final Long value = getMillisValue(idx);
+        return value == null ? null : new Date(value);
+    }
+
+    /**
+     * Gets the column value time.
+     *
+     * @param idx the idx
+     * @return the column value time
+     * @throws DataIOException the data IO exception
+     */
+    public Time getColumnValueTime(final int idx) throws DataIOException {
+
+        final Object value = currentRow.getValue(idx);
+        if (value instanceof String) {
+            // a time value without date part
+            try {
+                Long.parseLong((String) value);
+            } catch (NumberFormatException ignored) {
+                wasNull = false;
+                try {
+                    return DateTimeUtil.isoTimeToJavaTime((String) value);
+                } catch (ParseException e) {
+                    throw new DataIOException(e);
+                }
+            }
+        }
+        final Long millis = getMillisValue(idx);
+        return millis == null ? null : new Time(millis);
+    }
+
+    /**
+     * Gets the column value timestamp.
+     *
+     * @param idx the idx
+     * @return the column value timestamp
+     * @throws DataIOException the data IO exception
+     */
+    public Timestamp getColumnValueTimestamp(final int idx) throws DataIOException {
+
+        final Object value = getValue(idx);
+        if (value instanceof Timestamp)
+            return (Timestamp) value;
+        final Long millis = getMillisValue(idx);
+        return millis == null ? null : new Timestamp(millis);
+    }
+
+    /**
+     * Gets the column value bytes.
+     *
+     * @param idx the idx
+     * @return the column value bytes
+     */
+    public byte[] getColumnValueBytes(final int idx) {
+
+        final Object value = getValue(idx);
+        if (value == null)
+            return null;
+        if (value instanceof byte[])
+            return (byte[]) value;
+        return Base64Base.decode(value.toString());
+    }
+
+    /**
+     * Gets the column value binary stream.
+     *
+     * @param idx the idx
+     * @return the column value binary stream
+     */
+    public InputStream getColumnValueBinaryStream(final int idx) {
+
+        final byte[] value = getColumnValueBytes(idx);
+        return value == null ? null : new ByteArrayInputStream(value);
+    }
+
+    /**
+     * Gets the column value character stream.
+     *
+     * @param idx the idx
+     * @return the column value character stream
+     */
+    public Reader getColumnValueCharacterStream(final int idx) {
+
+        final String value = getColumnValueString(idx);
+        return value == null ? null : new StringReader(value);
+    }
+}
@@ -0,0 +1,533 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.core.io;
+
+import net.sf.gm.core.io.DataTypes.rowType;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Class DataTeeWriter.
+ * <p>
+ * Writes the rows of one reader to several writers in the same pass, e.g. a
+ * CSV file and a FINF file of the same table. Each column value is read from
+ * the reader once into a {@link DataRow}, and handed over to all writers.
+ * <p>
+ * If a queue size is given, each writer runs on its own thread: the rows are
+ * collected in reusable buffers, and a buffer is queued to all writer threads
+ * and reused when the last writer is done with it. The slowest writer limits
+ * the reader to the given number of buffers ahead.
+ */
+public class DataTeeWriter extends DataWriterAbstract implements DataWriter {
+
+    /**
+     * The number of rows of a buffer.
+     */
+    private static final int BUFFER_ROWS = 64;
+
+    /**
+     * The Constant END_OF_DATA.
+     */
+    private static final RowBuffer END_OF_DATA = new RowBuffer(0);
+
+    /**
+     * The writers.
+     */
+    private final DataWriter[] writers;
+
+    /**
+     * The number of buffers queued to the writer threads ( 0: write on the
+     * calling thread ).
+     */
+    private final int queueSize;
+
+    /**
+     * The meta data.
+     */
+    private MetaData metaData;
+
+    /**
+     * The column types.
+     */
+    private int[] columnTypes;
+
+    /**
+     * The current row.
+     */
+    private DataRow row;
+
+    /**
+     * The reader of the current row, writing on the calling thread.
+     */
+    private DataRowReader rowReader;
+
+    /**
+     * The current buffer of the writer threads or null.
+     */
+    private RowBuffer buffer;
+
+    /**
+     * The queue of the free buffers.
+     */
+    private BlockingQueue<RowBuffer> freeQueue;
+
+    /**
+     * The writer tasks.
+     */
+    private WriterTask[] tasks;
+
+    /**
+     * The writer threads.
+     */
+    private Thread[] threads;
+
+    /**
+     * The aborted flag, set if a writer failed or the writing is aborted.
+     */
+    private volatile boolean aborted;
+
+    /**
+     * The failure of a writer thread.
+     */
+    private volatile Throwable failure;
+
+    /**
+     * The row write count.
+     */
+    private long allRowCount;
+
+    /**
+     * The Constructor.
+     *
+     * @param writers   the writers
+     * @param queueSize the number of row buffers queued to the writer threads
+     *                  ( 0: write to all writers on the calling thread )
+     */
+    public DataTeeWriter(final DataWriter[] writers, final int queueSize) {
+
+        super(writers[0].getProgress());
+        this.writers = writers;
+        this.queueSize = queueSize < 0 ? 0 : queueSize;
+        this.allRowCount = 0;
+    }
+
+    /**
+     * Gets the writers, e.g. for the row counts of each writer.
+     *
+     * @return the writers
+     */
+    public DataWriter[] getWriters() {
+        return writers;
+    }
+
+    /**
+     * Open data writing.
+     *
+     * @param metaData the meta data
+     * @throws DataIOException the data IO exception
+     */
+    public void openDataWriting(final MetaData metaData) throws DataIOException {
+
+        // the writers may resolve unknown column types
+        for (final DataWriter writer : writers)
+            writer.openDataWriting(metaData);
+        this.metaData = metaData;
+        final int colCount = metaData.getColumnCount();
+        columnTypes = new int[colCount];
+        for (int idx = 1; idx <= colCount; idx++)
+            columnTypes[idx - 1] = metaData.getColumnType(idx);
+        allRowCount = 0;
+        aborted = false;
+        failure = null;
+        buffer = null;
+        if (queueSize == 0) {
+            row = new DataRow(colCount);
+            rowReader = new DataRowReader(metaData);
+            rowReader.setCurrentRow(row);
+            return;
+        }
+
+        freeQueue = new ArrayBlockingQueue<RowBuffer>(queueSize);
+        for (int i = 0; i < queueSize; i++)
+            freeQueue.add(new RowBuffer(BUFFER_ROWS));
+        tasks = new WriterTask[writers.length];
+        threads = new Thread[writers.length];
+        for (int i = 0; i < writers.length; i++) {
+            tasks[i] = new WriterTask(writers[i]);
+            threads[i] = new Thread(tasks[i], "tee-writer-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Close data writing. All writers are closed; each writer must have
+     * written all rows.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    public void closeDataWriting() throws DataIOException {
+
+        if (threads != null) {
+            boolean done = false;
+            try {
+                if (buffer != null && buffer.size > 0)
+                    dispatch(buffer);
+                buffer = null;
+                for (final WriterTask task : tasks)
+                    put(task.queue, END_OF_DATA);
+                done = true;
+            } finally {
+                if (!done)
+                    aborted = true;
+                join();
+            }
+            checkFailure();
+        }
+
+        DataIOException closeFailure = null;
+        for (final DataWriter writer : writers) {
+            try {
+                writer.closeDataWriting();
+            } catch (final DataIOException e) {
+                if (closeFailure == null)
+                    closeFailure = e;
+            }
+        }
+        if (closeFailure != null)
+            throw closeFailure;
+        for (int i = 0; i < writers.length; i++)
+            if (writers[i].getAllRowCount() != allRowCount)
+                throw new DataIOException("tee failed: writer " + (i + 1) +
+                    ": row(s) written:" + writers[i].getAllRowCount() + " of " +
+                    allRowCount);
+        metaData = null;
+    }
+
+    /**
+     * Abort the writing after a failure, stopping the writer threads. The
+     * writers are not closed.
+     */
+    public void abort() {
+
+        aborted = true;
+        join();
+    }
+
+    /**
+     * Start row writing.
+     *
+     * @param type the type
+     * @throws DataIOException the data IO exception
+     */
+    public void startRowWriting(final rowType type) throws DataIOException {
+
+        if (threads != null) {
+            if (buffer == null)
+                buffer = take();
+            row = buffer.rows[buffer.size];
+            if (row == null)
+                row = buffer.rows[buffer.size] = new DataRow(columnTypes.length);
+        }
+        row.reset(type);
+        allRowCount++;
+    }
+
+    /**
+     * End row writing.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    public void endRowWriting() throws DataIOException {
+
+        if (threads == null) {
+            for (final DataWriter writer : writers)
+                writeRow(writer, rowReader, row);
+            return;
+        }
+        if (++buffer.size == buffer.rows.length) {
+            dispatch(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * Sets the column value.
+     *
+     * @param idx    the idx
+     * @param reader the reader
+     * @throws DataIOException the data IO exception
+     */
+    public void setColumnValue(final int idx, final DataReader reader)
+        throws DataIOException {
+
+        row.readValue(idx, reader, columnTypes[idx - 1]);
+    }
+
+    /**
+     * Write a row to a writer.
+     *
+     * @param writer    the writer
+     * @param rowReader the reader of the row
+     * @param dataRow   the row
+     * @throws DataIOException the data IO exception
+     */
+    private static void writeRow(final DataWriter writer,
+        final DataRowReader rowReader, final DataRow dataRow)
+        throws DataIOException {
+
+        writer.startRowWriting(dataRow.getRowType());
+        for (int idx = 1; idx <= dataRow.getColumnCount(); idx++)
+            writer.setColumnValue(idx, rowReader);
+        writer.endRowWriting();
+    }
+
+    /**
+     * Queue a filled buffer to all writer threads.
+     *
+     * @param rowBuffer the buffer
+     * @throws DataIOException the data IO exception
+     */
+    private void dispatch(final RowBuffer rowBuffer) throws DataIOException {
+
+        rowBuffer.pending.set(tasks.length);
+        for (final WriterTask task : tasks)
+            put(task.queue, rowBuffer);
+    }
+
+    /**
+     * Put a buffer into a queue.
+     *
+     * @param queue     the queue
+     * @param rowBuffer the buffer
+     * @throws DataIOException if a writer failed
+     */
+    private void put(final BlockingQueue<RowBuffer> queue,
+        final RowBuffer rowBuffer) throws DataIOException {
+
+        try {
+            while (!aborted) {
+                if (queue.offer(rowBuffer, 100, TimeUnit.MILLISECONDS))
+                    return;
+            }
+        } catch (final InterruptedException e) {
+            throw new DataIOException(e);
+        }
+        checkFailure();
+        throw new DataIOException("tee aborted");
+    }
+
+    /**
+     * Take a free buffer.
+     *
+     * @return the buffer
+     * @throws DataIOException if a writer failed
+     */
+    private RowBuffer take() throws DataIOException {
+
+        try {
+            while (!aborted) {
+                final RowBuffer rowBuffer = freeQueue.poll(100, TimeUnit.MILLISECONDS);
+                if (rowBuffer != null)
+                    return rowBuffer;
+            }
+        } catch (final InterruptedException e) {
+            throw new DataIOException(e);
+        }
+        checkFailure();
+        throw new DataIOException("tee aborted");
+    }
+
+    /**
+     * Join the writer threads.
+     */
+    private void join() {
+
+        if (threads == null)
+            return;
+        for (final Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException ignore) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        threads = null;
+    }
+
+    /**
+     * Check failure of the writer threads.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    private void checkFailure() throws DataIOException {
+
+        final Throwable t = failure;
+        if (t == null)
+            return;
+        if (t instanceof DataIOException)
+            throw (DataIOException) t;
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        throw new DataIOException(t);
+    }
+
+    /**
+     * Gets the row write count.
+     *
+     * @return row count ( all rows handed over to the writers )
+     */
+    public long getAllRowCount() {
+        return allRowCount;
+    }
+
+    /**
+     * Gets the row processed count.
+     *
+     * @return row count ( all rows processed by every writer )
+     */
+    public long getRowProcessedCount() {
+
+        long res = allRowCount;
+        for (final DataWriter writer : writers)
+            res = Math.min(res, writer.getRowProcessedCount());
+        return res;
+    }
+
+    /**
+     * Gets the row ignored count.
+     *
+     * @return row count ( max rows ignored by a writer )
+     */
+    public long getRowIgnoredCount() {
+
+        long res = 0;
+        for (final DataWriter writer : writers)
+            res = Math.max(res, writer.getRowIgnoredCount());
+        return res;
+    }
+
+    /**
+     * Gets the row failed count.
+     *
+     * @return row count ( max rows not written by a writer )
+     */
+    public long getRowFailedCount() {
+
+        long res = 0;
+        for (final DataWriter writer : writers)
+            res = Math.max(res, writer.getRowFailedCount());
+        return res;
+    }
+
+    /**
+     * Gets the row written count.
+     *
+     * @return row count ( all rows written by every writer )
+     */
+    public long getRowWrittenCount() {
+
+        long res = allRowCount;
+        for (final DataWriter writer : writers)
+            res = Math.min(res, writer.getRowWrittenCount());
+        return res;
+    }
+
+    /**
+     * The Class RowBuffer.
+     */
+    private static class RowBuffer {
+
+        /**
+         * The rows.
+         */
+        final DataRow[] rows;
+
+        /**
+         * The size.
+         */
+        int size;
+
+        /**
+         * The number of writers not done with the buffer.
+         */
+        final AtomicInteger pending;
+
+        /**
+         * The Constructor.
+         *
+         * @param capacity the capacity
+         */
+        RowBuffer(final int capacity) {
+
+            rows = new DataRow[capacity];
+            size = 0;
+            pending = new AtomicInteger();
+        }
+    }
+
+    /**
+     * The Class WriterTask.
+     */
+    private class WriterTask implements Runnable {
+
+        /**
+         * The writer.
+         */
+        private final DataWriter writer;
+
+        /**
+         * The queue of the buffers to write.
+         */
+        final BlockingQueue<RowBuffer> queue;
+
+        /**
+         * The Constructor.
+         *
+         * @param writer the writer
+         */
+        WriterTask(final DataWriter writer) {
+
+            this.writer = writer;
+            this.queue = new ArrayBlockingQueue<RowBuffer>(queueSize + 1);
+        }
+
+        /**
+         * Run.
+         */
+        public void run() {
+
+            final DataRowReader rowReader = new DataRowReader(metaData);
+            try {
+                while (!aborted) {
+                    final RowBuffer rowBuffer = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (rowBuffer == null)
+                        continue;
+                    if (rowBuffer == END_OF_DATA)
+                        break;
+                    for (int i = 0; i < rowBuffer.size; i++) {
+                        rowReader.setCurrentRow(rowBuffer.rows[i]);
+                        writeRow(writer, rowReader, rowBuffer.rows[i]);
+                    }
+                    if (rowBuffer.pending.decrementAndGet() == 0) {
+                        rowBuffer.size = 0;
+                        freeQueue.put(rowBuffer);
+                    }
+                }
+            } catch (InterruptedException ignore) {
+                // aborted
+            } catch (Throwable t) {
+                failure = t;
+                aborted = true;
+            }
+        }
+    }
+}
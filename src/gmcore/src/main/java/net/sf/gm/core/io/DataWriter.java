@@ -54,6 +54,15 @@ public interface DataWriter {
      */
     void setColumnValue(final int idx, DataReader reader) throws DataIOException;
 
+    /**
+     * Checks if the writer reads the value of a column; valid after the meta
+     * data has been passed to {@link #openDataWriting}.
+     *
+     * @param idx the idx
+     * @return true, if the value of the column is read
+     */
+    boolean isColumnRequested(final int idx);
+
     /**
      * Gets the row write count.
      *
@@ -103,6 +112,22 @@ public interface DataWriter {
      */
     void setProgress(Progress progress);
 
+    /**
+     * Gets the pipeline queue size.
+     *
+     * @return the pipeline queue size
+     */
+    int getPipelineQueueSize();
+
+    /**
+     * Sets the pipeline queue size.
+     *
+     * @param pipelineQueueSize the number of row buffers queued between the
+     *                          reader and the writer thread ( 0: read and write
+     *                          on the calling thread )
+     */
+    void setPipelineQueueSize(int pipelineQueueSize);
+
     /**
      * Write all data.
      *
@@ -19,6 +19,12 @@ public abstract class DataWriterAbstract implements DataWriter {
      */
     private Progress progress;
 
+    /**
+     * The number of row buffers queued between the reader and the writer
+     * thread ( 0: read and write on the calling thread ).
+     */
+    private int pipelineQueueSize;
+
     /**
      * The Constructor.
      */
@@ -53,6 +59,57 @@ public abstract class DataWriterAbstract implements DataWriter {
         this.progress = progress;
     }
 
+    /**
+     * Gets the pipeline queue size.
+     *
+     * @return the pipeline queue size
+     */
+    public int getPipelineQueueSize() {
+        return pipelineQueueSize;
+    }
+
+    /**
+     * Sets the pipeline queue size.
+     *
+     * @param pipelineQueueSize the number of row buffers queued between the
+     *                          reader and the writer thread ( 0: read and write
+     *                          on the calling thread )
+     */
+    public void setPipelineQueueSize(int pipelineQueueSize) {
+        this.pipelineQueueSize = pipelineQueueSize;
+    }
+
+    /**
+     * Checks if the value of a column is read; all columns are read by
+     * default.
+     *
+     * @param idx the idx
+     * @return true
+     */
+    public boolean isColumnRequested(final int idx) {
+        return true;
+    }
+
+    /**
+     * Gets the columns requested by a writer.
+     *
+     * @param writer   the writer
+     * @param colCount the column count
+     * @return the requested flag of each column or null, if all columns are
+     * requested
+     */
+    protected static boolean[] getRequestedColumns(final DataWriter writer,
+        final int colCount) {
+
+        final boolean[] requested = new boolean[colCount];
+        boolean all = true;
+        for (int idx = 1; idx <= colCount; idx++) {
+            requested[idx - 1] = writer.isColumnRequested(idx);
+            all &= requested[idx - 1];
+        }
+        return all ? null : requested;
+    }
+
     /**
      * Write all data.
      *
@@ -62,6 +119,8 @@ public abstract class DataWriterAbstract implements DataWriter {
      */
     public long writeAllData(DataReader reader) throws DataIOException {
 
+        if (pipelineQueueSize > 0)
+            return DataCopyPipeline.copyData(reader, this, pipelineQueueSize);
         return DataWriterAbstract.copyData(reader, this);
     }
 
@@ -79,6 +138,7 @@ public abstract class DataWriterAbstract implements DataWriter {
         MetaData metadata = reader.openDataReading();
         writer.openDataWriting(metadata);
         int colCount = metadata.getColumnCount();
+        reader.setRequestedColumns(getRequestedColumns(writer, colCount));
         while (reader.readNextRow()) {
             writer.startRowWriting(reader.getCurrentRowType());
             for (int idx = 1; idx <= colCount; idx++) {
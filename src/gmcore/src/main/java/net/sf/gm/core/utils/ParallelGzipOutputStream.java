@@ -0,0 +1,332 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.core.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+//
+
+
+/**
+ * The Class ParallelGzipOutputStream.
+ * <p>
+ * Writes gzip compressed data, compressing blocks of the data on a pool of
+ * threads. Each block is compressed independently into a complete gzip
+ * member; the members are written in order, so the output is a standard
+ * multi-member gzip stream, read by <code>gzip -d</code> or
+ * {@link java.util.zip.GZIPInputStream}. The number of blocks in progress is
+ * bounded by twice the number of threads.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    /**
+     * The default block size.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    /**
+     * The gzip member header: deflate, no flags, no time, unknown OS.
+     */
+    private static final byte[] HEADER =
+        {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    /**
+     * The output stream.
+     */
+    private final OutputStream out;
+
+    /**
+     * The compression level.
+     */
+    private final int level;
+
+    /**
+     * The block size.
+     */
+    private final int blockSize;
+
+    /**
+     * The executor compressing the blocks.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The members in progress, in output order.
+     */
+    private final ArrayDeque<Future<byte[]>> pending;
+
+    /**
+     * The max number of members in progress.
+     */
+    private final int maxPending;
+
+    /**
+     * The current block.
+     */
+    private byte[] block;
+
+    /**
+     * The number of bytes of the current block.
+     */
+    private int count;
+
+    /**
+     * The number of members written or in progress.
+     */
+    private long memberCount;
+
+    /**
+     * The closed flag.
+     */
+    private boolean closed;
+
+    /**
+     * The Constructor.
+     *
+     * @param out     the output stream of the compressed data
+     * @param threads the number of compressing threads
+     */
+    public ParallelGzipOutputStream(final OutputStream out, final int threads) {
+        this(out, threads, Deflater.DEFAULT_COMPRESSION, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * The Constructor.
+     *
+     * @param out       the output stream of the compressed data
+     * @param threads   the number of compressing threads
+     * @param level     the compression level ( see {@link Deflater} )
+     * @param blockSize the number of bytes compressed into one member
+     */
+    public ParallelGzipOutputStream(final OutputStream out, final int threads,
+        final int level, final int blockSize) {
+
+        super();
+        final int threadCount = Math.max(1, threads);
+        this.out = out;
+        this.level = level;
+        this.blockSize = blockSize;
+        this.executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+
+            private int index = 0;
+
+            public Thread newThread(final Runnable runnable) {
+
+                final Thread thread = new Thread(runnable, "gzip-" + index++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.pending = new ArrayDeque<Future<byte[]>>();
+        this.maxPending = 2 * threadCount;
+        this.block = new byte[blockSize];
+        this.count = 0;
+        this.memberCount = 0;
+        this.closed = false;
+    }
+
+    /**
+     * Write.
+     *
+     * @param b the byte
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Override
+    public void write(final int b) throws IOException {
+
+        block[count++] = (byte) b;
+        if (count == blockSize)
+            submitBlock();
+    }
+
+    /**
+     * Write.
+     *
+     * @param b   the bytes
+     * @param off the offset
+     * @param len the length
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+
+        while (len > 0) {
+            final int n = Math.min(len, blockSize - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == blockSize)
+                submitBlock();
+        }
+    }
+
+    /**
+     * Flush: the current block is compressed, and all members are written.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Override
+    public void flush() throws IOException {
+
+        if (count > 0)
+            submitBlock();
+        while (!pending.isEmpty())
+            writeMember();
+        out.flush();
+    }
+
+    /**
+     * Close: all members are written, and the output stream is closed. An
+     * empty stream is written as one empty member.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Override
+    public void close() throws IOException {
+
+        if (closed)
+            return;
+        closed = true;
+        try {
+            if (count > 0 || memberCount == 0)
+                submitBlock();
+            while (!pending.isEmpty())
+                writeMember();
+            out.close();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Submit the current block for compression; the oldest member is written
+     * first, if the max number of members is in progress.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void submitBlock() throws IOException {
+
+        if (pending.size() >= maxPending)
+            writeMember();
+        pending.addLast(executor.submit(new CompressTask(block, count, level)));
+        memberCount++;
+        block = new byte[blockSize];
+        count = 0;
+    }
+
+    /**
+     * Wait for the oldest member, and write it.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void writeMember() throws IOException {
+
+        final Future<byte[]> member = pending.removeFirst();
+        try {
+            out.write(member.get());
+        } catch (final InterruptedException e) {
+            throw new InterruptedIOException("compression interrupted");
+        } catch (final ExecutionException e) {
+            throw new IOException("compression failed", e.getCause());
+        }
+    }
+
+    /**
+     * The Class CompressTask.
+     * <p>
+     * Compresses a block into a gzip member.
+     */
+    private static class CompressTask implements Callable<byte[]> {
+
+        /**
+         * The data.
+         */
+        private final byte[] data;
+
+        /**
+         * The length of the data.
+         */
+        private final int length;
+
+        /**
+         * The compression level.
+         */
+        private final int level;
+
+        /**
+         * The Constructor.
+         *
+         * @param data   the data
+         * @param length the length of the data
+         * @param level  the compression level
+         */
+        CompressTask(final byte[] data, final int length, final int level) {
+
+            this.data = data;
+            this.length = length;
+            this.level = level;
+        }
+
+        /**
+         * Compress the block.
+         *
+         * @return the gzip member
+         */
+        public byte[] call() {
+
+            final ByteArrayOutputStream member =
+                new ByteArrayOutputStream(length / 2 + 64);
+            member.write(HEADER, 0, HEADER.length);
+            final Deflater deflater = new Deflater(level, true);
+            try {
+                deflater.setInput(data, 0, length);
+                deflater.finish();
+                final byte[] buffer = new byte[Math.max(512, Math.min(length, 64 * 1024))];
+                while (!deflater.finished()) {
+                    final int n = deflater.deflate(buffer);
+                    member.write(buffer, 0, n);
+                }
+            } finally {
+                deflater.end();
+            }
+            final CRC32 crc = new CRC32();
+            crc.update(data, 0, length);
+            writeInt(member, (int) crc.getValue());
+            writeInt(member, length);
+            return member.toByteArray();
+        }
+
+        /**
+         * Write an int in little endian order.
+         *
+         * @param member the member
+         * @param value  the value
+         */
+        private static void writeInt(final ByteArrayOutputStream member,
+            final int value) {
+
+            member.write(value);
+            member.write(value >>> 8);
+            member.write(value >>> 16);
+            member.write(value >>> 24);
+        }
+    }
+}
@@ -0,0 +1,476 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.core.utils;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+//
+
+
+/**
+ * The Class ReadAheadGzipInputStream.
+ * <p>
+ * Reads gzip compressed data ( single or multi-member, see
+ * {@link ParallelGzipOutputStream} ), decompressed on a separate thread ahead
+ * of the reader, so decompressing and parsing the data overlap. Use
+ * {@link #open} to read compressed and plain input alike.
+ */
+public class ReadAheadGzipInputStream extends InputStream {
+
+    /**
+     * The size of a decompressed chunk.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The number of chunks queued ahead of the reader.
+     */
+    private static final int QUEUE_SIZE = 8;
+
+    /**
+     * The Constant END_OF_DATA.
+     */
+    private static final Chunk END_OF_DATA = new Chunk(new byte[0], 0);
+
+    /**
+     * The compressed input stream.
+     */
+    private final InputStream in;
+
+    /**
+     * The queue of the decompressed chunks.
+     */
+    private final BlockingQueue<Chunk> queue;
+
+    /**
+     * The decompressing thread.
+     */
+    private final Thread thread;
+
+    /**
+     * The current chunk.
+     */
+    private Chunk chunk;
+
+    /**
+     * The position in the current chunk.
+     */
+    private int pos;
+
+    /**
+     * The closed flag, stops the decompressing thread.
+     */
+    private volatile boolean closed;
+
+    /**
+     * The failure of the decompressing thread.
+     */
+    private volatile IOException failure;
+
+    /**
+     * The Constructor; the decompressing thread is started.
+     *
+     * @param in the compressed input stream
+     */
+    public ReadAheadGzipInputStream(final InputStream in) {
+
+        super();
+        this.in = in;
+        this.queue = new ArrayBlockingQueue<Chunk>(QUEUE_SIZE);
+        this.chunk = null;
+        this.pos = 0;
+        this.closed = false;
+        this.failure = null;
+        this.thread = new Thread(new DecompressTask(), "gunzip");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Open an input stream: a gzip compressed stream, detected by its magic
+     * bytes, is decompressed ahead of the reader, other streams are read as
+     * they are.
+     *
+     * @param in the input stream
+     * @return the decompressed or the given input stream
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static InputStream open(final InputStream in) throws IOException {
+
+        final InputStream is = in.markSupported() ? in : new BufferedInputStream(in);
+        is.mark(2);
+        final int b1 = is.read();
+        final int b2 = is.read();
+        is.reset();
+        if (b1 == 0x1f && b2 == 0x8b)
+            return new ReadAheadGzipInputStream(is);
+        return is;
+    }
+
+    /**
+     * Read.
+     *
+     * @return the byte or -1 at the end of the data
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Override
+    public int read() throws IOException {
+
+        if (!nextChunk())
+            return -1;
+        return chunk.data[pos++] & 0xff;
+    }
+
+    /**
+     * Read.
+     *
+     * @param b   the buffer
+     * @param off the offset
+     * @param len the max number of bytes
+     * @return the number of bytes read or -1 at the end of the data
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Override
+    public int read(final byte[] b, final int off, final int len)
+        throws IOException {
+
+        if (len == 0)
+            return 0;
+        if (!nextChunk())
+            return -1;
+        final int n = Math.min(len, chunk.length - pos);
+        System.arraycopy(chunk.data, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    /**
+     * Gets the number of bytes available without blocking.
+     *
+     * @return the number of bytes left in the current chunk
+     */
+    @Override
+    public int available() {
+        return chunk == null || chunk == END_OF_DATA ? 0 : chunk.length - pos;
+    }
+
+    /**
+     * Take the next chunk, if the current chunk is read.
+     *
+     * @return true, if data is left
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private boolean nextChunk() throws IOException {
+
+        if (closed)
+            throw new IOException("stream closed");
+        while (chunk != END_OF_DATA && (chunk == null || pos >= chunk.length)) {
+            try {
+                chunk = queue.take();
+            } catch (final InterruptedException e) {
+                throw new InterruptedIOException("decompression interrupted");
+            }
+            pos = 0;
+        }
+        if (chunk == END_OF_DATA) {
+            if (failure != null)
+                throw failure;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Close: the decompressing thread is stopped, and the compressed input
+     * stream is closed.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Override
+    public void close() throws IOException {
+
+        if (closed)
+            return;
+        closed = true;
+        queue.clear();
+        try {
+            thread.join();
+        } catch (final InterruptedException ignore) {
+            Thread.currentThread().interrupt();
+        }
+        in.close();
+    }
+
+    /**
+     * The Class Chunk.
+     */
+    private static class Chunk {
+
+        /**
+         * The data.
+         */
+        final byte[] data;
+
+        /**
+         * The length.
+         */
+        final int length;
+
+        /**
+         * The Constructor.
+         *
+         * @param data   the data
+         * @param length the length
+         */
+        Chunk(final byte[] data, final int length) {
+
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    /**
+     * The Class DecompressTask.
+     * <p>
+     * The members are parsed here, not by GZIPInputStream: it ends the data
+     * at a member boundary, if no more input is available at that moment,
+     * e.g. on a pipe. Each member is checked by its trailer, the data ends
+     * at the end of the compressed input stream only.
+     */
+    private class DecompressTask implements Runnable {
+
+        /**
+         * The FHCRC flag of the member header.
+         */
+        private static final int FHCRC = 2;
+
+        /**
+         * The FEXTRA flag.
+         */
+        private static final int FEXTRA = 4;
+
+        /**
+         * The FNAME flag.
+         */
+        private static final int FNAME = 8;
+
+        /**
+         * The FCOMMENT flag.
+         */
+        private static final int FCOMMENT = 16;
+
+        /**
+         * The compressed input buffer.
+         */
+        private final byte[] input = new byte[CHUNK_SIZE];
+
+        /**
+         * The position in the input buffer.
+         */
+        private int inputPos;
+
+        /**
+         * The length of the input buffer.
+         */
+        private int inputLength;
+
+        /**
+         * Run.
+         */
+        public void run() {
+
+            final Inflater inflater = new Inflater(true);
+            try {
+                final CRC32 crc = new CRC32();
+                byte[] data = new byte[CHUNK_SIZE];
+                int length = 0;
+                boolean first = true;
+                while (!closed && readHeader(first)) {
+                    first = false;
+                    inflater.reset();
+                    crc.reset();
+                    while (!inflater.finished()) {
+                        if (closed)
+                            return;
+                        if (inflater.needsInput()) {
+                            if (!fill())
+                                throw new EOFException("unexpected end of gzip data");
+                            inflater.setInput(input, inputPos, inputLength - inputPos);
+                            inputPos = inputLength;
+                        }
+                        final int n = inflater.inflate(data, length, data.length - length);
+                        if (n == 0 && inflater.needsDictionary())
+                            throw new ZipException("invalid gzip data");
+                        crc.update(data, length, n);
+                        length += n;
+                        if (length == data.length) {
+                            put(new Chunk(data, length));
+                            data = new byte[CHUNK_SIZE];
+                            length = 0;
+                        }
+                    }
+                    inputPos = inputLength - inflater.getRemaining();
+                    readTrailer(crc.getValue(), inflater.getBytesWritten());
+                }
+                if (length > 0)
+                    put(new Chunk(data, length));
+            } catch (final IOException e) {
+                failure = e;
+            } catch (final DataFormatException e) {
+                failure = new ZipException(e.getMessage());
+            } catch (final RuntimeException e) {
+                failure = new IOException(e);
+            } catch (final InterruptedException ignore) {
+                // closed
+            } finally {
+                inflater.end();
+                try {
+                    put(END_OF_DATA);
+                } catch (final InterruptedException ignore) {
+                    // closed
+                }
+            }
+        }
+
+        /**
+         * Read the header of the next member.
+         *
+         * @param first the first member
+         * @return false at the end of the compressed input stream
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        private boolean readHeader(final boolean first) throws IOException {
+
+            if (!fill())
+                return false;
+            if (readByte() != 0x1f || readByte() != 0x8b)
+                throw new ZipException(first ? "not in gzip format"
+                    : "invalid data after gzip member");
+            if (readByte() != Deflater.DEFLATED)
+                throw new ZipException("unsupported gzip compression method");
+            final int flags = readByte();
+            skipBytes(6);
+            if ((flags & FEXTRA) != 0)
+                skipBytes(readByte() | readByte() << 8);
+            if ((flags & FNAME) != 0)
+                skipString();
+            if ((flags & FCOMMENT) != 0)
+                skipString();
+            if ((flags & FHCRC) != 0)
+                skipBytes(2);
+            return true;
+        }
+
+        /**
+         * Read and check the trailer of a member.
+         *
+         * @param crc  the CRC32 of the decompressed data
+         * @param size the size of the decompressed data
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        private void readTrailer(final long crc, final long size) throws IOException {
+
+            if (readInt() != (int) crc)
+                throw new ZipException("corrupt gzip member: CRC mismatch");
+            if (readInt() != (int) size)
+                throw new ZipException("corrupt gzip member: size mismatch");
+        }
+
+        /**
+         * Read an int in little endian order.
+         *
+         * @return the int
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        private int readInt() throws IOException {
+
+            return readByte() | readByte() << 8 | readByte() << 16 | readByte() << 24;
+        }
+
+        /**
+         * Skip a zero terminated string.
+         *
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        private void skipString() throws IOException {
+
+            while (readByte() != 0) {
+                // skip
+            }
+        }
+
+        /**
+         * Skip bytes.
+         *
+         * @param n the number of bytes
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        private void skipBytes(final int n) throws IOException {
+
+            for (int i = 0; i < n; i++)
+                readByte();
+        }
+
+        /**
+         * Read a byte of a member header or trailer.
+         *
+         * @return the byte
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        private int readByte() throws IOException {
+
+            if (!fill())
+                throw new EOFException("unexpected end of gzip data");
+            return input[inputPos++] & 0xff;
+        }
+
+        /**
+         * Fill the input buffer, if it is read.
+         *
+         * @return false at the end of the compressed input stream
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        private boolean fill() throws IOException {
+
+            while (inputPos >= inputLength) {
+                final int n = in.read(input, 0, input.length);
+                if (n < 0)
+                    return false;
+                inputPos = 0;
+                inputLength = n;
+            }
+            return true;
+        }
+
+        /**
+         * Put a chunk into the queue.
+         *
+         * @param next the chunk
+         * @throws InterruptedException the interrupted exception
+         */
+        private void put(final Chunk next) throws InterruptedException {
+
+            while (!closed) {
+                if (queue.offer(next, 100, TimeUnit.MILLISECONDS))
+                    return;
+            }
+        }
+    }
+}
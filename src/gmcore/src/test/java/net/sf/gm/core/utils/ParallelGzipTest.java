@@ -0,0 +1,376 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.core.utils;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+//
+
+
+/**
+ * The Class ParallelGzipTest.
+ * <p>
+ * The multi-member output of {@link ParallelGzipOutputStream} is read back
+ * with {@link GZIPInputStream} and with {@link ReadAheadGzipInputStream}.
+ */
+public class ParallelGzipTest extends TestCase {
+
+    /**
+     * The block size of the tests: small, to write many members.
+     */
+    private static final int BLOCK_SIZE = 1000;
+
+    /**
+     * Test a round trip through GZIPInputStream.
+     *
+     * @throws Exception the exception
+     */
+    public void testGzipInputStream() throws Exception {
+
+        final byte[] data = createData(200000);
+        final byte[] compressed = compress(data, 4);
+        assertTrue(countMembers(compressed) >= data.length / BLOCK_SIZE);
+        assertTrue(Arrays.equals(data, readAll(new GZIPInputStream(
+            new ByteArrayInputStream(compressed)))));
+    }
+
+    /**
+     * Test a round trip through ReadAheadGzipInputStream.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void testReadAheadGzipInputStream() throws IOException {
+
+        for (final int threads : new int[]{1, 4}) {
+            final byte[] data = createData(500000);
+            final InputStream is = ReadAheadGzipInputStream.open(
+                new ByteArrayInputStream(compress(data, threads)));
+            assertTrue(is instanceof ReadAheadGzipInputStream);
+            assertTrue(Arrays.equals(data, readAll(is)));
+        }
+    }
+
+    /**
+     * Test a round trip through a pipe: the compressed input is read in small
+     * pieces, and no input is available at the member boundaries.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void testPipe() throws IOException {
+
+        final byte[] data = createData(300000);
+        final InputStream is = ReadAheadGzipInputStream.open(
+            new PipeInputStream(compress(data, 4)));
+        assertTrue(is instanceof ReadAheadGzipInputStream);
+        assertTrue(Arrays.equals(data, readAll(is)));
+    }
+
+    /**
+     * Test members written by GZIPOutputStream, one of them with a file name.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void testConcatenatedMembers() throws IOException {
+
+        final byte[] data = createData(30000);
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream os = new GZIPOutputStream(compressed);
+        os.write(data, 0, 10000);
+        os.finish();
+        // a member with a file name
+        compressed.write(new byte[]{0x1f, (byte) 0x8b, Deflater.DEFLATED, 8,
+            0, 0, 0, 0, 0, (byte) 0xff, 'a', '.', 'c', 's', 'v', 0});
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        final DeflaterOutputStream dos = new DeflaterOutputStream(compressed, deflater);
+        dos.write(data, 10000, 10000);
+        dos.finish();
+        deflater.end();
+        final CRC32 crc = new CRC32();
+        crc.update(data, 10000, 10000);
+        writeInt(compressed, (int) crc.getValue());
+        writeInt(compressed, 10000);
+        os = new GZIPOutputStream(compressed);
+        os.write(data, 20000, 10000);
+        os.finish();
+        assertTrue(Arrays.equals(data, readAll(ReadAheadGzipInputStream.open(
+            new PipeInputStream(compressed.toByteArray())))));
+    }
+
+    /**
+     * Test that a corrupt member fails.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void testCorrupt() throws IOException {
+
+        final byte[] compressed = compress(createData(50000), 2);
+        // the CRC of the last member
+        compressed[compressed.length - 8] ^= 1;
+        try {
+            readAll(ReadAheadGzipInputStream.open(new ByteArrayInputStream(compressed)));
+            fail("corrupt input read");
+        } catch (final IOException expected) {
+            // expected
+        }
+    }
+
+    /**
+     * Test an empty stream: it is written as one empty member.
+     *
+     * @throws Exception the exception
+     */
+    public void testEmpty() throws Exception {
+
+        final byte[] compressed = compress(new byte[0], 2);
+        assertEquals(1, countMembers(compressed));
+        assertEquals(0, readAll(new GZIPInputStream(
+            new ByteArrayInputStream(compressed))).length);
+        assertEquals(0, readAll(ReadAheadGzipInputStream.open(
+            new ByteArrayInputStream(compressed))).length);
+    }
+
+    /**
+     * Test that uncompressed input is read as it is.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void testUncompressed() throws IOException {
+
+        final byte[] data = createData(10000);
+        final InputStream is = ReadAheadGzipInputStream.open(new ByteArrayInputStream(data));
+        assertFalse(is instanceof ReadAheadGzipInputStream);
+        assertTrue(Arrays.equals(data, readAll(is)));
+    }
+
+    /**
+     * Test that truncated input fails.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void testTruncated() throws IOException {
+
+        final byte[] compressed = compress(createData(50000), 2);
+        final InputStream is = ReadAheadGzipInputStream.open(new ByteArrayInputStream(
+            Arrays.copyOf(compressed, compressed.length - 100)));
+        try {
+            readAll(is);
+            fail("truncated input read");
+        } catch (final IOException expected) {
+            // expected
+        }
+    }
+
+    /**
+     * Compress the data: written in pieces of varying size, single bytes
+     * and flushes, so the blocks are filled in every way.
+     *
+     * @param data    the data
+     * @param threads the number of compressing threads
+     * @return the compressed data
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static byte[] compress(final byte[] data, final int threads)
+        throws IOException {
+
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        final ParallelGzipOutputStream os = new ParallelGzipOutputStream(compressed,
+            threads, Deflater.DEFAULT_COMPRESSION, BLOCK_SIZE);
+        final Random random = new Random(17);
+        int pos = 0;
+        while (pos < data.length) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    os.write(data[pos++]);
+                    break;
+                case 1:
+                    os.flush();
+                    break;
+                default:
+                    final int n = Math.min(data.length - pos, random.nextInt(3 * BLOCK_SIZE));
+                    os.write(data, pos, n);
+                    pos += n;
+                    break;
+            }
+        }
+        os.close();
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Count the gzip members: each member is inflated on its own, its
+     * trailer is checked.
+     *
+     * @param compressed the compressed data
+     * @return the number of members
+     * @throws DataFormatException the data format exception
+     */
+    private static int countMembers(final byte[] compressed)
+        throws DataFormatException {
+
+        int count = 0;
+        int pos = 0;
+        final byte[] buffer = new byte[BLOCK_SIZE];
+        while (pos < compressed.length) {
+            assertEquals(0x1f, compressed[pos] & 0xff);
+            assertEquals(0x8b, compressed[pos + 1] & 0xff);
+            final Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(compressed, pos + 10, compressed.length - pos - 10);
+                while (!inflater.finished())
+                    assertTrue(inflater.inflate(buffer) > 0 || inflater.finished());
+                final int end = compressed.length - inflater.getRemaining();
+                assertEquals(inflater.getBytesWritten(), readInt(compressed, end + 4));
+                pos = end + 8;
+            } finally {
+                inflater.end();
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Read an int in little endian order.
+     *
+     * @param b   the bytes
+     * @param off the offset
+     * @return the int
+     */
+    private static int readInt(final byte[] b, final int off) {
+
+        return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 |
+            (b[off + 3] & 0xff) << 24;
+    }
+
+    /**
+     * Write an int in little endian order.
+     *
+     * @param os    the output stream
+     * @param value the value
+     */
+    private static void writeInt(final ByteArrayOutputStream os, final int value) {
+
+        os.write(value);
+        os.write(value >>> 8);
+        os.write(value >>> 16);
+        os.write(value >>> 24);
+    }
+
+    /**
+     * Creates compressible data.
+     *
+     * @param length the length
+     * @return the data
+     */
+    private static byte[] createData(final int length) {
+
+        final Random random = new Random(length);
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++)
+            data[i] = (byte) ('a' + random.nextInt(8));
+        return data;
+    }
+
+    /**
+     * Read all bytes and close the stream.
+     *
+     * @param is the input stream
+     * @return the bytes
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static byte[] readAll(final InputStream is) throws IOException {
+
+        try {
+            final ByteArrayOutputStream data = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int n;
+            while ((n = is.read(buffer)) > 0)
+                data.write(buffer, 0, n);
+            return data.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * The Class PipeInputStream.
+     * <p>
+     * Reads like a pipe: a few bytes at a time, and nothing is available
+     * without blocking.
+     */
+    private static class PipeInputStream extends InputStream {
+
+        /**
+         * The data.
+         */
+        private final ByteArrayInputStream data;
+
+        /**
+         * The random sizes of the reads.
+         */
+        private final Random random;
+
+        /**
+         * The Constructor.
+         *
+         * @param data the data
+         */
+        PipeInputStream(final byte[] data) {
+
+            this.data = new ByteArrayInputStream(data);
+            this.random = new Random(data.length);
+        }
+
+        /**
+         * Read.
+         *
+         * @return the byte or -1 at the end of the data
+         */
+        @Override
+        public int read() {
+            return data.read();
+        }
+
+        /**
+         * Read a few bytes.
+         *
+         * @param b   the buffer
+         * @param off the offset
+         * @param len the max number of bytes
+         * @return the number of bytes read or -1 at the end of the data
+         */
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            return data.read(b, off, Math.min(len, 1 + random.nextInt(64)));
+        }
+
+        /**
+         * Gets the number of bytes available without blocking.
+         *
+         * @return 0
+         */
+        @Override
+        public int available() {
+            return 0;
+        }
+    }
+}
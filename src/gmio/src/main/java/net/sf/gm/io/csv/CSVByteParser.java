@@ -0,0 +1,685 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.io.csv;
+
+import net.sf.gm.core.io.DataIOException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+//
+
+
+/**
+ * The Class CSVByteParser.
+ * <p>
+ * Parses CSV rows from the bytes of an ASCII compatible charset ( UTF-8,
+ * ISO-8859-1 or US-ASCII ), without decoding the input: the delimiters are
+ * found 8 bytes at a time, and the cells of a row are slices of the read
+ * buffer, decoded to a string on request. The row and its cells are reused
+ * for the next row. The quoting rules are those of
+ * {@link CSVReader.CSVParser}.
+ */
+class CSVByteParser {
+
+    /**
+     * The Constant ONES, a 1 in each byte.
+     */
+    private static final long ONES = 0x0101010101010101L;
+
+    /**
+     * The Constant HIGHS, the high bit of each byte.
+     */
+    private static final long HIGHS = 0x8080808080808080L;
+
+    /**
+     * The max number of digits of a number parsed from the read buffer.
+     */
+    private static final int MAX_DIGITS = 18;
+
+    /**
+     * The max number of digits of a double computed exactly from a long.
+     */
+    private static final int MAX_DOUBLE_DIGITS = 15;
+
+    /**
+     * The powers of ten, exact as double.
+     */
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4,
+        1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+        1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    /**
+     * The input stream.
+     */
+    private final InputStream is;
+
+    /**
+     * The charset.
+     */
+    private final Charset charset;
+
+    /**
+     * The col delimiter.
+     */
+    private final byte colDelimiter;
+
+    /**
+     * The row delimiter.
+     */
+    private final byte rowDelimiter;
+
+    /**
+     * The char delimiter.
+     */
+    private final byte charDelimiter;
+
+    /**
+     * The quoting.
+     */
+    private final boolean quoting;
+
+    /**
+     * The double quotes.
+     */
+    private final boolean doubleQuotes;
+
+    /**
+     * The filter empty lines.
+     */
+    private final boolean filterEmptyLines;
+
+    /**
+     * The col delimiter in each byte.
+     */
+    private final long colPattern;
+
+    /**
+     * The row delimiter in each byte.
+     */
+    private final long rowPattern;
+
+    /**
+     * The char delimiter in each byte ( the col delimiter, if not quoting ).
+     */
+    private final long charPattern;
+
+    /**
+     * The carriage return in each byte.
+     */
+    private final long crPattern;
+
+    /**
+     * The read buffer.
+     */
+    private byte[] buffer;
+
+    /**
+     * The little endian view of the read buffer.
+     */
+    private ByteBuffer view;
+
+    /**
+     * The input position of the start of the read buffer.
+     */
+    private long bufferPosition;
+
+    /**
+     * The number of bytes in the read buffer.
+     */
+    private int limit;
+
+    /**
+     * The end of file flag.
+     */
+    private boolean eof;
+
+    /**
+     * The cur pos.
+     */
+    private int curPos;
+
+    /**
+     * The start of the current row.
+     */
+    private int rowStart;
+
+    /**
+     * The start of the current cell.
+     */
+    private int cellStart;
+
+    /**
+     * The end of the value of the current cell ( the value is moved down
+     * in the buffer, if input bytes are dropped ).
+     */
+    private int cellEnd;
+
+    /**
+     * The input length of the current cell.
+     */
+    private int cellInputLength;
+
+    /**
+     * The in quote.
+     */
+    private boolean inQuotes;
+
+    /**
+     * The quote count.
+     */
+    private int quoteCount;
+
+    /**
+     * The number of cells of the current row.
+     */
+    private int cellCount;
+
+    /**
+     * The offsets of the cells.
+     */
+    private int[] cellOffsets;
+
+    /**
+     * The lengths of the cells.
+     */
+    private int[] cellLengths;
+
+    /**
+     * The input lengths of the cells.
+     */
+    private int[] cellInputLengths;
+
+    /**
+     * The unscaled value of the number parsed last.
+     */
+    private long numberValue;
+
+    /**
+     * The number of digits of the number parsed last.
+     */
+    private int numberDigits;
+
+    /**
+     * The number of fraction digits of the number parsed last ( -1: no
+     * decimal point ).
+     */
+    private int numberScale;
+
+    /**
+     * The negative flag of the number parsed last.
+     */
+    private boolean numberNegative;
+
+    /**
+     * The Constructor.
+     *
+     * @param is      the is
+     * @param options the options
+     */
+    CSVByteParser(final InputStream is, final CSVFormatOptions options) {
+        this(is, options, options.getReadBufferSize());
+    }
+
+    /**
+     * The Constructor.
+     *
+     * @param is         the is
+     * @param options    the options
+     * @param bufferSize the initial size of the read buffer
+     */
+    CSVByteParser(final InputStream is, final CSVFormatOptions options,
+        final int bufferSize) {
+
+        this.is = is;
+        this.charset = options.getCharset();
+        this.colDelimiter = (byte) options.getColDelimiter();
+        this.rowDelimiter = (byte) options.getRowDelimiter();
+        this.charDelimiter = (byte) options.getCharDelimiter();
+        this.quoting = options.isQuoting();
+        this.doubleQuotes = options.isDoubleQuotes();
+        this.filterEmptyLines = options.isFilterEmptyLines();
+        this.colPattern = pattern(colDelimiter);
+        this.rowPattern = pattern(rowDelimiter);
+        this.charPattern = quoting ? pattern(charDelimiter) : colPattern;
+        this.crPattern = pattern((byte) '\r');
+        this.buffer = new byte[Math.max(bufferSize, 16)];
+        this.view = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+        this.bufferPosition = 0;
+        this.limit = 0;
+        this.eof = false;
+        this.curPos = 0;
+        this.cellCount = 0;
+        this.cellOffsets = new int[16];
+        this.cellLengths = new int[16];
+        this.cellInputLengths = new int[16];
+    }
+
+    /**
+     * Checks if the options are supported: the charset encodes ASCII
+     * characters as single bytes, never used within the encoding of other
+     * characters, and the delimiters are ASCII characters.
+     *
+     * @param options the options
+     * @return true, if supported
+     */
+    static boolean isSupported(final CSVFormatOptions options) {
+
+        final String name = options.getCharset().name();
+        if (!name.equals("UTF-8") && !name.equals("ISO-8859-1") &&
+            !name.equals("US-ASCII"))
+            return false;
+        return options.getColDelimiter() < 0x80 &&
+            options.getRowDelimiter() < 0x80 &&
+            options.getCharDelimiter() < 0x80;
+    }
+
+    /**
+     * Close.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    public void close() throws DataIOException {
+
+        try {
+            is.close();
+        } catch (IOException e) {
+            throw new DataIOException(e);
+        }
+    }
+
+    /**
+     * Parse the next row; the cells of the previous row are no longer valid.
+     *
+     * @return true, if a row has been read, false at the end of the input
+     * @throws DataIOException the data IO exception
+     */
+    public boolean parse() throws DataIOException {
+
+        cellCount = 0;
+        rowStart = curPos;
+        startCell();
+        inQuotes = false;
+        quoteCount = 0;
+        while (true) {
+            if (curPos == limit && !fill())
+                return false;
+
+            // copy the bytes up to the next delimiter, quote or carriage return
+            final int next = scan(curPos, limit);
+            if (next > curPos) {
+                if (quoteCount > 0)
+                    appendQuotes();
+                appendBytes(curPos, next - curPos);
+                curPos = next;
+                if (curPos == limit)
+                    continue;
+            }
+
+            // see CSVReader.CSVParser for the quote handling
+            final byte c = buffer[curPos];
+            if (inQuotes)
+                if ((c == colDelimiter || c == rowDelimiter)
+                    && ((!doubleQuotes && quoteCount > 0)
+                    || (doubleQuotes && quoteCount % 2 == 1))) {
+                    quoteCount -= 1; // the last quote terminates the quoting
+                    appendQuotes();
+                    inQuotes = false;
+                } else {
+                    if (c == charDelimiter) {
+                        cellInputLength++;
+                        quoteCount++;
+                        curPos++;
+                        continue;
+                    }
+                    if (quoteCount > 0)
+                        appendQuotes();
+                    // counted as input by appendBytes
+                    appendBytes(curPos, 1);
+                    curPos++;
+                    continue;
+                }
+            if (c == colDelimiter || c == rowDelimiter) {
+                addCell();
+                curPos++;
+                if (c == rowDelimiter) {
+                    if (!filterEmptyLines || cellCount != 1
+                        || cellInputLengths[0] != 0)
+                        return true;
+                    cellCount = 0;
+                    rowStart = curPos;
+                }
+                startCell();
+                continue;
+            }
+            if (quoting && c == charDelimiter && cellEnd == cellStart) {
+                quoteCount = 0;
+                inQuotes = true;
+                cellInputLength++;
+                curPos++;
+                cellStart = curPos;
+                cellEnd = curPos;
+                continue;
+            }
+            if (c == '\r') {
+                if (curPos + 1 == limit && fill())
+                    continue;
+                if (curPos + 1 < limit && buffer[curPos + 1] == '\n') { // ignore '\r'
+                    curPos++;
+                    continue;
+                }
+            }
+            appendBytes(curPos, 1);
+            curPos++;
+        }
+    }
+
+    /**
+     * Gets the input position: the number of bytes parsed, up to the end of
+     * the current row.
+     *
+     * @return the position
+     */
+    public long getPosition() {
+        return bufferPosition + curPos;
+    }
+
+    /**
+     * Gets the number of cells of the current row.
+     *
+     * @return the cell count
+     */
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    /**
+     * Gets the value of a cell.
+     *
+     * @param i the index of the cell ( 0 based )
+     * @return the value
+     */
+    public String getValue(final int i) {
+        return new String(buffer, cellOffsets[i], cellLengths[i], charset);
+    }
+
+    /**
+     * Gets the value of a cell as int.
+     *
+     * @param i the index of the cell ( 0 based )
+     * @return the value
+     * @throws NumberFormatException if the value is not an int
+     */
+    public int getInt(final int i) {
+
+        if (parseNumber(i) && numberScale < 0 &&
+            numberValue >= Integer.MIN_VALUE && numberValue <= Integer.MAX_VALUE)
+            return (int) numberValue;
+        return Integer.parseInt(getValue(i));
+    }
+
+    /**
+     * Gets the value of a cell as short.
+     *
+     * @param i the index of the cell ( 0 based )
+     * @return the value
+     * @throws NumberFormatException if the value is not a short
+     */
+    public short getShort(final int i) {
+
+        if (parseNumber(i) && numberScale < 0 &&
+            numberValue >= Short.MIN_VALUE && numberValue <= Short.MAX_VALUE)
+            return (short) numberValue;
+        return Short.parseShort(getValue(i));
+    }
+
+    /**
+     * Gets the value of a cell as long.
+     *
+     * @param i the index of the cell ( 0 based )
+     * @return the value
+     * @throws NumberFormatException if the value is not a long
+     */
+    public long getLong(final int i) {
+
+        if (parseNumber(i) && numberScale < 0)
+            return numberValue;
+        return Long.parseLong(getValue(i));
+    }
+
+    /**
+     * Gets the value of a cell as double. A number of at most 15 digits is
+     * computed from its digits, the result is the same as the result of
+     * {@link Double#parseDouble}.
+     *
+     * @param i the index of the cell ( 0 based )
+     * @return the value
+     * @throws NumberFormatException if the value is not a double
+     */
+    public double getDouble(final int i) {
+
+        if (parseNumber(i) && numberDigits <= MAX_DOUBLE_DIGITS &&
+            numberScale < POWERS_OF_TEN.length && !(numberNegative && numberValue == 0)) {
+            if (numberScale <= 0)
+                return numberValue;
+            return numberValue / POWERS_OF_TEN[numberScale];
+        }
+        return Double.parseDouble(getValue(i));
+    }
+
+    /**
+     * Gets the value of a cell as big decimal.
+     *
+     * @param i the index of the cell ( 0 based )
+     * @return the value
+     * @throws NumberFormatException if the value is not a decimal number
+     */
+    public BigDecimal getBigDecimal(final int i) {
+
+        if (parseNumber(i))
+            return BigDecimal.valueOf(numberValue, Math.max(numberScale, 0));
+        return new BigDecimal(getValue(i));
+    }
+
+    /**
+     * Parse a cell as a plain decimal number: an optional sign, at most 18
+     * digits and an optional decimal point. Other numbers are left to the
+     * parse methods of the number classes.
+     *
+     * @param i the index of the cell ( 0 based )
+     * @return true, if the cell is a plain decimal number
+     */
+    private boolean parseNumber(final int i) {
+
+        int pos = cellOffsets[i];
+        final int end = pos + cellLengths[i];
+        numberNegative = false;
+        if (pos < end && (buffer[pos] == '-' || buffer[pos] == '+'))
+            numberNegative = buffer[pos++] == '-';
+        long value = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; pos < end; pos++) {
+            final int digit = buffer[pos] - '0';
+            if (digit >= 0 && digit <= 9) {
+                if (++digits > MAX_DIGITS)
+                    return false;
+                value = 10 * value + digit;
+                if (scale >= 0)
+                    scale++;
+            } else if (buffer[pos] == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                return false;
+            }
+        }
+        if (digits == 0)
+            return false;
+        numberValue = numberNegative ? -value : value;
+        numberDigits = digits;
+        numberScale = scale;
+        return true;
+    }
+
+    /**
+     * Gets the input length of a cell, in bytes.
+     *
+     * @param i the index of the cell ( 0 based )
+     * @return the input length
+     */
+    public int getInputLength(final int i) {
+        return cellInputLengths[i];
+    }
+
+    /**
+     * Find the next byte which is a delimiter, a quote or a carriage return,
+     * testing 8 bytes at a time.
+     *
+     * @param from the start position
+     * @param to   the end position
+     * @return the position of the byte found or the end position
+     */
+    private int scan(int from, final int to) {
+
+        while (from + 8 <= to) {
+            final long word = view.getLong(from);
+            final long found = zeroBytes(word ^ colPattern) |
+                zeroBytes(word ^ rowPattern) | zeroBytes(word ^ charPattern) |
+                zeroBytes(word ^ crPattern);
+            if (found != 0)
+                return from + (Long.numberOfTrailingZeros(found) >>> 3);
+            from += 8;
+        }
+        for (; from < to; from++) {
+            final byte c = buffer[from];
+            if (c == colDelimiter || c == rowDelimiter || c == '\r' ||
+                (quoting && c == charDelimiter))
+                return from;
+        }
+        return to;
+    }
+
+    /**
+     * Gets the zero bytes of a word: the high bit of the first zero byte is
+     * set, bytes above it may be reported as well.
+     *
+     * @param word the word
+     * @return the high bits of the zero bytes
+     */
+    private static long zeroBytes(final long word) {
+        return (word - ONES) & ~word & HIGHS;
+    }
+
+    /**
+     * Gets the pattern of a byte.
+     *
+     * @param b the byte
+     * @return the byte repeated in each byte of a long
+     */
+    private static long pattern(final byte b) {
+        return ONES * (b & 0xff);
+    }
+
+    /**
+     * Start a cell at the current position.
+     */
+    private void startCell() {
+
+        cellStart = curPos;
+        cellEnd = curPos;
+        cellInputLength = 0;
+    }
+
+    /**
+     * Append input bytes to the value of the current cell.
+     *
+     * @param from   the position of the bytes
+     * @param length the number of bytes
+     */
+    private void appendBytes(final int from, final int length) {
+
+        if (cellEnd != from)
+            System.arraycopy(buffer, from, buffer, cellEnd, length);
+        cellEnd += length;
+        cellInputLength += length;
+    }
+
+    /**
+     * Append quotes.
+     */
+    private void appendQuotes() {
+
+        final int n = doubleQuotes ? quoteCount / 2 : quoteCount - 1;
+        for (int j = 0; j < n; j++)
+            buffer[cellEnd++] = charDelimiter;
+        quoteCount = 0;
+    }
+
+    /**
+     * Add the current cell to the row.
+     */
+    private void addCell() {
+
+        if (cellCount == cellOffsets.length) {
+            final int size = 2 * cellCount;
+            cellOffsets = Arrays.copyOf(cellOffsets, size);
+            cellLengths = Arrays.copyOf(cellLengths, size);
+            cellInputLengths = Arrays.copyOf(cellInputLengths, size);
+        }
+        cellOffsets[cellCount] = cellStart;
+        cellLengths[cellCount] = cellEnd - cellStart;
+        cellInputLengths[cellCount] = cellInputLength;
+        cellCount++;
+    }
+
+    /**
+     * Read more input; the current row is moved to the start of the buffer,
+     * or the buffer is enlarged, if the buffer is full.
+     *
+     * @return true, if input has been read, false at the end of the input
+     * @throws DataIOException the data IO exception
+     */
+    private boolean fill() throws DataIOException {
+
+        if (eof)
+            return false;
+        if (limit == buffer.length) {
+            if (rowStart > 0) {
+                final int shift = rowStart;
+                System.arraycopy(buffer, shift, buffer, 0, limit - shift);
+                bufferPosition += shift;
+                limit -= shift;
+                curPos -= shift;
+                rowStart = 0;
+                cellStart -= shift;
+                cellEnd -= shift;
+                for (int i = 0; i < cellCount; i++)
+                    cellOffsets[i] -= shift;
+            } else {
+                buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                view = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        try {
+            final int n = is.read(buffer, limit, buffer.length - limit);
+            if (n <= 0) {
+                eof = true;
+                return false;
+            }
+            limit += n;
+            return true;
+        } catch (IOException e) {
+            throw new DataIOException(e);
+        }
+    }
+}
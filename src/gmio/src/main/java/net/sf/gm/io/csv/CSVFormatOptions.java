@@ -7,6 +7,8 @@
  ******************************************************************/
 package net.sf.gm.io.csv;
 
+import java.nio.charset.Charset;
+
 //
 
 
@@ -79,6 +81,10 @@ public class CSVFormatOptions {
      * The filter empty lines.
      */
     private boolean filterEmptyLines;
+    /**
+     * The charset.
+     */
+    private Charset charset;
 
     /**
      * The Constructor.
@@ -92,6 +98,7 @@ public class CSVFormatOptions {
         this.doubleQuotes = CSVFormatOptions.DEF_DOUBLEQUOTES;
         this.columnHeader = CSVFormatOptions.DEF_COLUMNHEADER;
         this.filterEmptyLines = CSVFormatOptions.DEF_FILTEREMPTYLINES;
+        this.charset = Charset.defaultCharset();
     }
 
     /**
@@ -226,6 +233,25 @@ public class CSVFormatOptions {
         this.rowDelimiter = rowDelimiter;
     }
 
+    /**
+     * Gets the charset.
+     *
+     * @return the charset
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Sets the charset ( default: the default charset ).
+     *
+     * @param charset the charset
+     */
+    public void setCharset(final Charset charset) {
+
+        this.charset = charset;
+    }
+
     /**
      * Gets the read buffer size.
      *
@@ -0,0 +1,800 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.io.csv;
+
+import net.sf.gm.core.io.DataIOException;
+import net.sf.gm.core.io.DataReader;
+import net.sf.gm.core.io.DataReaderAbstract;
+import net.sf.gm.core.io.DataRow;
+import net.sf.gm.core.io.DataRowReader;
+import net.sf.gm.core.io.DataTypes.rowType;
+import net.sf.gm.core.io.MetaData;
+import net.sf.gm.core.ui.Progress;
+import net.sf.gm.core.utils.StreamUtil;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//
+
+
+/**
+ * The Class CSVParallelReader.
+ * <p>
+ * Reads a large uncompressed CSV file split into chunks of bytes, parsed in
+ * parallel by a number of parser threads. The row boundary at the start of a
+ * chunk is guessed: the row delimiters following the chunk offset are tried
+ * until the next rows parse to the column count of the file. The rows are
+ * returned in file order; a chunk is taken only if it starts where the
+ * preceding chunk ended, otherwise the guess was wrong ( e.g. a row delimiter
+ * inside a quoted value ) and the chunk is parsed again from the true row
+ * boundary on the calling thread.
+ */
+class CSVParallelReader extends DataReaderAbstract implements DataReader {
+
+    /**
+     * The size of a chunk.
+     */
+    static final int CHUNK_SIZE = 2 * 1024 * 1024;
+
+    /**
+     * The size of the window searched for a row boundary.
+     */
+    private static final int PROBE_SIZE = 64 * 1024;
+
+    /**
+     * The number of rows parsed to accept a row boundary.
+     */
+    private static final int PROBE_ROWS = 8;
+
+    /**
+     * The max number of row delimiters tried as row boundary.
+     */
+    private static final int MAX_CANDIDATES = 16;
+
+    /**
+     * The number of chunks parsed ahead per parser thread.
+     */
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    /**
+     * The file.
+     */
+    private final File file;
+
+    /**
+     * The options.
+     */
+    private final CSVFormatOptions options;
+
+    /**
+     * The number of parser threads.
+     */
+    private final int threadCount;
+
+    /**
+     * The row delimiter.
+     */
+    private final byte rowDelimiter;
+
+    /**
+     * The meta data.
+     */
+    private MetaData metaData;
+
+    /**
+     * The column count.
+     */
+    private int columnCount;
+
+    /**
+     * The column types, taken when the first row is read.
+     */
+    private int[] columnTypes;
+
+    /**
+     * The file length.
+     */
+    private long fileLength;
+
+    /**
+     * The position of the first row.
+     */
+    private long dataStart;
+
+    /**
+     * The number of chunks.
+     */
+    private int chunkCount;
+
+    /**
+     * The parsed chunks not yet taken, guarded by itself.
+     */
+    private Chunk[] chunks;
+
+    /**
+     * The index of the next chunk to parse by a parser thread.
+     */
+    private AtomicInteger nextChunk;
+
+    /**
+     * The permits to parse a chunk, limiting the chunks parsed ahead.
+     */
+    private Semaphore permits;
+
+    /**
+     * The index of the next chunk to take.
+     */
+    private int takeIndex;
+
+    /**
+     * The row boundary at the end of the chunks taken.
+     */
+    private long boundary;
+
+    /**
+     * The parser threads.
+     */
+    private Thread[] threads;
+
+    /**
+     * The reader of the rows of the current chunk.
+     */
+    private DataRowReader rowReader;
+
+    /**
+     * The failure of the current chunk, thrown after its rows are read.
+     */
+    private DataIOException pendingFailure;
+
+    /**
+     * The aborted flag, set if the reading is closed.
+     */
+    private volatile boolean aborted;
+
+    /**
+     * The row read count.
+     */
+    private long allRowCount;
+
+    /**
+     * The Constructor.
+     *
+     * @param progress    the progress
+     * @param file        the file
+     * @param options     the options ( see {@link CSVByteParser#isSupported} )
+     * @param threadCount the number of parser threads
+     */
+    CSVParallelReader(final Progress progress, final File file,
+        final CSVFormatOptions options, final int threadCount) {
+
+        super(progress);
+        this.file = file;
+        this.options = options;
+        this.threadCount = threadCount;
+        this.rowDelimiter = (byte) options.getRowDelimiter();
+    }
+
+    /**
+     * Open the file at a position.
+     *
+     * @param position the position
+     * @return the input stream
+     * @throws DataIOException the data IO exception
+     */
+    private InputStream open(final long position) throws DataIOException {
+
+        try {
+            final FileInputStream fis = new FileInputStream(file);
+            try {
+                fis.getChannel().position(position);
+            } catch (final IOException e) {
+                StreamUtil.closeInputStream(fis);
+                throw e;
+            }
+            return fis;
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        }
+    }
+
+    /**
+     * Open data reading. The meta data is read from the start of the file.
+     *
+     * @return the meta data
+     * @throws DataIOException the data IO exception
+     */
+    public MetaData openDataReading() throws DataIOException {
+
+        fileLength = file.length();
+        final CSVReader reader = new CSVReader(getProgress(), open(0), options);
+        try {
+            metaData = reader.openDataReading();
+            dataStart = options.isColumnHeader() ? reader.getPosition() : 0;
+        } finally {
+            reader.closeDataReading();
+        }
+        columnCount = metaData.getColumnCount();
+        columnTypes = null;
+        chunkCount = (int) Math.max(1, (fileLength - dataStart + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        chunks = new Chunk[chunkCount];
+        takeIndex = 0;
+        boundary = dataStart;
+        threads = null;
+        rowReader = null;
+        aborted = false;
+        allRowCount = 0;
+        return metaData;
+    }
+
+    /**
+     * Start the parser threads. The column types are taken when the first row
+     * is read, after the writer may have resolved unknown column types.
+     */
+    private void startThreads() {
+
+        columnTypes = new int[columnCount];
+        for (int idx = 1; idx <= columnCount; idx++)
+            columnTypes[idx - 1] = metaData.getColumnType(idx);
+
+        rowReader = new DataRowReader(metaData);
+        rowReader.openDataReading();
+        nextChunk = new AtomicInteger(0);
+        permits = new Semaphore(threadCount * CHUNKS_PER_THREAD);
+        threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread(new ParseTask(), "csv-parser-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Read next row.
+     *
+     * @return true, if a row has been read
+     * @throws DataIOException the data IO exception
+     */
+    public boolean readNextRow() throws DataIOException {
+
+        if (threads == null)
+            startThreads();
+        while (!rowReader.readNextRow()) {
+            if (pendingFailure != null) {
+                final DataIOException failure = pendingFailure;
+                pendingFailure = null;
+                takeIndex = chunkCount;
+                throw failure;
+            }
+            if (takeIndex == chunkCount)
+                return false;
+            takeChunk();
+        }
+        allRowCount++;
+        return true;
+    }
+
+    /**
+     * Take the next chunk in file order; the chunk is parsed again, if it
+     * does not start at the end of the preceding chunk. The rows parsed
+     * before a failure are read first, like the rows of a serial reader.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    private void takeChunk() throws DataIOException {
+
+        Chunk chunk;
+        synchronized (chunks) {
+            while ((chunk = chunks[takeIndex]) == null) {
+                try {
+                    chunks.wait();
+                } catch (final InterruptedException e) {
+                    throw new DataIOException(e);
+                }
+            }
+            chunks[takeIndex] = null;
+        }
+        permits.release();
+        if (chunk.start != boundary) {
+            if (getProgress() != null)
+                getProgress().verboseln("CSVParallelReader: chunk " + takeIndex +
+                    ": row boundary " + chunk.start + " corrected to " + boundary);
+            chunk = parseChunk(takeIndex, boundary);
+        }
+        pendingFailure = chunk.failure;
+        boundary = chunk.end;
+        rowReader.setRows(chunk.rows, chunk.rows.length);
+        takeIndex++;
+    }
+
+    /**
+     * Gets the offset of a chunk.
+     *
+     * @param k the index of the chunk
+     * @return the offset, or Long.MAX_VALUE for the end of the last chunk
+     */
+    private long getOffset(final int k) {
+        return k < chunkCount ? dataStart + (long) k * CHUNK_SIZE : Long.MAX_VALUE;
+    }
+
+    /**
+     * Parse the rows of a chunk: the rows starting before the offset of the
+     * next chunk.
+     *
+     * @param k     the index of the chunk
+     * @param start the row boundary at the start of the chunk
+     * @return the chunk; a failure is kept in the chunk
+     */
+    private Chunk parseChunk(final int k, final long start) {
+
+        final Chunk chunk = new Chunk(start);
+        final long end = getOffset(k + 1);
+        final List<DataRow> rows = new ArrayList<DataRow>();
+        chunk.end = start;
+        if (start < end && start < fileLength) {
+            CSVReader reader = null;
+            try {
+                reader = new CSVReader(getProgress(), open(start), options);
+                reader.openDataReading(columnCount);
+                while (start + reader.getPosition() < end && reader.readNextRow()) {
+                    final DataRow row = new DataRow(columnCount);
+                    row.readRow(reader, columnTypes, getRequestedColumns());
+                    rows.add(row);
+                }
+                chunk.end = start + reader.getPosition();
+            } catch (final DataIOException e) {
+                chunk.failure = new DataIOException("CSVParallelReader: chunk at byte " +
+                    start + ": " + e.getMessage(), e);
+            } catch (final RuntimeException e) {
+                chunk.failure = new DataIOException(e);
+            } finally {
+                if (reader != null)
+                    try {
+                        reader.closeDataReading();
+                    } catch (final DataIOException ignore) {
+                        // the rows are read
+                    }
+            }
+        }
+        chunk.rows = rows.toArray(new DataRow[rows.size()]);
+        return chunk;
+    }
+
+    /**
+     * Find the first row boundary after the offset of a chunk: each row
+     * delimiter following the byte before the offset is tried, until the next
+     * rows parse to the column count.
+     *
+     * @param offset the offset
+     * @return the row boundary; the first row delimiter tried, if no row
+     * delimiter is confirmed
+     * @throws DataIOException the data IO exception
+     */
+    private long findRowStart(final long offset) throws DataIOException {
+
+        final byte[] window = new byte[PROBE_SIZE];
+        long first = -1;
+        int candidates = 0;
+        long windowStart = offset - 1;
+        while (windowStart < fileLength) {
+            final int n = read(windowStart, window);
+            if (n <= 0)
+                break;
+            for (int i = 0; i < n; i++) {
+                if (window[i] != rowDelimiter)
+                    continue;
+                int next = i + 1;
+                if (options.isFilterEmptyLines())
+                    next = skipEmptyLines(window, next, n);
+                if (first < 0)
+                    first = windowStart + next;
+                if (probe(window, next, n))
+                    return windowStart + next;
+                if (++candidates == MAX_CANDIDATES)
+                    return first;
+                i = next - 1;
+            }
+            windowStart += n;
+        }
+        return first >= 0 ? first : fileLength;
+    }
+
+    /**
+     * Read a window of the file.
+     *
+     * @param position the position
+     * @param window   the window
+     * @return the number of bytes read
+     * @throws DataIOException the data IO exception
+     */
+    private int read(final long position, final byte[] window)
+        throws DataIOException {
+
+        final InputStream is = open(position);
+        try {
+            int length = 0;
+            int n;
+            while (length < window.length &&
+                (n = is.read(window, length, window.length - length)) > 0)
+                length += n;
+            return length;
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        } finally {
+            StreamUtil.closeInputStream(is);
+        }
+    }
+
+    /**
+     * Skip the empty lines filtered by the parser.
+     *
+     * @param window the window
+     * @param from   the start of a row
+     * @param to     the end of the window
+     * @return the start of the next non empty row
+     */
+    private int skipEmptyLines(final byte[] window, int from, final int to) {
+
+        while (from < to) {
+            if (window[from] == rowDelimiter)
+                from++;
+            else if (rowDelimiter == '\n' && window[from] == '\r' &&
+                from + 1 < to && window[from + 1] == '\n')
+                from += 2;
+            else
+                break;
+        }
+        return from;
+    }
+
+    /**
+     * Probe a row boundary: the complete rows following in the window must
+     * have the column count.
+     *
+     * @param window the window
+     * @param from   the row boundary
+     * @param to     the end of the window
+     * @return true, if the row boundary is confirmed
+     * @throws DataIOException the data IO exception
+     */
+    private boolean probe(final byte[] window, final int from, final int to)
+        throws DataIOException {
+
+        final CSVByteParser parser = new CSVByteParser(
+            new ByteArrayInputStream(window, from, to - from), options, to - from);
+        for (int rows = 0; rows < PROBE_ROWS && parser.parse(); rows++)
+            if (parser.getCellCount() != columnCount)
+                return false;
+        return true;
+    }
+
+    /**
+     * Publish a parsed chunk.
+     *
+     * @param k     the index of the chunk
+     * @param chunk the chunk
+     */
+    private void publish(final int k, final Chunk chunk) {
+
+        synchronized (chunks) {
+            chunks[k] = chunk;
+            chunks.notifyAll();
+        }
+    }
+
+    /**
+     * Close data reading. The parser threads are stopped.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    public void closeDataReading() throws DataIOException {
+
+        aborted = true;
+        if (threads != null) {
+            for (final Thread thread : threads)
+                join(thread);
+            threads = null;
+        }
+        chunks = null;
+        rowReader = null;
+    }
+
+    /**
+     * Join a parser thread.
+     *
+     * @param thread the thread
+     */
+    private static void join(final Thread thread) {
+
+        try {
+            thread.join();
+        } catch (final InterruptedException ignore) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the current row type.
+     *
+     * @return the current row type
+     */
+    public rowType getCurrentRowType() {
+        return rowReader.getCurrentRowType();
+    }
+
+    /**
+     * Was column value null.
+     *
+     * @return true, if was column value null
+     * @throws DataIOException the data IO exception
+     */
+    public boolean wasColumnValueNull() throws DataIOException {
+        return rowReader.wasColumnValueNull();
+    }
+
+    /**
+     * Gets the column value string.
+     *
+     * @param idx the idx
+     * @return the column value string
+     * @throws DataIOException the data IO exception
+     */
+    public String getColumnValueString(final int idx) throws DataIOException {
+        return rowReader.getColumnValueString(idx);
+    }
+
+    /**
+     * Gets the column value boolean.
+     *
+     * @param idx the idx
+     * @return the column value boolean
+     * @throws DataIOException the data IO exception
+     */
+    public boolean getColumnValueBoolean(final int idx) throws DataIOException {
+        return rowReader.getColumnValueBoolean(idx);
+    }
+
+    /**
+     * Gets the column value short.
+     *
+     * @param idx the idx
+     * @return the column value short
+     * @throws DataIOException the data IO exception
+     */
+    public short getColumnValueShort(final int idx) throws DataIOException {
+        return rowReader.getColumnValueShort(idx);
+    }
+
+    /**
+     * Gets the column value int.
+     *
+     * @param idx the idx
+     * @return the column value int
+     * @throws DataIOException the data IO exception
+     */
+    public int getColumnValueInt(final int idx) throws DataIOException {
+        return rowReader.getColumnValueInt(idx);
+    }
+
+    /**
+     * Gets the column value long.
+     *
+     * @param idx the idx
+     * @return the column value long
+     * @throws DataIOException the data IO exception
+     */
+    public long getColumnValueLong(final int idx) throws DataIOException {
+        return rowReader.getColumnValueLong(idx);
+    }
+
+    /**
+     * Gets the column value double.
+     *
+     * @param idx the idx
+     * @return the column value double
+     * @throws DataIOException the data IO exception
+     */
+    public double getColumnValueDouble(final int idx) throws DataIOException {
+        return rowReader.getColumnValueDouble(idx);
+    }
+
+    /**
+     * Gets the column value big decimal.
+     *
+     * @param idx the idx
+     * @return the column value big decimal
+     * @throws DataIOException the data IO exception
+     */
+    public BigDecimal getColumnValueBigDecimal(final int idx)
+        throws DataIOException {
+        return rowReader.getColumnValueBigDecimal(idx);
+    }
+
+    /**
+     * Gets the column value date.
+     *
+     * @param idx the idx
+     * @return the column value date
+     * @throws DataIOException the data IO exception
+     */
+    public Date getColumnValueDate(final int idx) throws DataIOException {
+        return rowReader.getColumnValueDate(idx);
+    }
+
+    /**
+     * Gets the column value time.
+     *
+     * @param idx the idx
+     * @return the column value time
+     * @throws DataIOException the data IO exception
+     */
+    public Time getColumnValueTime(final int idx) throws DataIOException {
+        return rowReader.getColumnValueTime(idx);
+    }
+
+    /**
+     * Gets the column value timestamp.
+     *
+     * @param idx the idx
+     * @return the column value timestamp
+     * @throws DataIOException the data IO exception
+     */
+    public Timestamp getColumnValueTimestamp(final int idx)
+        throws DataIOException {
+        return rowReader.getColumnValueTimestamp(idx);
+    }
+
+    /**
+     * Gets the column value bytes.
+     *
+     * @param idx the idx
+     * @return the column value bytes
+     * @throws DataIOException the data IO exception
+     */
+    public byte[] getColumnValueBytes(final int idx) throws DataIOException {
+        return rowReader.getColumnValueBytes(idx);
+    }
+
+    /**
+     * Gets the column value binary stream.
+     *
+     * @param idx the idx
+     * @return the column value binary stream
+     * @throws DataIOException the data IO exception
+     */
+    public InputStream getColumnValueBinaryStream(final int idx)
+        throws DataIOException {
+        return rowReader.getColumnValueBinaryStream(idx);
+    }
+
+    /**
+     * Gets the column value character stream.
+     *
+     * @param idx the idx
+     * @return the column value character stream
+     * @throws DataIOException the data IO exception
+     */
+    public Reader getColumnValueCharacterStream(final int idx)
+        throws DataIOException {
+        return rowReader.getColumnValueCharacterStream(idx);
+    }
+
+    /**
+     * Checks if is update column.
+     *
+     * @param idx the idx
+     * @return true if the current row type is UPDATE and the specified column
+     * should be updated
+     */
+    public boolean isUpdateColumn(final int idx) {
+        return rowReader.isUpdateColumn(idx);
+    }
+
+    /**
+     * Gets the row read count.
+     *
+     * @return row count
+     */
+    public long getAllRowCount() {
+        return allRowCount;
+    }
+
+    /**
+     * The Class Chunk.
+     */
+    private static class Chunk {
+
+        /**
+         * The row boundary at the start.
+         */
+        final long start;
+
+        /**
+         * The row boundary at the end.
+         */
+        long end;
+
+        /**
+         * The rows.
+         */
+        DataRow[] rows;
+
+        /**
+         * The failure or null.
+         */
+        DataIOException failure;
+
+        /**
+         * The Constructor.
+         *
+         * @param start the row boundary at the start
+         */
+        Chunk(final long start) {
+            this.start = start;
+        }
+    }
+
+    /**
+     * The Class ParseTask.
+     * <p>
+     * Parses the next unparsed chunk until no chunk is left.
+     */
+    private class ParseTask implements Runnable {
+
+        /**
+         * Run.
+         */
+        public void run() {
+
+            try {
+                while (!aborted) {
+                    if (!permits.tryAcquire(100, TimeUnit.MILLISECONDS))
+                        continue;
+                    final int k = nextChunk.getAndIncrement();
+                    if (k >= chunkCount)
+                        break;
+                    Chunk chunk;
+                    try {
+                        chunk = parseChunk(k, k == 0 ? dataStart : findRowStart(getOffset(k)));
+                    } catch (final DataIOException e) {
+                        chunk = failedChunk(k, e);
+                    } catch (final RuntimeException e) {
+                        chunk = failedChunk(k, e);
+                    }
+                    publish(k, chunk);
+                }
+            } catch (final InterruptedException ignore) {
+                // aborted
+            }
+        }
+
+        /**
+         * Report a chunk whose row boundary was not found; the chunk is parsed
+         * again from the row boundary of the preceding chunk.
+         *
+         * @param k the index of the chunk
+         * @param e the exception
+         * @return the chunk to be parsed again
+         */
+        private Chunk failedChunk(final int k, final Exception e) {
+
+            if (getProgress() != null)
+                getProgress().verboseln("CSVParallelReader: chunk " + k +
+                    ": row boundary not found: " + e.getMessage());
+            return new Chunk(-1);
+        }
+    }
+}
@@ -33,19 +33,26 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
     private final CSVFormatOptions options;
 
     /**
-     * The parser.
+     * The parser ( null, if the byte parser is used ).
      */
     private final CSVParser parser;
 
+    /**
+     * The byte parser ( null, if the charset or the delimiters are not
+     * supported, see {@link CSVByteParser#isSupported} ).
+     */
+    private final CSVByteParser byteParser;
+
     /**
      * The curr row.
      */
     private CSVCell[] currColumnValues;
 
     /**
-     * The next row.
+     * The next row flag: the current row has been read ahead, but not
+     * returned yet.
      */
-    private CSVCell[] nextRow;
+    private boolean nextRow;
 
     /**
      * The was null.
@@ -79,7 +86,13 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
 
         super(progress, is);
         this.options = options;
-        this.parser = new CSVParser(getInputStream(), options);
+        if (CSVByteParser.isSupported(options)) {
+            this.parser = null;
+            this.byteParser = new CSVByteParser(getInputStream(), options);
+        } else {
+            this.parser = new CSVParser(getInputStream(), options);
+            this.byteParser = null;
+        }
     }
 
     /**
@@ -92,26 +105,25 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
     public MetaData openDataReading() throws DataIOException {
 
         super.openDataReading();
-        nextRow = null;
+        nextRow = false;
 
         MetaData metaData = new MetaDataImpl();
         // get column count
         if (options.isColumnHeader()) {
-            CSVCell[] columnHeader = parser.parse();
-            if (columnHeader == null)
+            if (!parseRow())
                 throw new DataIOException("CSVReader: column header not found");
-            columnCount = columnHeader.length;
+            columnCount = getCellCount();
             if (columnCount <= 0)
                 throw new DataIOException("CSVReader: no column found");
 
             metaData.setColumnCount(columnCount);
             for (int idx = 1; idx <= columnCount; idx++)
-                metaData.setColumnName(idx, columnHeader[idx - 1].GetValue());
+                metaData.setColumnName(idx, getCellValue(idx - 1));
         } else {
-            nextRow = parser.parse();
-            if (nextRow == null)
+            if (!parseRow())
                 throw new DataIOException("CSVReader: no row found");
-            columnCount = nextRow.length;
+            nextRow = true;
+            columnCount = getCellCount();
             if (columnCount <= 0)
                 throw new DataIOException("CSVReader: no column found");
 
@@ -120,6 +132,29 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
         return metaData;
     }
 
+    /**
+     * Open data reading of a part of the input starting at a row: the rows
+     * are read without a column header.
+     *
+     * @param columnCount the column count
+     * @throws DataIOException the data IO exception
+     */
+    void openDataReading(final int columnCount) throws DataIOException {
+
+        super.openDataReading();
+        nextRow = false;
+        this.columnCount = columnCount;
+    }
+
+    /**
+     * Gets the input position, if the byte parser is used.
+     *
+     * @return the number of bytes parsed, up to the end of the current row
+     */
+    long getPosition() {
+        return byteParser.getPosition();
+    }
+
     /**
      * Close data reading.
      *
@@ -128,10 +163,28 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
     @Override
     public void closeDataReading() throws DataIOException {
 
-        this.parser.close();
+        if (byteParser != null)
+            byteParser.close();
+        else
+            parser.close();
         super.closeDataReading();
     }
 
+    /**
+     * Sets the requested columns: the cells of other columns are not
+     * decoded.
+     *
+     * @param requested the requested flag of each column or null for all
+     *                  columns
+     */
+    @Override
+    public void setRequestedColumns(final boolean[] requested) {
+
+        super.setRequestedColumns(requested);
+        if (parser != null)
+            parser.setRequestedColumns(requested);
+    }
+
     /**
      * Gets the current row type.
      *
@@ -150,22 +203,55 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
      */
     public boolean readNextRow() throws DataIOException {
 
-        if (nextRow != null) {
-            currColumnValues = nextRow;
-            nextRow = null;
+        boolean res;
+        if (nextRow) {
+            nextRow = false;
+            res = true;
         } else {
-            currColumnValues = parser.parse();
+            res = parseRow();
         }
-        boolean res = currColumnValues != null;
         if (res) {
             this.incRowReadCount();
-            if (currColumnValues.length != columnCount)
+            if (getCellCount() != columnCount)
                 throw new DataIOException("CSVReader: row: " + this.getAllRowCount() + ": wrong column count: "
-                    + currColumnValues.length + " (expected: " + columnCount + ")");
+                    + getCellCount() + " (expected: " + columnCount + ")");
         }
         return res;
     }
 
+    /**
+     * Parse the next row.
+     *
+     * @return true, if a row has been read
+     * @throws DataIOException the data IO exception
+     */
+    private boolean parseRow() throws DataIOException {
+
+        if (byteParser != null)
+            return byteParser.parse();
+        currColumnValues = parser.parse();
+        return currColumnValues != null;
+    }
+
+    /**
+     * Gets the number of cells of the current row.
+     *
+     * @return the cell count
+     */
+    private int getCellCount() {
+        return byteParser != null ? byteParser.getCellCount() : currColumnValues.length;
+    }
+
+    /**
+     * Gets the value of a cell of the current row.
+     *
+     * @param i the index of the cell ( 0 based )
+     * @return the value
+     */
+    private String getCellValue(final int i) {
+        return byteParser != null ? byteParser.getValue(i) : currColumnValues[i].GetValue();
+    }
+
     /**
      * Gets the column value big decimal.
      *
@@ -178,7 +264,8 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
         if (isColumnValueNull(idx, true))
             return null;
         try {
-            return new BigDecimal(currColumnValues[idx - 1].GetValue());
+            return byteParser != null ? byteParser.getBigDecimal(idx - 1)
+                : new BigDecimal(getCellValue(idx - 1));
         } catch (NumberFormatException e) {
             throw new DataIOException(e);
         }
@@ -195,7 +282,7 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
         if (isColumnValueNull(idx, false))
             return null;
 
-        final char[] cin = currColumnValues[idx - 1].GetValue().toCharArray();
+        final char[] cin = getCellValue(idx - 1).toCharArray();
         return Base64Base.decode(cin, 0, cin.length);
     }
 
@@ -210,7 +297,7 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
         if (isColumnValueNull(idx, false))
             return null;
 
-        final char[] cin = currColumnValues[idx - 1].GetValue().toCharArray();
+        final char[] cin = getCellValue(idx - 1).toCharArray();
         return new ByteArrayInputStream(Base64Base.decode(cin, 0, cin.length));
     }
 
@@ -224,7 +311,7 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
 
         if (isColumnValueNull(idx, options.isQuoting()))
             return null;
-        return new StringReader(currColumnValues[idx - 1].GetValue());
+        return new StringReader(getCellValue(idx - 1));
     }
 
     /**
@@ -238,7 +325,7 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
 
         if (isColumnValueNull(idx, true))
             return false;
-        String s = currColumnValues[idx - 1].GetValue();
+        String s = getCellValue(idx - 1);
         if (s.equals("0"))
             return false;
         else if (s.equals("1"))
@@ -262,7 +349,8 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
         if (isColumnValueNull(idx, true))
             return 0.0;
         try {
-            return Double.parseDouble(currColumnValues[idx - 1].GetValue());
+            return byteParser != null ? byteParser.getDouble(idx - 1)
+                : Double.parseDouble(getCellValue(idx - 1));
         } catch (NumberFormatException e) {
             throw new DataIOException(e);
         }
@@ -280,7 +368,8 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
         if (isColumnValueNull(idx, true))
             return 0;
         try {
-            return Integer.parseInt(currColumnValues[idx - 1].GetValue());
+            return byteParser != null ? byteParser.getInt(idx - 1)
+                : Integer.parseInt(getCellValue(idx - 1));
         } catch (NumberFormatException e) {
             throw new DataIOException(e);
         }
@@ -298,7 +387,8 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
         if (isColumnValueNull(idx, true))
             return 0L;
         try {
-            return Long.parseLong(currColumnValues[idx - 1].GetValue());
+            return byteParser != null ? byteParser.getLong(idx - 1)
+                : Long.parseLong(getCellValue(idx - 1));
         } catch (NumberFormatException e) {
             throw new DataIOException(e);
         }
@@ -316,7 +406,8 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
         if (isColumnValueNull(idx, true))
             return 0;
         try {
-            return Short.parseShort(currColumnValues[idx - 1].GetValue());
+            return byteParser != null ? byteParser.getShort(idx - 1)
+                : Short.parseShort(getCellValue(idx - 1));
         } catch (NumberFormatException e) {
             throw new DataIOException(e);
         }
@@ -332,7 +423,7 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
 
         if (isColumnValueNull(idx, options.isQuoting()))
             return null;
-        return currColumnValues[idx - 1].GetValue();
+        return getCellValue(idx - 1);
     }
 
     /**
@@ -346,7 +437,7 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
 
         if (isColumnValueNull(idx, true))
             return null;
-        String strValue = currColumnValues[idx - 1].GetValue();
+        String strValue = getCellValue(idx - 1);
         try {
             return new Date(Long.parseLong(strValue));
         } catch (NumberFormatException ignored) {
@@ -369,7 +460,7 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
 
         if (isColumnValueNull(idx, true))
             return null;
-        String strValue = currColumnValues[idx - 1].GetValue();
+        String strValue = getCellValue(idx - 1);
         try {
             return new Time(Long.parseLong(strValue));
         } catch (NumberFormatException ignored) {
@@ -392,7 +483,7 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
 
         if (isColumnValueNull(idx, true))
             return null;
-        String strValue = currColumnValues[idx - 1].GetValue();
+        String strValue = getCellValue(idx - 1);
         try {
             return new Timestamp(Long.parseLong(strValue));
         } catch (NumberFormatException ignored) {
@@ -424,9 +515,16 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
 
         final int i = idx - 1;
         wasNull = true;
-        if (i < 0 || i >= currColumnValues.length)
+        if (i < 0 || i >= getCellCount())
             return true;
 
+        if (byteParser != null) {
+            if (byteParser.getInputLength(i) == 0 && emptyIsNull)
+                return true;
+            wasNull = false;
+            return false;
+        }
+
         if (currColumnValues[i] == null)
             return true;
 
@@ -517,6 +615,10 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
          * The current token.
          */
         private StringBuffer currentToken;
+        /**
+         * The requested columns or null for all columns.
+         */
+        private boolean[] requestedColumns;
         /**
          * The current token input length.
          */
@@ -549,7 +651,7 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
          */
         public CSVParser(InputStream is, CSVFormatOptions options) {
 
-            this.reader = new InputStreamReader(is);
+            this.reader = new InputStreamReader(is, options.getCharset());
             this.options = options;
             inQuotes = false;
             currentToken = new StringBuffer();
@@ -573,6 +675,17 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
             }
         }
 
+        /**
+         * Sets the requested columns: the cells of other columns get no
+         * value.
+         *
+         * @param requested the requested flag of each column or null for all
+         *                  columns
+         */
+        public void setRequestedColumns(final boolean[] requested) {
+            this.requestedColumns = requested;
+        }
+
         /**
          * Parse.
          *
@@ -628,8 +741,12 @@ public class CSVReader extends DataReaderAbstractStream implements DataReader {
                             }
                         if (c == options.getColDelimiter() || c == options.getRowDelimiter()) {
                             // add currentToken to the list
-                            currentRow.add(new CSVCell(currentToken.toString(), currentTokenInputLength));
-                            currentToken = new StringBuffer();
+                            final int col = currentRow.size();
+                            final boolean requested = requestedColumns == null
+                                || col >= requestedColumns.length || requestedColumns[col];
+                            currentRow.add(new CSVCell(requested ? currentToken.toString() : null,
+                                currentTokenInputLength));
+                            currentToken.setLength(0);
                             currentTokenInputLength = 0;
                             if (c == options.getRowDelimiter()) {
 
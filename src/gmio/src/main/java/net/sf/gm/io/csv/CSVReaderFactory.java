@@ -7,10 +7,15 @@
  ******************************************************************/
 package net.sf.gm.io.csv;
 
+import net.sf.gm.core.io.DataFileReaderFactory;
+import net.sf.gm.core.io.DataIOException;
 import net.sf.gm.core.io.DataReader;
-import net.sf.gm.core.io.DataReaderFactory;
 import net.sf.gm.core.ui.Progress;
+import net.sf.gm.core.utils.StreamUtil;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
 /**
@@ -18,13 +23,18 @@ import java.io.InputStream;
  *
  * @author gms
  */
-public class CSVReaderFactory implements DataReaderFactory {
+public class CSVReaderFactory implements DataFileReaderFactory {
 
     /**
      * The options.
      */
     private final CSVFormatOptions options;
 
+    /**
+     * The number of threads parsing a large file.
+     */
+    private int parseThreads;
+
     /**
      * The Constructor.
      *
@@ -32,6 +42,7 @@ public class CSVReaderFactory implements DataReaderFactory {
      */
     public CSVReaderFactory(CSVFormatOptions options) {
         this.options = options;
+        this.parseThreads = 1;
     }
 
     /**
@@ -39,6 +50,17 @@ public class CSVReaderFactory implements DataReaderFactory {
      */
     public CSVReaderFactory() {
         this.options = new CSVFormatOptions();
+        this.parseThreads = 1;
+    }
+
+    /**
+     * Sets the number of threads parsing a large file in chunks ( see
+     * {@link #getInstance(File, Progress)} ).
+     *
+     * @param parseThreads the number of threads ( 1: no parallel parsing )
+     */
+    public void setParseThreads(final int parseThreads) {
+        this.parseThreads = parseThreads;
     }
 
     /**
@@ -52,4 +74,43 @@ public class CSVReaderFactory implements DataReaderFactory {
 
         return new CSVReader(progress, inputStream, options);
     }
+
+    /**
+     * Gets the instance reading a file: a large uncompressed file is parsed
+     * in chunks by the parse threads, the rows are read in file order.
+     *
+     * @param file     the file
+     * @param progress the progress
+     * @return the instance or null, if the file has to be read as a stream
+     * @throws DataIOException the data IO exception
+     */
+    public DataReader getInstance(final File file, final Progress progress)
+        throws DataIOException {
+
+        if (parseThreads <= 1 || !CSVByteParser.isSupported(options) ||
+            file.length() < 2L * CSVParallelReader.CHUNK_SIZE || isCompressed(file))
+            return null;
+        return new CSVParallelReader(progress, file, options, parseThreads);
+    }
+
+    /**
+     * Checks if a file is gzip compressed.
+     *
+     * @param file the file
+     * @return true, if the file starts with the gzip magic bytes
+     * @throws DataIOException the data IO exception
+     */
+    private static boolean isCompressed(final File file) throws DataIOException {
+
+        InputStream is = null;
+        try {
+            is = new FileInputStream(file);
+            return is.read() == 0x1f && is.read() == 0x8b;
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        } finally {
+            if (is != null)
+                StreamUtil.closeInputStream(is);
+        }
+    }
 }
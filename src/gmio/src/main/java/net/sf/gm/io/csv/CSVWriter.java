@@ -71,7 +71,7 @@ public class CSVWriter extends DataWriterAbstractStream implements DataWriter {
         super.openDataWriting(metaData);
 
         try {
-            writer = new OutputStreamWriter(getOutputStream());
+            writer = new OutputStreamWriter(getOutputStream(), options.getCharset());
 
             if (options.isColumnHeader()) {
                 for (int idx = 1; idx <= getColumnCount(); idx++) {
@@ -0,0 +1,266 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.io.csv;
+
+import junit.framework.TestCase;
+import net.sf.gm.core.io.DataIOException;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+//
+
+
+/**
+ * The Class CSVByteParserTest.
+ * <p>
+ * The rows and cells of the byte parser are compared with the rows and cells
+ * of {@link CSVReader.CSVParser}, also with read buffers splitting the rows
+ * at every position, and the numbers parsed from the bytes with the parse
+ * methods of the number classes.
+ */
+public class CSVByteParserTest extends TestCase {
+
+    /**
+     * The inputs.
+     */
+    private static final String[] INPUTS = {
+        "a,b,c\n1,2,3\n",
+        "\"a,b\",\"c\nd\",e\n",
+        "\"a\"\"b\",\"\"\"\",\"\"\n",
+        "\"a\"b\",c\"d\",\"e\"\"\"\n",
+        "a,b\r\nc,d\r\n\"e\r\nf\",g\r\n",
+        "a,b\n\n\nc,d\n\n",
+        ",,\n,\"\",\n",
+        "äöü,€,\"ß\né\"\n",
+        "no,row,delimiter",
+        "\r\n\r\na\rb,c\n"
+    };
+
+    /**
+     * Test the rows of the inputs with the default options.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    public void testRows() throws DataIOException {
+
+        for (final String input : INPUTS)
+            assertSameRows(input, createOptions(false, false));
+    }
+
+    /**
+     * Test the rows of the inputs without double quotes.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    public void testRowsWithoutDoubleQuotes() throws DataIOException {
+
+        for (final String input : INPUTS)
+            assertSameRows(input, createOptions(false, true));
+    }
+
+    /**
+     * Test the rows of the inputs filtering empty lines.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    public void testRowsFilteringEmptyLines() throws DataIOException {
+
+        for (final String input : INPUTS)
+            assertSameRows(input, createOptions(true, false));
+    }
+
+    /**
+     * Test a long input split by the read buffer at every position.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    public void testBufferBoundaries() throws DataIOException {
+
+        final StringBuilder input = new StringBuilder();
+        for (final String part : INPUTS)
+            input.append(part).append('\n');
+        input.append("end\n");
+        assertSameRows(input.toString(), createOptions(false, false));
+        assertSameRows(input.toString(), createOptions(true, false));
+    }
+
+    /**
+     * Test the numbers parsed from the bytes.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    public void testNumbers() throws DataIOException {
+
+        final String[] values = {"0", "-0", "+5", "42", "-42", "007", "123.450",
+            ".5", "5.", "-.5", "-0.0", "0.1", "3.14159265358979", "1e3", "1.2.3",
+            "", "-", "+", ".", " 1", "2147483647", "2147483648", "-2147483648",
+            "32767", "32768", "9223372036854775807", "123456789012345678",
+            "1234567890123456789", "99999999999999999999", "0.000000000000000001",
+            "12345678901234.5", "1234567890123456.7", "abc"};
+        for (final String value : values) {
+            final CSVByteParser parser = parse(value + "\n", createOptions(false, false),
+                16);
+            assertEquals(value, 1, parser.getCellCount());
+            assertEquals(value, value, parser.getValue(0));
+            assertSameNumber(value, "int", parser);
+            assertSameNumber(value, "short", parser);
+            assertSameNumber(value, "long", parser);
+            assertSameNumber(value, "double", parser);
+            assertSameNumber(value, "decimal", parser);
+        }
+    }
+
+    /**
+     * Assert that a number parsed from the bytes equals the number parsed by
+     * the number class, or that both fail.
+     *
+     * @param value  the value
+     * @param type   the type
+     * @param parser the parser positioned on the value
+     */
+    private static void assertSameNumber(final String value, final String type,
+        final CSVByteParser parser) {
+
+        Object expected;
+        try {
+            if (type.equals("int"))
+                expected = Integer.parseInt(value);
+            else if (type.equals("short"))
+                expected = Short.parseShort(value);
+            else if (type.equals("long"))
+                expected = Long.parseLong(value);
+            else if (type.equals("double"))
+                expected = Double.parseDouble(value);
+            else
+                expected = new BigDecimal(value);
+        } catch (final NumberFormatException e) {
+            expected = null;
+        }
+        Object actual;
+        try {
+            if (type.equals("int"))
+                actual = parser.getInt(0);
+            else if (type.equals("short"))
+                actual = parser.getShort(0);
+            else if (type.equals("long"))
+                actual = parser.getLong(0);
+            else if (type.equals("double"))
+                actual = parser.getDouble(0);
+            else
+                actual = parser.getBigDecimal(0);
+        } catch (final NumberFormatException e) {
+            actual = null;
+        }
+        // Double.equals compares the bits: 0.0 and -0.0 differ
+        assertEquals(type + " '" + value + "'", expected, actual);
+    }
+
+    /**
+     * Assert that the byte parser reads the same rows as the char parser, for
+     * every read buffer size from the minimum up to the input length. The
+     * input lengths are compared for ASCII input, the char parser counts
+     * chars, the byte parser bytes; otherwise only empty input is compared.
+     *
+     * @param input   the input
+     * @param options the options
+     * @throws DataIOException the data IO exception
+     */
+    private static void assertSameRows(final String input,
+        final CSVFormatOptions options) throws DataIOException {
+
+        final byte[] bytes = input.getBytes(options.getCharset());
+        final boolean ascii = bytes.length == input.length();
+        final List<String> expected = new ArrayList<String>();
+        final CSVReader.CSVParser charParser =
+            new CSVReader.CSVParser(new ByteArrayInputStream(bytes), options);
+        CSVReader.CSVCell[] cells;
+        while ((cells = charParser.parse()) != null) {
+            final StringBuilder row = new StringBuilder();
+            for (final CSVReader.CSVCell cell : cells)
+                appendCell(row, cell.GetValue(), cell.GetInputLength(), ascii);
+            expected.add(row.toString());
+        }
+        charParser.close();
+
+        for (int bufferSize = 16; bufferSize <= bytes.length + 16; bufferSize++) {
+            final List<String> actual = new ArrayList<String>();
+            final CSVByteParser parser =
+                new CSVByteParser(new ByteArrayInputStream(bytes), options, bufferSize);
+            while (parser.parse()) {
+                final StringBuilder row = new StringBuilder();
+                for (int i = 0; i < parser.getCellCount(); i++)
+                    appendCell(row, parser.getValue(i), parser.getInputLength(i),
+                        ascii);
+                actual.add(row.toString());
+            }
+            parser.close();
+            assertEquals("buffer size " + bufferSize + ": " + input, expected, actual);
+        }
+    }
+
+    /**
+     * Append a cell to the text of a row.
+     *
+     * @param row         the row
+     * @param value       the value
+     * @param inputLength the input length
+     * @param ascii       the input length is appended, not only if it is empty
+     */
+    private static void appendCell(final StringBuilder row, final String value,
+        final int inputLength, final boolean ascii) {
+
+        row.append('[').append(value).append('/');
+        if (ascii)
+            row.append(inputLength);
+        else
+            row.append(inputLength == 0 ? "empty" : "input");
+        row.append(']');
+    }
+
+    /**
+     * Parse the first row of an input.
+     *
+     * @param input      the input
+     * @param options    the options
+     * @param bufferSize the size of the read buffer
+     * @return the parser positioned on the first row
+     * @throws DataIOException the data IO exception
+     */
+    private static CSVByteParser parse(final String input,
+        final CSVFormatOptions options, final int bufferSize)
+        throws DataIOException {
+
+        final CSVByteParser parser = new CSVByteParser(
+            new ByteArrayInputStream(input.getBytes(options.getCharset())), options,
+            bufferSize);
+        assertTrue(input, parser.parse());
+        return parser;
+    }
+
+    /**
+     * Create the options.
+     *
+     * @param filterEmptyLines the filter empty lines flag
+     * @param noDoubleQuotes   disable double quotes
+     * @return the options
+     */
+    private static CSVFormatOptions createOptions(final boolean filterEmptyLines,
+        final boolean noDoubleQuotes) {
+
+        final CSVFormatOptions options = new CSVFormatOptions();
+        options.setCharset(Charset.forName("UTF-8"));
+        options.setFilterEmptyLines(filterEmptyLines);
+        if (noDoubleQuotes)
+            options.setDoubleQuotes(false);
+        return options;
+    }
+}
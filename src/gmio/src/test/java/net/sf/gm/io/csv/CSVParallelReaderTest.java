@@ -0,0 +1,201 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.io.csv;
+
+import junit.framework.TestCase;
+import net.sf.gm.core.io.DataIOException;
+import net.sf.gm.core.io.DataReader;
+import net.sf.gm.core.io.MetaData;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+//
+
+
+/**
+ * The Class CSVParallelReaderTest.
+ * <p>
+ * The rows read by the parallel reader are compared with the rows read by
+ * {@link CSVReader} from the same file, the quoted values contain row
+ * delimiters and row-like text crossing the chunk boundaries.
+ */
+public class CSVParallelReaderTest extends TestCase {
+
+    /**
+     * The file size.
+     */
+    private static final int FILE_SIZE = 5 * CSVParallelReader.CHUNK_SIZE;
+
+    /**
+     * The file.
+     */
+    private File file;
+
+    /**
+     * Creates the file.
+     *
+     * @throws Exception the exception
+     */
+    protected void setUp() throws Exception {
+
+        file = File.createTempFile("parallel", ".csv");
+    }
+
+    /**
+     * Deletes the file.
+     *
+     * @throws Exception the exception
+     */
+    protected void tearDown() throws Exception {
+
+        file.delete();
+    }
+
+    /**
+     * Test the rows of a file with quoted row delimiters.
+     *
+     * @throws Exception the exception
+     */
+    public void testSameRows() throws Exception {
+
+        writeFile(-1, null);
+        assertSameRows(false);
+    }
+
+    /**
+     * Test the rows read before a row with a wrong column count.
+     *
+     * @throws Exception the exception
+     */
+    public void testSameRowsBeforeFailure() throws Exception {
+
+        writeFile(FILE_SIZE * 3 / 4, "x,y,z,w\n");
+        assertSameRows(true);
+    }
+
+    /**
+     * Assert that the parallel reader reads the same rows as the serial
+     * reader, and fails after the same rows, if the serial reader fails.
+     *
+     * @param failing the serial reader fails
+     * @throws DataIOException the data IO exception
+     * @throws IOException     the IO exception
+     */
+    private void assertSameRows(final boolean failing)
+        throws DataIOException, IOException {
+
+        final CSVFormatOptions options = createOptions();
+        final List<String> expected = new ArrayList<String>();
+        final String expectedFailure = readRows(new CSVReader(null,
+            new BufferedInputStream(new FileInputStream(file)), options), expected);
+        assertEquals(failing, expectedFailure != null);
+
+        final CSVReaderFactory factory = new CSVReaderFactory(options);
+        factory.setParseThreads(4);
+        final DataReader reader = factory.getInstance(file, null);
+        assertTrue(reader instanceof CSVParallelReader);
+        final List<String> actual = new ArrayList<String>();
+        final String actualFailure = readRows(reader, actual);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+            assertEquals("row " + (i + 1), expected.get(i), actual.get(i));
+        assertEquals(expectedFailure == null, actualFailure == null);
+    }
+
+    /**
+     * Read the rows.
+     *
+     * @param reader the reader
+     * @param rows   the rows read
+     * @return the message of the failure or null
+     * @throws DataIOException the data IO exception
+     */
+    private static String readRows(final DataReader reader,
+        final List<String> rows) throws DataIOException {
+
+        final MetaData metaData = reader.openDataReading();
+        final int columnCount = metaData.getColumnCount();
+        for (int i = 1; i <= columnCount; i++)
+            metaData.setColumnType(i, Types.VARCHAR);
+        try {
+            while (reader.readNextRow()) {
+                final StringBuilder row = new StringBuilder();
+                for (int i = 1; i <= columnCount; i++)
+                    row.append('[').append(reader.getColumnValueString(i)).append(']');
+                rows.add(row.toString());
+            }
+            return null;
+        } catch (DataIOException e) {
+            return e.getMessage();
+        } finally {
+            reader.closeDataReading();
+        }
+    }
+
+    /**
+     * Write the file: a header and rows, every third row with a quoted
+     * value containing row delimiters, delimiters and quotes.
+     *
+     * @param failureOffset the offset of the failing row or -1
+     * @param failure       the failing row
+     * @throws IOException the IO exception
+     */
+    private void writeFile(final int failureOffset, final String failure)
+        throws IOException {
+
+        final Random random = new Random(4711);
+        final Writer writer = new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            writer.write("id,name,text\n");
+            int written = 0;
+            boolean failed = failureOffset < 0;
+            for (int i = 0; written < FILE_SIZE; i++) {
+                if (!failed && written >= failureOffset) {
+                    writer.write(failure);
+                    failed = true;
+                }
+                final String row;
+                if (i % 3 == 0)
+                    row = i + ",\"n" + random.nextInt(1000) + "\n" + i + ",a,b\n\",\"" +
+                        "q\"\"\n,\"\"x\"\",y\n" + random.nextInt() + "\"\n";
+                else
+                    row = i + ",n" + random.nextInt(1000) + ",t" + random.nextLong() + "\n";
+                writer.write(row);
+                written += row.length();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Creates the options.
+     *
+     * @return the CSV format options
+     */
+    private static CSVFormatOptions createOptions() {
+
+        final CSVFormatOptions options = new CSVFormatOptions();
+        options.setCharset(Charset.forName("UTF-8"));
+        return options;
+    }
+}
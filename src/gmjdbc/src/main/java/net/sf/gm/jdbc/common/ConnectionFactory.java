@@ -0,0 +1,76 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.jdbc.common;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+//
+
+
+/**
+ * The Class ConnectionFactory.
+ * <p>
+ * Opens additional connections to the same datasource using the same
+ * credentials ( e.g. for parallel loader or unloader workers ).
+ */
+public class ConnectionFactory {
+
+    /**
+     * The data source.
+     */
+    private final DataSource dataSource;
+
+    /**
+     * The user name.
+     */
+    private final String userName;
+
+    /**
+     * The user password.
+     */
+    private final String userPassword;
+
+    /**
+     * The Constructor.
+     *
+     * @param dataSource   the data source
+     * @param userName     the user name
+     * @param userPassword the user password
+     */
+    public ConnectionFactory(final DataSource dataSource, final String userName,
+        final String userPassword) {
+
+        this.dataSource = dataSource;
+        this.userName = userName;
+        this.userPassword = userPassword;
+    }
+
+    /**
+     * Gets a new connection ( auto commit is disabled ).
+     *
+     * @return the connection
+     * @throws SQLException the SQL exception
+     */
+    public Connection getConnection() throws SQLException {
+
+        final Connection con = dataSource.getConnection(userName, userPassword);
+        con.setAutoCommit(false);
+        return con;
+    }
+
+    /**
+     * Gets the data source.
+     *
+     * @return the data source
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+}
@@ -0,0 +1,745 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.jdbc.common;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+//
+
+
+/**
+ * The Class SqlDialect.
+ * <p>
+ * Database specific sql features, selected by the database product name of a
+ * connection. The generic dialect is used for unknown databases.
+ */
+public class SqlDialect {
+
+    /**
+     * The product name.
+     */
+    private final String productName;
+
+    /**
+     * The Constructor.
+     *
+     * @param productName the product name
+     */
+    protected SqlDialect(final String productName) {
+        this.productName = productName;
+    }
+
+    /**
+     * Gets the dialect of a connection.
+     *
+     * @param con the connection
+     * @return the dialect
+     * @throws SQLException the SQL exception
+     */
+    public static SqlDialect getDialect(final Connection con) throws SQLException {
+        return getDialect(con.getMetaData().getDatabaseProductName());
+    }
+
+    /**
+     * Gets the dialect of a database product.
+     *
+     * @param productName the database product name
+     * @return the dialect
+     */
+    public static SqlDialect getDialect(final String productName) {
+
+        final String name = productName == null ? "" : productName.toLowerCase();
+        if (name.contains("postgres"))
+            return new PostgreSQLDialect(productName);
+        if (name.contains("sqlite"))
+            return new SQLiteDialect(productName);
+        if (name.contains("mysql") || name.contains("mariadb"))
+            return new MySQLDialect(productName);
+        if (name.startsWith("oracle"))
+            return new OracleDialect(productName);
+        if (name.contains("sql server"))
+            return new SQLServerDialect(productName);
+        if (name.equals("h2"))
+            return new H2Dialect(productName);
+        if (name.contains("hsql"))
+            return new MergeValuesDialect(productName, 1000);
+        return new SqlDialect(productName);
+    }
+
+    /**
+     * Gets the product name.
+     *
+     * @return the product name
+     */
+    public String getProductName() {
+        return productName;
+    }
+
+    /**
+     * Gets the max number of bind parameters of a statement.
+     *
+     * @return the max number of bind parameters
+     */
+    public int getMaxBindParameters() {
+        return 1000;
+    }
+
+    /**
+     * Checks if a values clause may contain multiple rows.
+     *
+     * @return true, if multi-row values clauses are supported
+     */
+    public boolean supportsMultiRowValues() {
+        return true;
+    }
+
+    /**
+     * Checks if the driver streams a result set only inside a transaction;
+     * with auto commit on, the whole result set is read into memory.
+     *
+     * @return true, if auto commit has to be switched off to stream a result set
+     */
+    public boolean requiresTransactionForStreaming() {
+        return false;
+    }
+
+    /**
+     * Gets the fetch size to set on a statement to stream a result set.
+     *
+     * @param fetchSize the number of rows to fetch per round trip
+     * @return the fetch size for the driver
+     */
+    public int getStreamingFetchSize(final int fetchSize) {
+        return fetchSize;
+    }
+
+    /**
+     * Gets the isolation level of a transaction reading a consistent snapshot
+     * of the database on a single connection, without blocking writers if
+     * possible.
+     *
+     * @return the isolation level
+     */
+    public int getSnapshotIsolation() {
+        return Connection.TRANSACTION_SERIALIZABLE;
+    }
+
+    /**
+     * Start a transaction reading a snapshot, which can be shared with other
+     * connections ( see {@link #importSnapshot} ). Auto commit has to be off
+     * and no transaction must be active.
+     *
+     * @param con the connection
+     * @return the snapshot id or null if a snapshot cannot be shared
+     * @throws SQLException the SQL exception
+     */
+    public String exportSnapshot(final Connection con) throws SQLException {
+        return null;
+    }
+
+    /**
+     * Start a transaction reading the snapshot of another connection. Auto
+     * commit has to be off and no transaction must be active.
+     *
+     * @param con      the connection
+     * @param snapshot the snapshot id returned by {@link #exportSnapshot}
+     * @throws SQLException the SQL exception
+     */
+    public void importSnapshot(final Connection con, final String snapshot)
+        throws SQLException {
+
+        throw new SQLException("sharing a snapshot is not supported by '" +
+            productName + "'");
+    }
+
+    /**
+     * End the transaction reading a snapshot.
+     *
+     * @param con the connection
+     * @throws SQLException the SQL exception
+     */
+    public void releaseSnapshot(final Connection con) throws SQLException {
+        con.commit(); // end transaction
+    }
+
+    /**
+     * Execute a query returning a single value.
+     *
+     * @param con   the connection
+     * @param query the query
+     * @return the value
+     * @throws SQLException the SQL exception
+     */
+    protected static String queryString(final Connection con, final String query)
+        throws SQLException {
+
+        final Statement stmt = con.createStatement();
+        try {
+            final ResultSet rs = stmt.executeQuery(query);
+            try {
+                if (!rs.next())
+                    throw new SQLException("no row returned by '" + query + "'");
+                return rs.getString(1);
+            } finally {
+                SqlUtil.closeResultSet(rs);
+            }
+        } finally {
+            SqlUtil.closeStatement(stmt);
+        }
+    }
+
+    /**
+     * Execute a statement.
+     *
+     * @param con       the connection
+     * @param statement the statement
+     * @throws SQLException the SQL exception
+     */
+    protected static void execute(final Connection con, final String statement)
+        throws SQLException {
+
+        final Statement stmt = con.createStatement();
+        try {
+            stmt.execute(statement);
+        } finally {
+            SqlUtil.closeStatement(stmt);
+        }
+    }
+
+    /**
+     * Gets the clause limiting the rows of an ordered query, appended after
+     * the order by clause.
+     *
+     * @param rowCount the max row count
+     * @return the row limit clause
+     */
+    public String getRowLimitClause(final int rowCount) {
+        return " fetch first " + rowCount + " rows only";
+    }
+
+    /**
+     * Gets the query reading the estimated row count of a table from the
+     * catalog statistics. The query has two parameters, the schema ( or the
+     * catalog, if the database has no schemas ) and the table name.
+     *
+     * @return the query or null if not supported
+     */
+    public String getRowCountEstimateStatement() {
+        return null;
+    }
+
+    /**
+     * Gets the upsert statement: the row is inserted, or updated if a row with
+     * the same primary key exists. The statement has one parameter per column,
+     * in the order of the columns.
+     *
+     * @param tableName the full table name
+     * @param columns   the column names
+     * @param isKey     the primary key flags of the columns
+     * @return the upsert statement or null if not supported
+     */
+    public String getUpsertStatement(final String tableName,
+        final String[] columns, final boolean[] isKey) {
+
+        return null;
+    }
+
+    /**
+     * Append a list of column names.
+     *
+     * @param sb      the string builder
+     * @param prefix  the prefix of each column name or null
+     * @param columns the column names
+     */
+    protected static void appendColumns(final StringBuilder sb,
+        final String prefix, final String[] columns) {
+
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0)
+                sb.append(", ");
+            if (prefix != null)
+                sb.append(prefix);
+            sb.append(columns[i]);
+        }
+    }
+
+    /**
+     * Append a list of parameter markers.
+     *
+     * @param sb    the string builder
+     * @param count the number of parameters
+     */
+    protected static void appendParameters(final StringBuilder sb,
+        final int count) {
+
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append("?");
+        }
+    }
+
+    /**
+     * Append an insert statement without the terminating ')'.
+     *
+     * @param sb        the string builder
+     * @param tableName the table name
+     * @param columns   the columns
+     */
+    protected static void appendInsert(final StringBuilder sb,
+        final String tableName, final String[] columns) {
+
+        sb.append("insert into ");
+        sb.append(tableName);
+        sb.append(" ( ");
+        appendColumns(sb, null, columns);
+        sb.append(" ) values (");
+        appendParameters(sb, columns.length);
+    }
+
+    /**
+     * Checks if there is a column not part of the primary key.
+     *
+     * @param isKey the primary key flags
+     * @return true, if there is a non key column
+     */
+    protected static boolean hasNonKeyColumns(final boolean[] isKey) {
+
+        for (final boolean key : isKey)
+            if (!key)
+                return true;
+        return false;
+    }
+
+    /**
+     * The Class OnConflictDialect.
+     * <p>
+     * insert ... on conflict ( keys ) do update set c = excluded.c
+     */
+    private static class OnConflictDialect extends SqlDialect {
+
+        OnConflictDialect(final String productName) {
+            super(productName);
+        }
+
+        @Override
+        public String getUpsertStatement(final String tableName,
+            final String[] columns, final boolean[] isKey) {
+
+            final StringBuilder sb = new StringBuilder();
+            appendInsert(sb, tableName, columns);
+            sb.append(") on conflict (");
+            for (int i = 0, n = 0; i < columns.length; i++) {
+                if (!isKey[i])
+                    continue;
+                if (n++ > 0)
+                    sb.append(", ");
+                sb.append(columns[i]);
+            }
+            sb.append(")");
+            if (!hasNonKeyColumns(isKey)) {
+                sb.append(" do nothing");
+                return sb.toString();
+            }
+            sb.append(" do update set ");
+            for (int i = 0, n = 0; i < columns.length; i++) {
+                if (isKey[i])
+                    continue;
+                if (n++ > 0)
+                    sb.append(", ");
+                sb.append(columns[i]);
+                sb.append(" = excluded.");
+                sb.append(columns[i]);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * The Class PostgreSQLDialect.
+     */
+    private static class PostgreSQLDialect extends OnConflictDialect {
+
+        PostgreSQLDialect(final String productName) {
+            super(productName);
+        }
+
+        @Override
+        public int getMaxBindParameters() {
+            return 32767;
+        }
+
+        @Override
+        public boolean requiresTransactionForStreaming() {
+            // the driver uses a cursor only if auto commit is off
+            return true;
+        }
+
+        @Override
+        public int getSnapshotIsolation() {
+            // snapshot isolation, writers are not blocked
+            return Connection.TRANSACTION_REPEATABLE_READ;
+        }
+
+        @Override
+        public String exportSnapshot(final Connection con) throws SQLException {
+
+            con.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            // the snapshot is valid as long as the transaction is active
+            return queryString(con, "select pg_export_snapshot()");
+        }
+
+        @Override
+        public void importSnapshot(final Connection con, final String snapshot)
+            throws SQLException {
+
+            con.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            // has to be the first statement of the transaction
+            execute(con, "set transaction snapshot '" + snapshot.replace("'", "''") + "'");
+        }
+
+        @Override
+        public String getRowCountEstimateStatement() {
+            // reltuples is negative if the table has never been analyzed
+            return "select c.reltuples from pg_class c join pg_namespace n " +
+                "on n.oid = c.relnamespace where n.nspname = ? and c.relname = ?";
+        }
+    }
+
+    /**
+     * The Class SQLiteDialect.
+     */
+    private static class SQLiteDialect extends OnConflictDialect {
+
+        SQLiteDialect(final String productName) {
+            super(productName);
+        }
+
+        @Override
+        public int getMaxBindParameters() {
+            return 999;
+        }
+
+        @Override
+        public String getRowLimitClause(final int rowCount) {
+            return " limit " + rowCount;
+        }
+    }
+
+    /**
+     * The Class MySQLDialect.
+     * <p>
+     * insert ... on duplicate key update c = values(c)
+     */
+    private static class MySQLDialect extends SqlDialect {
+
+        MySQLDialect(final String productName) {
+            super(productName);
+        }
+
+        @Override
+        public int getMaxBindParameters() {
+            return 65535;
+        }
+
+        @Override
+        public String getRowLimitClause(final int rowCount) {
+            return " limit " + rowCount;
+        }
+
+        @Override
+        public int getStreamingFetchSize(final int fetchSize) {
+
+            // Connector/J reads the whole result set into memory unless the
+            // fetch size is Integer.MIN_VALUE ( row by row streaming )
+            if (getProductName().toLowerCase().contains("mariadb"))
+                return fetchSize;
+            return Integer.MIN_VALUE;
+        }
+
+        @Override
+        public int getSnapshotIsolation() {
+            // consistent non-locking reads; serializable would lock the rows read
+            return Connection.TRANSACTION_REPEATABLE_READ;
+        }
+
+        @Override
+        public String getRowCountEstimateStatement() {
+            return "select table_rows from information_schema.tables " +
+                "where table_schema = ? and table_name = ?";
+        }
+
+        @Override
+        public String getUpsertStatement(final String tableName,
+            final String[] columns, final boolean[] isKey) {
+
+            final StringBuilder sb = new StringBuilder();
+            appendInsert(sb, tableName, columns);
+            sb.append(") on duplicate key update ");
+            final boolean nonKeyColumns = hasNonKeyColumns(isKey);
+            for (int i = 0, n = 0; i < columns.length; i++) {
+                if (isKey[i] == nonKeyColumns)
+                    continue;
+                if (n++ > 0)
+                    sb.append(", ");
+                sb.append(columns[i]);
+                sb.append(" = values(");
+                sb.append(columns[i]);
+                sb.append(")");
+                if (!nonKeyColumns)
+                    break;
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * The Class MergeDialect.
+     * <p>
+     * merge into t using ( source ) s on ( t.k = s.k ) when matched then update
+     * ... when not matched then insert ...
+     */
+    private abstract static class MergeDialect extends SqlDialect {
+
+        MergeDialect(final String productName) {
+            super(productName);
+        }
+
+        /**
+         * Append the source of the merge statement, aliased as 's'.
+         *
+         * @param sb      the string builder
+         * @param columns the column names
+         */
+        protected abstract void appendSource(StringBuilder sb, String[] columns);
+
+        /**
+         * Gets the statement terminator.
+         *
+         * @return the terminator
+         */
+        protected String getTerminator() {
+            return "";
+        }
+
+        @Override
+        public String getUpsertStatement(final String tableName,
+            final String[] columns, final boolean[] isKey) {
+
+            final StringBuilder sb = new StringBuilder();
+            sb.append("merge into ");
+            sb.append(tableName);
+            sb.append(" t using ");
+            appendSource(sb, columns);
+            sb.append(" on (");
+            for (int i = 0, n = 0; i < columns.length; i++) {
+                if (!isKey[i])
+                    continue;
+                if (n++ > 0)
+                    sb.append(" and ");
+                sb.append("t.");
+                sb.append(columns[i]);
+                sb.append(" = s.");
+                sb.append(columns[i]);
+            }
+            sb.append(")");
+            if (hasNonKeyColumns(isKey)) {
+                sb.append(" when matched then update set ");
+                for (int i = 0, n = 0; i < columns.length; i++) {
+                    if (isKey[i])
+                        continue;
+                    if (n++ > 0)
+                        sb.append(", ");
+                    sb.append("t.");
+                    sb.append(columns[i]);
+                    sb.append(" = s.");
+                    sb.append(columns[i]);
+                }
+            }
+            sb.append(" when not matched then insert ( ");
+            appendColumns(sb, null, columns);
+            sb.append(" ) values ( ");
+            appendColumns(sb, "s.", columns);
+            sb.append(" )");
+            sb.append(getTerminator());
+            return sb.toString();
+        }
+    }
+
+    /**
+     * The Class MergeValuesDialect.
+     * <p>
+     * merge using ( values ( ?, ... ) ) s ( c, ... )
+     */
+    private static class MergeValuesDialect extends MergeDialect {
+
+        /**
+         * The max bind parameters.
+         */
+        private final int maxBindParameters;
+
+        MergeValuesDialect(final String productName, final int maxBindParameters) {
+
+            super(productName);
+            this.maxBindParameters = maxBindParameters;
+        }
+
+        @Override
+        public int getMaxBindParameters() {
+            return maxBindParameters;
+        }
+
+        @Override
+        protected void appendSource(final StringBuilder sb, final String[] columns) {
+
+            sb.append("( values ( ");
+            appendParameters(sb, columns.length);
+            sb.append(" ) ) s ( ");
+            appendColumns(sb, null, columns);
+            sb.append(" )");
+        }
+    }
+
+    /**
+     * The Class SQLServerDialect.
+     */
+    private static class SQLServerDialect extends MergeValuesDialect {
+
+        SQLServerDialect(final String productName) {
+            super(productName, 2000);
+        }
+
+        @Override
+        public String getRowLimitClause(final int rowCount) {
+            // fetch first requires an offset clause
+            return " offset 0 rows fetch next " + rowCount + " rows only";
+        }
+
+        @Override
+        public String getRowCountEstimateStatement() {
+            return "select sum(p.rows) from sys.partitions p " +
+                "join sys.tables t on t.object_id = p.object_id " +
+                "join sys.schemas s on s.schema_id = t.schema_id " +
+                "where s.name = ? and t.name = ? and p.index_id in ( 0, 1 )";
+        }
+
+        @Override
+        protected String getTerminator() {
+            // a merge statement has to be terminated by a semicolon
+            return ";";
+        }
+    }
+
+    /**
+     * The Class OracleDialect.
+     * <p>
+     * merge using ( select ? c, ... from dual ) s
+     */
+    private static class OracleDialect extends MergeDialect {
+
+        OracleDialect(final String productName) {
+            super(productName);
+        }
+
+        @Override
+        public boolean supportsMultiRowValues() {
+            return false;
+        }
+
+        @Override
+        public String exportSnapshot(final Connection con) throws SQLException {
+
+            final String scn = queryString(con,
+                "select dbms_flashback.get_system_change_number from dual");
+            importSnapshot(con, scn);
+            return scn;
+        }
+
+        @Override
+        public void importSnapshot(final Connection con, final String snapshot)
+            throws SQLException {
+
+            // flashback queries of the session, until disabled
+            final CallableStatement stmt =
+                con.prepareCall("begin dbms_flashback.enable_at_system_change_number(?); end;");
+            try {
+                stmt.setLong(1, Long.parseLong(snapshot));
+                stmt.execute();
+            } catch (final NumberFormatException e) {
+                throw new SQLException("invalid system change number '" + snapshot + "'");
+            } finally {
+                SqlUtil.closeStatement(stmt);
+            }
+        }
+
+        @Override
+        public void releaseSnapshot(final Connection con) throws SQLException {
+
+            execute(con, "begin dbms_flashback.disable; end;");
+            con.commit(); // end transaction
+        }
+
+        @Override
+        public String getRowCountEstimateStatement() {
+            // num_rows is null if the table has never been analyzed
+            return "select num_rows from all_tables where owner = ? and table_name = ?";
+        }
+
+        @Override
+        protected void appendSource(final StringBuilder sb, final String[] columns) {
+
+            sb.append("( select ");
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0)
+                    sb.append(", ");
+                sb.append("? ");
+                sb.append(columns[i]);
+            }
+            sb.append(" from dual ) s");
+        }
+    }
+
+    /**
+     * The Class H2Dialect.
+     * <p>
+     * merge into t ( c, ... ) key ( k, ... ) values ( ?, ... )
+     */
+    private static class H2Dialect extends SqlDialect {
+
+        H2Dialect(final String productName) {
+            super(productName);
+        }
+
+        @Override
+        public String getUpsertStatement(final String tableName,
+            final String[] columns, final boolean[] isKey) {
+
+            final StringBuilder sb = new StringBuilder();
+            sb.append("merge into ");
+            sb.append(tableName);
+            sb.append(" ( ");
+            appendColumns(sb, null, columns);
+            sb.append(" ) key ( ");
+            for (int i = 0, n = 0; i < columns.length; i++) {
+                if (!isKey[i])
+                    continue;
+                if (n++ > 0)
+                    sb.append(", ");
+                sb.append(columns[i]);
+            }
+            sb.append(" ) values ( ");
+            appendParameters(sb, columns.length);
+            sb.append(" )");
+            return sb.toString();
+        }
+    }
+}
@@ -10,6 +10,8 @@ package net.sf.gm.jdbc.common;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
 
 //
@@ -71,4 +73,61 @@ public class SqlUtil {
         } catch (final Exception ignore) {
         }
     }
+
+    /**
+     * Set a savepoint before a statement whose failure is tolerated: on some
+     * databases ( PostgreSQL ) a failed statement aborts the transaction,
+     * unless the transaction is rolled back to a savepoint.
+     *
+     * @param con the con
+     * @return the savepoint or null, if the connection is in auto commit mode
+     *         or savepoints are not supported
+     */
+    public static Savepoint setSavepoint(final Connection con) {
+
+        try {
+            if (con.getAutoCommit() || !con.getMetaData().supportsSavepoints())
+                return null;
+            return con.setSavepoint();
+        } catch (final SQLException ignore) {
+            return null;
+        }
+    }
+
+    /**
+     * Release a savepoint.
+     *
+     * @param con       the con
+     * @param savepoint the savepoint or null
+     */
+    public static void releaseSavepoint(final Connection con,
+        final Savepoint savepoint) {
+
+        if (savepoint == null)
+            return;
+        try {
+            con.releaseSavepoint(savepoint);
+        } catch (final Exception ignore) {
+        }
+    }
+
+    /**
+     * Roll back to a savepoint after a failed statement.
+     *
+     * @param con       the con
+     * @param savepoint the savepoint or null
+     * @return true, if rolled back; false, if there is no savepoint or the
+     *         rollback failed
+     */
+    public static boolean rollback(final Connection con, final Savepoint savepoint) {
+
+        if (savepoint == null)
+            return false;
+        try {
+            con.rollback(savepoint);
+            return true;
+        } catch (final Exception ignore) {
+            return false;
+        }
+    }
 }
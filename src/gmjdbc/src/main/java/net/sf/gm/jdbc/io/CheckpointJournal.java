@@ -0,0 +1,443 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.jdbc.io;
+
+import net.sf.gm.core.io.DataIOException;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+//
+
+
+/**
+ * The Class CheckpointJournal.
+ * <p>
+ * The journal of an import: a record is appended after each commit of a
+ * loader ( the number of input rows committed and the row counters ), and
+ * after a table is finished. The last record of a table wins, so an import
+ * can be resumed: finished tables are skipped, and the committed rows of a
+ * partially loaded table are skipped while reading its input again.
+ * <p>
+ * Each record is forced to the disk after the commit it describes, so a
+ * crash between the commit and the record loses at most the record: the
+ * rows of that commit are loaded again when the import is resumed. A resumed
+ * import is at-least-once; use upsert to load the repeated rows without
+ * duplicate key errors.
+ */
+public class CheckpointJournal {
+
+    /**
+     * The header of a journal file.
+     */
+    private static final String HEADER = "# jdbmigr import journal";
+
+    /**
+     * The file.
+     */
+    private final File file;
+
+    /**
+     * The last checkpoint of each table, by FullTableName.
+     */
+    private final Map<String, Checkpoint> checkpoints;
+
+    /**
+     * The input files of the tables being loaded.
+     */
+    private final Map<String, Checkpoint> inputs;
+
+    /**
+     * The writer.
+     */
+    private PrintWriter writer;
+
+    /**
+     * The output stream of the writer, synced to the disk.
+     */
+    private FileOutputStream outputStream;
+
+    /**
+     * The Constructor.
+     *
+     * @param file the file
+     */
+    private CheckpointJournal(final File file) {
+
+        this.file = file;
+        checkpoints = new HashMap<String, Checkpoint>();
+        inputs = new HashMap<String, Checkpoint>();
+    }
+
+    /**
+     * Open a journal.
+     *
+     * @param file   the file
+     * @param resume read the records of an existing journal and append new
+     *               records, instead of starting a new journal
+     * @return the journal
+     * @throws DataIOException the data IO exception
+     */
+    public static CheckpointJournal open(final File file, final boolean resume)
+        throws DataIOException {
+
+        final CheckpointJournal journal = new CheckpointJournal(file);
+        try {
+            final boolean append = resume && file.exists();
+            if (append)
+                journal.read();
+            journal.outputStream = new FileOutputStream(file, append);
+            journal.writer = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(journal.outputStream, "UTF-8")));
+            if (!append)
+                journal.writer.println(HEADER);
+            else if (!journal.endsWithNewLine())
+                // terminate a truncated last record
+                journal.writer.println();
+            journal.flush();
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        }
+        return journal;
+    }
+
+    /**
+     * Read the records of the journal file.
+     *
+     * @throws IOException the IO exception
+     */
+    private void read() throws IOException {
+
+        final BufferedReader reader = new BufferedReader(
+            new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line = reader.readLine();
+            if (line == null || !line.equals(HEADER))
+                throw new IOException("'" + file.getPath() + "' is not an import journal");
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split("\t", -1);
+                // a truncated last record is ignored
+                if (fields.length < 9)
+                    continue;
+                final boolean done = fields[0].equals("done");
+                if (!done && !fields[0].equals("checkpoint"))
+                    continue;
+                try {
+                    final Checkpoint checkpoint = new Checkpoint(fields[1],
+                        fields[2], Long.parseLong(fields[3]));
+                    checkpoint.rowCount = Long.parseLong(fields[4]);
+                    checkpoint.writtenRowCount = Long.parseLong(fields[5]);
+                    checkpoint.failedRowCount = Long.parseLong(fields[6]);
+                    checkpoint.ignoredRowCount = Long.parseLong(fields[7]);
+                    checkpoint.done = done;
+                    checkpoint.succeeded = done && fields[8].equals("ok");
+                    checkpoints.put(checkpoint.tableName, checkpoint);
+                } catch (final NumberFormatException ignore) {
+                    // truncated record
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Checks if the journal file ends with a new line.
+     *
+     * @return true, if the last character is a new line
+     * @throws IOException the IO exception
+     */
+    private boolean endsWithNewLine() throws IOException {
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() == 0)
+                return true;
+            raf.seek(raf.length() - 1);
+            return raf.read() == '\n';
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Gets the file.
+     *
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the last checkpoint of a table.
+     *
+     * @param fullTableName the full table name
+     * @return the checkpoint or null
+     */
+    public synchronized Checkpoint getCheckpoint(final String fullTableName) {
+        return checkpoints.get(fullTableName);
+    }
+
+    /**
+     * Start loading a table.
+     *
+     * @param fullTableName the full table name
+     * @param inputFile     the input file
+     */
+    public synchronized void startTable(final String fullTableName,
+        final File inputFile) {
+
+        inputs.put(fullTableName,
+            new Checkpoint(fullTableName, inputFile.getPath(), inputFile.length()));
+    }
+
+    /**
+     * Append a checkpoint record after a commit.
+     *
+     * @param fullTableName   the full table name
+     * @param rowCount        the number of input rows committed
+     * @param writtenRowCount the written row count
+     * @param failedRowCount  the failed row count
+     * @param ignoredRowCount the ignored row count
+     * @throws DataIOException the data IO exception
+     */
+    public synchronized void checkpoint(final String fullTableName,
+        final long rowCount, final long writtenRowCount, final long failedRowCount,
+        final long ignoredRowCount) throws DataIOException {
+
+        append("checkpoint", fullTableName, rowCount, writtenRowCount,
+            failedRowCount, ignoredRowCount, false);
+    }
+
+    /**
+     * Append a record after a table is finished.
+     *
+     * @param fullTableName   the full table name
+     * @param rowCount        the number of input rows
+     * @param writtenRowCount the written row count
+     * @param failedRowCount  the failed row count
+     * @param ignoredRowCount the ignored row count
+     * @param succeeded       the succeeded flag
+     * @throws DataIOException the data IO exception
+     */
+    public synchronized void tableDone(final String fullTableName,
+        final long rowCount, final long writtenRowCount, final long failedRowCount,
+        final long ignoredRowCount, final boolean succeeded)
+        throws DataIOException {
+
+        append("done", fullTableName, rowCount, writtenRowCount, failedRowCount,
+            ignoredRowCount, succeeded);
+        inputs.remove(fullTableName);
+    }
+
+    /**
+     * Append a record.
+     *
+     * @param record          the record type
+     * @param fullTableName   the full table name
+     * @param rowCount        the number of input rows
+     * @param writtenRowCount the written row count
+     * @param failedRowCount  the failed row count
+     * @param ignoredRowCount the ignored row count
+     * @param succeeded       the succeeded flag
+     * @throws DataIOException the data IO exception
+     */
+    private void append(final String record, final String fullTableName,
+        final long rowCount, final long writtenRowCount, final long failedRowCount,
+        final long ignoredRowCount, final boolean succeeded)
+        throws DataIOException {
+
+        final Checkpoint input = inputs.get(fullTableName);
+        // tables loaded without input file are not journaled
+        if (input == null || writer == null)
+            return;
+        final Checkpoint checkpoint =
+            new Checkpoint(fullTableName, input.fileName, input.fileLength);
+        checkpoint.rowCount = rowCount;
+        checkpoint.writtenRowCount = writtenRowCount;
+        checkpoint.failedRowCount = failedRowCount;
+        checkpoint.ignoredRowCount = ignoredRowCount;
+        checkpoint.done = record.equals("done");
+        checkpoint.succeeded = succeeded;
+        checkpoints.put(fullTableName, checkpoint);
+
+        writer.println(record + "\t" + fullTableName + "\t" + input.fileName + "\t" +
+            input.fileLength + "\t" + rowCount + "\t" + writtenRowCount + "\t" +
+            failedRowCount + "\t" + ignoredRowCount + "\t" + (succeeded ? "ok" : "-"));
+        flush();
+    }
+
+    /**
+     * Flush the journal file and force it to the disk.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    private void flush() throws DataIOException {
+
+        writer.flush();
+        if (writer.checkError())
+            throw new DataIOException("failed to write '" + file.getPath() + "'");
+        try {
+            outputStream.getFD().sync();
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        }
+    }
+
+    /**
+     * Close the journal file.
+     */
+    public synchronized void close() {
+
+        if (writer != null)
+            writer.close();
+        writer = null;
+        outputStream = null;
+    }
+
+    /**
+     * The Class Checkpoint.
+     */
+    public static class Checkpoint {
+
+        /**
+         * The full table name.
+         */
+        private final String tableName;
+
+        /**
+         * The input file name.
+         */
+        private final String fileName;
+
+        /**
+         * The input file length.
+         */
+        private final long fileLength;
+
+        /**
+         * The number of input rows committed.
+         */
+        private long rowCount;
+
+        /**
+         * The written row count.
+         */
+        private long writtenRowCount;
+
+        /**
+         * The failed row count.
+         */
+        private long failedRowCount;
+
+        /**
+         * The ignored row count.
+         */
+        private long ignoredRowCount;
+
+        /**
+         * The done flag.
+         */
+        private boolean done;
+
+        /**
+         * The succeeded flag.
+         */
+        private boolean succeeded;
+
+        /**
+         * The Constructor.
+         *
+         * @param tableName  the full table name
+         * @param fileName   the input file name
+         * @param fileLength the input file length
+         */
+        Checkpoint(final String tableName, final String fileName,
+            final long fileLength) {
+
+            this.tableName = tableName;
+            this.fileName = fileName;
+            this.fileLength = fileLength;
+        }
+
+        /**
+         * Checks if the checkpoint has been written for the given input file.
+         *
+         * @param inputFile the input file
+         * @return true, if the name and the length of the file match
+         */
+        public boolean isInputFile(final File inputFile) {
+            return fileName.equals(inputFile.getPath()) && fileLength == inputFile.length();
+        }
+
+        /**
+         * Gets the full table name.
+         *
+         * @return the full table name
+         */
+        public String getTableName() {
+            return tableName;
+        }
+
+        /**
+         * Gets the number of input rows committed.
+         *
+         * @return the row count
+         */
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * Gets the written row count.
+         *
+         * @return the written row count
+         */
+        public long getRowWrittenCount() {
+            return writtenRowCount;
+        }
+
+        /**
+         * Gets the failed row count.
+         *
+         * @return the failed row count
+         */
+        public long getRowFailedCount() {
+            return failedRowCount;
+        }
+
+        /**
+         * Gets the ignored row count.
+         *
+         * @return the ignored row count
+         */
+        public long getRowIgnoredCount() {
+            return ignoredRowCount;
+        }
+
+        /**
+         * Checks if the table is finished.
+         *
+         * @return true, if done
+         */
+        public boolean isDone() {
+            return done;
+        }
+
+        /**
+         * Checks if the table has been imported without failures.
+         *
+         * @return true, if succeeded
+         */
+        public boolean isSucceeded() {
+            return succeeded;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.jdbc.io;
+
+import net.sf.gm.core.io.DataIOException;
+
+import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//
+
+
+/**
+ * The Class ColumnProjection.
+ * <p>
+ * The columns exported from a table, given as a comma separated list of
+ * <ul>
+ * <li><code>name</code>: a column to include</li>
+ * <li><code>-name</code>: a column to exclude</li>
+ * <li><code>*</code>: all columns not excluded</li>
+ * <li><code>expression as name</code>: a computed column</li>
+ * </ul>
+ * If no column is included, all columns not excluded are selected, followed
+ * by the computed columns; otherwise the included and computed columns are
+ * selected in the given order. E.g. <code>-photo, length(photo) as
+ * photo_size</code> replaces a LOB column by its length.
+ */
+public class ColumnProjection {
+
+    /**
+     * The pattern of a column name.
+     */
+    private static final Pattern NAME = Pattern.compile("[\\w$#.\"\\[\\]`]+");
+
+    /**
+     * The pattern of a computed column.
+     */
+    private static final Pattern EXPRESSION =
+        Pattern.compile("(.+)\\s+as\\s+([\\w$#\"\\[\\]`]+)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * The included and computed columns, in the given order.
+     */
+    private final ArrayList<String> columns;
+
+    /**
+     * The flags of the computed columns.
+     */
+    private final ArrayList<Boolean> computed;
+
+    /**
+     * The excluded columns.
+     */
+    private final ArrayList<String> excluded;
+
+    /**
+     * The all columns flag.
+     */
+    private boolean all;
+
+    /**
+     * The specification.
+     */
+    private final String specification;
+
+    /**
+     * The Constructor.
+     *
+     * @param specification the specification
+     */
+    private ColumnProjection(final String specification) {
+
+        this.specification = specification.trim();
+        this.columns = new ArrayList<String>();
+        this.computed = new ArrayList<Boolean>();
+        this.excluded = new ArrayList<String>();
+        this.all = false;
+    }
+
+    /**
+     * Parse a projection.
+     *
+     * @param specification the comma separated list of columns
+     * @return the projection
+     * @throws DataIOException if the specification is invalid
+     */
+    public static ColumnProjection parse(final String specification)
+        throws DataIOException {
+
+        final ColumnProjection projection = new ColumnProjection(specification);
+        for (final String token : split(specification)) {
+            final String item = token.trim();
+            if (item.length() == 0)
+                throw new DataIOException("empty column in '" + specification + "'");
+            if (item.equals("*")) {
+                projection.all = true;
+            } else if (item.startsWith("-")) {
+                final String name = item.substring(1).trim();
+                if (!NAME.matcher(name).matches())
+                    throw new DataIOException("invalid column '" + item + "'");
+                projection.excluded.add(name);
+            } else if (NAME.matcher(item).matches()) {
+                projection.columns.add(item);
+                projection.computed.add(Boolean.FALSE);
+            } else {
+                final Matcher matcher = EXPRESSION.matcher(item);
+                if (!matcher.matches())
+                    throw new DataIOException("expression '" + item +
+                        "' requires a column name ( expression as name )");
+                projection.columns.add(item);
+                projection.computed.add(Boolean.TRUE);
+            }
+        }
+        return projection;
+    }
+
+    /**
+     * Split a specification at the commas outside of parentheses and quotes.
+     *
+     * @param specification the specification
+     * @return the items
+     */
+    private static ArrayList<String> split(final String specification) {
+
+        final ArrayList<String> res = new ArrayList<String>();
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+        for (int i = 0; i < specification.length(); i++) {
+            final char c = specification.charAt(i);
+            if (quote != 0) {
+                if (c == quote)
+                    quote = 0;
+            } else if (c == '\'' || c == '"')
+                quote = c;
+            else if (c == '(')
+                depth++;
+            else if (c == ')')
+                depth--;
+            else if (c == ',' && depth == 0) {
+                res.add(specification.substring(start, i));
+                start = i + 1;
+            }
+        }
+        res.add(specification.substring(start));
+        return res;
+    }
+
+    /**
+     * Gets the index of the parenthesis closing an opening parenthesis.
+     *
+     * @param s    the string
+     * @param open the index of the opening parenthesis
+     * @return the index or -1 if not found
+     */
+    static int indexOfClosingParenthesis(final String s, final int open) {
+
+        int depth = 0;
+        char quote = 0;
+        for (int i = open; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (quote != 0) {
+                if (c == quote)
+                    quote = 0;
+            } else if (c == '\'' || c == '"')
+                quote = c;
+            else if (c == '(')
+                depth++;
+            else if (c == ')' && --depth == 0)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if the projection selects all columns not excluded.
+     *
+     * @return true, if no column is included
+     */
+    private boolean isAllColumns() {
+        return all || !computed.contains(Boolean.FALSE);
+    }
+
+    /**
+     * Checks if a column is excluded.
+     *
+     * @param column the column
+     * @return true, if excluded
+     */
+    private boolean isExcluded(final String column) {
+
+        for (final String name : excluded)
+            if (name.equalsIgnoreCase(column))
+                return true;
+        return false;
+    }
+
+    /**
+     * Checks if a column of the table is selected as it is.
+     *
+     * @param column the column
+     * @return true, if selected
+     */
+    public boolean isSelected(final String column) {
+
+        if (isExcluded(column))
+            return false;
+        if (isAllColumns())
+            return true;
+        for (int i = 0; i < columns.size(); i++)
+            if (!computed.get(i) && columns.get(i).equalsIgnoreCase(column))
+                return true;
+        return false;
+    }
+
+    /**
+     * Gets the select list.
+     *
+     * @param tableColumns the columns of the table or null if unknown
+     * @return the select list
+     * @throws DataIOException if the columns of the table are required, but
+     *                         unknown, or no column is selected
+     */
+    public String getSelectList(final String[] tableColumns)
+        throws DataIOException {
+
+        final ArrayList<String> list = new ArrayList<String>();
+        final boolean allColumns = isAllColumns();
+        if (allColumns) {
+            // some databases do not allow "*" followed by other columns
+            if (excluded.isEmpty() && (columns.isEmpty() || tableColumns == null))
+                list.add("*");
+            else if (tableColumns == null)
+                throw new DataIOException("columns of the table not found");
+            else
+                for (final String column : tableColumns)
+                    if (!isExcluded(column))
+                        list.add(column);
+        }
+        for (int i = 0; i < columns.size(); i++)
+            if (computed.get(i) || !allColumns && !isExcluded(columns.get(i)))
+                list.add(columns.get(i));
+        if (list.isEmpty())
+            throw new DataIOException("no column selected by '" + specification + "'");
+
+        final StringBuilder sb = new StringBuilder();
+        for (final String column : list) {
+            if (sb.length() > 0)
+                sb.append(", ");
+            sb.append(column);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets the specification.
+     *
+     * @return the specification
+     */
+    @Override
+    public String toString() {
+        return specification;
+    }
+}
@@ -0,0 +1,168 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.jdbc.io;
+
+import net.sf.gm.core.ui.Progress;
+import net.sf.gm.jdbc.common.SqlDialect;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+//
+
+
+/**
+ * The Class ExportSnapshot.
+ * <p>
+ * A point-in-time view of the database read by the connections of an export.
+ * If the database can share a snapshot ( see {@link SqlDialect#exportSnapshot} ),
+ * each connection imports the snapshot of the first one; otherwise only the
+ * first connection is used, reading all tables in a single transaction. In
+ * both cases the source database is not locked for writers, as far as the
+ * isolation level of the database allows.
+ */
+class ExportSnapshot {
+
+    /**
+     * The dialect.
+     */
+    private final SqlDialect dialect;
+
+    /**
+     * The connections.
+     */
+    private final Connection[] connections;
+
+    /**
+     * The auto commit flags of the connections before the snapshot.
+     */
+    private final boolean[] autoCommit;
+
+    /**
+     * The isolation levels of the connections before the snapshot.
+     */
+    private final int[] isolation;
+
+    /**
+     * The number of connections reading the snapshot.
+     */
+    private int started;
+
+    /**
+     * The Constructor.
+     *
+     * @param connections the connections
+     * @throws SQLException the SQL exception
+     */
+    private ExportSnapshot(final Connection[] connections) throws SQLException {
+
+        this.dialect = SqlDialect.getDialect(connections[0]);
+        this.connections = connections;
+        this.autoCommit = new boolean[connections.length];
+        this.isolation = new int[connections.length];
+        this.started = 0;
+    }
+
+    /**
+     * Start a snapshot.
+     *
+     * @param progress    the progress
+     * @param connections the connections ( the first one exports the snapshot )
+     * @return the snapshot
+     * @throws SQLException the SQL exception
+     */
+    static ExportSnapshot start(final Progress progress,
+        final Connection[] connections) throws SQLException {
+
+        final ExportSnapshot snapshot = new ExportSnapshot(connections);
+        try {
+            snapshot.start(progress);
+        } catch (final SQLException e) {
+            snapshot.release(progress);
+            throw e;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Start the transactions reading the snapshot.
+     *
+     * @param progress the progress
+     * @throws SQLException the SQL exception
+     */
+    private void start(final Progress progress) throws SQLException {
+
+        for (int i = 0; i < connections.length; i++) {
+            autoCommit[i] = connections[i].getAutoCommit();
+            isolation[i] = connections[i].getTransactionIsolation();
+        }
+        // the snapshot lives as long as the transaction, so auto commit is
+        // switched off, and a transaction already active is ended
+        for (int i = 0; i < connections.length; i++) {
+            if (autoCommit[i])
+                connections[i].setAutoCommit(false);
+            else
+                connections[i].commit();
+        }
+
+        if (connections.length > 1) {
+            started = 1;
+            final String id = dialect.exportSnapshot(connections[0]);
+            if (id != null) {
+                for (int i = 1; i < connections.length; i++) {
+                    started = i + 1;
+                    dialect.importSnapshot(connections[i], id);
+                }
+                progress.messageln("consistent snapshot '" + id + "' shared by " +
+                    connections.length + " connection(s)");
+                return;
+            }
+            progress.warningln("sharing a snapshot is not supported by '" +
+                dialect.getProductName() + "': exporting on a single connection");
+            connections[0].commit();
+        }
+        connections[0].setTransactionIsolation(dialect.getSnapshotIsolation());
+        started = 1;
+        progress.messageln("consistent snapshot: exporting in a single transaction");
+    }
+
+    /**
+     * Gets the number of connections reading the snapshot. These are the
+     * first connections of the array given to {@link #start}.
+     *
+     * @return the connection count
+     */
+    int getConnectionCount() {
+        return started;
+    }
+
+    /**
+     * End the transactions reading the snapshot, and restore the auto commit
+     * flag and the isolation level of each connection.
+     *
+     * @param progress the progress
+     */
+    void release(final Progress progress) {
+
+        for (int i = 0; i < connections.length; i++) {
+            try {
+                if (i < started)
+                    dialect.releaseSnapshot(connections[i]);
+                else
+                    connections[i].commit();
+                if (connections[i].getTransactionIsolation() != isolation[i])
+                    connections[i].setTransactionIsolation(isolation[i]);
+                if (autoCommit[i])
+                    connections[i].setAutoCommit(true);
+            } catch (final SQLException e) {
+                progress.warningln("failed to release the snapshot: " + e.getMessage());
+            }
+        }
+        started = 0;
+    }
+}
@@ -8,6 +8,7 @@
 package net.sf.gm.jdbc.io;
 
 import net.sf.gm.core.io.DataIOException;
+import net.sf.gm.core.io.DataWriterFactory;
 import net.sf.gm.core.ui.Progress;
 import net.sf.gm.jdbc.load.Unloader;
 
@@ -22,6 +23,152 @@ import java.io.OutputStream;
  */
 public interface Exporter {
 
+    /**
+     * Sets the split flag.
+     *
+     * @param split split each table into ranges, read in parallel using all
+     *              unloaders, instead of exporting several tables at the same
+     *              time
+     */
+    void setSplit(boolean split);
+
+    /**
+     * Sets the column used to split a table into ranges.
+     *
+     * @param splitColumn the split column or null for the first primary key
+     *                    column of each table
+     */
+    void setSplitColumn(String splitColumn);
+
+    /**
+     * Sets the split files flag.
+     *
+     * @param splitFiles write each range to its own part file instead of
+     *                   merging the ranges into one output file
+     */
+    void setSplitFiles(boolean splitFiles);
+
+    /**
+     * Sets the consistent snapshot flag.
+     *
+     * @param consistentSnapshot read all tables from the same point-in-time
+     *                           snapshot; the unloaders share the snapshot if
+     *                           the database supports it, otherwise only the
+     *                           first unloader is used
+     */
+    void setConsistentSnapshot(boolean consistentSnapshot);
+
+    /**
+     * Sets the page size of a keyset export.
+     *
+     * @param pageSize read each table having a primary key in pages of the
+     *                 given number of rows, ordered by the primary key
+     *                 ( 0: read each table using a single statement )
+     */
+    void setPageSize(int pageSize);
+
+    /**
+     * Sets the page checkpoint flag.
+     *
+     * @param pageCheckpoint keep the pages read and the key of the last row,
+     *                       so an interrupted keyset export continues after
+     *                       the last page when started again
+     */
+    void setPageCheckpoint(boolean pageCheckpoint);
+
+    /**
+     * Sets the column projection.
+     *
+     * @param projection the column projection of the tables without their
+     *                   own projection ( see {@link TableDef#setProjection} ),
+     *                   or null for all columns
+     */
+    void setProjection(ColumnProjection projection);
+
+    /**
+     * Sets the watermark column of an incremental export.
+     *
+     * @param watermarkColumn export only the rows having a value of the column
+     *                        ( a timestamp or a version number ) above the
+     *                        watermark of the previous export, as modified
+     *                        rows; the first export of a table exports all
+     *                        rows ( null: no incremental export )
+     */
+    void setWatermarkColumn(String watermarkColumn);
+
+    /**
+     * Sets the insert column of an incremental export.
+     *
+     * @param insertColumn export the rows having a value of the column above
+     *                     the watermark of the previous export as inserted
+     *                     rows ( null: all rows are exported as modified rows )
+     */
+    void setInsertColumn(String insertColumn);
+
+    /**
+     * Sets the lag of an incremental export.
+     *
+     * @param watermarkLag export the rows down to the watermark of the previous
+     *                     export minus the lag again ( seconds of a timestamp,
+     *                     units of a version number ), so rows stamped below
+     *                     the watermark by transactions committed after the
+     *                     previous export are not lost; rows are exported at
+     *                     least once ( 0: no lag )
+     */
+    void setWatermarkLag(long watermarkLag);
+
+    /**
+     * Sets the state file of an incremental export.
+     *
+     * @param watermarkFile the file keeping the watermark of each table
+     *                      ( null: watermark.properties in the directory of
+     *                      the first output file )
+     */
+    void setWatermarkFile(File watermarkFile);
+
+    /**
+     * Adds an output written in the same pass as the output file of each
+     * table, so a table is read once for several formats. The additional
+     * output files are not written for the part files of a split table
+     * ( see {@link #setSplitFiles} ).
+     *
+     * @param outputFactory the writer factory of the output
+     * @param extension     the file extension of the output, replacing the
+     *                      extension of the output file
+     */
+    void addOutput(DataWriterFactory outputFactory, String extension);
+
+    /**
+     * Sets the output threads flag.
+     *
+     * @param outputThreads write each output on its own thread ( see
+     *                      {@link #addOutput} )
+     */
+    void setOutputThreads(boolean outputThreads);
+
+    /**
+     * Sets the max number of rows of a rolling output file: a table is written
+     * to part files listed in a manifest.
+     *
+     * @param rollRows the max number of rows ( 0: no limit )
+     */
+    void setRollRows(long rollRows);
+
+    /**
+     * Sets the max size of a rolling output file.
+     *
+     * @param rollSize the max number of bytes ( 0: no limit )
+     */
+    void setRollSize(long rollSize);
+
+    /**
+     * Sets the number of threads compressing the output files: the files are
+     * written gzip compressed, keeping their names.
+     *
+     * @param compressThreads the number of threads ( 0: no compression )
+     */
+    void setCompressThreads(int compressThreads);
+
     /**
      * Process.
      *
@@ -131,4 +278,57 @@ public interface Exporter {
         final Unloader unloader, boolean overwrite,
         String catalogName, String schemaName,
         String tableName) throws DataIOException;
+
+    /**
+     * Process. With more than one unloader, either several tables are exported
+     * at the same time, the largest tables first, or each table having a
+     * numeric, date or timestamp split column is split into ranges, read in
+     * parallel ( see {@link #setSplit} ).
+     *
+     * @param list      the list
+     * @param unloaders the unloaders ( the first one is used for the metadata )
+     * @param overwrite the overwrite
+     * @param progress  the progress
+     * @return true if succeeded, false if failed
+     * @throws DataIOException the sql IO exception
+     */
+    boolean process(Progress progress, Unloader[] unloaders, TableList list,
+        boolean overwrite) throws DataIOException;
+
+    /**
+     * Process. The tables are exported in parallel, using one unloader per
+     * table or per range of a table ( see {@link #setSplit} ).
+     *
+     * @param extension the extension
+     * @param unloaders the unloaders
+     * @param overwrite the overwrite
+     * @param output    the output
+     * @param tableList the table list
+     * @param progress  the progress
+     * @return true if succeeded, false if failed
+     * @throws DataIOException the data IO exception
+     */
+    boolean process(final Progress progress, File output, String extension,
+        final Unloader[] unloaders, boolean overwrite,
+        File tableList) throws DataIOException;
+
+    /**
+     * Process. The tables are exported in parallel, using one unloader per
+     * table or per range of a table ( see {@link #setSplit} ).
+     *
+     * @param extension   the extension
+     * @param unloaders   the unloaders
+     * @param overwrite   the overwrite
+     * @param output      the output
+     * @param progress    the progress
+     * @param tableName   the table name
+     * @param schemaName  the schema name
+     * @param catalogName the catalog name
+     * @return true if succeeded, false if failed
+     * @throws DataIOException the data IO exception
+     */
+    boolean process(final Progress progress, File output, String extension,
+        final Unloader[] unloaders, boolean overwrite,
+        String catalogName, String schemaName,
+        String tableName) throws DataIOException;
 }
@@ -8,33 +8,416 @@
 package net.sf.gm.jdbc.io;
 
 import net.sf.gm.core.io.DataIOException;
+import net.sf.gm.core.io.DataRow;
+import net.sf.gm.core.io.DataRowReader;
 import net.sf.gm.core.io.DataWriter;
 import net.sf.gm.core.io.DataWriterFactory;
+import net.sf.gm.core.io.MetaData;
 import net.sf.gm.core.ui.Progress;
 import net.sf.gm.core.utils.FileUtil;
+import net.sf.gm.core.utils.ParallelGzipOutputStream;
 import net.sf.gm.core.utils.StreamUtil;
+import net.sf.gm.jdbc.common.SqlUtil;
 import net.sf.gm.jdbc.load.Unloader;
 
 import java.io.*;
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
 
 /**
  * The Class ExporterImpl.
  */
 public class ExporterImpl implements Exporter {
 
+    /**
+     * The max fetch size of a page, if the fetch size is derived.
+     */
+    private static final int MAX_PAGE_FETCH_SIZE = 10000;
+
+    /**
+     * The number of row buffers queued to each writer thread of the
+     * additional outputs.
+     */
+    private static final int OUTPUT_QUEUE_SIZE = 4;
+
     /**
      * The factory.
      */
     private final DataWriterFactory factory;
 
+    /**
+     * The split column.
+     */
+    private String splitColumn;
+
+    /**
+     * The split flag.
+     */
+    private boolean split;
+
+    /**
+     * The split files flag.
+     */
+    private boolean splitFiles;
+
+    /**
+     * The consistent snapshot flag.
+     */
+    private boolean consistentSnapshot;
+
+    /**
+     * The page size of a keyset export ( 0: no pages ).
+     */
+    private int pageSize;
+
+    /**
+     * The page checkpoint flag.
+     */
+    private boolean pageCheckpoint;
+
+    /**
+     * The column projection of the tables without their own projection.
+     */
+    private ColumnProjection projection;
+
+    /**
+     * The watermark column of an incremental export or null.
+     */
+    private String watermarkColumn;
+
+    /**
+     * The insert column of an incremental export or null.
+     */
+    private String insertColumn;
+
+    /**
+     * The lag read again below the watermark of the previous export.
+     */
+    private long watermarkLag;
+
+    /**
+     * The state file of an incremental export or null for the default.
+     */
+    private File watermarkFile;
+
+    /**
+     * The watermarks of an incremental export, while exporting.
+     */
+    private WatermarkState watermarks;
+
+    /**
+     * The factories of the additional outputs.
+     */
+    private final ArrayList<DataWriterFactory> outputFactories;
+
+    /**
+     * The file extensions of the additional outputs.
+     */
+    private final ArrayList<String> outputExtensions;
+
+    /**
+     * The output threads flag.
+     */
+    private boolean outputThreads;
+
+    /**
+     * The max number of rows of a rolling output file ( 0: no limit ).
+     */
+    private long rollRows;
+
+    /**
+     * The max number of bytes of a rolling output file ( 0: no limit ).
+     */
+    private long rollSize;
+
+    /**
+     * The number of threads compressing the output files ( 0: no compression ).
+     */
+    private int compressThreads;
+
     /**
      * The Constructor.
      *
      * @param factory the factory
      */
     public ExporterImpl(DataWriterFactory factory) {
+
         this.factory = factory;
+        this.split = false;
+        this.splitColumn = null;
+        this.splitFiles = false;
+        this.consistentSnapshot = false;
+        this.pageSize = 0;
+        this.pageCheckpoint = false;
+        this.projection = null;
+        this.watermarkColumn = null;
+        this.insertColumn = null;
+        this.watermarkLag = 0;
+        this.watermarkFile = null;
+        this.watermarks = null;
+        this.outputFactories = new ArrayList<DataWriterFactory>();
+        this.outputExtensions = new ArrayList<String>();
+        this.outputThreads = false;
+        this.rollRows = 0;
+        this.rollSize = 0;
+        this.compressThreads = 0;
+    }
+
+    /**
+     * Sets the split flag.
+     *
+     * @param split split each table into ranges, read in parallel using all
+     *              unloaders, instead of exporting several tables at the same
+     *              time
+     */
+    public void setSplit(final boolean split) {
+        this.split = split;
+    }
+
+    /**
+     * Sets the column used to split a table into ranges.
+     *
+     * @param splitColumn the split column or null for the first primary key
+     *                    column of each table
+     */
+    public void setSplitColumn(final String splitColumn) {
+        this.splitColumn = splitColumn;
+    }
+
+    /**
+     * Sets the split files flag.
+     *
+     * @param splitFiles write each range to its own part file instead of
+     *                   merging the ranges into one output file; the part
+     *                   files are listed in a manifest, named like the output
+     *                   file with the extension <code>.manifest</code>
+     *                   appended, and neither additional outputs nor rolling
+     *                   output files are written for them
+     */
+    public void setSplitFiles(final boolean splitFiles) {
+        this.splitFiles = splitFiles;
+    }
+
+    /**
+     * Sets the consistent snapshot flag.
+     *
+     * @param consistentSnapshot read all tables from the same point-in-time
+     *                           snapshot; the unloaders share the snapshot if
+     *                           the database supports it, otherwise only the
+     *                           first unloader is used
+     */
+    public void setConsistentSnapshot(final boolean consistentSnapshot) {
+        this.consistentSnapshot = consistentSnapshot;
+    }
+
+    /**
+     * Sets the page size of a keyset export.
+     *
+     * @param pageSize read each table having a primary key in pages of the
+     *                 given number of rows, ordered by the primary key
+     *                 ( 0: read each table using a single statement )
+     */
+    public void setPageSize(final int pageSize) {
+        this.pageSize = Math.max(0, pageSize);
+    }
+
+    /**
+     * Sets the page checkpoint flag.
+     *
+     * @param pageCheckpoint keep the pages read and the key of the last row,
+     *                       so an interrupted keyset export continues after
+     *                       the last page when started again
+     */
+    public void setPageCheckpoint(final boolean pageCheckpoint) {
+        this.pageCheckpoint = pageCheckpoint;
+    }
+
+    /**
+     * Sets the column projection.
+     *
+     * @param projection the column projection of the tables without their
+     *                   own projection ( see {@link TableDef#setProjection} ),
+     *                   or null for all columns
+     */
+    public void setProjection(final ColumnProjection projection) {
+        this.projection = projection;
+    }
+
+    /**
+     * Sets the watermark column of an incremental export.
+     *
+     * @param watermarkColumn export only the rows having a value of the column
+     *                        ( a timestamp or a version number ) above the
+     *                        watermark of the previous export, as modified
+     *                        rows; the first export of a table exports all
+     *                        rows ( null: no incremental export )
+     */
+    public void setWatermarkColumn(final String watermarkColumn) {
+        this.watermarkColumn = watermarkColumn;
+    }
+
+    /**
+     * Sets the insert column of an incremental export.
+     *
+     * @param insertColumn export the rows having a value of the column above
+     *                     the watermark of the previous export as inserted
+     *                     rows ( null: all rows are exported as modified rows )
+     */
+    public void setInsertColumn(final String insertColumn) {
+        this.insertColumn = insertColumn;
+    }
+
+    /**
+     * Sets the lag of an incremental export.
+     *
+     * @param watermarkLag export the rows down to the watermark of the previous
+     *                     export minus the lag again ( seconds of a timestamp,
+     *                     units of a version number ), so rows stamped below
+     *                     the watermark by transactions committed after the
+     *                     previous export are not lost; rows are exported at
+     *                     least once ( 0: no lag )
+     */
+    public void setWatermarkLag(final long watermarkLag) {
+        this.watermarkLag = watermarkLag;
+    }
+
+    /**
+     * Sets the state file of an incremental export.
+     *
+     * @param watermarkFile the file keeping the watermark of each table
+     *                      ( null: watermark.properties in the directory of
+     *                      the first output file )
+     */
+    public void setWatermarkFile(final File watermarkFile) {
+        this.watermarkFile = watermarkFile;
+    }
+
+    /**
+     * Adds an output written in the same pass as the output file of each
+     * table, so a table is read once for several formats. The additional
+     * output files are not written for the part files of a split table
+     * ( see {@link #setSplitFiles} ).
+     *
+     * @param outputFactory the writer factory of the output
+     * @param extension     the file extension of the output, replacing the
+     *                      extension of the output file
+     */
+    public void addOutput(final DataWriterFactory outputFactory,
+        final String extension) {
+
+        outputFactories.add(outputFactory);
+        outputExtensions.add(extension);
+    }
+
+    /**
+     * Sets the output threads flag.
+     *
+     * @param outputThreads write each output on its own thread ( see
+     *                      {@link #addOutput} )
+     */
+    public void setOutputThreads(final boolean outputThreads) {
+        this.outputThreads = outputThreads;
+    }
+
+    /**
+     * Sets the max number of rows of a rolling output file. A table is written
+     * to part files, a new part is started when the current part has this
+     * number of rows; the parts are listed in a manifest, named like the
+     * output file with the extension <code>.manifest</code> appended. Rolling
+     * output files are not written with split files ( see
+     * {@link #setSplitFiles} ), or additional outputs ( see
+     * {@link #addOutput} ).
+     *
+     * @param rollRows the max number of rows ( 0: no limit )
+     */
+    public void setRollRows(final long rollRows) {
+        this.rollRows = rollRows;
+    }
+
+    /**
+     * Sets the max size of a rolling output file ( see {@link #setRollRows} ).
+     * The size is checked at the row boundaries, a part may exceed it by
+     * about one row.
+     *
+     * @param rollSize the max number of bytes ( 0: no limit )
+     */
+    public void setRollSize(final long rollSize) {
+        this.rollSize = rollSize;
+    }
+
+    /**
+     * Sets the number of threads compressing the output files. The output
+     * files, including the part files and the additional outputs, are written
+     * gzip compressed, keeping their names; the importers detect compressed
+     * input files.
+     *
+     * @param compressThreads the number of threads ( 0: no compression )
+     */
+    public void setCompressThreads(final int compressThreads) {
+        this.compressThreads = compressThreads;
+    }
+
+    /**
+     * Open the output stream of a temporary file.
+     *
+     * @param tmpFile         the temporary file
+     * @param compressThreads the number of threads compressing the output
+     *                        ( 0: no compression )
+     * @return the output stream
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static OutputStream openOutputStream(final File tmpFile,
+        final int compressThreads) throws IOException {
+
+        return compress(new BufferedOutputStream(new FileOutputStream(tmpFile)),
+            compressThreads);
+    }
+
+    /**
+     * Compress an output stream.
+     *
+     * @param outputStream    the output stream
+     * @param compressThreads the number of compressing threads ( 0: no
+     *                        compression )
+     * @return the compressing stream or the output stream itself
+     */
+    static OutputStream compress(final OutputStream outputStream,
+        final int compressThreads) {
+
+        return compressThreads > 0
+            ? new ParallelGzipOutputStream(outputStream, compressThreads)
+            : outputStream;
+    }
+
+    /**
+     * Gets the rolling writer of an output file.
+     *
+     * @param progress   the progress
+     * @param outputFile the output file
+     * @param tableName  the full table name
+     * @return the writer or null, if the output file is not rolling
+     */
+    private RollingWriter getRollingWriter(final Progress progress,
+        final File outputFile, final String tableName) {
+
+        if (rollRows <= 0 && rollSize <= 0)
+            return null;
+        return new RollingWriter(progress, outputFile, tableName, factory,
+            rollRows, rollSize, compressThreads);
+    }
+
+    /**
+     * Gets the additional outputs of an output file.
+     *
+     * @param outputFile the output file
+     * @return the additional outputs
+     */
+    private TeeOutputs getTeeOutputs(final File outputFile) {
+
+        return new TeeOutputs(outputFile, outputFactories, outputExtensions,
+            outputThreads ? OUTPUT_QUEUE_SIZE : 0, compressThreads);
     }
 
     /**
@@ -55,39 +438,107 @@ public class ExporterImpl implements Exporter {
         final String tableName, final String schemaName,
         final String catalogName) throws DataIOException {
 
-        File tmpFile = null;
+        final RollingWriter rolling = getRollingWriter(progress, outputFile,
+            schemaName == null ? tableName : schemaName + "." + tableName);
+        if (rolling != null) {
+            try {
+                final boolean res = process(progress, unloader, rolling,
+                    statementText, tableName, schemaName, catalogName);
+                rolling.commit();
+                progress.verboseln("  " + rolling.getPartCount() + " part file(s)");
+                return res;
+            } finally {
+                rolling.abort();
+            }
+        }
+
+        final File tmpFile = createTempFile(outputFile);
+        final TeeOutputs tee = getTeeOutputs(outputFile);
         OutputStream outputStream = null;
         boolean res = false;
         try {
-            if (outputFile.isFile() && outputFile.exists())
-                if (!outputFile.delete())
-                    throw new DataIOException("delete file '" + outputFile.getPath() +
-                        "' failed");
-
-            File outputDirectory = outputFile.getParentFile();
-            if (outputDirectory == null)
-                outputDirectory = new File(".");
+            outputStream = openOutputStream(tmpFile, compressThreads);
+            res = process(progress, unloader,
+                tee.getWriter(factory.getInstance(outputStream, progress), progress),
+                statementText, tableName, schemaName, catalogName);
+            outputStream.close();
+            renameTempFile(tmpFile, outputFile);
+            tee.commit();
+            return res;
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        } finally {
+            tee.abort();
+            StreamUtil.closeOutputStream(outputStream);
+            FileUtil.delete(tmpFile);
+        }
+    }
+
+    /**
+     * Delete an existing output file and create a temporary file in its
+     * directory.
+     *
+     * @param outputFile the output file
+     * @return the temporary file
+     * @throws DataIOException the data IO exception
+     */
+    static File createTempFile(final File outputFile)
+        throws DataIOException {
+
+        if (outputFile.isFile() && outputFile.exists())
+            if (!outputFile.delete())
+                throw new DataIOException("delete file '" + outputFile.getPath() +
+                    "' failed");
+        return newTempFile(outputFile);
+    }
+
+    /**
+     * Create a temporary file in the directory of an output file, keeping an
+     * existing output file.
+     *
+     * @param outputFile the output file
+     * @return the temporary file
+     * @throws DataIOException the data IO exception
+     */
+    static File newTempFile(final File outputFile) throws DataIOException {
+
+        try {
+            final File outputDirectory = getDirectory(outputFile);
             if (!outputDirectory.exists())
                 //noinspection ResultOfMethodCallIgnored
                 outputDirectory.mkdir();
-            tmpFile = File.createTempFile(".exp", ".tmp", outputDirectory);
-            outputStream = new BufferedOutputStream(new FileOutputStream(tmpFile));
+            return File.createTempFile(".exp", ".tmp", outputDirectory);
         } catch (final IOException e) {
             throw new DataIOException(e);
         }
+    }
 
-        try {
-            res = process(progress, unloader, outputStream, statementText, tableName,
-                schemaName, catalogName);
-            if (!tmpFile.renameTo(outputFile))
-                throw new DataIOException("failed to rename output file from '" +
-                    tmpFile.getPath() + "' to '" + outputFile +
-                    "'");
-            return res;
-        } finally {
-            StreamUtil.closeOutputStream(outputStream);
-            FileUtil.delete(tmpFile);
-        }
+    /**
+     * Gets the directory of an output file.
+     *
+     * @param outputFile the output file
+     * @return the directory
+     */
+    private static File getDirectory(final File outputFile) {
+
+        final File outputDirectory = outputFile.getParentFile();
+        return outputDirectory == null ? new File(".") : outputDirectory;
+    }
+
+    /**
+     * Rename a temporary file to the output file.
+     *
+     * @param tmpFile    the temporary file
+     * @param outputFile the output file
+     * @throws DataIOException the data IO exception
+     */
+    static void renameTempFile(final File tmpFile, final File outputFile)
+        throws DataIOException {
+
+        if (!tmpFile.renameTo(outputFile))
+            throw new DataIOException("failed to rename output file from '" +
+                tmpFile.getPath() + "' to '" + outputFile +
+                "'");
     }
 
     /**
@@ -145,10 +596,32 @@ public class ExporterImpl implements Exporter {
         final String schemaName, final String catalogName)
         throws DataIOException {
 
+        return process(progress, unloader,
+            factory.getInstance(outputStream, progress), statementText, tableName,
+            schemaName, catalogName);
+    }
+
+    /**
+     * Process.
+     *
+     * @param progress      the progress
+     * @param unloader      the unloader
+     * @param writer        the writer
+     * @param statementText the statement text
+     * @param tableName     the table name
+     * @param schemaName    the schema name
+     * @param catalogName   the catalog name
+     * @return true if succeeded, false if failed
+     * @throws DataIOException the sql IO exception
+     */
+    private boolean process(final Progress progress, final Unloader unloader,
+        final DataWriter writer, final String statementText,
+        final String tableName, final String schemaName,
+        final String catalogName) throws DataIOException {
+
         unloader.setProgress(progress);
         unloader.startUnLoading(tableName, schemaName, catalogName,
             statementText);
-        final DataWriter writer = factory.getInstance(outputStream, progress);
         writer.writeAllData(unloader);
         unloader.endUnLoading();
         return true;
@@ -168,11 +641,34 @@ public class ExporterImpl implements Exporter {
         final TableList list, final boolean overwrite)
         throws DataIOException {
 
+        return process(progress, new Unloader[]{unloader}, list, overwrite);
+    }
+
+    /**
+     * Process. With more than one unloader, either several tables are exported
+     * at the same time, the largest tables first, or each table having a
+     * numeric, date or timestamp split column is split into ranges, read in
+     * parallel ( see {@link #setSplit} ).
+     *
+     * @param list      the list
+     * @param unloaders the unloaders ( the first one is used for the metadata )
+     * @param overwrite the overwrite
+     * @param progress  the progress
+     * @return true if succeeded, false if failed
+     * @throws DataIOException the sql IO exception
+     */
+    public boolean process(final Progress progress, final Unloader[] unloaders,
+        final TableList list, final boolean overwrite)
+        throws DataIOException {
+
         try {
             progress.setProgress(0);
             progress.setCancel(false);
-            final int countTables = list.size();
-            final int currentTables = 0;
+
+            if (projection != null)
+                for (final TableDef table : list)
+                    if (table.getProjection() == null)
+                        table.setProjection(projection);
 
             // test if output files exist
             for (final TableDef table : list) {
@@ -180,65 +676,700 @@ public class ExporterImpl implements Exporter {
                     progress.errorln("export canceled");
                     return false;
                 }
-                final File outputFile = new File(table.getFileName());
+                // rolling output files replace the manifest of the table
+                final boolean rolling = rollRows > 0 || rollSize > 0;
+                final File outputFile = rolling
+                    ? PartManifest.getFile(new File(table.getFileName()))
+                    : new File(table.getFileName());
                 if (outputFile.isFile() && outputFile.exists())
-                    if (overwrite) {
-                        progress.messageln("deleting file '" + table.getFileName() + "'");
+                    if (rolling && overwrite)
+                        // the manifest is replaced when the new parts are complete
+                        progress.verboseln("replacing file '" + outputFile.getPath() +
+                            "'");
+                    else if (overwrite) {
+                        progress.messageln("deleting file '" + outputFile.getPath() + "'");
                         if (!FileUtil.delete(outputFile)) {
                             progress.errorln("delete failed");
                             progress.errorln("export canceled");
                             return false;
                         }
                     } else {
-                        progress.errorln("file '" + table.getFileName() + "' exist");
+                        progress.errorln("file '" + outputFile.getPath() + "' exist");
                         progress.errorln("export canceled");
                         return false;
                     }
             }
 
+            if (watermarkColumn != null && list.size() > 0) {
+                final File stateFile = watermarkFile != null
+                    ? watermarkFile
+                    : new File(getDirectory(new File(list.get(0).getFileName())),
+                    "watermark.properties");
+                watermarks = WatermarkState.load(stateFile);
+                progress.verboseln("watermarks: '" + stateFile.getPath() + "'");
+            }
+
             // export
-            int successCount = 0;
+            ExportSnapshot snapshot = null;
+            Unloader[] activeUnloaders = unloaders;
+            if (consistentSnapshot) {
+                final Connection[] connections = new Connection[unloaders.length];
+                for (int i = 0; i < unloaders.length; i++)
+                    connections[i] = unloaders[i].getConnection();
+                snapshot = ExportSnapshot.start(progress, connections);
+                activeUnloaders = new Unloader[snapshot.getConnectionCount()];
+                System.arraycopy(unloaders, 0, activeUnloaders, 0,
+                    activeUnloaders.length);
+            }
+            try {
+                return exportTables(progress, activeUnloaders, list);
+            } finally {
+                if (snapshot != null)
+                    snapshot.release(progress);
+                watermarks = null;
+            }
+        } catch (final Exception e) {
+            throw new DataIOException(e);
+        }
+    }
+
+    /**
+     * Export the tables of a list.
+     *
+     * @param progress  the progress
+     * @param unloaders the unloaders
+     * @param list      the list
+     * @return true if succeeded, false if failed
+     * @throws DataIOException the data IO exception
+     */
+    private boolean exportTables(final Progress progress, final Unloader[] unloaders,
+        final TableList list) throws DataIOException {
+
+        final int countTables = list.size();
+        int successCount = 0;
+        if (unloaders.length > 1 && !split && countTables > 1) {
+            progress.messageln("estimating table sizes...");
+            final TableScheduler scheduler = new TableScheduler(progress,
+                TableList.sortLargestFirst(unloaders[0].getConnection(), list),
+                false);
+            runTableWorkers(progress, unloaders, scheduler);
+            if (scheduler.isCanceled()) {
+                progress.errorln("export canceled");
+                return false;
+            }
+            successCount = scheduler.getSucceededCount();
+        } else {
+            final Unloader[] tableUnloaders =
+                split ? unloaders : new Unloader[]{unloaders[0]};
+            int currentTables = 0;
             for (final TableDef table : list) {
-                try {
-                    if (progress.getCancel()) {
-                        progress.errorln("export canceled");
-                        return false;
-                    }
-                    progress.messageln("exporting '" + table.getFullTableName() +
-                        "' ...");
-                    final StringBuilder tabSelect = new StringBuilder();
-                    tabSelect.append("select * from ");
-                    tabSelect.append(table.getFullTableName());
-                    if (table.getWhereClause() != null) {
-                        tabSelect.append(" ");
-                        tabSelect.append(table.getWhereClause());
-                    }
-                    final boolean tableres =
-                        this.process(progress, unloader, new File(table.getFileName()),
-                            tabSelect.toString(), table.getTable(),
-                            table.getSchema(), table.getCatalog());
-                    final long all = unloader.getAllRowCount();
-                    progress.setProgress(currentTables * 100 / countTables);
-                    if (tableres) {
-                        progress.messageln("  " + all + " row(s) exported");
-                        successCount++;
-                    } else {
-                        progress.errorln("export failed");
-                    }
-                } catch (final Exception e) {
-                    progress.errorln("export failed", e);
+                if (progress.getCancel()) {
+                    progress.errorln("export canceled");
+                    return false;
                 }
+                if (exportTable(progress, tableUnloaders, table, false))
+                    successCount++;
+                progress.setProgress(++currentTables * 100 / countTables);
             }
+        }
 
-            progress.setProgress(100);
-            if (successCount != countTables) {
-                progress.errorln("export failed for " + (countTables - successCount) +
-                    " of " + countTables + " table(s)");
-                return false;
+        progress.setProgress(100);
+        if (successCount != countTables) {
+            progress.errorln("export failed for " + (countTables - successCount) +
+                " of " + countTables + " table(s)");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Export a table.
+     *
+     * @param progress  the progress
+     * @param unloaders the unloaders; more than one to split the table into
+     *                  ranges
+     * @param table     the table
+     * @param parallel  the table name is part of the result message
+     * @return true, if succeeded
+     */
+    private boolean exportTable(final Progress progress, final Unloader[] unloaders,
+        final TableDef table, final boolean parallel) {
+
+        final String prefix = parallel ? "  '" + table.getFullTableName() + "': " : "  ";
+        final String errorPrefix = parallel ? prefix.trim() + " " : "";
+        final Unloader unloader = unloaders[0];
+        try {
+            progress.messageln("exporting '" + table.getFullTableName() +
+                "' ...");
+            final String selectList = table.getSelectList(unloader.getConnection());
+            final RangeSplit split = unloaders.length > 1 && watermarks == null
+                ? getRangeSplit(progress, unloader, table, selectList, unloaders.length)
+                : null;
+            final KeysetPager pager = split == null && pageSize > 0 && watermarks == null
+                ? getKeysetPager(progress, unloader, table, selectList)
+                : null;
+            final boolean tableres;
+            final long all;
+            if (watermarks != null) {
+                all = exportIncremental(progress, unloader, table, selectList, prefix);
+                tableres = true;
+            } else if (split != null) {
+                all = exportRanges(progress, unloaders, table, split);
+                tableres = true;
+            } else if (pager != null) {
+                all = exportPages(progress, unloader, table, pager, prefix);
+                tableres = true;
+            } else {
+                final StringBuilder tabSelect = new StringBuilder();
+                tabSelect.append("select ");
+                tabSelect.append(selectList);
+                tabSelect.append(" from ");
+                tabSelect.append(table.getFullTableName());
+                if (table.getWhereClause() != null) {
+                    tabSelect.append(" ");
+                    tabSelect.append(table.getWhereClause());
+                }
+                tableres =
+                    this.process(progress, unloader, new File(table.getFileName()),
+                        tabSelect.toString(), table.getTable(),
+                        table.getSchema(), table.getCatalog());
+                all = unloader.getAllRowCount();
+            }
+            if (tableres) {
+                progress.messageln(prefix + all + " row(s) exported");
+                return true;
             }
-            return true;
+            progress.errorln(errorPrefix + "export failed");
         } catch (final Exception e) {
+            progress.errorln(errorPrefix + "export failed", e);
+        }
+        return false;
+    }
+
+    /**
+     * Run one worker thread per unloader until all tables of the scheduler are
+     * exported.
+     *
+     * @param progress  the progress
+     * @param unloaders the unloaders
+     * @param scheduler the scheduler
+     * @throws DataIOException the data IO exception
+     */
+    private void runTableWorkers(final Progress progress,
+        final Unloader[] unloaders, final TableScheduler scheduler)
+        throws DataIOException {
+
+        final Thread[] workers = new Thread[unloaders.length];
+        for (int i = 0; i < unloaders.length; i++) {
+            workers[i] = new Thread(new TableWorker(progress, unloaders[i], scheduler),
+                "export-" + i);
+            workers[i].start();
+        }
+        try {
+            for (final Thread worker : workers)
+                worker.join();
+        } catch (final InterruptedException e) {
+            throw new DataIOException(e);
+        }
+    }
+
+    /**
+     * Split a table into ranges.
+     *
+     * @param progress the progress
+     * @param unloader the unloader
+     * @param table      the table
+     * @param selectList the select list of the exported columns
+     * @param parts      the max number of ranges
+     * @return the split or null if the table is exported as a whole
+     * @throws DataIOException the data IO exception
+     */
+    private RangeSplit getRangeSplit(final Progress progress,
+        final Unloader unloader, final TableDef table, final String selectList,
+        final int parts) throws DataIOException {
+
+        final Connection con = unloader.getConnection();
+        final Savepoint savepoint = SqlUtil.setSavepoint(con);
+        try {
+            final RangeSplit split = RangeSplit.create(con,
+                table, selectList, splitColumn, parts);
+            SqlUtil.releaseSavepoint(con, savepoint);
+            if (split == null)
+                progress.verboseln("  no split column found, exporting on one connection");
+            return split;
+        } catch (final SQLException e) {
+            rollbackProbe(con, savepoint, e);
+            progress.warningln("  split failed, exporting on one connection", e);
+            return null;
+        }
+    }
+
+    /**
+     * Gets the keyset pager of a table.
+     *
+     * @param progress the progress
+     * @param unloader the unloader
+     * @param table      the table
+     * @param selectList the select list of the exported columns
+     * @return the pager or null, if the table has no exported primary key
+     * @throws DataIOException the data IO exception
+     */
+    private KeysetPager getKeysetPager(final Progress progress,
+        final Unloader unloader, final TableDef table, final String selectList)
+        throws DataIOException {
+
+        final Connection con = unloader.getConnection();
+        final Savepoint savepoint = SqlUtil.setSavepoint(con);
+        try {
+            final KeysetPager pager = KeysetPager.create(con,
+                table, selectList, pageSize);
+            SqlUtil.releaseSavepoint(con, savepoint);
+            if (pager == null)
+                progress.verboseln("  no exported primary key found, exporting without pages");
+            return pager;
+        } catch (final SQLException e) {
+            rollbackProbe(con, savepoint, e);
+            progress.warningln("  paging failed, exporting without pages", e);
+            return null;
+        }
+    }
+
+    /**
+     * Roll back a failed probing query to its savepoint. In a snapshot the
+     * failure may have aborted the transaction ( PostgreSQL ), so without a
+     * savepoint it is fatal: the export can not fall back on the snapshot.
+     *
+     * @param con       the con
+     * @param savepoint the savepoint or null
+     * @param e         the failure of the query
+     * @throws DataIOException the data IO exception
+     */
+    private void rollbackProbe(final Connection con, final Savepoint savepoint,
+        final SQLException e) throws DataIOException {
+
+        if (!SqlUtil.rollback(con, savepoint) && consistentSnapshot)
+            throw new DataIOException(e);
+    }
+
+    /**
+     * Export a table in pages, ordered by the primary key. The rows are
+     * written to the output file directly, or to the pages of a checkpoint
+     * ( see {@link #setPageCheckpoint} ).
+     *
+     * @param progress the progress
+     * @param unloader the unloader
+     * @param table    the table
+     * @param pager    the pager
+     * @param prefix   the prefix of the messages
+     * @return the row count
+     * @throws DataIOException the data IO exception
+     */
+    private long exportPages(final Progress progress, final Unloader unloader,
+        final TableDef table, final KeysetPager pager, final String prefix)
+        throws DataIOException {
+
+        final File outputFile = new File(table.getFileName());
+        final PageCheckpoint checkpoint = pageCheckpoint
+            ? PageCheckpoint.open(outputFile, table.getFullTableName(), pager.getKeys())
+            : null;
+        final int fetchSize = unloader.getFetchSize();
+        final TeeOutputs tee = getTeeOutputs(outputFile);
+        final RollingWriter rolling =
+            getRollingWriter(progress, outputFile, table.getFullTableName());
+        File tmpFile = null;
+        OutputStream outputStream = null;
+        try {
+            // a page is fetched in one round trip
+            if (fetchSize == 0)
+                unloader.setFetchSize(Math.min(pager.getPageSize(), MAX_PAGE_FETCH_SIZE));
+            final DataWriter writer;
+            if (rolling != null)
+                writer = rolling;
+            else {
+                tmpFile = createTempFile(outputFile);
+                outputStream = openOutputStream(tmpFile, compressThreads);
+                writer =
+                    tee.getWriter(factory.getInstance(outputStream, progress), progress);
+            }
+
+            // the meta data is read using a statement selecting no row
+            unloader.setProgress(progress);
+            unloader.startUnLoading(table.getTable(), table.getSchema(),
+                table.getCatalog(), pager.getEmptyStatementText());
+            final MetaData metaData = unloader.openDataReading();
+            writer.openDataWriting(metaData);
+            final int[] keyIndexes = pager.getKeyIndexes(metaData);
+            final int colCount = metaData.getColumnCount();
+            final int[] columnTypes = new int[colCount];
+            for (int idx = 1; idx <= colCount; idx++)
+                columnTypes[idx - 1] = metaData.getColumnType(idx);
+            unloader.closeDataReading();
+            unloader.endUnLoading();
+
+            final DataRowReader rowReader = new DataRowReader(metaData);
+            final DataRow row = new DataRow(colCount);
+            Object[] lastKey = null;
+            int pages = 0;
+            long rows = 0;
+            if (checkpoint != null && checkpoint.getPageCount() > 0) {
+                lastKey = checkpoint.getLastKey();
+                pages = checkpoint.getPageCount();
+                rows = checkpoint.getRowCount();
+                progress.messageln(prefix + "resuming after page " + pages + " ( " +
+                    rows + " row(s) )");
+            }
+            long pageRows;
+            do {
+                if (progress.getCancel())
+                    throw new DataIOException("export canceled");
+                unloader.startUnLoading(table.getTable(), table.getSchema(),
+                    table.getCatalog(), pager.getStatementText(lastKey == null));
+                if (lastKey != null)
+                    unloader.setParameters(pager.getParameters(lastKey));
+                if (checkpoint != null) {
+                    final RangeSpill page = checkpoint.nextPage();
+                    page.write(unloader);
+                    pageRows = page.getRowCount();
+                    if (pageRows > 0) {
+                        lastKey = KeysetPager.getKey(keyIndexes, page.getLastRow());
+                        checkpoint.pageDone(page, lastKey);
+                    } else
+                        page.delete();
+                } else {
+                    unloader.openDataReading();
+                    pageRows = 0;
+                    while (unloader.readNextRow()) {
+                        row.readRow(unloader, columnTypes);
+                        rowReader.setCurrentRow(row);
+                        writer.startRowWriting(row.getRowType());
+                        for (int idx = 1; idx <= colCount; idx++)
+                            writer.setColumnValue(idx, rowReader);
+                        writer.endRowWriting();
+                        pageRows++;
+                    }
+                    unloader.closeDataReading();
+                    if (pageRows > 0)
+                        lastKey = KeysetPager.getKey(keyIndexes, row);
+                }
+                unloader.endUnLoading();
+                if (pageRows > 0) {
+                    pages++;
+                    rows += pageRows;
+                    progress.verboseln(prefix + "page " + pages + ": " + pageRows +
+                        " row(s)");
+                }
+            } while (pageRows >= pager.getPageSize());
+
+            if (checkpoint != null)
+                checkpoint.copyTo(writer, metaData);
+            writer.closeDataWriting();
+            if (rows != writer.getAllRowCount())
+                throw new DataIOException("export failed: row(s) read:" + rows +
+                    " written:" + writer.getAllRowCount());
+            commit(progress, rolling, tmpFile, outputStream, outputFile, tee);
+            if (checkpoint != null)
+                checkpoint.delete();
+            return rows;
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        } finally {
+            unloader.setFetchSize(fetchSize);
+            if (rolling != null)
+                rolling.abort();
+            tee.abort();
+            StreamUtil.closeOutputStream(outputStream);
+            FileUtil.delete(tmpFile);
+        }
+    }
+
+    /**
+     * Export the rows of a table changed since the previous export ( see
+     * {@link #setWatermarkColumn} ), and store the new watermark of the table
+     * when the output file is written.
+     *
+     * @param progress   the progress
+     * @param unloader   the unloader
+     * @param table      the table
+     * @param selectList the select list of the exported columns
+     * @param prefix     the prefix of the messages
+     * @return the row count
+     * @throws DataIOException the data IO exception
+     */
+    private long exportIncremental(final Progress progress, final Unloader unloader,
+        final TableDef table, final String selectList, final String prefix)
+        throws DataIOException {
+
+        final File outputFile = new File(table.getFileName());
+        final Object previous = watermarks.get(table.getFullTableName());
+        final WatermarkRange range;
+        try {
+            range = WatermarkRange.create(unloader.getConnection(), table,
+                selectList, watermarkColumn, insertColumn, previous, watermarkLag);
+        } catch (final SQLException e) {
+            throw new DataIOException(e);
+        }
+        if (previous == null)
+            progress.messageln(prefix + "no watermark found, exporting all rows");
+        else
+            progress.verboseln(prefix + "exporting rows after watermark '" +
+                previous + "'" + (watermarkLag > 0 ? " minus lag " + watermarkLag : ""));
+
+        long rows = 0;
+        final TeeOutputs tee = getTeeOutputs(outputFile);
+        final RollingWriter rolling =
+            getRollingWriter(progress, outputFile, table.getFullTableName());
+        File tmpFile = null;
+        OutputStream outputStream = null;
+        try {
+            final DataWriter writer;
+            if (rolling != null)
+                writer = rolling;
+            else {
+                tmpFile = createTempFile(outputFile);
+                outputStream = openOutputStream(tmpFile, compressThreads);
+                writer =
+                    tee.getWriter(factory.getInstance(outputStream, progress), progress);
+            }
+            unloader.setProgress(progress);
+            for (int i = 0; i < range.getStatementCount(); i++) {
+                unloader.startUnLoading(table.getTable(), table.getSchema(),
+                    table.getCatalog(), range.getStatementText(i));
+                unloader.setParameters(range.getParameters(i));
+                unloader.setRowType(range.getRowType(i));
+                final MetaData metaData = unloader.openDataReading();
+                if (i == 0)
+                    writer.openDataWriting(metaData);
+                final int colCount = metaData.getColumnCount();
+                while (unloader.readNextRow()) {
+                    writer.startRowWriting(unloader.getCurrentRowType());
+                    for (int idx = 1; idx <= colCount; idx++)
+                        writer.setColumnValue(idx, unloader);
+                    writer.endRowWriting();
+                }
+                rows += unloader.getAllRowCount();
+                unloader.closeDataReading();
+                unloader.endUnLoading();
+            }
+            writer.closeDataWriting();
+            if (rows != writer.getAllRowCount())
+                throw new DataIOException("export failed: row(s) read:" + rows +
+                    " written:" + writer.getAllRowCount());
+            commit(progress, rolling, tmpFile, outputStream, outputFile, tee);
+        } catch (final IOException e) {
             throw new DataIOException(e);
+        } finally {
+            if (rolling != null)
+                rolling.abort();
+            tee.abort();
+            StreamUtil.closeOutputStream(outputStream);
+            FileUtil.delete(tmpFile);
+        }
+
+        if (range.getWatermark() != null) {
+            watermarks.set(table.getFullTableName(), range.getWatermark());
+            progress.verboseln(prefix + "new watermark '" + range.getWatermark() + "'");
+        }
+        return rows;
+    }
+
+    /**
+     * Export the ranges of a table in parallel, each range using its own
+     * unloader.
+     *
+     * @param progress  the progress
+     * @param unloaders the unloaders
+     * @param table     the table
+     * @param split     the split
+     * @return the row count
+     * @throws DataIOException the data IO exception
+     */
+    private long exportRanges(final Progress progress, final Unloader[] unloaders,
+        final TableDef table, final RangeSplit split) throws DataIOException {
+
+        final int count = split.getRangeCount();
+        progress.messageln("  split on '" + split.getColumn() + "' into " + count +
+            " range(s)");
+        final File outputFile = new File(table.getFileName());
+        final RangeWorker[] workers = new RangeWorker[count];
+        final Thread[] threads = new Thread[count];
+        final RangeSpill[] spills = new RangeSpill[count];
+        final TeeOutputs tee = getTeeOutputs(outputFile);
+        final RollingWriter rolling = splitFiles
+            ? null
+            : getRollingWriter(progress, outputFile, table.getFullTableName());
+        File tmpFile = null;
+        OutputStream outputStream = null;
+        try {
+            // in merge mode the first range is written directly to the output
+            for (int i = splitFiles ? 0 : 1; i < count; i++) {
+                if (splitFiles)
+                    workers[i] = new RangeWorker(progress, unloaders[i], table,
+                        split.getStatementText(i), getPartFile(outputFile, i), null);
+                else {
+                    spills[i] = new RangeSpill(getDirectory(outputFile));
+                    workers[i] = new RangeWorker(progress, unloaders[i], table,
+                        split.getStatementText(i), null, spills[i]);
+                }
+                threads[i] = new Thread(workers[i], "export-" + i);
+                threads[i].start();
+            }
+            if (splitFiles) {
+                join(threads);
+                final PartManifest manifest = new PartManifest(
+                    PartManifest.getFile(outputFile), table.getFullTableName());
+                long rows = 0;
+                for (int i = 0; i < count; i++) {
+                    final long rowCount = workers[i].getRowCount();
+                    manifest.addPart(getPartFile(outputFile, i), rowCount);
+                    rows += rowCount;
+                }
+                manifest.write();
+                deleteStaleFiles(outputFile, count);
+                return rows;
+            }
+
+            final DataWriter writer;
+            if (rolling != null)
+                writer = rolling;
+            else {
+                tmpFile = createTempFile(outputFile);
+                outputStream = openOutputStream(tmpFile, compressThreads);
+                writer =
+                    tee.getWriter(factory.getInstance(outputStream, progress), progress);
+            }
+            final Unloader unloader = unloaders[0];
+            unloader.setProgress(progress);
+            unloader.startUnLoading(table.getTable(), table.getSchema(),
+                table.getCatalog(), split.getStatementText(0));
+            final MetaData metaData = unloader.openDataReading();
+            writer.openDataWriting(metaData);
+            final int colCount = metaData.getColumnCount();
+            long rows = 0;
+            while (unloader.readNextRow()) {
+                writer.startRowWriting(unloader.getCurrentRowType());
+                for (int idx = 1; idx <= colCount; idx++)
+                    writer.setColumnValue(idx, unloader);
+                writer.endRowWriting();
+                rows++;
+            }
+            unloader.closeDataReading();
+            unloader.endUnLoading();
+            for (int i = 1; i < count; i++)
+                rows += spills[i].copyTo(writer, metaData);
+            writer.closeDataWriting();
+            if (rows != writer.getAllRowCount())
+                throw new DataIOException("export failed: row(s) read:" + rows +
+                    " written:" + writer.getAllRowCount());
+            commit(progress, rolling, tmpFile, outputStream, outputFile, tee);
+            return rows;
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        } finally {
+            for (final RangeSpill spill : spills)
+                if (spill != null)
+                    spill.abort();
+            join(threads);
+            for (final RangeSpill spill : spills)
+                if (spill != null)
+                    spill.delete();
+            if (rolling != null)
+                rolling.abort();
+            tee.abort();
+            StreamUtil.closeOutputStream(outputStream);
+            FileUtil.delete(tmpFile);
+        }
+    }
+
+    /**
+     * Commit the output of a table, after all rows are written: the manifest
+     * of the rolling output files is written, or the temporary file is renamed
+     * to the output file, and the additional outputs are committed.
+     *
+     * @param progress     the progress
+     * @param rolling      the rolling writer or null
+     * @param tmpFile      the temporary file
+     * @param outputStream the output stream of the temporary file
+     * @param outputFile   the output file
+     * @param tee          the additional outputs
+     * @throws IOException     Signals that an I/O exception has occurred.
+     * @throws DataIOException the data IO exception
+     */
+    private static void commit(final Progress progress, final RollingWriter rolling,
+        final File tmpFile, final OutputStream outputStream, final File outputFile,
+        final TeeOutputs tee) throws IOException, DataIOException {
+
+        if (rolling != null) {
+            rolling.commit();
+            progress.verboseln("  " + rolling.getPartCount() + " part file(s)");
+            return;
+        }
+        outputStream.close();
+        renameTempFile(tmpFile, outputFile);
+        tee.commit();
+    }
+
+    /**
+     * Wait for the range workers.
+     *
+     * @param threads the threads of the range workers
+     */
+    private static void join(final Thread[] threads) {
+
+        boolean interrupted = false;
+        for (final Thread thread : threads) {
+            if (thread == null)
+                continue;
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Gets the part file of a range: the index of the range is inserted before
+     * the extension of the output file.
+     *
+     * @param outputFile the output file
+     * @param range      the index of the range
+     * @return the part file
+     */
+    static File getPartFile(final File outputFile, final int range) {
+
+        final String name = outputFile.getName();
+        final int dot = name.lastIndexOf('.');
+        final String part = String.format(".part%03d", range + 1);
+        final String partName = dot > 0
+            ? name.substring(0, dot) + part + name.substring(dot)
+            : name + part;
+        return new File(outputFile.getParentFile(), partName);
+    }
+
+    /**
+     * Delete the files of a previous export, which are replaced by a manifest:
+     * the output file, which the importers would prefer to the manifest, and
+     * the part files beyond the parts of the manifest.
+     *
+     * @param outputFile the output file
+     * @param partCount  the number of parts of the manifest
+     * @throws DataIOException the data IO exception
+     */
+    static void deleteStaleFiles(final File outputFile, final int partCount)
+        throws DataIOException {
+
+        if (outputFile.isFile() && !FileUtil.delete(outputFile))
+            throw new DataIOException("delete file '" + outputFile.getPath() +
+                "' failed");
+        for (int part = partCount; ; part++) {
+            final File partFile = getPartFile(outputFile, part);
+            if (!partFile.exists() || !FileUtil.delete(partFile))
+                break;
         }
     }
 
@@ -258,7 +1389,28 @@ public class ExporterImpl implements Exporter {
         final Unloader unloader, boolean overwrite,
         File tableList) throws DataIOException {
 
-        Connection con = unloader.getConnection();
+        return process(progress, output, extension, new Unloader[]{unloader},
+            overwrite, tableList);
+    }
+
+    /**
+     * Process. The tables are exported in parallel, using one unloader per
+     * table or per range of a table ( see {@link #setSplit} ).
+     *
+     * @param extension the extension
+     * @param unloaders the unloaders
+     * @param output    the output
+     * @param overwrite the overwrite
+     * @param tableList the table list
+     * @param progress  the progress
+     * @return true if succeeded, false if failed
+     * @throws DataIOException the data IO exception
+     */
+    public boolean process(final Progress progress, File output, String extension,
+        final Unloader[] unloaders, boolean overwrite,
+        File tableList) throws DataIOException {
+
+        Connection con = unloaders[0].getConnection();
         TableList allTables =
             TableList.createList(con, tableList, output, extension);
         if (allTables.size() == 0) {
@@ -276,7 +1428,7 @@ public class ExporterImpl implements Exporter {
                         output.getPath() + "' not found");
             }
         }
-        return this.process(progress, unloader, allTables, overwrite);
+        return this.process(progress, unloaders, allTables, overwrite);
     }
 
     /**
@@ -298,7 +1450,31 @@ public class ExporterImpl implements Exporter {
         String catalogName, String schemaName,
         String tableName) throws DataIOException {
 
-        Connection con = unloader.getConnection();
+        return process(progress, output, extension, new Unloader[]{unloader},
+            overwrite, catalogName, schemaName, tableName);
+    }
+
+    /**
+     * Process. The tables are exported in parallel, using one unloader per
+     * table or per range of a table ( see {@link #setSplit} ).
+     *
+     * @param extension   the extension
+     * @param unloaders   the unloaders
+     * @param output      the output
+     * @param overwrite   the overwrite
+     * @param tableName   the table name
+     * @param progress    the progress
+     * @param schemaName  the schema name
+     * @param catalogName the catalog name
+     * @return true if succeeded, false if failed
+     * @throws DataIOException the data IO exception
+     */
+    public boolean process(final Progress progress, File output, String extension,
+        final Unloader[] unloaders, boolean overwrite,
+        String catalogName, String schemaName,
+        String tableName) throws DataIOException {
+
+        Connection con = unloaders[0].getConnection();
         TableList allTables = TableList.createList(con, catalogName, schemaName,
             tableName, output, extension);
         if (allTables.size() == 0) {
@@ -316,6 +1492,204 @@ public class ExporterImpl implements Exporter {
                         output.getPath() + "' not found");
             }
         }
-        return this.process(progress, unloader, allTables, overwrite);
+        return this.process(progress, unloaders, allTables, overwrite);
+    }
+
+    /**
+     * The Class RangeWorker.
+     * <p>
+     * Reads a range of a table on its own connection, and writes it to a part
+     * file or to a spill file.
+     */
+    private class RangeWorker implements Runnable {
+
+        /**
+         * The progress.
+         */
+        private final Progress progress;
+
+        /**
+         * The unloader.
+         */
+        private final Unloader unloader;
+
+        /**
+         * The table.
+         */
+        private final TableDef table;
+
+        /**
+         * The statement text.
+         */
+        private final String statementText;
+
+        /**
+         * The part file or null.
+         */
+        private final File partFile;
+
+        /**
+         * The spill file or null.
+         */
+        private final RangeSpill spill;
+
+        /**
+         * The row count.
+         */
+        private long rowCount;
+
+        /**
+         * The failure.
+         */
+        private Throwable failure;
+
+        /**
+         * The Constructor.
+         *
+         * @param progress      the progress
+         * @param unloader      the unloader
+         * @param table         the table
+         * @param statementText the statement selecting the range
+         * @param partFile      the part file or null
+         * @param spill         the spill file or null
+         */
+        RangeWorker(final Progress progress, final Unloader unloader,
+            final TableDef table, final String statementText, final File partFile,
+            final RangeSpill spill) {
+
+            this.progress = progress;
+            this.unloader = unloader;
+            this.table = table;
+            this.statementText = statementText;
+            this.partFile = partFile;
+            this.spill = spill;
+        }
+
+        /**
+         * Gets the row count; the failure of the worker is rethrown.
+         *
+         * @return the row count
+         * @throws DataIOException the data IO exception
+         */
+        long getRowCount() throws DataIOException {
+
+            if (failure instanceof DataIOException)
+                throw (DataIOException) failure;
+            if (failure != null)
+                throw new DataIOException(failure);
+            return rowCount;
+        }
+
+        /**
+         * Run.
+         */
+        public void run() {
+
+            try {
+                if (partFile != null) {
+                    writePart();
+                    rowCount = unloader.getAllRowCount();
+                    progress.verboseln("  '" + partFile.getPath() + "': " + rowCount +
+                        " row(s) exported");
+                } else {
+                    unloader.setProgress(progress);
+                    unloader.startUnLoading(table.getTable(), table.getSchema(),
+                        table.getCatalog(), statementText);
+                    spill.write(unloader);
+                    unloader.endUnLoading();
+                    rowCount = unloader.getAllRowCount();
+                    spill.finished(null);
+                }
+            } catch (final Throwable t) {
+                failure = t;
+                if (spill != null)
+                    spill.finished(t);
+            }
+        }
+
+        /**
+         * Write the range to the part file, without additional outputs.
+         *
+         * @throws DataIOException the data IO exception
+         */
+        private void writePart() throws DataIOException {
+
+            final File tmpFile = createTempFile(partFile);
+            OutputStream outputStream = null;
+            try {
+                outputStream = openOutputStream(tmpFile, compressThreads);
+                process(progress, unloader,
+                    factory.getInstance(outputStream, progress), statementText,
+                    table.getTable(), table.getSchema(), table.getCatalog());
+                outputStream.close();
+                renameTempFile(tmpFile, partFile);
+            } catch (final IOException e) {
+                throw new DataIOException(e);
+            } finally {
+                StreamUtil.closeOutputStream(outputStream);
+                FileUtil.delete(tmpFile);
+            }
+        }
+    }
+
+    /**
+     * The Class TableWorker.
+     * <p>
+     * Exports the tables of a scheduler using its own unloader.
+     */
+    private class TableWorker implements Runnable {
+
+        /**
+         * The progress.
+         */
+        private final Progress progress;
+
+        /**
+         * The unloader.
+         */
+        private final Unloader unloader;
+
+        /**
+         * The scheduler.
+         */
+        private final TableScheduler scheduler;
+
+        /**
+         * The Constructor.
+         *
+         * @param progress  the progress
+         * @param unloader  the unloader
+         * @param scheduler the scheduler
+         */
+        TableWorker(final Progress progress, final Unloader unloader,
+            final TableScheduler scheduler) {
+
+            this.progress = progress;
+            this.unloader = unloader;
+            this.scheduler = scheduler;
+        }
+
+        /**
+         * Run.
+         */
+        public void run() {
+
+            try {
+                int idx;
+                while ((idx = scheduler.next()) >= 0) {
+                    boolean res = false;
+                    try {
+                        res = exportTable(progress, new Unloader[]{unloader},
+                            scheduler.getTable(idx), true);
+                    } finally {
+                        scheduler.finished(idx, res);
+                    }
+                    progress.setProgress(scheduler.getFinishedCount() * 100 /
+                        Math.max(1, scheduler.getTableCount()));
+                }
+            } catch (final InterruptedException ignore) {
+                // aborted
+            }
+        }
     }
 }
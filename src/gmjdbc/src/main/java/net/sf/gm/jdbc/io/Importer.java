@@ -22,6 +22,31 @@ import java.io.InputStream;
  */
 public interface Importer {
 
+    /**
+     * Sets the metadata snapshot used to sort the tables and to find the
+     * tables matching a pattern.
+     *
+     * @param metaDataSnapshot the metadata snapshot or null
+     */
+    void setMetaDataSnapshot(MetaDataSnapshot metaDataSnapshot);
+
+    /**
+     * Sets the checkpoint journal. Tables finished according to the journal are
+     * skipped, and partially loaded tables are resumed after the last
+     * checkpoint.
+     *
+     * @param checkpointJournal the checkpoint journal or null
+     */
+    void setCheckpointJournal(CheckpointJournal checkpointJournal);
+
+    /**
+     * Sets the max number of part files read in parallel, if a table is read
+     * from the part files of a manifest.
+     *
+     * @param partReaders the max number of part files read in parallel
+     */
+    void setPartReaders(int partReaders);
+
     /**
      * Process.
      *
@@ -104,4 +129,58 @@ public interface Importer {
         final Loader loader, boolean sort, boolean delete,
         String catalogName, String schemaName,
         String tableName) throws DataIOException;
+
+    /**
+     * Process. The tables are imported in parallel using one loader per
+     * connection, in the order of their foreign key dependencies.
+     *
+     * @param list     the list
+     * @param sort     the sort
+     * @param loaders  the loaders ( the first one is used for the metadata )
+     * @param delete   the delete
+     * @param progress the progress
+     * @return true if succeeded, false if failed
+     * @throws DataIOException the sql IO exception
+     */
+    boolean process(Progress progress, Loader[] loaders, TableList list,
+        boolean sort, boolean delete) throws DataIOException;
+
+    /**
+     * Process. The tables are imported in parallel using one loader per
+     * connection, in the order of their foreign key dependencies.
+     *
+     * @param extension the extension
+     * @param input     the input
+     * @param sort      the sort
+     * @param tableList the table list
+     * @param loaders   the loaders
+     * @param delete    the delete
+     * @param progress  the progress
+     * @return true if succeeded, false if failed
+     * @throws DataIOException the data IO exception
+     */
+    boolean process(final Progress progress, File input, String extension,
+        final Loader[] loaders, boolean sort, boolean delete,
+        File tableList) throws DataIOException;
+
+    /**
+     * Process. The tables are imported in parallel using one loader per
+     * connection, in the order of their foreign key dependencies.
+     *
+     * @param extension   the extension
+     * @param input       the input
+     * @param sort        the sort
+     * @param loaders     the loaders
+     * @param delete      the delete
+     * @param progress    the progress
+     * @param tableName   the table name
+     * @param schemaName  the schema name
+     * @param catalogName the catalog name
+     * @return true if succeeded, false if failed
+     * @throws DataIOException the data IO exception
+     */
+    boolean process(final Progress progress, File input, String extension,
+        final Loader[] loaders, boolean sort, boolean delete,
+        String catalogName, String schemaName,
+        String tableName) throws DataIOException;
 }
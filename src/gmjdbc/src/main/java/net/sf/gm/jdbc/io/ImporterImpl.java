@@ -7,10 +7,12 @@
  ******************************************************************/
 package net.sf.gm.jdbc.io;
 
+import net.sf.gm.core.io.DataFileReaderFactory;
 import net.sf.gm.core.io.DataIOException;
 import net.sf.gm.core.io.DataReader;
 import net.sf.gm.core.io.DataReaderFactory;
 import net.sf.gm.core.ui.Progress;
+import net.sf.gm.core.utils.ReadAheadGzipInputStream;
 import net.sf.gm.jdbc.load.Loader;
 
 import java.io.*;
@@ -30,6 +32,21 @@ public class ImporterImpl implements Importer {
      */
     private final DataReaderFactory factory;
 
+    /**
+     * The metadata snapshot.
+     */
+    private MetaDataSnapshot metaDataSnapshot;
+
+    /**
+     * The checkpoint journal.
+     */
+    private CheckpointJournal checkpointJournal;
+
+    /**
+     * The max number of part files read in parallel.
+     */
+    private int partReaders;
+
     /**
      * The Constructor.
      *
@@ -38,10 +55,47 @@ public class ImporterImpl implements Importer {
     public ImporterImpl(final DataReaderFactory factory) {
 
         this.factory = factory;
+        this.partReaders = 1;
     }
 
     /**
-     * Process.
+     * Sets the metadata snapshot used to sort the tables and to find the
+     * tables matching a pattern.
+     *
+     * @param metaDataSnapshot the metadata snapshot or null
+     */
+    public void setMetaDataSnapshot(final MetaDataSnapshot metaDataSnapshot) {
+        this.metaDataSnapshot = metaDataSnapshot;
+    }
+
+    /**
+     * Sets the checkpoint journal. Tables finished according to the journal are
+     * skipped, and partially loaded tables are resumed after the last
+     * checkpoint.
+     *
+     * @param checkpointJournal the checkpoint journal or null
+     */
+    public void setCheckpointJournal(final CheckpointJournal checkpointJournal) {
+        this.checkpointJournal = checkpointJournal;
+    }
+
+    /**
+     * Sets the max number of part files read in parallel. If the input file of
+     * a table does not exist, but a manifest of rolling output files
+     * ( see {@link ExporterImpl#setRollRows} ), the part files of the manifest
+     * are imported as the table; with more than one part reader the rows of
+     * different parts are imported in any order. The parts are read in
+     * sequence with a checkpoint journal, so a resumed import skips the same
+     * rows.
+     *
+     * @param partReaders the max number of part files read in parallel
+     */
+    public void setPartReaders(final int partReaders) {
+        this.partReaders = partReaders;
+    }
+
+    /**
+     * Process. A gzip compressed input stream is decompressed.
      *
      * @param inputStream the input stream
      * @param loader      the loader
@@ -57,8 +111,39 @@ public class ImporterImpl implements Importer {
         final String schemaName, final String catalogName)
         throws DataIOException {
 
+        try {
+            return process(progress, loader,
+                factory.getInstance(ReadAheadGzipInputStream.open(inputStream), progress),
+                tableName, schemaName, catalogName, null);
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        }
+    }
+
+    /**
+     * Process.
+     *
+     * @param reader      the reader
+     * @param loader      the loader
+     * @param progress    the progress
+     * @param tableName   the table name
+     * @param schemaName  the schema name
+     * @param catalogName the catalog name
+     * @param checkpoint  the checkpoint to resume after or null
+     * @return true if succeeded, false if failed
+     * @throws DataIOException the sql IO exception
+     */
+    private boolean process(final Progress progress, final Loader loader,
+        final DataReader reader, final String tableName,
+        final String schemaName, final String catalogName,
+        final CheckpointJournal.Checkpoint checkpoint) throws DataIOException {
+
         loader.startLoading(tableName, schemaName, catalogName);
-        final DataReader reader = factory.getInstance(inputStream, progress);
+        if (checkpoint != null && checkpoint.getRowCount() > 0) {
+            progress.messageln("  resuming after row " + checkpoint.getRowCount());
+            loader.resume(checkpoint.getRowCount(), checkpoint.getRowWrittenCount(),
+                checkpoint.getRowFailedCount(), checkpoint.getRowIgnoredCount());
+        }
         final long all = reader.readAllData(loader);
         final long written = loader.getRowWrittenCount();
         final long failed = loader.getRowFailedCount();
@@ -85,11 +170,41 @@ public class ImporterImpl implements Importer {
         final String schemaName, final String catalogName)
         throws DataIOException {
 
-        final File inputFile = new File(inputPath);
+        final File manifestFile = PartManifest.getFile(new File(inputPath));
+        final boolean parts = !new File(inputPath).exists() && manifestFile.exists();
+        final File inputFile = parts ? manifestFile : new File(inputPath);
+        CheckpointJournal.Checkpoint checkpoint = null;
+        if (checkpointJournal != null) {
+            final String fullTableName =
+                TableDef.createFullTableName(catalogName, schemaName, tableName);
+            checkpoint = checkpointJournal.getCheckpoint(fullTableName);
+            if (checkpoint != null && !checkpoint.isInputFile(inputFile))
+                throw new DataIOException("input file '" + inputPath +
+                    "' has been changed since the last checkpoint of '" +
+                    fullTableName + "'");
+            checkpointJournal.startTable(fullTableName, inputFile);
+        }
+        if (parts) {
+            final PartManifest manifest = PartManifest.read(manifestFile);
+            progress.verboseln("  reading " + manifest.getPartFiles().length +
+                " part file(s) of '" + manifestFile.getPath() + "'");
+            return process(progress, loader,
+                new PartSetReader(progress, factory, manifest,
+                    checkpointJournal != null ? 1 : partReaders),
+                tableName, schemaName, catalogName, checkpoint);
+        }
+        if (factory instanceof DataFileReaderFactory) {
+            final DataReader reader =
+                ((DataFileReaderFactory) factory).getInstance(inputFile, progress);
+            if (reader != null)
+                return process(progress, loader, reader, tableName, schemaName,
+                    catalogName, checkpoint);
+        }
         try {
             return process(progress, loader,
-                new BufferedInputStream(new FileInputStream(inputFile)),
-                tableName, schemaName, catalogName);
+                factory.getInstance(ReadAheadGzipInputStream.open(
+                    new BufferedInputStream(new FileInputStream(inputFile))), progress),
+                tableName, schemaName, catalogName, checkpoint);
         } catch (final IOException e) {
             throw new DataIOException(e);
         }
@@ -115,7 +230,8 @@ public class ImporterImpl implements Importer {
         TableList list = tableList;
         if (sort && list.size() > 1) {
             progress.messageln("sorting table list...");
-            list = TableList.sortDatabaseSequence(con, list);
+            list = TableList.sortDatabaseSequence(progress, con, list,
+                metaDataSnapshot);
             progress.messageln("  sorted");
         }
 
@@ -145,16 +261,8 @@ public class ImporterImpl implements Importer {
                         progress.errorln("import canceled");
                         return false;
                     }
-                    try {
-                        progress.messageln("delete from table '" +
-                            table.getFullTableName() + "' ...");
-                        final long rows = loader.delete(table.getTable(), table.getSchema(),
-                            table.getCatalog());
-                        progress.messageln("  " + rows + " row(s) deleted");
+                    if (deleteTable(progress, loader, table, false))
                         succeededDeletes++;
-                    } catch (final Exception e) {
-                        progress.errorln("delete failed", e);
-                    }
                     progress.setProgress(countDeletes * maxDeleteProgress / countTables);
                 }
             }
@@ -172,61 +280,288 @@ public class ImporterImpl implements Importer {
                     progress.errorln("import canceled");
                     return false;
                 }
-                try {
-                    progress.messageln("importing '" + table.getFullTableName() +
-                        "' ...");
-                    final boolean tableres = this.process(
-                        progress, loader, table.getFileName(), table.getTable(),
-                        table.getSchema(), table.getCatalog());
-                    final long all = loader.getAllRowCount();
-                    final long written = loader.getRowWrittenCount();
-                    final long failed = loader.getRowFailedCount();
-                    final long ignored = loader.getRowIgnoredCount();
-                    final long unknown = all - written - failed - ignored;
-                    if (tableres && failed == 0) {
-                        if (ignored == 0)
-                            progress.messageln("  " + written + " row(s) imported");
-                        else
-                            progress.messageln("  " + written + " row(s) imported, " +
-                                ignored + " rows(s) ignored");
-                        succeededImports++;
-                    } else {
-                        progress.errorln(
-                            "  " + written + " row(s) imported, " + ignored +
-                                " rows(s) ignored, " + failed + " rows(s) failed" +
-                                (unknown == 0 ? "" : (", " + unknown + " rows(s) unknown")));
-                    }
-                } catch (final RuntimeException r) {
-                    progress.errorln("import failed: " + r.getClass().getName(), r);
-                    r.printStackTrace();
-                } catch (final Exception e) {
-                    progress.errorln("import failed", e);
-                }
+                if (importTable(progress, loader, table, false))
+                    succeededImports++;
                 loader.commit(); // end transaction
                 progress.setProgress(maxDeleteProgress +
                     countImports * maxImportProgress / countTables);
             }
             progress.setProgress(100);
             loader.commit(); // end transaction
-            boolean res = true;
-            if (delete && succeededDeletes != countTables) {
-                progress.errorln("delete failed for " +
-                    (countTables - succeededDeletes) + " of " +
-                    countTables + " table(s)");
-                res = false;
+            return checkResult(progress, countTables, delete, succeededDeletes,
+                succeededImports);
+        } catch (final SQLException e) {
+            throw new DataIOException(e);
+        }
+    }
+
+    /**
+     * Process. The tables are imported in parallel, each loader is using its
+     * own connection: a table is started as soon as all its parent tables are
+     * imported. The tables are deleted in reverse order: a table is deleted as
+     * soon as all its child tables are deleted.
+     *
+     * @param progress  the progress
+     * @param loaders   the loaders ( the first one is used for the metadata )
+     * @param tableList the table list
+     * @param sort      the sort
+     * @param delete    the delete
+     * @return true, if process
+     * @throws DataIOException the sql IO exception
+     */
+    public boolean process(final Progress progress, final Loader[] loaders,
+        final TableList tableList, boolean sort,
+        boolean delete) throws DataIOException {
+
+        if (loaders.length == 1 || tableList.size() <= 1)
+            return process(progress, loaders[0], tableList, sort, delete);
+
+        final Connection con = loaders[0].getConnection();
+
+        TableList list = tableList;
+        progress.messageln("sorting table list...");
+        if (sort)
+            list = TableList.sortDatabaseSequence(progress, con, list,
+                metaDataSnapshot);
+        else
+            // the dependencies are required to schedule the tables
+            TableList.linkParentTables(con, list, metaDataSnapshot);
+        progress.messageln("  sorted");
+
+        try {
+            for (final Loader loader : loaders)
+                loader.commit(); // end transaction
+
+            progress.setProgress(0);
+            progress.setCancel(false);
+            final int maxDeleteProgress = delete ? 10 : 0;
+            final int maxImportProgress = 100 - maxDeleteProgress;
+
+            final int countTables = list.size();
+            int succeededDeletes = 0;
+
+            if (delete) {
+                final TableScheduler scheduler = new TableScheduler(progress, list, true);
+                runTableWorkers(progress, loaders, scheduler, true, 0, maxDeleteProgress);
+                if (scheduler.isCanceled()) {
+                    rollback(loaders);
+                    progress.errorln("import canceled");
+                    return false;
+                }
+                succeededDeletes = scheduler.getSucceededCount();
             }
-            if (succeededImports != countTables) {
-                progress.errorln("import failed for " +
-                    (countTables - succeededImports) + " of " +
-                    countTables + " table(s)");
-                res = false;
+
+            progress.setProgress(maxDeleteProgress);
+
+            final TableScheduler scheduler = new TableScheduler(progress, list, false);
+            runTableWorkers(progress, loaders, scheduler, false, maxDeleteProgress,
+                maxImportProgress);
+            if (scheduler.isCanceled()) {
+                rollback(loaders);
+                progress.errorln("import canceled");
+                return false;
             }
-            return res;
+            progress.setProgress(100);
+            for (final Loader loader : loaders)
+                loader.commit(); // end transaction
+            return checkResult(progress, countTables, delete, succeededDeletes,
+                scheduler.getSucceededCount());
         } catch (final SQLException e) {
             throw new DataIOException(e);
         }
     }
 
+    /**
+     * Run one worker thread per loader until all tables of the scheduler are
+     * processed.
+     *
+     * @param progress      the progress
+     * @param loaders       the loaders
+     * @param scheduler     the scheduler
+     * @param delete        delete instead of import the tables
+     * @param startProgress the progress at start
+     * @param maxProgress   the progress range
+     * @throws DataIOException the data IO exception
+     */
+    private void runTableWorkers(final Progress progress, final Loader[] loaders,
+        final TableScheduler scheduler, final boolean delete,
+        final int startProgress, final int maxProgress) throws DataIOException {
+
+        final Thread[] workers = new Thread[loaders.length];
+        for (int i = 0; i < loaders.length; i++) {
+            workers[i] = new Thread(new TableWorker(progress, loaders[i], scheduler,
+                delete, startProgress, maxProgress), "import-" + i);
+            workers[i].start();
+        }
+        try {
+            for (final Thread worker : workers)
+                worker.join();
+        } catch (final InterruptedException e) {
+            throw new DataIOException(e);
+        }
+    }
+
+    /**
+     * Rollback all loaders.
+     *
+     * @param loaders the loaders
+     * @throws SQLException the SQL exception
+     */
+    private static void rollback(final Loader[] loaders) throws SQLException {
+
+        for (final Loader loader : loaders)
+            loader.rollback(); // end transaction
+    }
+
+    /**
+     * Report the failed tables.
+     *
+     * @param progress         the progress
+     * @param countTables      the number of tables
+     * @param delete           the delete
+     * @param succeededDeletes the number of succeeded deletes
+     * @param succeededImports the number of succeeded imports
+     * @return true, if all deletes and imports succeeded
+     */
+    private static boolean checkResult(final Progress progress,
+        final int countTables, final boolean delete, final int succeededDeletes,
+        final int succeededImports) {
+
+        boolean res = true;
+        if (delete && succeededDeletes != countTables) {
+            progress.errorln("delete failed for " +
+                (countTables - succeededDeletes) + " of " +
+                countTables + " table(s)");
+            res = false;
+        }
+        if (succeededImports != countTables) {
+            progress.errorln("import failed for " +
+                (countTables - succeededImports) + " of " +
+                countTables + " table(s)");
+            res = false;
+        }
+        return res;
+    }
+
+    /**
+     * Delete the content of a table.
+     *
+     * @param progress the progress
+     * @param loader   the loader
+     * @param table    the table
+     * @param parallel the table name is part of the result message
+     * @return true, if succeeded
+     */
+    private boolean deleteTable(final Progress progress,
+        final Loader loader, final TableDef table, final boolean parallel) {
+
+        final String prefix = getMessagePrefix(table, parallel);
+        if (checkpointJournal != null &&
+            checkpointJournal.getCheckpoint(getJournalName(table)) != null) {
+            // rows have been committed by a previous run
+            progress.messageln(prefix + "delete skipped, resuming import");
+            return true;
+        }
+        try {
+            progress.messageln("delete from table '" +
+                table.getFullTableName() + "' ...");
+            final long rows = loader.delete(table.getTable(), table.getSchema(),
+                table.getCatalog());
+            progress.messageln(prefix + rows + " row(s) deleted");
+            return true;
+        } catch (final Exception e) {
+            progress.errorln((parallel ? prefix.trim() + " " : "") + "delete failed", e);
+            return false;
+        }
+    }
+
+    /**
+     * Gets the name of a table in the checkpoint journal.
+     *
+     * @param table the table
+     * @return the full table name as used by the loader
+     */
+    private static String getJournalName(final TableDef table) {
+
+        return TableDef.createFullTableName(table.getCatalog(), table.getSchema(),
+            table.getTable());
+    }
+
+    /**
+     * Gets the prefix of a result message.
+     *
+     * @param table    the table
+     * @param parallel the table name is part of the result message
+     * @return the prefix
+     */
+    private static String getMessagePrefix(final TableDef table,
+        final boolean parallel) {
+
+        return parallel ? "  '" + table.getFullTableName() + "': " : "  ";
+    }
+
+    /**
+     * Import a table.
+     *
+     * @param progress the progress
+     * @param loader   the loader
+     * @param table    the table
+     * @param parallel the table name is part of the result message
+     * @return true, if succeeded
+     */
+    private boolean importTable(final Progress progress, final Loader loader,
+        final TableDef table, final boolean parallel) {
+
+        final String prefix = getMessagePrefix(table, parallel);
+        final String errorPrefix = parallel ? prefix.trim() + " " : "";
+        if (checkpointJournal != null) {
+            final CheckpointJournal.Checkpoint checkpoint =
+                checkpointJournal.getCheckpoint(getJournalName(table));
+            if (checkpoint != null && checkpoint.isDone()) {
+                progress.messageln(prefix + "skipped, " +
+                    checkpoint.getRowWrittenCount() +
+                    " row(s) imported by a previous run");
+                if (!checkpoint.isSucceeded())
+                    progress.errorln(errorPrefix + checkpoint.getRowFailedCount() +
+                        " rows(s) failed in a previous run");
+                return checkpoint.isSucceeded();
+            }
+        }
+        try {
+            progress.messageln("importing '" + table.getFullTableName() +
+                "' ...");
+            final boolean tableres = this.process(
+                progress, loader, table.getFileName(), table.getTable(),
+                table.getSchema(), table.getCatalog());
+            final long all = loader.getAllRowCount();
+            final long written = loader.getRowWrittenCount();
+            final long failed = loader.getRowFailedCount();
+            final long ignored = loader.getRowIgnoredCount();
+            final long unknown = all - written - failed - ignored;
+            if (checkpointJournal != null)
+                checkpointJournal.tableDone(getJournalName(table), all, written, failed,
+                    ignored, tableres && failed == 0);
+            if (tableres && failed == 0) {
+                if (ignored == 0)
+                    progress.messageln(prefix + written + " row(s) imported");
+                else
+                    progress.messageln(prefix + written + " row(s) imported, " +
+                        ignored + " rows(s) ignored");
+                return true;
+            }
+            progress.errorln(
+                prefix + written + " row(s) imported, " + ignored +
+                    " rows(s) ignored, " + failed + " rows(s) failed" +
+                    (unknown == 0 ? "" : (", " + unknown + " rows(s) unknown")));
+        } catch (final RuntimeException r) {
+            progress.errorln(errorPrefix + "import failed: " + r.getClass().getName(), r);
+            r.printStackTrace();
+        } catch (final Exception e) {
+            progress.errorln(errorPrefix + "import failed", e);
+        }
+        return false;
+    }
+
     /**
      * Process.
      *
@@ -244,7 +579,28 @@ public class ImporterImpl implements Importer {
         final Loader loader, boolean sort, boolean delete,
         File tableList) throws DataIOException {
 
-        Connection con = loader.getConnection();
+        return process(progress, input, extension, new Loader[] {loader}, sort,
+            delete, tableList);
+    }
+
+    /**
+     * Process.
+     *
+     * @param extension the extension
+     * @param input     the input
+     * @param sort      the sort
+     * @param tableList the table list
+     * @param loaders   the loaders
+     * @param delete    the delete
+     * @param progress  the progress
+     * @return true, if process
+     * @throws DataIOException the data IO exception
+     */
+    public boolean process(final Progress progress, File input, String extension,
+        final Loader[] loaders, boolean sort, boolean delete,
+        File tableList) throws DataIOException {
+
+        Connection con = loaders[0].getConnection();
 
         TableList allTables =
             TableList.createList(con, tableList, input, extension);
@@ -255,7 +611,7 @@ public class ImporterImpl implements Importer {
         if (input != null && !input.isDirectory() && allTables.size() > 1)
             throw new DataIOException("'" + input.getPath() + "' is not a directory");
 
-        return this.process(progress, loader, allTables, sort, delete);
+        return this.process(progress, loaders, allTables, sort, delete);
     }
 
     /**
@@ -278,16 +634,130 @@ public class ImporterImpl implements Importer {
         String catalogName, String schemaName,
         String tableName) throws DataIOException {
 
-        Connection con = loader.getConnection();
+        return process(progress, input, extension, new Loader[] {loader}, sort,
+            delete, catalogName, schemaName, tableName);
+    }
+
+    /**
+     * Process.
+     *
+     * @param extension   the extension
+     * @param input       the input
+     * @param sort        the sort
+     * @param loaders     the loaders
+     * @param delete      the delete
+     * @param tableName   the table name
+     * @param progress    the progress
+     * @param schemaName  the schema name
+     * @param catalogName the catalog name
+     * @return true, if process
+     * @throws DataIOException the data IO exception
+     */
+    public boolean process(final Progress progress, File input, String extension,
+        final Loader[] loaders, boolean sort, boolean delete,
+        String catalogName, String schemaName,
+        String tableName) throws DataIOException {
+
+        Connection con = loaders[0].getConnection();
 
         TableList allTables = TableList.createList(con, catalogName, schemaName,
-            tableName, input, extension);
+            tableName, input, extension, metaDataSnapshot);
         if (allTables.size() == 0) {
             progress.warningln("no table selected");
             return false;
         }
         if (input != null && !input.isDirectory() && allTables.size() > 1)
             throw new DataIOException("'" + input.getPath() + "' is not a directory");
-        return this.process(progress, loader, allTables, sort, delete);
+        return this.process(progress, loaders, allTables, sort, delete);
+    }
+
+    /**
+     * The Class TableWorker.
+     * <p>
+     * Deletes or imports the tables of a scheduler using one loader.
+     */
+    private class TableWorker implements Runnable {
+
+        /**
+         * The progress.
+         */
+        private final Progress progress;
+
+        /**
+         * The loader.
+         */
+        private final Loader loader;
+
+        /**
+         * The scheduler.
+         */
+        private final TableScheduler scheduler;
+
+        /**
+         * The delete flag.
+         */
+        private final boolean delete;
+
+        /**
+         * The progress at start.
+         */
+        private final int startProgress;
+
+        /**
+         * The progress range.
+         */
+        private final int maxProgress;
+
+        /**
+         * The Constructor.
+         *
+         * @param progress      the progress
+         * @param loader        the loader
+         * @param scheduler     the scheduler
+         * @param delete        delete instead of import the tables
+         * @param startProgress the progress at start
+         * @param maxProgress   the progress range
+         */
+        TableWorker(final Progress progress, final Loader loader,
+            final TableScheduler scheduler, final boolean delete,
+            final int startProgress, final int maxProgress) {
+
+            this.progress = progress;
+            this.loader = loader;
+            this.scheduler = scheduler;
+            this.delete = delete;
+            this.startProgress = startProgress;
+            this.maxProgress = maxProgress;
+        }
+
+        /**
+         * Run.
+         */
+        public void run() {
+
+            try {
+                int idx;
+                while ((idx = scheduler.next()) >= 0) {
+                    final TableDef table = scheduler.getTable(idx);
+                    boolean res = false;
+                    try {
+                        res = delete ? deleteTable(progress, loader, table, true)
+                            : importTable(progress, loader, table, true);
+                        // the dependent tables may be started on other connections
+                        loader.commit(); // end transaction
+                    } catch (final SQLException e) {
+                        progress.errorln("'" + table.getFullTableName() + "': commit failed", e);
+                        res = false;
+                    } finally {
+                        scheduler.finished(idx, res);
+                    }
+                    progress.setProgress(startProgress +
+                        scheduler.getFinishedCount() * maxProgress /
+                            Math.max(1, scheduler.getTableCount()));
+                }
+            } catch (final InterruptedException ignore) {
+                // aborted
+            }
+        }
     }
 }
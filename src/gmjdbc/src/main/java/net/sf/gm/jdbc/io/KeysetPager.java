@@ -0,0 +1,223 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.jdbc.io;
+
+import net.sf.gm.core.io.DataIOException;
+import net.sf.gm.core.io.DataRow;
+import net.sf.gm.core.io.MetaData;
+import net.sf.gm.jdbc.common.SqlDialect;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+//
+
+
+/**
+ * The Class KeysetPager.
+ * <p>
+ * Reads the rows of a table in pages, ordered by the primary key. Each page
+ * after the first one seeks past the key of the last row read:
+ * <pre>
+ * select ... from T where ( k1 &gt; ? ) or ( k1 = ? and k2 &gt; ? )
+ *   order by k1, k2 fetch first N rows only
+ * </pre>
+ * so each statement is short, and the next page can be read on another
+ * connection or after a restart.
+ */
+class KeysetPager {
+
+    /**
+     * The primary key columns.
+     */
+    private final String[] keys;
+
+    /**
+     * The page size.
+     */
+    private final int pageSize;
+
+    /**
+     * The select list.
+     */
+    private final String selectList;
+
+    /**
+     * The from clause.
+     */
+    private final String fromClause;
+
+    /**
+     * The order by and row limit clause.
+     */
+    private final String orderClause;
+
+    /**
+     * The seek predicate.
+     */
+    private final String seekPredicate;
+
+    /**
+     * The Constructor.
+     *
+     * @param keys       the primary key columns
+     * @param selectList the select list
+     * @param pageSize   the page size
+     * @param fromClause the from clause
+     * @param limit      the row limit clause
+     */
+    private KeysetPager(final String[] keys, final String selectList,
+        final int pageSize, final String fromClause, final String limit) {
+
+        this.keys = keys;
+        this.selectList = selectList;
+        this.pageSize = pageSize;
+        this.fromClause = fromClause;
+
+        final StringBuilder order = new StringBuilder(" order by ");
+        final StringBuilder seek = new StringBuilder();
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                order.append(", ");
+                seek.append(" or ");
+            }
+            order.append(keys[i]);
+            seek.append("( ");
+            for (int j = 0; j < i; j++) {
+                seek.append(keys[j]);
+                seek.append(" = ? and ");
+            }
+            seek.append(keys[i]);
+            seek.append(" > ? )");
+        }
+        order.append(limit);
+        this.orderClause = order.toString();
+        this.seekPredicate = seek.toString();
+    }
+
+    /**
+     * Create a pager for a table.
+     *
+     * @param con        the connection
+     * @param table      the table
+     * @param selectList the select list of the exported columns
+     * @param pageSize   the page size
+     * @return the pager or null if the table has no primary key, or a key
+     * column is not exported
+     * @throws SQLException the SQL exception
+     */
+    static KeysetPager create(final Connection con, final TableDef table,
+        final String selectList, final int pageSize) throws SQLException {
+
+        final String[] keys = table.getPrimaryKeys(con);
+        if (keys == null || keys.length == 0)
+            return null;
+        // the key of the last row is read from the exported columns
+        final ColumnProjection projection = table.getProjection();
+        if (projection != null)
+            for (final String key : keys)
+                if (!projection.isSelected(key))
+                    return null;
+        return new KeysetPager(keys, selectList, pageSize,
+            RangeSplit.getFromClause(table.getFullTableName(), table.getWhereClause()),
+            SqlDialect.getDialect(con).getRowLimitClause(pageSize));
+    }
+
+    /**
+     * Gets the primary key columns.
+     *
+     * @return the primary key columns
+     */
+    String[] getKeys() {
+        return keys;
+    }
+
+    /**
+     * Gets the page size.
+     *
+     * @return the page size
+     */
+    int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Gets the statement selecting a page.
+     *
+     * @param first the first page
+     * @return the statement; the statement of a following page has the
+     * parameters returned by {@link #getParameters}
+     */
+    String getStatementText(final boolean first) {
+
+        if (first)
+            return "select " + selectList + fromClause + orderClause;
+        return "select " + selectList + fromClause + " where " + seekPredicate +
+            orderClause;
+    }
+
+    /**
+     * Gets the statement selecting no row, to read the meta data.
+     *
+     * @return the statement
+     */
+    String getEmptyStatementText() {
+        return "select " + selectList + fromClause + " where 1 = 0";
+    }
+
+    /**
+     * Gets the parameters of the statement selecting the page following a key.
+     *
+     * @param lastKey the key values of the last row read
+     * @return the parameters
+     */
+    Object[] getParameters(final Object[] lastKey) {
+
+        final Object[] res = new Object[keys.length * (keys.length + 1) / 2];
+        int param = 0;
+        for (int i = 0; i < keys.length; i++)
+            for (int j = 0; j <= i; j++)
+                res[param++] = lastKey[j];
+        return res;
+    }
+
+    /**
+     * Gets the indexes of the key columns.
+     *
+     * @param metaData the meta data of the rows
+     * @return the column indexes, 1 based
+     * @throws DataIOException if a key column is not selected
+     */
+    int[] getKeyIndexes(final MetaData metaData) throws DataIOException {
+
+        final int[] res = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            for (int idx = 1; idx <= metaData.getColumnCount() && res[i] == 0; idx++)
+                if (keys[i].equalsIgnoreCase(metaData.getColumnName(idx)))
+                    res[i] = idx;
+            if (res[i] == 0)
+                throw new DataIOException("key column '" + keys[i] + "' not found");
+        }
+        return res;
+    }
+
+    /**
+     * Gets the key values of a row.
+     *
+     * @param keyIndexes the indexes of the key columns
+     * @param row        the row
+     * @return the key values
+     */
+    static Object[] getKey(final int[] keyIndexes, final DataRow row) {
+
+        final Object[] res = new Object[keyIndexes.length];
+        for (int i = 0; i < keyIndexes.length; i++)
+            res[i] = row.getValue(keyIndexes[i]);
+        return res;
+    }
+}
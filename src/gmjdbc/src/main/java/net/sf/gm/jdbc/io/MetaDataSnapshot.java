@@ -0,0 +1,716 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.jdbc.io;
+
+import net.sf.gm.core.io.DataIOException;
+import net.sf.gm.core.utils.StringUtil;
+import net.sf.gm.jdbc.common.SqlUtil;
+
+import java.io.*;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+//
+
+
+/**
+ * The Class MetaDataSnapshot.
+ * <p>
+ * A snapshot of the table metadata ( columns, primary keys and foreign keys ).
+ * The metadata of a catalog and schema is read in bulk, using one metadata
+ * query for all columns, one for all primary keys and one for all foreign keys,
+ * as soon as a table of the catalog and schema is requested. Tables not found
+ * in the bulk result ( e.g. aliases or synonyms ), or tables without catalog
+ * and schema, are read one by one.
+ * <p>
+ * The snapshot may be saved to a file and loaded again by subsequent runs
+ * using the same data source. A snapshot file older than the given max age is
+ * not used. The number of tables of each catalog and schema read in bulk is
+ * kept as fingerprint: when the snapshot is used the first time, the tables
+ * are counted again, and a catalog and schema whose count differs is read
+ * again. Changed columns of existing tables are not detected by the
+ * fingerprint; the file has to be deleted after such schema changes, or
+ * expire by its age.
+ */
+public class MetaDataSnapshot {
+
+    /**
+     * The header of a snapshot file.
+     */
+    private static final String HEADER = "# jdbmigr metadata snapshot";
+
+    /**
+     * The representation of a null value in a snapshot file.
+     */
+    private static final String NULL = "\\N";
+
+    /**
+     * The data source key.
+     */
+    private final String dataSourceKey;
+
+    /**
+     * The FullTableName -&gt; TableDef map.
+     */
+    private final Map<String, TableDef> tables;
+
+    /**
+     * The foreign keys of each catalog and schema, null if bulk reading is not
+     * supported.
+     */
+    private final Map<String, ArrayList<String[]>> schemaForeignKeys;
+
+    /**
+     * The foreign keys read one by one, by FullTableName of the parent table.
+     */
+    private final Map<String, ArrayList<String[]>> tableForeignKeys;
+
+    /**
+     * The catalogs and schemas read in bulk.
+     */
+    private final Map<String, String[]> schemas;
+
+    /**
+     * The catalog and schema names of the keys.
+     */
+    private final Map<String, String[]> schemaNames;
+
+    /**
+     * The number of tables of the catalogs and schemas read in bulk, -1 if
+     * unknown.
+     */
+    private final Map<String, Integer> tableCounts;
+
+    /**
+     * The catalogs and schemas loaded from a file, not yet verified.
+     */
+    private final Set<String> unverifiedSchemas;
+
+    /**
+     * The modified flag.
+     */
+    private boolean modified;
+
+    /**
+     * The Constructor.
+     *
+     * @param dataSourceKey the data source key
+     */
+    public MetaDataSnapshot(final String dataSourceKey) {
+
+        this.dataSourceKey = dataSourceKey;
+        tables = new HashMap<String, TableDef>();
+        schemaForeignKeys = new HashMap<String, ArrayList<String[]>>();
+        tableForeignKeys = new HashMap<String, ArrayList<String[]>>();
+        schemas = new LinkedHashMap<String, String[]>();
+        schemaNames = new HashMap<String, String[]>();
+        tableCounts = new HashMap<String, Integer>();
+        unverifiedSchemas = new HashSet<String>();
+        modified = false;
+    }
+
+    /**
+     * Gets the data source key.
+     *
+     * @return the data source key
+     */
+    public String getDataSourceKey() {
+        return dataSourceKey;
+    }
+
+    /**
+     * Gets the table.
+     *
+     * @param con           the con
+     * @param fullTableName the full table name
+     * @return the table, the column names are empty if the table is not found
+     */
+    public synchronized TableDef getTable(final Connection con,
+        final String fullTableName) {
+
+        verifySchemas(con);
+        TableDef table = tables.get(fullTableName);
+        if (table == null) {
+            table = new TableDef(fullTableName);
+            if ((table.getCatalog() != null || table.getSchema() != null) &&
+                loadSchema(con, table.getCatalog(), table.getSchema()))
+                table = tables.get(fullTableName);
+            else
+                table = null;
+        }
+        if (table != null) {
+            if (table.primaryKeys == null) {
+                // bulk reading of the primary keys is not supported
+                table.getPrimaryKeys(con);
+                modified = true;
+            }
+            return table;
+        }
+        table = new TableDef(fullTableName);
+        // read the table alone
+        table.getColumnNames(con);
+        table.getPrimaryKeys(con);
+        if (table.columnNames != null && table.columnNames.length > 0) {
+            tables.put(fullTableName, table);
+            modified = true;
+        }
+        return table;
+    }
+
+    /**
+     * Checks if a table ( or an alias or synonym of a table ) has columns.
+     *
+     * @param con     the con
+     * @param catalog the catalog
+     * @param schema  the schema
+     * @param table   the table
+     * @return true, if the table has columns
+     */
+    public boolean hasColumns(final Connection con, final String catalog,
+        final String schema, final String table) {
+
+        final String[] columnNames = getTable(con,
+            TableDef.createFullTableName(catalog, schema, table)).getColumnNames(con);
+        return columnNames != null && columnNames.length > 0;
+    }
+
+    /**
+     * Gets the foreign keys of the tables of a catalog and schema.
+     *
+     * @param con       the con
+     * @param groupList the tables of the same catalog and schema
+     * @return the foreign keys: primary key catalog, schema and table, foreign
+     * key catalog, schema and table
+     */
+    public synchronized ArrayList<String[]> getForeignKeys(final Connection con,
+        final TableList groupList) {
+
+        verifySchemas(con);
+        final TableDef first = groupList.get(0);
+        final String key = getSchemaKey(first.getCatalog(), first.getSchema());
+        if (!schemaForeignKeys.containsKey(key)) {
+            ArrayList<String[]> foreignKeys = null;
+            if (first.getCatalog() != null || first.getSchema() != null) {
+                try {
+                    foreignKeys = TableDef.getForeignKeys(con, first.getCatalog(),
+                        first.getSchema());
+                    if (foreignKeys.size() == 0)
+                        foreignKeys = null;
+                } catch (final SQLException ignore) {
+                    // not supported: one query per table
+                } catch (final RuntimeException ignore) {
+                    // some drivers do not check the missing table name
+                }
+            }
+            schemaForeignKeys.put(key, foreignKeys);
+            modified = true;
+        }
+        final ArrayList<String[]> foreignKeys = schemaForeignKeys.get(key);
+        if (foreignKeys != null)
+            return foreignKeys;
+
+        final ArrayList<String[]> res = new ArrayList<String[]>();
+        for (final TableDef parentTable : groupList) {
+            ArrayList<String[]> childTables =
+                tableForeignKeys.get(parentTable.getFullTableName());
+            if (childTables == null) {
+                childTables = new ArrayList<String[]>();
+                for (final String[] childTable : parentTable.getChildTables(con))
+                    childTables.add(new String[] {parentTable.getCatalog(),
+                        parentTable.getSchema(), parentTable.getTable(), childTable[0],
+                        childTable[1], childTable[2]});
+                tableForeignKeys.put(parentTable.getFullTableName(), childTables);
+                modified = true;
+            }
+            res.addAll(childTables);
+        }
+        return res;
+    }
+
+    /**
+     * Load the columns and primary keys of a catalog and schema.
+     *
+     * @param con     the con
+     * @param catalog the catalog
+     * @param schema  the schema
+     * @return true, if loaded
+     */
+    private boolean loadSchema(final Connection con, final String catalog,
+        final String schema) {
+
+        final String key = getSchemaKey(catalog, schema);
+        if (schemas.containsKey(key))
+            return true;
+        try {
+            final DatabaseMetaData dmd = con.getMetaData();
+
+            // all columns
+            final Map<String, TableDef> loaded = new LinkedHashMap<String, TableDef>();
+            ResultSet rs = dmd.getColumns(catalog, schema, "%", "%");
+            try {
+                TableDef table = null;
+                ArrayList<String> names = new ArrayList<String>();
+                ArrayList<Integer> types = new ArrayList<Integer>();
+                ArrayList<String> typeNames = new ArrayList<String>();
+                ArrayList<Integer> sizes = new ArrayList<Integer>();
+                while (rs.next()) {
+                    final String fullTableName = TableDef.createFullTableName(
+                        StringUtil.rtrim(rs.getString(1)), StringUtil.rtrim(rs.getString(2)),
+                        StringUtil.rtrim(rs.getString(3)));
+                    if (table == null || !table.getFullTableName().equals(fullTableName)) {
+                        if (table != null)
+                            table.setColumns(names, types, typeNames, sizes);
+                        table = loaded.get(fullTableName);
+                        if (table != null)
+                            // unordered result: read this table alone
+                            throw new SQLException("unordered column metadata");
+                        table = new TableDef(StringUtil.rtrim(rs.getString(1)),
+                            StringUtil.rtrim(rs.getString(2)),
+                            StringUtil.rtrim(rs.getString(3)), null, null);
+                        loaded.put(fullTableName, table);
+                        names = new ArrayList<String>();
+                        types = new ArrayList<Integer>();
+                        typeNames = new ArrayList<String>();
+                        sizes = new ArrayList<Integer>();
+                    }
+                    names.add(rs.getString(4));
+                    types.add(rs.getInt(5));
+                    typeNames.add(rs.getString(6));
+                    sizes.add(rs.getInt(7));
+                }
+                if (table != null)
+                    table.setColumns(names, types, typeNames, sizes);
+            } finally {
+                SqlUtil.closeResultSet(rs);
+            }
+
+            // all primary keys; not supported by all drivers
+            final Map<String, ArrayList<String>> primaryKeys =
+                new HashMap<String, ArrayList<String>>();
+            try {
+                rs = dmd.getPrimaryKeys(catalog, schema, null);
+                try {
+                    while (rs.next()) {
+                        final String fullTableName = TableDef.createFullTableName(
+                            StringUtil.rtrim(rs.getString(1)),
+                            StringUtil.rtrim(rs.getString(2)),
+                            StringUtil.rtrim(rs.getString(3)));
+                        ArrayList<String> keys = primaryKeys.get(fullTableName);
+                        if (keys == null) {
+                            keys = new ArrayList<String>();
+                            primaryKeys.put(fullTableName, keys);
+                        }
+                        keys.add(rs.getString(4));
+                    }
+                } finally {
+                    SqlUtil.closeResultSet(rs);
+                }
+            } catch (final SQLException ignore) {
+                // read the primary keys of each table on demand
+            } catch (final RuntimeException ignore) {
+                // some drivers do not check the missing table name
+            }
+            if (primaryKeys.size() > 0) {
+                // the bulk result is complete: tables not found do not have a
+                // primary key
+                for (final TableDef table : loaded.values()) {
+                    final ArrayList<String> keys =
+                        primaryKeys.get(table.getFullTableName());
+                    table.primaryKeys = keys == null ? new String[0]
+                        : keys.toArray(new String[0]);
+                }
+            }
+
+            tables.putAll(loaded);
+            schemas.put(key, new String[] {catalog, schema});
+            tableCounts.put(key, countTables(dmd, catalog, schema));
+            modified = true;
+            return true;
+        } catch (final SQLException ignore) {
+            return false;
+        }
+    }
+
+    /**
+     * Count the tables of a catalog and schema.
+     *
+     * @param dmd     the database metadata
+     * @param catalog the catalog
+     * @param schema  the schema
+     * @return the number of tables, -1 if unknown
+     */
+    private static int countTables(final DatabaseMetaData dmd,
+        final String catalog, final String schema) {
+
+        try {
+            final ResultSet rs = dmd.getTables(catalog, schema, "%", null);
+            try {
+                int count = 0;
+                while (rs.next())
+                    count++;
+                return count;
+            } finally {
+                SqlUtil.closeResultSet(rs);
+            }
+        } catch (final SQLException ignore) {
+            return -1;
+        } catch (final RuntimeException ignore) {
+            return -1;
+        }
+    }
+
+    /**
+     * Verify the catalogs and schemas loaded from a file: a catalog and schema
+     * whose number of tables has changed, or is unknown, is removed from the
+     * snapshot to be read again.
+     *
+     * @param con the con
+     */
+    private void verifySchemas(final Connection con) {
+
+        if (unverifiedSchemas.isEmpty())
+            return;
+        DatabaseMetaData dmd = null;
+        try {
+            dmd = con.getMetaData();
+        } catch (final SQLException ignore) {
+            // all catalogs and schemas are read again
+        }
+        for (final String key : unverifiedSchemas) {
+            final Integer tableCount = tableCounts.get(key);
+            final String[] names = schemaNames.get(key);
+            if (dmd == null || tableCount == null || tableCount < 0 ||
+                tableCount != countTables(dmd, names[0], names[1]))
+                removeSchema(key);
+        }
+        unverifiedSchemas.clear();
+    }
+
+    /**
+     * Remove a catalog and schema and its tables from the snapshot.
+     *
+     * @param key the key of the catalog and schema
+     */
+    private void removeSchema(final String key) {
+
+        for (final Iterator<TableDef> it = tables.values().iterator(); it.hasNext(); ) {
+            final TableDef table = it.next();
+            if (getSchemaKey(table.getCatalog(), table.getSchema()).equals(key))
+                it.remove();
+        }
+        for (final Iterator<String> it = tableForeignKeys.keySet().iterator();
+             it.hasNext(); ) {
+            final TableDef table = new TableDef(it.next());
+            if (getSchemaKey(table.getCatalog(), table.getSchema()).equals(key))
+                it.remove();
+        }
+        schemas.remove(key);
+        schemaForeignKeys.remove(key);
+        tableCounts.remove(key);
+        modified = true;
+    }
+
+    /**
+     * Gets the key of a catalog and schema.
+     *
+     * @param catalog the catalog
+     * @param schema  the schema
+     * @return the key
+     */
+    private String getSchemaKey(final String catalog, final String schema) {
+
+        final String key = catalog + "\0" + schema;
+        if (!schemaNames.containsKey(key))
+            schemaNames.put(key, new String[] {catalog, schema});
+        return key;
+    }
+
+    /**
+     * Checks if modified since loaded.
+     *
+     * @return true, if modified
+     */
+    public synchronized boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Load a snapshot from a file. An empty snapshot is returned, if the file
+     * does not exist or has been written for another data source.
+     *
+     * @param file          the file
+     * @param dataSourceKey the data source key
+     * @return the snapshot
+     * @throws DataIOException the data IO exception
+     */
+    public static MetaDataSnapshot load(final File file,
+        final String dataSourceKey) throws DataIOException {
+
+        return load(file, dataSourceKey, 0);
+    }
+
+    /**
+     * Load a snapshot from a file. An empty snapshot is returned, if the file
+     * does not exist, has been written for another data source, or is older
+     * than the max age.
+     *
+     * @param file          the file
+     * @param dataSourceKey the data source key
+     * @param maxAge        the max age of the file in milliseconds ( 0: no
+     *                      limit )
+     * @return the snapshot
+     * @throws DataIOException the data IO exception
+     */
+    public static MetaDataSnapshot load(final File file,
+        final String dataSourceKey, final long maxAge) throws DataIOException {
+
+        final MetaDataSnapshot snapshot = new MetaDataSnapshot(dataSourceKey);
+        if (!file.exists())
+            return snapshot;
+        if (maxAge > 0 && System.currentTimeMillis() - file.lastModified() > maxAge)
+            // expired: read again
+            return snapshot;
+        try {
+            final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            try {
+                String line = reader.readLine();
+                if (line == null || !line.equals(HEADER))
+                    throw new DataIOException("'" + file.getPath() +
+                        "' is not a metadata snapshot");
+                line = reader.readLine();
+                if (line == null || !line.equals("datasource\t" + encode(dataSourceKey)))
+                    // written for another data source
+                    return snapshot;
+                snapshot.read(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        }
+        snapshot.modified = false;
+        return snapshot;
+    }
+
+    /**
+     * Read the records of a snapshot file.
+     *
+     * @param reader the reader
+     * @throws IOException the IO exception
+     */
+    private void read(final BufferedReader reader) throws IOException {
+
+        TableDef table = null;
+        ArrayList<String> names = null;
+        ArrayList<Integer> types = null;
+        ArrayList<String> typeNames = null;
+        ArrayList<Integer> sizes = null;
+        ArrayList<String[]> foreignKeys = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            final String[] fields = line.split("\t", -1);
+            for (int i = 1; i < fields.length; i++)
+                fields[i] = decode(fields[i]);
+            final String record = fields[0];
+            if (record.equals("schema")) {
+                final String key = getSchemaKey(fields[1], fields[2]);
+                schemas.put(key, new String[] {fields[1], fields[2]});
+                if (fields.length > 3)
+                    tableCounts.put(key, Integer.parseInt(fields[3]));
+                unverifiedSchemas.add(key);
+            } else if (record.equals("table")) {
+                table = new TableDef(fields[1], fields[2], fields[3], null, null);
+                tables.put(table.getFullTableName(), table);
+                names = new ArrayList<String>();
+                types = new ArrayList<Integer>();
+                typeNames = new ArrayList<String>();
+                sizes = new ArrayList<Integer>();
+                table.setColumns(names, types, typeNames, sizes);
+            } else if (record.equals("column") && table != null) {
+                names.add(fields[1]);
+                types.add(Integer.parseInt(fields[2]));
+                typeNames.add(fields[3]);
+                sizes.add(Integer.parseInt(fields[4]));
+                table.setColumns(names, types, typeNames, sizes);
+            } else if (record.equals("pk") && table != null) {
+                final String[] keys = new String[fields.length - 1];
+                System.arraycopy(fields, 1, keys, 0, keys.length);
+                table.primaryKeys = keys;
+            } else if (record.equals("schemafk")) {
+                foreignKeys = fields[3] == null ? null : new ArrayList<String[]>();
+                schemaForeignKeys.put(getSchemaKey(fields[1], fields[2]), foreignKeys);
+            } else if (record.equals("tablefk")) {
+                foreignKeys = new ArrayList<String[]>();
+                tableForeignKeys.put(fields[1], foreignKeys);
+            } else if (record.equals("fk") && foreignKeys != null) {
+                final String[] fk = new String[6];
+                System.arraycopy(fields, 1, fk, 0, 6);
+                foreignKeys.add(fk);
+            }
+        }
+    }
+
+    /**
+     * Save the snapshot to a file.
+     *
+     * @param file the file
+     * @throws DataIOException the data IO exception
+     */
+    public synchronized void save(final File file) throws DataIOException {
+
+        try {
+            final PrintWriter writer = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), "UTF-8")));
+            try {
+                writer.println(HEADER);
+                writeRecord(writer, "datasource", dataSourceKey);
+                for (final Map.Entry<String, String[]> entry : schemas.entrySet()) {
+                    final Integer tableCount = tableCounts.get(entry.getKey());
+                    writeRecord(writer, "schema", entry.getValue()[0],
+                        entry.getValue()[1],
+                        String.valueOf(tableCount == null ? -1 : tableCount));
+                }
+                for (final TableDef table : tables.values()) {
+                    writeRecord(writer, "table", table.getCatalog(), table.getSchema(),
+                        table.getTable());
+                    for (int i = 0; i < table.columnNames.length; i++)
+                        writeRecord(writer, "column", table.columnNames[i],
+                            String.valueOf(table.columnTypes[i]), table.columnTypeNames[i],
+                            String.valueOf(table.columnSizes[i]));
+                    if (table.primaryKeys != null)
+                        writeRecord(writer, "pk", table.primaryKeys);
+                }
+                for (final Map.Entry<String, ArrayList<String[]>> entry : schemaForeignKeys
+                    .entrySet()) {
+                    final String[] names = schemaNames.get(entry.getKey());
+                    final ArrayList<String[]> foreignKeys = entry.getValue();
+                    writeRecord(writer, "schemafk", names[0], names[1],
+                        foreignKeys == null ? null : "bulk");
+                    writeForeignKeys(writer, foreignKeys);
+                }
+                for (final Map.Entry<String, ArrayList<String[]>> entry : tableForeignKeys
+                    .entrySet()) {
+                    writeRecord(writer, "tablefk", entry.getKey());
+                    writeForeignKeys(writer, entry.getValue());
+                }
+            } finally {
+                writer.close();
+            }
+            if (writer.checkError())
+                throw new IOException("failed to write '" + file.getPath() + "'");
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        }
+        modified = false;
+    }
+
+    /**
+     * Write foreign key records.
+     *
+     * @param writer      the writer
+     * @param foreignKeys the foreign keys or null
+     */
+    private static void writeForeignKeys(final PrintWriter writer,
+        final ArrayList<String[]> foreignKeys) {
+
+        if (foreignKeys == null)
+            return;
+        for (final String[] fk : foreignKeys)
+            writeRecord(writer, "fk", fk);
+    }
+
+    /**
+     * Write a record.
+     *
+     * @param writer the writer
+     * @param record the record type
+     * @param fields the fields
+     */
+    private static void writeRecord(final PrintWriter writer,
+        final String record, final String... fields) {
+
+        final StringBuilder sb = new StringBuilder(record);
+        for (final String field : fields) {
+            sb.append('\t');
+            sb.append(encode(field));
+        }
+        writer.println(sb.toString());
+    }
+
+    /**
+     * Encode a field of a snapshot file.
+     *
+     * @param value the value or null
+     * @return the encoded value
+     */
+    private static String encode(final String value) {
+
+        if (value == null)
+            return NULL;
+        final StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Decode a field of a snapshot file.
+     *
+     * @param value the encoded value
+     * @return the value or null
+     */
+    private static String decode(final String value) {
+
+        if (value.equals(NULL))
+            return null;
+        if (value.indexOf('\\') < 0)
+            return value;
+        final StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                c = value.charAt(++i);
+                if (c == 't')
+                    c = '\t';
+                else if (c == 'n')
+                    c = '\n';
+                else if (c == 'r')
+                    c = '\r';
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
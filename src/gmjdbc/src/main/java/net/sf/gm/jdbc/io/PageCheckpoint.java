@@ -0,0 +1,326 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.jdbc.io;
+
+import net.sf.gm.core.io.DataIOException;
+import net.sf.gm.core.io.DataWriter;
+import net.sf.gm.core.io.MetaData;
+import net.sf.gm.core.utils.FileUtil;
+import net.sf.gm.core.utils.StreamUtil;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.util.Properties;
+
+//
+
+
+/**
+ * The Class PageCheckpoint.
+ * <p>
+ * The checkpoint of a keyset export ( see {@link KeysetPager} ): the pages
+ * read so far are kept in a directory next to the output file, and the key
+ * of the last row is written to a checkpoint file after each page. If the
+ * export is interrupted, it continues after the last page when started
+ * again. The output file is written from the pages, when all pages are read.
+ * <p>
+ * The checkpoint file is a properties file, the key values are prefixed by
+ * their type like the watermarks ( see {@link WatermarkState} ):
+ * <pre>
+ * table=SCOTT.EMP
+ * keys=1
+ * key.1=EMPNO
+ * pages=3
+ * rows=3000
+ * last.1=number:7934
+ * </pre>
+ */
+class PageCheckpoint {
+
+    /**
+     * The header of a checkpoint file.
+     */
+    private static final String HEADER = "jdbmigr export checkpoint";
+
+    /**
+     * The largest integral value bound as long.
+     */
+    private static final BigDecimal MAX_LONG = BigDecimal.valueOf(Long.MAX_VALUE);
+
+    /**
+     * The smallest integral value bound as long.
+     */
+    private static final BigDecimal MIN_LONG = BigDecimal.valueOf(Long.MIN_VALUE);
+
+    /**
+     * The checkpoint file.
+     */
+    private final File file;
+
+    /**
+     * The directory of the pages.
+     */
+    private final File directory;
+
+    /**
+     * The full table name.
+     */
+    private final String tableName;
+
+    /**
+     * The primary key columns.
+     */
+    private final String[] keys;
+
+    /**
+     * The number of pages read.
+     */
+    private int pageCount;
+
+    /**
+     * The number of rows read.
+     */
+    private long rowCount;
+
+    /**
+     * The key values of the last row read or null.
+     */
+    private Object[] lastKey;
+
+    /**
+     * The Constructor.
+     *
+     * @param outputFile the output file
+     * @param tableName  the full table name
+     * @param keys       the primary key columns
+     */
+    private PageCheckpoint(final File outputFile, final String tableName,
+        final String[] keys) {
+
+        this.file = new File(outputFile.getPath() + ".checkpoint");
+        this.directory = new File(outputFile.getPath() + ".pages");
+        this.tableName = tableName;
+        this.keys = keys;
+        this.pageCount = 0;
+        this.rowCount = 0;
+        this.lastKey = null;
+    }
+
+    /**
+     * Open the checkpoint of an output file. The pages of a previous export
+     * of the same table are kept, otherwise the export starts with the first
+     * page.
+     *
+     * @param outputFile the output file
+     * @param tableName  the full table name
+     * @param keys       the primary key columns
+     * @return the checkpoint
+     * @throws DataIOException the data IO exception
+     */
+    static PageCheckpoint open(final File outputFile, final String tableName,
+        final String[] keys) throws DataIOException {
+
+        final PageCheckpoint checkpoint =
+            new PageCheckpoint(outputFile, tableName, keys);
+        if (checkpoint.file.exists() && !checkpoint.read()) {
+            checkpoint.pageCount = 0;
+            checkpoint.rowCount = 0;
+            checkpoint.lastKey = null;
+        }
+        if (!checkpoint.directory.exists() && !checkpoint.directory.mkdir())
+            throw new DataIOException("failed to create directory '" +
+                checkpoint.directory.getPath() + "'");
+        return checkpoint;
+    }
+
+    /**
+     * Read the checkpoint file.
+     *
+     * @return true, if the checkpoint belongs to the same table and key
+     * @throws DataIOException the data IO exception
+     */
+    private boolean read() throws DataIOException {
+
+        final Properties properties = new Properties();
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            properties.load(in);
+        } catch (final IOException e) {
+            throw new DataIOException("failed to read checkpoint '" + file.getPath() +
+                "': " + e.getMessage());
+        } finally {
+            StreamUtil.closeInputStream(in);
+        }
+        if (!tableName.equals(properties.getProperty("table")) ||
+            !String.valueOf(keys.length).equals(properties.getProperty("keys")))
+            return false;
+        for (int i = 0; i < keys.length; i++)
+            if (!keys[i].equals(properties.getProperty("key." + (i + 1))))
+                return false;
+        try {
+            final int pages = Integer.parseInt(properties.getProperty("pages"));
+            final long rows = Long.parseLong(properties.getProperty("rows"));
+            final Object[] key = new Object[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                final String value = properties.getProperty("last." + (i + 1));
+                key[i] = value == null ? null : decodeKey(value);
+                if (key[i] == null)
+                    throw new NumberFormatException("invalid key value '" + value +
+                        "'");
+            }
+            pageCount = pages;
+            rowCount = rows;
+            lastKey = key;
+            return true;
+        } catch (final NumberFormatException e) {
+            throw new DataIOException("invalid checkpoint '" + file.getPath() + "': " +
+                e.getMessage());
+        }
+    }
+
+    /**
+     * Decode a key value; an integral number is bound as long, so the key
+     * column is compared with an integer parameter.
+     *
+     * @param value the encoded value ( see {@link WatermarkState#encode} )
+     * @return the value or null if the value is invalid
+     */
+    private static Object decodeKey(final String value) {
+
+        final Object res = WatermarkState.decode(value);
+        if (res instanceof BigDecimal) {
+            final BigDecimal number = (BigDecimal) res;
+            if (number.scale() <= 0 && number.compareTo(MIN_LONG) >= 0 &&
+                number.compareTo(MAX_LONG) <= 0)
+                return number.longValue();
+        }
+        return res;
+    }
+
+    /**
+     * Gets the number of pages read.
+     *
+     * @return the page count
+     */
+    int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Gets the number of rows read.
+     *
+     * @return the row count
+     */
+    long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Gets the key values of the last row read.
+     *
+     * @return the key values or null if no row has been read
+     */
+    Object[] getLastKey() {
+        return lastKey;
+    }
+
+    /**
+     * Gets the file of a page.
+     *
+     * @param page the page number, 1 based
+     * @return the file
+     */
+    private File getPageFile(final int page) {
+        return new File(directory, String.format("%06d.page", page));
+    }
+
+    /**
+     * Gets the next page.
+     *
+     * @return the page
+     */
+    RangeSpill nextPage() {
+        return RangeSpill.open(getPageFile(pageCount + 1));
+    }
+
+    /**
+     * Write the checkpoint after a page has been read.
+     *
+     * @param page    the page
+     * @param lastKey the key values of the last row of the page
+     * @throws DataIOException the data IO exception
+     */
+    void pageDone(final RangeSpill page, final Object[] lastKey)
+        throws DataIOException {
+
+        final Properties properties = new Properties();
+        properties.setProperty("table", tableName);
+        properties.setProperty("keys", String.valueOf(keys.length));
+        for (int i = 0; i < keys.length; i++) {
+            properties.setProperty("key." + (i + 1), keys[i]);
+            properties.setProperty("last." + (i + 1),
+                WatermarkState.encode(WatermarkState.normalize(lastKey[i])));
+        }
+        properties.setProperty("pages", String.valueOf(pageCount + 1));
+        properties.setProperty("rows", String.valueOf(rowCount + page.getRowCount()));
+
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(tmpFile));
+            properties.store(out, HEADER);
+            out.close();
+            out = null;
+            // a page is counted once its file is complete
+            if (file.exists() && !file.delete() || !tmpFile.renameTo(file))
+                throw new DataIOException("failed to write checkpoint '" +
+                    file.getPath() + "'");
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        } finally {
+            StreamUtil.closeOutputStream(out);
+        }
+        pageCount++;
+        rowCount += page.getRowCount();
+        this.lastKey = lastKey;
+    }
+
+    /**
+     * Write the rows of all pages.
+     *
+     * @param writer   the writer, opened
+     * @param metaData the meta data of the writer
+     * @return the row count
+     * @throws DataIOException the data IO exception
+     */
+    long copyTo(final DataWriter writer, final MetaData metaData)
+        throws DataIOException {
+
+        long rows = 0;
+        for (int page = 1; page <= pageCount; page++)
+            rows += RangeSpill.open(getPageFile(page)).copyTo(writer, metaData);
+        if (rows != rowCount)
+            throw new DataIOException("checkpoint '" + file.getPath() + "': " + rows +
+                " of " + rowCount + " row(s) read");
+        return rows;
+    }
+
+    /**
+     * Delete the checkpoint file and the pages.
+     */
+    void delete() {
+
+        final File[] pages = directory.listFiles();
+        if (pages != null)
+            for (final File page : pages)
+                FileUtil.delete(page);
+        FileUtil.delete(directory);
+        FileUtil.delete(file);
+    }
+}
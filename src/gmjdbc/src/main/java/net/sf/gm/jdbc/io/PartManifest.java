@@ -0,0 +1,258 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.jdbc.io;
+
+import net.sf.gm.core.io.DataIOException;
+import net.sf.gm.core.utils.StreamUtil;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Properties;
+
+//
+
+
+/**
+ * The Class PartManifest.
+ * <p>
+ * The list of the part files of a table exported with rolling output files.
+ * The manifest is written next to the part files, named like the output file
+ * with the extension <code>.manifest</code> appended, when all parts are
+ * complete. The part files are given relative to the manifest:
+ * <pre>
+ * table=SCOTT.EMP
+ * rows=2500000
+ * parts=3
+ * part.1=EMP.part001.csv
+ * part.1.rows=1000000
+ * ...
+ * </pre>
+ * The importers read a table from the parts of its manifest, if the input
+ * file of the table does not exist.
+ */
+class PartManifest {
+
+    /**
+     * The extension of a manifest file.
+     */
+    static final String EXTENSION = ".manifest";
+
+    /**
+     * The manifest file.
+     */
+    private final File file;
+
+    /**
+     * The full table name.
+     */
+    private final String tableName;
+
+    /**
+     * The names of the part files.
+     */
+    private final ArrayList<String> parts;
+
+    /**
+     * The row counts of the parts.
+     */
+    private final ArrayList<Long> rowCounts;
+
+    /**
+     * The Constructor.
+     *
+     * @param file      the manifest file
+     * @param tableName the full table name
+     */
+    PartManifest(final File file, final String tableName) {
+
+        this.file = file;
+        this.tableName = tableName;
+        this.parts = new ArrayList<String>();
+        this.rowCounts = new ArrayList<Long>();
+    }
+
+    /**
+     * Gets the manifest file of an output file.
+     *
+     * @param outputFile the output file
+     * @return the manifest file
+     */
+    static File getFile(final File outputFile) {
+        return new File(outputFile.getPath() + EXTENSION);
+    }
+
+    /**
+     * Read a manifest.
+     *
+     * @param file the manifest file
+     * @return the manifest
+     * @throws DataIOException if the manifest cannot be read, or is invalid
+     */
+    static PartManifest read(final File file) throws DataIOException {
+
+        final Properties properties = new Properties();
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            properties.load(in);
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        } finally {
+            StreamUtil.closeInputStream(in);
+        }
+        try {
+            final PartManifest manifest =
+                new PartManifest(file, properties.getProperty("table"));
+            final int count = Integer.parseInt(properties.getProperty("parts"));
+            for (int part = 1; part <= count; part++) {
+                final String name = properties.getProperty("part." + part);
+                if (name == null)
+                    throw new NumberFormatException("part " + part + " not found");
+                manifest.addPart(name,
+                    Long.parseLong(properties.getProperty("part." + part + ".rows")));
+            }
+            if (manifest.getRowCount() !=
+                Long.parseLong(properties.getProperty("rows")))
+                throw new NumberFormatException("row count does not match the parts");
+            return manifest;
+        } catch (final NumberFormatException e) {
+            throw new DataIOException("invalid manifest '" + file.getPath() + "': " +
+                e.getMessage());
+        }
+    }
+
+    /**
+     * Adds a part.
+     *
+     * @param partFile the part file
+     * @param rowCount the row count of the part
+     */
+    void addPart(final File partFile, final long rowCount) {
+        addPart(partFile.getName(), rowCount);
+    }
+
+    /**
+     * Adds a part.
+     *
+     * @param name     the name of the part file
+     * @param rowCount the row count of the part
+     */
+    private void addPart(final String name, final long rowCount) {
+
+        parts.add(name);
+        rowCounts.add(rowCount);
+    }
+
+    /**
+     * Gets the full table name.
+     *
+     * @return the full table name or null
+     */
+    String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Gets the part files.
+     *
+     * @return the part files, in the directory of the manifest
+     */
+    File[] getPartFiles() {
+
+        final File[] res = new File[parts.size()];
+        for (int i = 0; i < res.length; i++)
+            res[i] = new File(file.getParentFile(), parts.get(i));
+        return res;
+    }
+
+    /**
+     * Gets the number of rows of a part.
+     *
+     * @param part the index of the part
+     * @return the row count
+     */
+    long getRowCount(final int part) {
+        return rowCounts.get(part);
+    }
+
+    /**
+     * Gets the number of rows of all parts.
+     *
+     * @return the row count
+     */
+    long getRowCount() {
+
+        long res = 0;
+        for (final Long rows : rowCounts)
+            res += rows;
+        return res;
+    }
+
+    /**
+     * Write the manifest; the previous file is replaced when the new one is
+     * complete. The entries are written in the order of the parts, in the
+     * format of {@link Properties#load(InputStream)}.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    void write() throws DataIOException {
+
+        final StringBuilder text = new StringBuilder();
+        text.append("# jdbmigr part manifest\n");
+        if (tableName != null)
+            appendEntry(text, "table", tableName);
+        appendEntry(text, "rows", String.valueOf(getRowCount()));
+        appendEntry(text, "parts", String.valueOf(parts.size()));
+        for (int i = 0; i < parts.size(); i++) {
+            appendEntry(text, "part." + (i + 1), parts.get(i));
+            appendEntry(text, "part." + (i + 1) + ".rows",
+                String.valueOf(rowCounts.get(i)));
+        }
+
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(tmpFile));
+            out.write(text.toString().getBytes("ISO-8859-1"));
+            out.close();
+            out = null;
+            if (file.exists() && !file.delete() || !tmpFile.renameTo(file))
+                throw new DataIOException("failed to write manifest '" +
+                    file.getPath() + "'");
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        } finally {
+            StreamUtil.closeOutputStream(out);
+        }
+    }
+
+    /**
+     * Append an entry, escaped like {@link Properties#store(OutputStream, String)}.
+     *
+     * @param text  the text
+     * @param key   the key
+     * @param value the value
+     */
+    private static void appendEntry(final StringBuilder text, final String key,
+        final String value) {
+
+        text.append(key);
+        text.append('=');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '\\' || c == '=' || c == ':' || c == '#' || c == '!' ||
+                c == ' ' && i == 0)
+                text.append('\\').append(c);
+            else if (c < 0x20 || c > 0x7e)
+                text.append(String.format("\\u%04x", (int) c));
+            else
+                text.append(c);
+        }
+        text.append('\n');
+    }
+}
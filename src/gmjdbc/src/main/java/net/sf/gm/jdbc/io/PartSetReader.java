@@ -0,0 +1,726 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.jdbc.io;
+
+import net.sf.gm.core.io.DataIOException;
+import net.sf.gm.core.io.DataReader;
+import net.sf.gm.core.io.DataReaderAbstract;
+import net.sf.gm.core.io.DataReaderFactory;
+import net.sf.gm.core.io.DataRow;
+import net.sf.gm.core.io.DataRowReader;
+import net.sf.gm.core.io.DataTypes.rowType;
+import net.sf.gm.core.io.MetaData;
+import net.sf.gm.core.ui.Progress;
+import net.sf.gm.core.utils.ReadAheadGzipInputStream;
+import net.sf.gm.core.utils.StreamUtil;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//
+
+
+/**
+ * The Class PartSetReader.
+ * <p>
+ * Reads the part files of a manifest ( see {@link PartManifest} ) as one
+ * table. The meta data is read from the first part; the column count of each
+ * part must match, and the row count of each part must match the manifest.
+ * With one part reader the parts are read in sequence on the calling thread.
+ * With more part readers, each reader thread parses the next unread part into
+ * reusable {@link DataRow} buffers, handed over to the calling thread; the
+ * rows of different parts are then read in any order.
+ */
+class PartSetReader extends DataReaderAbstract implements DataReader {
+
+    /**
+     * The number of rows of a buffer.
+     */
+    private static final int BUFFER_ROWS = 64;
+
+    /**
+     * The number of buffers of each reader thread.
+     */
+    private static final int BUFFERS_PER_THREAD = 4;
+
+    /**
+     * The Constant END_OF_DATA, queued by a reader thread when no part is
+     * left.
+     */
+    private static final RowBuffer END_OF_DATA = new RowBuffer(0);
+
+    /**
+     * The reader factory.
+     */
+    private final DataReaderFactory factory;
+
+    /**
+     * The manifest.
+     */
+    private final PartManifest manifest;
+
+    /**
+     * The part files.
+     */
+    private final File[] partFiles;
+
+    /**
+     * The number of reader threads ( 0: read on the calling thread ).
+     */
+    private final int threadCount;
+
+    /**
+     * The meta data of the first part.
+     */
+    private MetaData metaData;
+
+    /**
+     * The column types, taken when the first row is read.
+     */
+    private int[] columnTypes;
+
+    /**
+     * The reader of the current row.
+     */
+    private DataReader current;
+
+    /**
+     * The reader of the first part, until it is read.
+     */
+    private DataReader firstReader;
+
+    /**
+     * The index of the part read on the calling thread.
+     */
+    private int partIndex;
+
+    /**
+     * The row count of the part read on the calling thread.
+     */
+    private long partRows;
+
+    /**
+     * The index of the next part to read by a reader thread.
+     */
+    private AtomicInteger nextPart;
+
+    /**
+     * The queue of the filled buffers.
+     */
+    private BlockingQueue<RowBuffer> fullQueue;
+
+    /**
+     * The queue of the free buffers.
+     */
+    private BlockingQueue<RowBuffer> freeQueue;
+
+    /**
+     * The reader threads.
+     */
+    private Thread[] threads;
+
+    /**
+     * The number of reader threads ended.
+     */
+    private int endedCount;
+
+    /**
+     * The buffer read on the calling thread or null.
+     */
+    private RowBuffer buffer;
+
+    /**
+     * The reader of the buffered rows.
+     */
+    private DataRowReader rowReader;
+
+    /**
+     * The aborted flag, set if the reading is closed before all rows are
+     * read.
+     */
+    private volatile boolean aborted;
+
+    /**
+     * The failure of a reader thread.
+     */
+    private volatile Throwable failure;
+
+    /**
+     * The row read count.
+     */
+    private long allRowCount;
+
+    /**
+     * The Constructor.
+     *
+     * @param progress    the progress
+     * @param factory     the reader factory of the parts
+     * @param manifest    the manifest
+     * @param partReaders the max number of parts read in parallel
+     */
+    PartSetReader(final Progress progress, final DataReaderFactory factory,
+        final PartManifest manifest, final int partReaders) {
+
+        super(progress);
+        this.factory = factory;
+        this.manifest = manifest;
+        this.partFiles = manifest.getPartFiles();
+        this.threadCount = partReaders > 1 && partFiles.length > 1
+            ? Math.min(partReaders, partFiles.length)
+            : 0;
+    }
+
+    /**
+     * Open the reader of a part; the meta data of the first part opened is
+     * the meta data of the part set.
+     *
+     * @param part the index of the part
+     * @return the reader
+     * @throws DataIOException the data IO exception
+     */
+    private DataReader openPart(final int part) throws DataIOException {
+
+        final InputStream inputStream;
+        try {
+            inputStream = ReadAheadGzipInputStream.open(
+                new BufferedInputStream(new FileInputStream(partFiles[part])));
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        }
+        try {
+            final DataReader reader = factory.getInstance(inputStream, getProgress());
+            final MetaData partMetaData = reader.openDataReading();
+            reader.setRequestedColumns(getRequestedColumns());
+            if (metaData == null)
+                metaData = partMetaData;
+            else if (partMetaData.getColumnCount() != metaData.getColumnCount())
+                throw new DataIOException("part '" + partFiles[part].getName() +
+                    "': " + partMetaData.getColumnCount() + " column(s), expected " +
+                    metaData.getColumnCount());
+            return reader;
+        } catch (final DataIOException e) {
+            StreamUtil.closeInputStream(inputStream);
+            throw e;
+        }
+    }
+
+    /**
+     * Close the reader of a part, and check its row count.
+     *
+     * @param part   the index of the part
+     * @param reader the reader
+     * @param rows   the number of rows read
+     * @throws DataIOException the data IO exception
+     */
+    private void closePart(final int part, final DataReader reader,
+        final long rows) throws DataIOException {
+
+        reader.closeDataReading();
+        if (rows != manifest.getRowCount(part))
+            throw new DataIOException("part '" + partFiles[part].getName() +
+                "': row(s) read:" + rows + " expected:" + manifest.getRowCount(part));
+    }
+
+    /**
+     * Open data reading. The meta data is read from the first part.
+     *
+     * @return the meta data
+     * @throws DataIOException the data IO exception
+     */
+    public MetaData openDataReading() throws DataIOException {
+
+        if (partFiles.length == 0)
+            throw new DataIOException("no part files");
+        metaData = null;
+        columnTypes = null;
+        aborted = false;
+        failure = null;
+        allRowCount = 0;
+        firstReader = openPart(0);
+        current = firstReader;
+        partIndex = 0;
+        partRows = 0;
+        return metaData;
+    }
+
+    /**
+     * Sets the requested columns; the parts opened later take them over.
+     *
+     * @param requested the requested flag of each column or null for all
+     *                  columns
+     */
+    @Override
+    public void setRequestedColumns(final boolean[] requested) {
+
+        super.setRequestedColumns(requested);
+        if (firstReader != null)
+            firstReader.setRequestedColumns(requested);
+    }
+
+    /**
+     * Start the reader threads. The column types are taken when the first row
+     * is read, after the writer may have resolved unknown column types.
+     */
+    private void startThreads() {
+
+        final int colCount = metaData.getColumnCount();
+        columnTypes = new int[colCount];
+        for (int idx = 1; idx <= colCount; idx++)
+            columnTypes[idx - 1] = metaData.getColumnType(idx);
+
+        final int bufferCount = threadCount * BUFFERS_PER_THREAD;
+        fullQueue = new ArrayBlockingQueue<RowBuffer>(bufferCount + threadCount);
+        freeQueue = new ArrayBlockingQueue<RowBuffer>(bufferCount);
+        for (int i = 0; i < bufferCount; i++)
+            freeQueue.add(new RowBuffer(BUFFER_ROWS));
+        rowReader = new DataRowReader(metaData);
+        rowReader.openDataReading();
+        current = rowReader;
+        nextPart = new AtomicInteger(0);
+        endedCount = 0;
+        buffer = null;
+        threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread(new PartTask(), "part-reader-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Read next row.
+     *
+     * @return true, if a row has been read
+     * @throws DataIOException the data IO exception
+     */
+    public boolean readNextRow() throws DataIOException {
+
+        if (threadCount == 0)
+            return readNextPartRow();
+        if (threads == null)
+            startThreads();
+        while (!rowReader.readNextRow()) {
+            if (buffer != null) {
+                buffer.size = 0;
+                freeQueue.add(buffer);
+                buffer = null;
+            }
+            if (endedCount == threadCount) {
+                checkFailure();
+                return false;
+            }
+            final RowBuffer next;
+            try {
+                next = fullQueue.take();
+            } catch (final InterruptedException e) {
+                throw new DataIOException(e);
+            }
+            if (next == END_OF_DATA) {
+                endedCount++;
+                checkFailure();
+                continue;
+            }
+            buffer = next;
+            rowReader.setRows(buffer.rows, buffer.size);
+        }
+        allRowCount++;
+        return true;
+    }
+
+    /**
+     * Read the next row of the parts in sequence, on the calling thread.
+     *
+     * @return true, if a row has been read
+     * @throws DataIOException the data IO exception
+     */
+    private boolean readNextPartRow() throws DataIOException {
+
+        while (current != null) {
+            if (current.readNextRow()) {
+                partRows++;
+                allRowCount++;
+                return true;
+            }
+            final DataReader reader = current;
+            current = null;
+            firstReader = null;
+            closePart(partIndex, reader, partRows);
+            if (++partIndex < partFiles.length) {
+                current = openPart(partIndex);
+                partRows = 0;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check the failure of a reader thread.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    private void checkFailure() throws DataIOException {
+
+        final Throwable t = failure;
+        if (t == null)
+            return;
+        if (t instanceof DataIOException)
+            throw (DataIOException) t;
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        throw new DataIOException(t);
+    }
+
+    /**
+     * Close data reading. The reader threads are stopped, and the row count is
+     * checked against the manifest.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    public void closeDataReading() throws DataIOException {
+
+        final boolean complete = threadCount == 0
+            ? current == null
+            : threads != null && endedCount == threadCount;
+        aborted = true;
+        if (threads != null) {
+            fullQueue.clear();
+            for (final Thread thread : threads)
+                join(thread);
+            threads = null;
+        }
+        if (threadCount == 0 && current != null)
+            current.closeDataReading();
+        else if (firstReader != null)
+            firstReader.closeDataReading();
+        current = null;
+        firstReader = null;
+        buffer = null;
+        rowReader = null;
+        checkFailure();
+        if (complete && allRowCount != manifest.getRowCount())
+            throw new DataIOException("row(s) read:" + allRowCount + " expected:" +
+                manifest.getRowCount());
+    }
+
+    /**
+     * Join a reader thread.
+     *
+     * @param thread the thread
+     */
+    private static void join(final Thread thread) {
+
+        try {
+            thread.join();
+        } catch (final InterruptedException ignore) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the current row type.
+     *
+     * @return the current row type
+     */
+    public rowType getCurrentRowType() {
+        return current.getCurrentRowType();
+    }
+
+    /**
+     * Was column value null.
+     *
+     * @return true, if was column value null
+     * @throws DataIOException the data IO exception
+     */
+    public boolean wasColumnValueNull() throws DataIOException {
+        return current.wasColumnValueNull();
+    }
+
+    /**
+     * Gets the column value string.
+     *
+     * @param idx the idx
+     * @return the column value string
+     * @throws DataIOException the data IO exception
+     */
+    public String getColumnValueString(final int idx) throws DataIOException {
+        return current.getColumnValueString(idx);
+    }
+
+    /**
+     * Gets the column value boolean.
+     *
+     * @param idx the idx
+     * @return the column value boolean
+     * @throws DataIOException the data IO exception
+     */
+    public boolean getColumnValueBoolean(final int idx) throws DataIOException {
+        return current.getColumnValueBoolean(idx);
+    }
+
+    /**
+     * Gets the column value short.
+     *
+     * @param idx the idx
+     * @return the column value short
+     * @throws DataIOException the data IO exception
+     */
+    public short getColumnValueShort(final int idx) throws DataIOException {
+        return current.getColumnValueShort(idx);
+    }
+
+    /**
+     * Gets the column value int.
+     *
+     * @param idx the idx
+     * @return the column value int
+     * @throws DataIOException the data IO exception
+     */
+    public int getColumnValueInt(final int idx) throws DataIOException {
+        return current.getColumnValueInt(idx);
+    }
+
+    /**
+     * Gets the column value long.
+     *
+     * @param idx the idx
+     * @return the column value long
+     * @throws DataIOException the data IO exception
+     */
+    public long getColumnValueLong(final int idx) throws DataIOException {
+        return current.getColumnValueLong(idx);
+    }
+
+    /**
+     * Gets the column value double.
+     *
+     * @param idx the idx
+     * @return the column value double
+     * @throws DataIOException the data IO exception
+     */
+    public double getColumnValueDouble(final int idx) throws DataIOException {
+        return current.getColumnValueDouble(idx);
+    }
+
+    /**
+     * Gets the column value big decimal.
+     *
+     * @param idx the idx
+     * @return the column value big decimal
+     * @throws DataIOException the data IO exception
+     */
+    public BigDecimal getColumnValueBigDecimal(final int idx)
+        throws DataIOException {
+        return current.getColumnValueBigDecimal(idx);
+    }
+
+    /**
+     * Gets the column value date.
+     *
+     * @param idx the idx
+     * @return the column value date
+     * @throws DataIOException the data IO exception
+     */
+    public Date getColumnValueDate(final int idx) throws DataIOException {
+        return current.getColumnValueDate(idx);
+    }
+
+    /**
+     * Gets the column value time.
+     *
+     * @param idx the idx
+     * @return the column value time
+     * @throws DataIOException the data IO exception
+     */
+    public Time getColumnValueTime(final int idx) throws DataIOException {
+        return current.getColumnValueTime(idx);
+    }
+
+    /**
+     * Gets the column value timestamp.
+     *
+     * @param idx the idx
+     * @return the column value timestamp
+     * @throws DataIOException the data IO exception
+     */
+    public Timestamp getColumnValueTimestamp(final int idx)
+        throws DataIOException {
+        return current.getColumnValueTimestamp(idx);
+    }
+
+    /**
+     * Gets the column value bytes.
+     *
+     * @param idx the idx
+     * @return the column value bytes
+     * @throws DataIOException the data IO exception
+     */
+    public byte[] getColumnValueBytes(final int idx) throws DataIOException {
+        return current.getColumnValueBytes(idx);
+    }
+
+    /**
+     * Gets the column value binary stream.
+     *
+     * @param idx the idx
+     * @return the column value binary stream
+     * @throws DataIOException the data IO exception
+     */
+    public InputStream getColumnValueBinaryStream(final int idx)
+        throws DataIOException {
+        return current.getColumnValueBinaryStream(idx);
+    }
+
+    /**
+     * Gets the column value character stream.
+     *
+     * @param idx the idx
+     * @return the column value character stream
+     * @throws DataIOException the data IO exception
+     */
+    public Reader getColumnValueCharacterStream(final int idx)
+        throws DataIOException {
+        return current.getColumnValueCharacterStream(idx);
+    }
+
+    /**
+     * Checks if is update column.
+     *
+     * @param idx the idx
+     * @return true if the current row type is UPDATE and the specified column
+     * should be updated
+     */
+    public boolean isUpdateColumn(final int idx) {
+        return current.isUpdateColumn(idx);
+    }
+
+    /**
+     * Gets the row read count.
+     *
+     * @return row count ( all rows of all parts )
+     */
+    public long getAllRowCount() {
+        return allRowCount;
+    }
+
+    /**
+     * The Class RowBuffer.
+     */
+    private static class RowBuffer {
+
+        /**
+         * The rows.
+         */
+        final DataRow[] rows;
+
+        /**
+         * The size.
+         */
+        int size;
+
+        /**
+         * The Constructor.
+         *
+         * @param capacity the capacity
+         */
+        RowBuffer(final int capacity) {
+
+            rows = new DataRow[capacity];
+            size = 0;
+        }
+    }
+
+    /**
+     * The Class PartTask.
+     * <p>
+     * Reads the next unread part until no part is left; the first part is
+     * read using the reader opened for the meta data.
+     */
+    private class PartTask implements Runnable {
+
+        /**
+         * Run.
+         */
+        public void run() {
+
+            DataReader reader = null;
+            try {
+                int part;
+                while (!aborted && (part = nextPart.getAndIncrement()) < partFiles.length) {
+                    reader = part == 0 ? firstReader : openPart(part);
+                    long rows = 0;
+                    RowBuffer filled = null;
+                    while (!aborted) {
+                        if (filled == null) {
+                            filled = freeQueue.poll(100, TimeUnit.MILLISECONDS);
+                            continue;
+                        }
+                        if (!reader.readNextRow())
+                            break;
+                        DataRow row = filled.rows[filled.size];
+                        if (row == null)
+                            row = filled.rows[filled.size] = new DataRow(columnTypes.length);
+                        row.readRow(reader, columnTypes, getRequestedColumns());
+                        rows++;
+                        if (++filled.size == filled.rows.length) {
+                            put(filled);
+                            filled = null;
+                        }
+                    }
+                    if (filled != null) {
+                        if (filled.size > 0)
+                            put(filled);
+                        else
+                            freeQueue.add(filled);
+                    }
+                    if (aborted)
+                        break;
+                    final DataReader partReader = reader;
+                    reader = null;
+                    if (part == 0)
+                        firstReader = null;
+                    closePart(part, partReader, rows);
+                }
+            } catch (final InterruptedException ignore) {
+                // aborted
+            } catch (final Throwable t) {
+                failure = t;
+                aborted = true;
+            } finally {
+                if (reader != null && reader != firstReader)
+                    try {
+                        reader.closeDataReading();
+                    } catch (final DataIOException ignore) {
+                        // failed already
+                    }
+                // the queue has room for the end of each thread
+                fullQueue.add(END_OF_DATA);
+            }
+        }
+
+        /**
+         * Put a buffer into the queue of the filled buffers.
+         *
+         * @param filled the buffer
+         * @throws InterruptedException the interrupted exception
+         */
+        private void put(final RowBuffer filled) throws InterruptedException {
+
+            while (!aborted) {
+                if (fullQueue.offer(filled, 100, TimeUnit.MILLISECONDS))
+                    return;
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.jdbc.io;
+
+import net.sf.gm.core.io.DataIOException;
+import net.sf.gm.core.io.DataReader;
+import net.sf.gm.core.io.DataRow;
+import net.sf.gm.core.io.DataRowReader;
+import net.sf.gm.core.io.DataTypes.rowType;
+import net.sf.gm.core.io.DataWriter;
+import net.sf.gm.core.io.MetaData;
+import net.sf.gm.core.utils.FileUtil;
+import net.sf.gm.core.utils.StreamUtil;
+
+import java.io.*;
+
+//
+
+
+/**
+ * The Class RangeSpill.
+ * <p>
+ * A temporary file holding the rows of a range, read on its own connection
+ * while the preceding ranges are written to the output. The values of a row
+ * are stored as serialized objects, so any output format can be written from
+ * the file later on. The pages of a keyset export are kept in the same
+ * format ( see {@link PageCheckpoint} ).
+ */
+class RangeSpill {
+
+    /**
+     * The number of rows written between two resets of the object stream.
+     */
+    private static final int RESET_INTERVAL = 1000;
+
+    /**
+     * The file.
+     */
+    private final File file;
+
+    /**
+     * The row count ( -1: unknown ).
+     */
+    private long rowCount;
+
+    /**
+     * The last row written or null.
+     */
+    private DataRow lastRow;
+
+    /**
+     * The finished flag.
+     */
+    private boolean finished;
+
+    /**
+     * The failure of the reading thread.
+     */
+    private Throwable failure;
+
+    /**
+     * The aborted flag.
+     */
+    private volatile boolean aborted;
+
+    /**
+     * The Constructor.
+     *
+     * @param directory the directory of the temporary file
+     * @throws DataIOException the data IO exception
+     */
+    RangeSpill(final File directory) throws DataIOException {
+
+        try {
+            file = File.createTempFile(".exp", ".part", directory);
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        }
+    }
+
+    /**
+     * The Constructor.
+     *
+     * @param file     the file
+     * @param finished the finished flag
+     */
+    private RangeSpill(final File file, final boolean finished) {
+
+        this.file = file;
+        this.rowCount = -1;
+        this.finished = finished;
+    }
+
+    /**
+     * Gets a spill using a given file, which is not read by another thread.
+     *
+     * @param file the file
+     * @return the spill
+     */
+    static RangeSpill open(final File file) {
+        return new RangeSpill(file, true);
+    }
+
+    /**
+     * Write all rows of a reader to the file.
+     *
+     * @param reader the reader, started but not yet opened
+     * @throws DataIOException the data IO exception
+     */
+    void write(final DataReader reader) throws DataIOException {
+
+        ObjectOutputStream out = null;
+        try {
+            out = new ObjectOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+            final MetaData metaData = reader.openDataReading();
+            final int colCount = metaData.getColumnCount();
+            final int[] columnTypes = new int[colCount];
+            for (int idx = 1; idx <= colCount; idx++)
+                columnTypes[idx - 1] = metaData.getColumnType(idx);
+            final DataRow row = new DataRow(colCount);
+            long count = 0;
+            while (!aborted && reader.readNextRow()) {
+                row.readRow(reader, columnTypes);
+                out.writeBoolean(true);
+                for (int idx = 1; idx <= colCount; idx++)
+                    out.writeObject(row.getValue(idx));
+                // the stream keeps a reference to each written object until reset
+                if (++count % RESET_INTERVAL == 0)
+                    out.reset();
+            }
+            out.writeBoolean(false);
+            reader.closeDataReading();
+            rowCount = count;
+            lastRow = count > 0 ? row : null;
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        } finally {
+            StreamUtil.closeOutputStream(out);
+        }
+    }
+
+    /**
+     * Gets the number of rows written.
+     *
+     * @return the row count ( -1: unknown )
+     */
+    long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Gets the last row written.
+     *
+     * @return the row or null if no row has been written
+     */
+    DataRow getLastRow() {
+        return lastRow;
+    }
+
+    /**
+     * Mark the range as finished.
+     *
+     * @param failure the failure or null
+     */
+    synchronized void finished(final Throwable failure) {
+
+        this.failure = failure;
+        finished = true;
+        notifyAll();
+    }
+
+    /**
+     * Stop writing the file.
+     */
+    void abort() {
+        aborted = true;
+    }
+
+    /**
+     * Wait until the range is finished, and write its rows.
+     *
+     * @param writer   the writer, opened
+     * @param metaData the meta data of the writer
+     * @return the row count
+     * @throws DataIOException the data IO exception
+     */
+    long copyTo(final DataWriter writer, final MetaData metaData)
+        throws DataIOException {
+
+        waitFinished();
+        final int colCount = metaData.getColumnCount();
+        final DataRowReader rowReader = new DataRowReader(metaData);
+        final DataRow row = new DataRow(colCount);
+        ObjectInputStream in = null;
+        try {
+            in = new ObjectInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+            long count = 0;
+            while (in.readBoolean()) {
+                // the rows of an unloader are always current rows
+                row.reset(rowType.CURRENT);
+                for (int idx = 1; idx <= colCount; idx++)
+                    row.setValue(idx, in.readObject());
+                rowReader.setCurrentRow(row);
+                writer.startRowWriting(row.getRowType());
+                for (int idx = 1; idx <= colCount; idx++)
+                    writer.setColumnValue(idx, rowReader);
+                writer.endRowWriting();
+                count++;
+            }
+            if (rowCount >= 0 && count != rowCount)
+                throw new DataIOException("range file '" + file.getPath() + "': " +
+                    count + " of " + rowCount + " row(s) read");
+            return count;
+        } catch (final ClassNotFoundException e) {
+            throw new DataIOException(e);
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        } finally {
+            StreamUtil.closeInputStream(in);
+        }
+    }
+
+    /**
+     * Wait until the range is finished.
+     *
+     * @throws DataIOException the failure of the range
+     */
+    private synchronized void waitFinished() throws DataIOException {
+
+        try {
+            while (!finished)
+                wait();
+        } catch (final InterruptedException e) {
+            throw new DataIOException(e);
+        }
+        if (failure instanceof DataIOException)
+            throw (DataIOException) failure;
+        if (failure != null)
+            throw new DataIOException(failure);
+    }
+
+    /**
+     * Delete the file.
+     */
+    void delete() {
+        FileUtil.delete(file);
+    }
+}
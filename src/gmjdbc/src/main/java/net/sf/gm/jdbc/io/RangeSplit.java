@@ -0,0 +1,291 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.jdbc.io;
+
+import net.sf.gm.jdbc.common.SqlUtil;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.sql.*;
+import java.util.ArrayList;
+
+//
+
+
+/**
+ * The Class RangeSplit.
+ * <p>
+ * Splits the rows of a table into ranges of a numeric, date or timestamp
+ * column, so the ranges can be read on several connections at the same time.
+ * The range boundaries are evenly spaced between the min and max value of the
+ * column; the last range also contains the rows having a null value.
+ */
+class RangeSplit {
+
+    /**
+     * The column.
+     */
+    private final String column;
+
+    /**
+     * The select list.
+     */
+    private final String selectList;
+
+    /**
+     * The full table name.
+     */
+    private final String tableName;
+
+    /**
+     * The where clause of the table or null.
+     */
+    private final String whereClause;
+
+    /**
+     * The range predicates.
+     */
+    private final String[] predicates;
+
+    /**
+     * The Constructor.
+     *
+     * @param column     the column
+     * @param table      the table
+     * @param selectList the select list
+     * @param predicates the range predicates
+     */
+    private RangeSplit(final String column, final TableDef table,
+        final String selectList, final String[] predicates) {
+
+        this.column = column;
+        this.selectList = selectList;
+        this.tableName = table.getFullTableName();
+        this.whereClause = table.getWhereClause();
+        this.predicates = predicates;
+    }
+
+    /**
+     * Split a table into ranges.
+     *
+     * @param con         the connection
+     * @param table       the table
+     * @param selectList  the select list of the exported columns
+     * @param splitColumn the column or null for the first primary key column
+     * @param parts       the max number of ranges
+     * @return the split or null if the table has no suitable column or the
+     * column has less than two distinct values
+     * @throws SQLException the SQL exception
+     */
+    static RangeSplit create(final Connection con, final TableDef table,
+        final String selectList, final String splitColumn, final int parts)
+        throws SQLException {
+
+        String column = splitColumn;
+        if (column == null) {
+            final String[] keys = table.getPrimaryKeys(con);
+            if (keys == null || keys.length == 0)
+                return null;
+            column = keys[0];
+        }
+        final int type = getColumnType(con, table, column);
+        if (!isNumeric(type) && !isTemporal(type))
+            return null;
+
+        final String[] boundaries;
+        final Statement stmt = con.createStatement();
+        ResultSet rs = null;
+        try {
+            rs = stmt.executeQuery("select min(" + column + "), max(" + column +
+                ")" + getFromClause(table.getFullTableName(), table.getWhereClause()));
+            if (!rs.next())
+                return null;
+            if (isTemporal(type)) {
+                final Timestamp min = rs.getTimestamp(1);
+                final Timestamp max = rs.getTimestamp(2);
+                if (min == null || max == null)
+                    return null;
+                boundaries = getBoundaries(min.getTime(), max.getTime(), parts);
+            } else {
+                final BigDecimal min = rs.getBigDecimal(1);
+                final BigDecimal max = rs.getBigDecimal(2);
+                if (min == null || max == null)
+                    return null;
+                boundaries = getBoundaries(min, max, parts, isInteger(type));
+            }
+        } finally {
+            SqlUtil.closeResultSet(rs);
+            SqlUtil.closeStatement(stmt);
+        }
+        if (boundaries.length == 0)
+            return null;
+
+        final String[] predicates = new String[boundaries.length + 1];
+        predicates[0] = column + " < " + boundaries[0];
+        for (int i = 1; i < boundaries.length; i++)
+            predicates[i] = column + " >= " + boundaries[i - 1] + " and " +
+                column + " < " + boundaries[i];
+        predicates[boundaries.length] = "( " + column + " >= " +
+            boundaries[boundaries.length - 1] + " or " + column + " is null )";
+        return new RangeSplit(column, table, selectList, predicates);
+    }
+
+    /**
+     * Gets the from clause selecting the rows of the table.
+     *
+     * @param tableName   the full table name
+     * @param whereClause the where clause of the table or null
+     * @return the from clause
+     */
+    static String getFromClause(final String tableName,
+        final String whereClause) {
+
+        if (whereClause == null)
+            return " from " + tableName;
+        // the where clause is given as it is, so the table is wrapped
+        return " from ( select * from " + tableName + " " + whereClause + " ) s";
+    }
+
+    /**
+     * Gets the sql type of a column.
+     *
+     * @param con    the connection
+     * @param table  the table
+     * @param column the column
+     * @return the type or Types.OTHER if the column is not found
+     */
+    private static int getColumnType(final Connection con, final TableDef table,
+        final String column) {
+
+        final String[] names = table.getColumnNames(con);
+        final int[] types = table.getColumnTypes(con);
+        if (names == null || types == null)
+            return Types.OTHER;
+        for (int i = 0; i < names.length; i++)
+            if (names[i].equalsIgnoreCase(column))
+                return types[i];
+        return Types.OTHER;
+    }
+
+    /**
+     * Checks if a type is an integer type.
+     *
+     * @param type the type
+     * @return true, if integer
+     */
+    private static boolean isInteger(final int type) {
+
+        return type == Types.TINYINT || type == Types.SMALLINT ||
+            type == Types.INTEGER || type == Types.BIGINT;
+    }
+
+    /**
+     * Checks if a type is numeric.
+     *
+     * @param type the type
+     * @return true, if numeric
+     */
+    private static boolean isNumeric(final int type) {
+
+        return isInteger(type) || type == Types.NUMERIC || type == Types.DECIMAL ||
+            type == Types.REAL || type == Types.FLOAT || type == Types.DOUBLE;
+    }
+
+    /**
+     * Checks if a type is a date or timestamp type.
+     *
+     * @param type the type
+     * @return true, if date or timestamp
+     */
+    private static boolean isTemporal(final int type) {
+        return type == Types.DATE || type == Types.TIMESTAMP;
+    }
+
+    /**
+     * Gets the boundaries of evenly spaced numeric ranges.
+     *
+     * @param min     the min value
+     * @param max     the max value
+     * @param parts   the max number of ranges
+     * @param integer round the boundaries to integers
+     * @return the inner boundaries as sql literals
+     */
+    private static String[] getBoundaries(final BigDecimal min,
+        final BigDecimal max, final int parts, final boolean integer) {
+
+        final ArrayList<String> res = new ArrayList<String>(parts);
+        final BigDecimal width = max.subtract(min);
+        BigDecimal last = min;
+        for (int i = 1; i < parts; i++) {
+            BigDecimal boundary = min.add(width.multiply(BigDecimal.valueOf(i))
+                .divide(BigDecimal.valueOf(parts), MathContext.DECIMAL64));
+            if (integer)
+                boundary = boundary.setScale(0, RoundingMode.CEILING);
+            // skip empty ranges
+            if (boundary.compareTo(last) <= 0 || boundary.compareTo(max) > 0)
+                continue;
+            res.add(boundary.toPlainString());
+            last = boundary;
+        }
+        return res.toArray(new String[0]);
+    }
+
+    /**
+     * Gets the boundaries of evenly spaced timestamp ranges.
+     *
+     * @param min   the min value in milliseconds
+     * @param max   the max value in milliseconds
+     * @param parts the max number of ranges
+     * @return the inner boundaries as sql literals
+     */
+    private static String[] getBoundaries(final long min, final long max,
+        final int parts) {
+
+        final ArrayList<String> res = new ArrayList<String>(parts);
+        long last = min;
+        for (int i = 1; i < parts; i++) {
+            final long boundary = min + (long) ((double) (max - min) * i / parts);
+            if (boundary <= last || boundary > max)
+                continue;
+            // jdbc escape syntax, translated by the driver
+            res.add("{ts '" + new Timestamp(boundary) + "'}");
+            last = boundary;
+        }
+        return res.toArray(new String[0]);
+    }
+
+    /**
+     * Gets the column.
+     *
+     * @return the column
+     */
+    String getColumn() {
+        return column;
+    }
+
+    /**
+     * Gets the number of ranges.
+     *
+     * @return the range count
+     */
+    int getRangeCount() {
+        return predicates.length;
+    }
+
+    /**
+     * Gets the statement selecting the rows of a range.
+     *
+     * @param range the index of the range
+     * @return the statement
+     */
+    String getStatementText(final int range) {
+        return "select " + selectList + getFromClause(tableName, whereClause) +
+            " where " + predicates[range];
+    }
+}
@@ -0,0 +1,424 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.jdbc.io;
+
+import net.sf.gm.core.io.DataIOException;
+import net.sf.gm.core.io.DataReader;
+import net.sf.gm.core.io.DataTypes.rowType;
+import net.sf.gm.core.io.DataWriter;
+import net.sf.gm.core.io.DataWriterAbstract;
+import net.sf.gm.core.io.DataWriterFactory;
+import net.sf.gm.core.io.MetaData;
+import net.sf.gm.core.ui.Progress;
+import net.sf.gm.core.utils.FileUtil;
+import net.sf.gm.core.utils.StreamUtil;
+
+import java.io.*;
+import java.util.ArrayList;
+
+//
+
+
+/**
+ * The Class RollingWriter.
+ * <p>
+ * Writes the rows of a table to part files of a bounded size: a new part is
+ * started after the given number of rows, or when the given number of bytes
+ * has been written to the current part ( checked at the row boundaries, so a
+ * part may exceed the size by the buffered output and one row ). Each part is
+ * self-contained, written by its own writer including the header or meta
+ * data. The parts are kept in temporary files until {@link #commit}, which
+ * renames them to the part files and lists them in a manifest ( see
+ * {@link PartManifest} ), so a failed export leaves the files of a previous
+ * export.
+ */
+class RollingWriter extends DataWriterAbstract implements DataWriter {
+
+    /**
+     * The output file, the parts are named after.
+     */
+    private final File outputFile;
+
+    /**
+     * The writer factory.
+     */
+    private final DataWriterFactory factory;
+
+    /**
+     * The max number of rows of a part ( 0: no limit ).
+     */
+    private final long maxRows;
+
+    /**
+     * The max number of bytes of a part ( 0: no limit ).
+     */
+    private final long maxBytes;
+
+    /**
+     * The number of threads compressing each part ( 0: no compression ).
+     */
+    private final int compressThreads;
+
+    /**
+     * The manifest.
+     */
+    private final PartManifest manifest;
+
+    /**
+     * The meta data.
+     */
+    private MetaData metaData;
+
+    /**
+     * The writer of the current part or null.
+     */
+    private DataWriter writer;
+
+    /**
+     * The output stream of the current part or null.
+     */
+    private OutputStream outputStream;
+
+    /**
+     * The byte count of the current part.
+     */
+    private CountingOutputStream byteCount;
+
+    /**
+     * The temporary file of the current part or null.
+     */
+    private File tmpFile;
+
+    /**
+     * The temporary files of the complete parts.
+     */
+    private final ArrayList<File> partTmpFiles;
+
+    /**
+     * The number of parts started.
+     */
+    private int partCount;
+
+    /**
+     * The number of rows of the current part.
+     */
+    private long partRows;
+
+    /**
+     * The row write count.
+     */
+    private long allRowCount;
+
+    /**
+     * The committed flag.
+     */
+    private boolean committed;
+
+    /**
+     * The Constructor.
+     *
+     * @param progress   the progress
+     * @param outputFile the output file
+     * @param tableName  the full table name
+     * @param factory    the writer factory of the parts
+     * @param maxRows    the max number of rows of a part ( 0: no limit )
+     * @param maxBytes   the max number of bytes of a part ( 0: no limit )
+     * @param compressThreads the number of threads compressing each part
+     *                        ( 0: no compression )
+     */
+    RollingWriter(final Progress progress, final File outputFile,
+        final String tableName, final DataWriterFactory factory,
+        final long maxRows, final long maxBytes, final int compressThreads) {
+
+        super(progress);
+        this.outputFile = outputFile;
+        this.factory = factory;
+        this.maxRows = maxRows;
+        this.maxBytes = maxBytes;
+        this.compressThreads = compressThreads;
+        this.manifest = new PartManifest(PartManifest.getFile(outputFile), tableName);
+        this.writer = null;
+        this.outputStream = null;
+        this.tmpFile = null;
+        this.partTmpFiles = new ArrayList<File>();
+        this.partCount = 0;
+        this.partRows = 0;
+        this.allRowCount = 0;
+        this.committed = false;
+    }
+
+    /**
+     * Open data writing. The first part is started, so an empty table has one
+     * part.
+     *
+     * @param metaData the meta data
+     * @throws DataIOException the data IO exception
+     */
+    public void openDataWriting(final MetaData metaData) throws DataIOException {
+
+        this.metaData = metaData;
+        allRowCount = 0;
+        startPart();
+    }
+
+    /**
+     * Start a new part.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    private void startPart() throws DataIOException {
+
+        tmpFile = ExporterImpl.newTempFile(outputFile);
+        partCount++;
+        partRows = 0;
+        try {
+            // the bytes written to the file are counted
+            byteCount = new CountingOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            outputStream = ExporterImpl.compress(byteCount, compressThreads);
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        }
+        writer = factory.getInstance(outputStream, getProgress());
+        writer.openDataWriting(metaData);
+    }
+
+    /**
+     * End the current part, and rename it to its part file.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    private void endPart() throws DataIOException {
+
+        writer.closeDataWriting();
+        if (writer.getAllRowCount() != partRows)
+            throw new DataIOException("export failed: part " + partCount +
+                ": row(s) read:" + partRows + " written:" + writer.getAllRowCount());
+        writer = null;
+        try {
+            outputStream.close();
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        }
+        outputStream = null;
+        byteCount = null;
+        partTmpFiles.add(tmpFile);
+        tmpFile = null;
+        manifest.addPart(ExporterImpl.getPartFile(outputFile, partCount - 1),
+            partRows);
+    }
+
+    /**
+     * Close data writing, ending the last part.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    public void closeDataWriting() throws DataIOException {
+
+        endPart();
+        metaData = null;
+    }
+
+    /**
+     * Rename the parts and write the manifest, after all parts are written.
+     * The output file and the part files of a previous export, not part of
+     * the manifest, are deleted.
+     *
+     * @return the manifest file
+     * @throws DataIOException the data IO exception
+     */
+    File commit() throws DataIOException {
+
+        final File[] partFiles = manifest.getPartFiles();
+        for (int part = 0; part < partFiles.length; part++) {
+            if (partFiles[part].isFile() && !FileUtil.delete(partFiles[part]))
+                throw new DataIOException("delete file '" +
+                    partFiles[part].getPath() + "' failed");
+            ExporterImpl.renameTempFile(partTmpFiles.get(part), partFiles[part]);
+        }
+        partTmpFiles.clear();
+        manifest.write();
+        committed = true;
+        ExporterImpl.deleteStaleFiles(outputFile, partCount);
+        return PartManifest.getFile(outputFile);
+    }
+
+    /**
+     * Abort the writing after a failure: the temporary files of the parts
+     * are deleted. Nothing is done after {@link #commit}.
+     */
+    void abort() {
+
+        if (committed)
+            return;
+        StreamUtil.closeOutputStream(outputStream);
+        outputStream = null;
+        if (tmpFile != null)
+            FileUtil.delete(tmpFile);
+        tmpFile = null;
+        for (final File partTmpFile : partTmpFiles)
+            FileUtil.delete(partTmpFile);
+        partTmpFiles.clear();
+    }
+
+    /**
+     * Gets the number of parts.
+     *
+     * @return the part count
+     */
+    int getPartCount() {
+        return partCount;
+    }
+
+    /**
+     * Start row writing; a new part is started if the current part is full.
+     *
+     * @param type the type
+     * @throws DataIOException the data IO exception
+     */
+    public void startRowWriting(final rowType type) throws DataIOException {
+
+        if (partRows > 0 && (maxRows > 0 && partRows >= maxRows ||
+            maxBytes > 0 && byteCount.getCount() >= maxBytes)) {
+            endPart();
+            startPart();
+        }
+        writer.startRowWriting(type);
+        partRows++;
+        allRowCount++;
+    }
+
+    /**
+     * End row writing.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    public void endRowWriting() throws DataIOException {
+        writer.endRowWriting();
+    }
+
+    /**
+     * Sets the column value.
+     *
+     * @param idx    the idx
+     * @param reader the reader
+     * @throws DataIOException the data IO exception
+     */
+    public void setColumnValue(final int idx, final DataReader reader)
+        throws DataIOException {
+
+        writer.setColumnValue(idx, reader);
+    }
+
+    /**
+     * Gets the row write count.
+     *
+     * @return row count ( all rows of all parts )
+     */
+    public long getAllRowCount() {
+        return allRowCount;
+    }
+
+    /**
+     * Gets the row processed count.
+     *
+     * @return row count ( all rows of all parts )
+     */
+    public long getRowProcessedCount() {
+        return allRowCount;
+    }
+
+    /**
+     * Gets the row ignored count.
+     *
+     * @return the row ignored count
+     */
+    public long getRowIgnoredCount() {
+        return 0;
+    }
+
+    /**
+     * Gets the row failed count.
+     *
+     * @return the row failed count
+     */
+    public long getRowFailedCount() {
+        return 0;
+    }
+
+    /**
+     * Gets the row written count.
+     *
+     * @return row count ( all rows of all parts )
+     */
+    public long getRowWrittenCount() {
+        return allRowCount;
+    }
+
+    /**
+     * The Class CountingOutputStream.
+     * <p>
+     * Counts the bytes written to a part.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        /**
+         * The byte count.
+         */
+        private long count;
+
+        /**
+         * The Constructor.
+         *
+         * @param out the underlying output stream
+         */
+        CountingOutputStream(final OutputStream out) {
+
+            super(out);
+            count = 0;
+        }
+
+        /**
+         * Gets the byte count.
+         *
+         * @return the byte count
+         */
+        long getCount() {
+            return count;
+        }
+
+        /**
+         * Write.
+         *
+         * @param b the byte
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        @Override
+        public void write(final int b) throws IOException {
+
+            out.write(b);
+            count++;
+        }
+
+        /**
+         * Write.
+         *
+         * @param b   the bytes
+         * @param off the offset
+         * @param len the length
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        @Override
+        public void write(final byte[] b, final int off, final int len)
+            throws IOException {
+
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
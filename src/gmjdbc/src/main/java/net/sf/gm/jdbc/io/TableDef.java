@@ -7,14 +7,18 @@
  ******************************************************************/
 package net.sf.gm.jdbc.io;
 
+import net.sf.gm.core.io.DataIOException;
 import net.sf.gm.core.utils.StringUtil;
+import net.sf.gm.jdbc.common.SqlDialect;
 import net.sf.gm.jdbc.common.SqlUtil;
 
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.util.ArrayList;
 
 //
@@ -66,6 +70,11 @@ public class TableDef {
      */
     String whereClause;
 
+    /**
+     * The column projection or null for all columns.
+     */
+    ColumnProjection projection;
+
     /**
      * The parent tables.
      */
@@ -81,6 +90,26 @@ public class TableDef {
      */
     int[] columnTypes;
 
+    /**
+     * The column type names.
+     */
+    String[] columnTypeNames;
+
+    /**
+     * The column sizes.
+     */
+    int[] columnSizes;
+
+    /**
+     * The primary key columns.
+     */
+    String[] primaryKeys;
+
+    /**
+     * The estimated row count or null if not yet read.
+     */
+    Long rowCountEstimate;
+
     /**
      * The Constructor.
      *
@@ -213,6 +242,43 @@ public class TableDef {
         return foreignTableSet;
     }
 
+    /**
+     * Gets all foreign keys of a schema using a single metadata query
+     * ( DatabaseMetaData.getExportedKeys without a table name ). Not all
+     * drivers support this; an exception is thrown or no foreign key is
+     * returned in that case.
+     *
+     * @param con     the con
+     * @param catalog the catalog
+     * @param schema  the schema
+     * @return the foreign keys: primary key catalog, schema and table, foreign
+     * key catalog, schema and table
+     * @throws SQLException the SQL exception
+     */
+    public static ArrayList<String[]> getForeignKeys(final Connection con,
+        final String catalog,
+        final String schema) throws SQLException {
+
+        final ArrayList<String[]> foreignKeys = new ArrayList<String[]>();
+        final DatabaseMetaData dmd = con.getMetaData();
+        final ResultSet rs = dmd.getExportedKeys(catalog, schema, null);
+        try {
+            while (rs.next()) {
+                final String[] fk = new String[6];
+                fk[0] = StringUtil.rtrim(rs.getString(1));
+                fk[1] = StringUtil.rtrim(rs.getString(2));
+                fk[2] = StringUtil.rtrim(rs.getString(3));
+                fk[3] = StringUtil.rtrim(rs.getString(5));
+                fk[4] = StringUtil.rtrim(rs.getString(6));
+                fk[5] = StringUtil.rtrim(rs.getString(7));
+                foreignKeys.add(fk);
+            }
+        } finally {
+            SqlUtil.closeResultSet(rs);
+        }
+        return foreignKeys;
+    }
+
     /**
      * Gets the primary key.
      *
@@ -356,6 +422,38 @@ public class TableDef {
         this.whereClause = whereClause;
     }
 
+    /**
+     * Gets the column projection.
+     *
+     * @return the column projection or null for all columns
+     */
+    public ColumnProjection getProjection() {
+        return projection;
+    }
+
+    /**
+     * Sets the column projection.
+     *
+     * @param projection the column projection or null for all columns
+     */
+    public void setProjection(final ColumnProjection projection) {
+        this.projection = projection;
+    }
+
+    /**
+     * Gets the select list of the exported columns.
+     *
+     * @param con the con
+     * @return the select list
+     * @throws DataIOException if the projection selects no column
+     */
+    public String getSelectList(final Connection con) throws DataIOException {
+
+        if (projection == null)
+            return "*";
+        return projection.getSelectList(getColumnNames(con));
+    }
+
     /**
      * Adds the parent table.
      *
@@ -396,7 +494,101 @@ public class TableDef {
      */
     public String[] getPrimaryKeys(final Connection con) {
 
-        return TableDef.getPrimaryKey(con, catalog, schema, table);
+        if (primaryKeys == null)
+            primaryKeys = TableDef.getPrimaryKey(con, catalog, schema, table);
+        return primaryKeys;
+    }
+
+    /**
+     * Gets the estimated row count: read from the catalog statistics if the
+     * sql dialect supports it, otherwise the cardinality of the table
+     * statistic or of the largest index reported by the driver.
+     *
+     * @param con the con
+     * @return the estimated row count or -1 if unknown
+     */
+    public long getRowCountEstimate(final Connection con) {
+
+        if (rowCountEstimate == null) {
+            long res = getStatisticsRowCount(con);
+            if (res < 0)
+                res = getIndexRowCount(con);
+            rowCountEstimate = res;
+        }
+        return rowCountEstimate;
+    }
+
+    /**
+     * Read the estimated row count from the catalog statistics. In a
+     * transaction ( e.g. a snapshot ) the query runs under a savepoint, so
+     * its failure does not abort the transaction.
+     *
+     * @param con the con
+     * @return the estimated row count or -1 if unknown
+     */
+    private long getStatisticsRowCount(final Connection con) {
+
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        Savepoint savepoint = null;
+        try {
+            final String query = SqlDialect.getDialect(con).getRowCountEstimateStatement();
+            if (query == null)
+                return -1;
+            savepoint = SqlUtil.setSavepoint(con);
+            stmt = con.prepareStatement(query);
+            stmt.setString(1, schema != null ? schema : catalog);
+            stmt.setString(2, table);
+            rs = stmt.executeQuery();
+            long res = -1;
+            if (rs.next()) {
+                res = rs.getLong(1);
+                if (rs.wasNull())
+                    res = -1;
+            }
+            SqlUtil.releaseSavepoint(con, savepoint);
+            return res;
+        } catch (final SQLException ignore) {
+            // no access to the catalog
+            SqlUtil.rollback(con, savepoint);
+            return -1;
+        } finally {
+            SqlUtil.closeResultSet(rs);
+            SqlUtil.closeStatement(stmt);
+        }
+    }
+
+    /**
+     * Read the estimated row count from the index information of the driver.
+     *
+     * @param con the con
+     * @return the estimated row count or -1 if unknown
+     */
+    private long getIndexRowCount(final Connection con) {
+
+        ResultSet rs = null;
+        final Savepoint savepoint = SqlUtil.setSavepoint(con);
+        try {
+            long res = -1;
+            rs = con.getMetaData().getIndexInfo(catalog, schema, table, false, true);
+            while (rs.next()) {
+                final long cardinality = rs.getLong(11);
+                if (rs.wasNull())
+                    continue;
+                if (rs.getShort(7) == DatabaseMetaData.tableIndexStatistic) {
+                    res = cardinality;
+                    break;
+                }
+                res = Math.max(res, cardinality);
+            }
+            SqlUtil.releaseSavepoint(con, savepoint);
+            return res;
+        } catch (final SQLException ignore) {
+            SqlUtil.rollback(con, savepoint);
+            return -1;
+        } finally {
+            SqlUtil.closeResultSet(rs);
+        }
     }
 
     /**
@@ -407,6 +599,8 @@ public class TableDef {
     protected void initColumns(final Connection con) {
         ArrayList<String> names = new ArrayList<String>();
         ArrayList<Integer> types = new ArrayList<Integer>();
+        ArrayList<String> typeNames = new ArrayList<String>();
+        ArrayList<Integer> sizes = new ArrayList<Integer>();
 
         try {
             DatabaseMetaData dsmd = con.getMetaData();
@@ -414,16 +608,37 @@ public class TableDef {
             while (rs.next()) {
                 names.add(rs.getString(4));
                 types.add(rs.getInt(5));
+                typeNames.add(rs.getString(6));
+                sizes.add(rs.getInt(7));
             }
-            columnNames = names.toArray(new String[0]);
-            columnTypes = new int[types.size()];
-            for (int i = 0; i < columnTypes.length; i++)
-                columnTypes[i] = types.get(i);
+            setColumns(names, types, typeNames, sizes);
             SqlUtil.closeResultSet(rs);
         } catch (final SQLException ignore) {
         }
     }
 
+    /**
+     * Sets the columns.
+     *
+     * @param names     the column names
+     * @param types     the column types
+     * @param typeNames the column type names
+     * @param sizes     the column sizes
+     */
+    void setColumns(final ArrayList<String> names,
+        final ArrayList<Integer> types, final ArrayList<String> typeNames,
+        final ArrayList<Integer> sizes) {
+
+        columnNames = names.toArray(new String[0]);
+        columnTypeNames = typeNames.toArray(new String[0]);
+        columnTypes = new int[types.size()];
+        columnSizes = new int[sizes.size()];
+        for (int i = 0; i < columnTypes.length; i++) {
+            columnTypes[i] = types.get(i);
+            columnSizes[i] = sizes.get(i);
+        }
+    }
+
     /**
      * Gets the column names.
      *
@@ -449,4 +664,30 @@ public class TableDef {
             initColumns(con);
         return columnTypes;
     }
+
+    /**
+     * Gets the column type names.
+     *
+     * @param con the con
+     * @return the column type names
+     */
+    public String[] getColumnTypeNames(final Connection con) {
+
+        if (this.columnTypeNames == null)
+            initColumns(con);
+        return columnTypeNames;
+    }
+
+    /**
+     * Gets the column sizes.
+     *
+     * @param con the con
+     * @return the column sizes
+     */
+    public int[] getColumnSizes(final Connection con) {
+
+        if (this.columnSizes == null)
+            initColumns(con);
+        return columnSizes;
+    }
 }
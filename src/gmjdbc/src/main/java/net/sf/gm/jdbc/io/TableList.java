@@ -8,6 +8,7 @@
 package net.sf.gm.jdbc.io;
 
 import net.sf.gm.core.io.DataIOException;
+import net.sf.gm.core.ui.Progress;
 import net.sf.gm.jdbc.common.SqlUtil;
 
 import java.io.BufferedReader;
@@ -15,9 +16,13 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.sql.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 //
@@ -58,6 +63,29 @@ public class TableList extends ArrayList<TableDef> {
         final File location, final String fileExtension)
         throws DataIOException {
 
+        return createList(con, catalogPattern, schemaPattern, tablePattern,
+            location, fileExtension, null);
+    }
+
+    /**
+     * Creates the list.
+     *
+     * @param schemaPattern  the schema pattern
+     * @param con            the con
+     * @param fileExtension  the file extension
+     * @param catalogPattern the catalog pattern
+     * @param location       the location
+     * @param tablePattern   the table pattern
+     * @param snapshot       the metadata snapshot or null
+     * @return the table list
+     * @throws DataIOException the sql IO exception
+     */
+    public static TableList
+    createList(final Connection con, final String catalogPattern,
+        final String schemaPattern, final String tablePattern,
+        final File location, final String fileExtension,
+        final MetaDataSnapshot snapshot) throws DataIOException {
+
         try {
             final TableList list = new TableList();
 
@@ -91,9 +119,14 @@ public class TableList extends ArrayList<TableDef> {
                     continue;
                 }
                 // for "ALIAS" and "SYNONYM" test if this is a table:
-                ResultSet rsCols = dmd.getColumns(table.catalog, table.schema, table.table, null);
-                boolean resCol = rsCols.next();
-                SqlUtil.closeResultSet(rsCols);
+                boolean resCol;
+                if (snapshot != null)
+                    resCol = snapshot.hasColumns(con, table.catalog, table.schema, table.table);
+                else {
+                    ResultSet rsCols = dmd.getColumns(table.catalog, table.schema, table.table, null);
+                    resCol = rsCols.next();
+                    SqlUtil.closeResultSet(rsCols);
+                }
                 if (resCol) {
                     list.add(table);
                 }
@@ -127,9 +160,21 @@ public class TableList extends ArrayList<TableDef> {
                 new BufferedReader(new FileReader(tableList));
             String s;
             while ((s = reader.readLine()) != null) {
+                // table( columns ), file, where clause
+                ColumnProjection projection = null;
+                final int open = s.indexOf('(');
+                final String[] head = s.split("[,;\t]", 2);
+                if (open >= 0 && open < head[0].length()) {
+                    final int close = ColumnProjection.indexOfClosingParenthesis(s, open);
+                    if (close < 0)
+                        throw new DataIOException("missing ')' in '" + s + "'");
+                    projection = ColumnProjection.parse(s.substring(open + 1, close));
+                    s = s.substring(0, open) + s.substring(close + 1);
+                }
                 final String[] row = s.split("[,;\t]", 3);
                 final TableDef table =
                     new TableDef(location, fileExtension, row[0].trim());
+                table.setProjection(projection);
                 list.add(table);
                 if (row.length > 1) {
                     row[1] = row[1].trim();
@@ -150,76 +195,281 @@ public class TableList extends ArrayList<TableDef> {
     }
 
     /**
-     * Sort database sequence. parent tables first and then the children tables
+     * Link the parent tables: each table gets the list of its parent tables,
+     * which are part of the given list. The foreign keys are read with one
+     * metadata query per catalog and schema of the list, if supported by the
+     * driver, otherwise with one metadata query per table.
      *
      * @param list the list
      * @param con  the con
-     * @return the table list
+     * @return the FullTableName -&gt; TableDef map of the list
      */
-    public static TableList sortDatabaseSequence(final Connection con,
+    public static Map<String, TableDef> linkParentTables(final Connection con,
         final TableList list) {
 
+        return linkParentTables(con, list, null);
+    }
+
+    /**
+     * Link the parent tables using the foreign keys of a metadata snapshot.
+     *
+     * @param list     the list
+     * @param con      the con
+     * @param snapshot the metadata snapshot or null
+     * @return the FullTableName -&gt; TableDef map of the list
+     */
+    public static Map<String, TableDef> linkParentTables(final Connection con,
+        final TableList list, final MetaDataSnapshot snapshot) {
+
         // create FullTableName -> TableDef map
         final Map<String, TableDef> map =
             new HashMap<String, TableDef>(list.size());
-        for (final TableDef table : list)
+        // group the tables by catalog and schema
+        final Map<String, TableList> groups = new LinkedHashMap<String, TableList>();
+        for (final TableDef table : list) {
             map.put(table.getFullTableName(), table);
+            table.parentTables = null;
+            final String group = table.getCatalog() + "\0" + table.getSchema();
+            TableList groupList = groups.get(group);
+            if (groupList == null) {
+                groupList = new TableList();
+                groups.put(group, groupList);
+            }
+            groupList.add(table);
+        }
 
-        for (final TableDef parentTable : list) {
+        for (final TableList groupList : groups.values()) {
+            final ArrayList<String[]> foreignKeys = snapshot != null
+                ? snapshot.getForeignKeys(con, groupList) : getForeignKeys(con, groupList);
+            for (final String[] fk : foreignKeys) {
+                final TableDef parentTable =
+                    map.get(TableDef.createFullTableName(fk[0], fk[1], fk[2]));
+                final TableDef childTable =
+                    map.get(TableDef.createFullTableName(fk[3], fk[4], fk[5]));
+                if (parentTable == null || childTable == null)
+                    continue;
+                // a foreign key may consist of several columns and a table may
+                // have several foreign keys to the same parent table
+                final TableList parentTables = childTable.getParentTables();
+                if (parentTables == null || !parentTables.contains(parentTable))
+                    childTable.addParentTable(parentTable);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Gets the foreign keys of the tables of a catalog and schema.
+     *
+     * @param con       the con
+     * @param groupList the tables of a catalog and schema
+     * @return the foreign keys: primary key catalog, schema and table, foreign
+     * key catalog, schema and table
+     */
+    private static ArrayList<String[]> getForeignKeys(final Connection con,
+        final TableList groupList) {
+
+        final TableDef first = groupList.get(0);
+        if (groupList.size() > 1) {
+            try {
+                final ArrayList<String[]> foreignKeys =
+                    TableDef.getForeignKeys(con, first.getCatalog(), first.getSchema());
+                if (foreignKeys.size() > 0)
+                    return foreignKeys;
+            } catch (final SQLException ignore) {
+                // not supported: one query per table
+            } catch (final RuntimeException ignore) {
+                // some drivers do not check the missing table name
+            }
+        }
+
+        final ArrayList<String[]> foreignKeys = new ArrayList<String[]>();
+        for (final TableDef parentTable : groupList) {
             final ArrayList<String[]> childTables = parentTable.getChildTables(con);
+            for (final String[] childTable : childTables)
+                foreignKeys.add(new String[] {parentTable.getCatalog(),
+                    parentTable.getSchema(), parentTable.getTable(), childTable[0],
+                    childTable[1], childTable[2]});
+        }
+        return foreignKeys;
+    }
+
+    /**
+     * Sort the tables by their estimated row count, largest first. Tables of
+     * unknown size keep their list order after the tables of known size.
+     *
+     * @param con  the con
+     * @param list the list
+     * @return the sorted table list
+     */
+    public static TableList sortLargestFirst(final Connection con,
+        final TableList list) {
 
-            for (final String[] childTable : childTables) {
-                final String fullChildTableName = TableDef.createFullTableName(
-                    childTable[0], childTable[1], childTable[2]);
-                if (map.containsKey(fullChildTableName))
-                    // childTable is in our map ->
-                    // add the parentTable to the childTable's list of parent tables
-                    map.get(fullChildTableName).addParentTable(parentTable);
+        final IdentityHashMap<TableDef, Long> sizes =
+            new IdentityHashMap<TableDef, Long>(list.size());
+        for (final TableDef table : list)
+            sizes.put(table, table.getRowCountEstimate(con));
+        final TableList res = new TableList();
+        res.addAll(list);
+        // stable sort
+        Collections.sort(res, new Comparator<TableDef>() {
+
+            public int compare(final TableDef a, final TableDef b) {
+                return sizes.get(b).compareTo(sizes.get(a));
+            }
+        });
+        return res;
+    }
+
+    /**
+     * Sort database sequence. parent tables first and then the children tables
+     *
+     * @param list the list
+     * @param con  the con
+     * @return the table list
+     */
+    public static TableList sortDatabaseSequence(final Connection con,
+        final TableList list) {
+
+        return sortDatabaseSequence(null, con, list);
+    }
+
+    /**
+     * Sort database sequence. parent tables first and then the children tables
+     * ( topological sort, Kahn ). The tables of a dependency cycle, and the
+     * tables depending on them, are reported and appended in list order.
+     *
+     * @param progress the progress or null
+     * @param list     the list
+     * @param con      the con
+     * @return the table list
+     */
+    public static TableList sortDatabaseSequence(final Progress progress,
+        final Connection con, final TableList list) {
+
+        return sortDatabaseSequence(progress, con, list, null);
+    }
+
+    /**
+     * Sort database sequence using the foreign keys of a metadata snapshot.
+     *
+     * @param progress the progress or null
+     * @param list     the list
+     * @param con      the con
+     * @param snapshot the metadata snapshot or null
+     * @return the table list
+     */
+    public static TableList sortDatabaseSequence(final Progress progress,
+        final Connection con, final TableList list,
+        final MetaDataSnapshot snapshot) {
+
+        linkParentTables(con, list, snapshot);
+
+        final int count = list.size();
+        final Map<TableDef, Integer> index = new IdentityHashMap<TableDef, Integer>(count);
+        for (int i = 0; i < count; i++)
+            index.put(list.get(i), i);
+
+        // the number of parent tables and the child tables of each table
+        final int[] pending = new int[count];
+        final ArrayList<ArrayList<Integer>> children =
+            new ArrayList<ArrayList<Integer>>(count);
+        for (int i = 0; i < count; i++)
+            children.add(new ArrayList<Integer>());
+        for (int i = 0; i < count; i++) {
+            final TableList parentTables = list.get(i).getParentTables();
+            if (parentTables == null)
+                continue;
+            for (final TableDef parentTable : parentTables) {
+                final int parent = index.get(parentTable);
+                if (parent == i)
+                    continue; // self reference
+                children.get(parent).add(i);
+                pending[i]++;
             }
         }
 
         final TableList resultList = new TableList();
+        final ArrayDeque<Integer> ready = new ArrayDeque<Integer>();
+        for (int i = 0; i < count; i++)
+            if (pending[i] == 0)
+                ready.add(i);
+        while (!ready.isEmpty()) {
+            final int i = ready.poll();
+            resultList.add(list.get(i));
+            for (final int child : children.get(i))
+                if (--pending[child] == 0)
+                    ready.add(child);
+        }
 
-        // add those tables to our resultList, which do not have a parent table
-        // remove those tables from the map
-        for (final TableDef table : list) {
-            final TableList parentTables = table.getParentTables();
-            if (parentTables == null || parentTables.size() == 0) {
-                map.remove(table.getFullTableName());
-                resultList.add(table);
-            }
+        if (resultList.size() < count) {
+            if (progress != null)
+                reportCycles(progress, list, index, pending);
+            // add the remaining tables in list order
+            for (int i = 0; i < count; i++)
+                if (pending[i] > 0)
+                    resultList.add(list.get(i));
         }
+        return resultList;
+    }
 
-        // add those tables to our resultList, which do not have a parent table in
-        // our map, and remove them from the map
-        Collection<TableDef> values = map.values();
-        int newSize = map.size();
-        int oldSize;
-        do {
-            oldSize = newSize;
-            for (final TableDef table : list) {
-                if (!map.containsKey(table.getFullTableName()))
-                    continue;
-                final TableList parentTables = table.getParentTables();
-                boolean parentTableFound = false;
-                for (final TableDef parentTable : parentTables)
-                    if (map.containsKey(parentTable.getFullTableName())) {
-                        parentTableFound = true;
+    /**
+     * Report the dependency cycles of the tables not sorted.
+     *
+     * @param progress the progress
+     * @param list     the list
+     * @param index    the TableDef -&gt; list index map
+     * @param pending  the number of unsorted parent tables of each table
+     */
+    private static void reportCycles(final Progress progress,
+        final TableList list, final Map<TableDef, Integer> index,
+        final int[] pending) {
+
+        final int count = list.size();
+        // 0: not visited, 1: on the current path, 2: done
+        final int[] state = new int[count];
+        final ArrayList<Integer> path = new ArrayList<Integer>();
+        int cycles = 0;
+        for (int start = 0; start < count; start++) {
+            if (pending[start] == 0 || state[start] != 0)
+                continue;
+            // follow unsorted parent tables until a table is visited twice;
+            // every unsorted table has at least one unsorted parent table
+            path.clear();
+            int i = start;
+            while (i >= 0 && state[i] == 0) {
+                state[i] = 1;
+                path.add(i);
+                int next = -1;
+                for (final TableDef parentTable : list.get(i).getParentTables()) {
+                    final int parent = index.get(parentTable);
+                    if (parent != i && pending[parent] > 0) {
+                        next = parent;
                         break;
                     }
-                if (!parentTableFound) {
-                    map.remove(table.getFullTableName());
-                    resultList.add(table);
                 }
+                i = next;
             }
-            values = map.values();
-            newSize = map.size();
-        } while (oldSize > newSize);
-
-        // add all tables from the map
-        if (newSize > 0)
-            resultList.addAll(values);
-
-        return resultList;
+            if (i >= 0 && state[i] == 1) {
+                // new cycle: report it in parent to child order
+                final StringBuilder sb = new StringBuilder("foreign key cycle: ");
+                final int from = path.indexOf(i);
+                for (int k = path.size() - 1; k >= from; k--) {
+                    sb.append(list.get(path.get(k)).getFullTableName());
+                    sb.append(" -> ");
+                }
+                sb.append(list.get(path.get(path.size() - 1)).getFullTableName());
+                progress.warningln(sb.toString());
+                cycles++;
+            }
+            for (final int k : path)
+                state[k] = 2;
+        }
+        int unsorted = 0;
+        for (int k = 0; k < count; k++)
+            if (pending[k] > 0)
+                unsorted++;
+        progress.warningln(cycles + " foreign key cycle(s): " + unsorted +
+            " table(s) are not sorted");
     }
 }
@@ -0,0 +1,300 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.jdbc.io;
+
+import net.sf.gm.core.ui.Progress;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+//
+
+
+/**
+ * The Class TableScheduler.
+ * <p>
+ * Schedules the tables of a list on several workers using the foreign key
+ * dependency graph ( see {@link TableList#linkParentTables} ): a table is
+ * ready as soon as all its parent tables are finished ( in reverse mode, as
+ * soon as all its child tables are finished ). Ready tables with the longest
+ * chain of dependent tables are started first. If no table is ready and no
+ * table is running, the remaining tables are part of a dependency cycle, and
+ * the first of them is started anyway.
+ */
+class TableScheduler {
+
+    /**
+     * The progress.
+     */
+    private final Progress progress;
+
+    /**
+     * The tables.
+     */
+    private final TableList list;
+
+    /**
+     * The number of unfinished predecessors of each table.
+     */
+    private final int[] pending;
+
+    /**
+     * The successors of each table.
+     */
+    private final int[][] successors;
+
+    /**
+     * The length of the longest chain of successors of each table.
+     */
+    private final int[] height;
+
+    /**
+     * The started flags.
+     */
+    private final boolean[] started;
+
+    /**
+     * The ready tables.
+     */
+    private final PriorityQueue<Integer> ready;
+
+    /**
+     * The number of started tables.
+     */
+    private int startedCount;
+
+    /**
+     * The number of running tables.
+     */
+    private int runningCount;
+
+    /**
+     * The number of finished tables.
+     */
+    private int finishedCount;
+
+    /**
+     * The number of succeeded tables.
+     */
+    private int succeededCount;
+
+    /**
+     * The canceled flag.
+     */
+    private boolean canceled;
+
+    /**
+     * The Constructor.
+     *
+     * @param progress the progress
+     * @param list     the tables, linked to their parent tables
+     * @param reverse  children first ( delete ) instead of parents first
+     */
+    TableScheduler(final Progress progress, final TableList list,
+        final boolean reverse) {
+
+        this.progress = progress;
+        this.list = list;
+        final int count = list.size();
+
+        final Map<String, Integer> index = new HashMap<String, Integer>(count);
+        for (int i = 0; i < count; i++)
+            index.put(list.get(i).getFullTableName(), i);
+
+        // collect the edges; a table may reference a parent table more than once
+        final ArrayList<Set<Integer>> edges = new ArrayList<Set<Integer>>(count);
+        for (int i = 0; i < count; i++)
+            edges.add(new HashSet<Integer>());
+        pending = new int[count];
+        for (int child = 0; child < count; child++) {
+            final TableList parentTables = list.get(child).getParentTables();
+            if (parentTables == null)
+                continue;
+            for (final TableDef parentTable : parentTables) {
+                final Integer parent = index.get(parentTable.getFullTableName());
+                if (parent == null || parent == child)
+                    continue;
+                final int from = reverse ? child : parent;
+                final int to = reverse ? parent : child;
+                if (edges.get(from).add(to))
+                    pending[to]++;
+            }
+        }
+        successors = new int[count][];
+        for (int i = 0; i < count; i++) {
+            successors[i] = new int[edges.get(i).size()];
+            int j = 0;
+            for (final Integer to : edges.get(i))
+                successors[i][j++] = to;
+        }
+
+        height = computeHeight();
+        started = new boolean[count];
+        ready = new PriorityQueue<Integer>(Math.max(1, count),
+            new Comparator<Integer>() {
+
+                public int compare(final Integer a, final Integer b) {
+                    if (height[a] != height[b])
+                        return height[a] > height[b] ? -1 : 1;
+                    return a.compareTo(b);
+                }
+            });
+        for (int i = 0; i < count; i++)
+            if (pending[i] == 0)
+                ready.add(i);
+    }
+
+    /**
+     * Compute the length of the longest chain of successors of each table.
+     * Tables of a dependency cycle get the height 0.
+     *
+     * @return the heights
+     */
+    private int[] computeHeight() {
+
+        final int count = pending.length;
+        // topological order ( Kahn )
+        final int[] order = new int[count];
+        final int[] remaining = pending.clone();
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < count; i++)
+            if (remaining[i] == 0)
+                order[tail++] = i;
+        while (head < tail) {
+            final int i = order[head++];
+            for (final int to : successors[i])
+                if (--remaining[to] == 0)
+                    order[tail++] = to;
+        }
+        final int[] res = new int[count];
+        for (int k = tail - 1; k >= 0; k--) {
+            final int i = order[k];
+            for (final int to : successors[i])
+                res[i] = Math.max(res[i], res[to] + 1);
+        }
+        return res;
+    }
+
+    /**
+     * Gets the number of tables.
+     *
+     * @return the table count
+     */
+    int getTableCount() {
+        return list.size();
+    }
+
+    /**
+     * Gets the table.
+     *
+     * @param idx the index of the table
+     * @return the table
+     */
+    TableDef getTable(final int idx) {
+        return list.get(idx);
+    }
+
+    /**
+     * Wait for the next table to be started.
+     *
+     * @return the index of the table or -1 if all tables are started or the
+     * process has been canceled
+     * @throws InterruptedException the interrupted exception
+     */
+    synchronized int next() throws InterruptedException {
+
+        while (true) {
+            if (canceled || progress.getCancel()) {
+                canceled = true;
+                return -1;
+            }
+            if (startedCount == started.length)
+                return -1;
+            if (!ready.isEmpty())
+                return start(ready.poll());
+            if (runningCount == 0) {
+                // dependency cycle
+                for (int i = 0; i < started.length; i++) {
+                    if (started[i])
+                        continue;
+                    progress.warningln("dependency cycle: starting '" +
+                        list.get(i).getFullTableName() +
+                        "' before all its dependencies are finished");
+                    return start(i);
+                }
+            }
+            // wait with a timeout to notice a cancel request
+            wait(100);
+        }
+    }
+
+    /**
+     * Mark a table as finished.
+     *
+     * @param idx       the index of the table
+     * @param succeeded the succeeded flag
+     */
+    synchronized void finished(final int idx, final boolean succeeded) {
+
+        runningCount--;
+        finishedCount++;
+        if (succeeded)
+            succeededCount++;
+        for (final int to : successors[idx])
+            if (--pending[to] == 0 && !started[to])
+                ready.add(to);
+        notifyAll();
+    }
+
+    /**
+     * Gets the number of finished tables.
+     *
+     * @return the finished count
+     */
+    synchronized int getFinishedCount() {
+        return finishedCount;
+    }
+
+    /**
+     * Gets the number of succeeded tables.
+     *
+     * @return the succeeded count
+     */
+    synchronized int getSucceededCount() {
+        return succeededCount;
+    }
+
+    /**
+     * Checks if the process has been canceled.
+     *
+     * @return true, if canceled
+     */
+    synchronized boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * Start a table.
+     *
+     * @param idx the index of the table
+     * @return the index of the table
+     */
+    private int start(final int idx) {
+
+        started[idx] = true;
+        startedCount++;
+        runningCount++;
+        return idx;
+    }
+}
@@ -0,0 +1,165 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.jdbc.io;
+
+import net.sf.gm.core.io.DataIOException;
+import net.sf.gm.core.io.DataTeeWriter;
+import net.sf.gm.core.io.DataWriter;
+import net.sf.gm.core.io.DataWriterFactory;
+import net.sf.gm.core.ui.Progress;
+import net.sf.gm.core.utils.FileUtil;
+import net.sf.gm.core.utils.StreamUtil;
+
+import java.io.*;
+import java.util.List;
+
+//
+
+
+/**
+ * The Class TeeOutputs.
+ * <p>
+ * The additional output files of an exported table, written in the same pass
+ * as the output file ( see {@link DataTeeWriter} ). An additional file is
+ * named like the output file, its extension replaced, e.g. <code>EMP.fi</code>
+ * next to <code>EMP.csv</code>. Like the output file, each file is written to
+ * a temporary file first, renamed when the table is exported.
+ */
+class TeeOutputs {
+
+    /**
+     * The factories of the additional outputs.
+     */
+    private final List<DataWriterFactory> factories;
+
+    /**
+     * The files of the additional outputs.
+     */
+    private final File[] outputFiles;
+
+    /**
+     * The temporary files.
+     */
+    private final File[] tmpFiles;
+
+    /**
+     * The output streams.
+     */
+    private final OutputStream[] outputStreams;
+
+    /**
+     * The number of buffers queued to each writer thread ( 0: no threads ).
+     */
+    private final int queueSize;
+
+    /**
+     * The number of threads compressing each file ( 0: no compression ).
+     */
+    private final int compressThreads;
+
+    /**
+     * The tee writer or null.
+     */
+    private DataTeeWriter tee;
+
+    /**
+     * The Constructor.
+     *
+     * @param outputFile the output file
+     * @param factories  the factories of the additional outputs
+     * @param extensions the file extensions of the additional outputs
+     * @param queueSize  the number of buffers queued to each writer thread
+     *                   ( 0: write all outputs on the calling thread )
+     * @param compressThreads the number of threads compressing each file
+     *                        ( 0: no compression )
+     */
+    TeeOutputs(final File outputFile, final List<DataWriterFactory> factories,
+        final List<String> extensions, final int queueSize,
+        final int compressThreads) {
+
+        this.factories = factories;
+        this.queueSize = queueSize;
+        this.compressThreads = compressThreads;
+        this.outputFiles = new File[factories.size()];
+        this.tmpFiles = new File[factories.size()];
+        this.outputStreams = new OutputStream[factories.size()];
+        final String name = outputFile.getName();
+        final int dot = name.lastIndexOf('.');
+        final String baseName = dot > 0 ? name.substring(0, dot) : name;
+        for (int i = 0; i < outputFiles.length; i++)
+            outputFiles[i] =
+                new File(outputFile.getParentFile(), baseName + extensions.get(i));
+        this.tee = null;
+    }
+
+    /**
+     * Gets the writer of the output file and all additional outputs.
+     *
+     * @param writer   the writer of the output file
+     * @param progress the progress
+     * @return the writer itself if there is no additional output, otherwise a
+     * tee writer
+     * @throws DataIOException the data IO exception
+     */
+    DataWriter getWriter(final DataWriter writer, final Progress progress)
+        throws DataIOException {
+
+        if (outputFiles.length == 0)
+            return writer;
+        final DataWriter[] writers = new DataWriter[outputFiles.length + 1];
+        writers[0] = writer;
+        try {
+            for (int i = 0; i < outputFiles.length; i++) {
+                tmpFiles[i] = ExporterImpl.createTempFile(outputFiles[i]);
+                outputStreams[i] =
+                    ExporterImpl.openOutputStream(tmpFiles[i], compressThreads);
+                writers[i + 1] = factories.get(i).getInstance(outputStreams[i], progress);
+            }
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        }
+        tee = new DataTeeWriter(writers, queueSize);
+        return tee;
+    }
+
+    /**
+     * Rename the temporary files to the additional output files, after the
+     * output file has been written.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    void commit() throws DataIOException {
+
+        try {
+            for (int i = 0; i < outputFiles.length; i++) {
+                if (outputStreams[i] == null)
+                    continue;
+                outputStreams[i].close();
+                outputStreams[i] = null;
+                ExporterImpl.renameTempFile(tmpFiles[i], outputFiles[i]);
+            }
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        }
+    }
+
+    /**
+     * Stop the writer threads, and delete the temporary files left.
+     */
+    void abort() {
+
+        if (tee != null)
+            tee.abort();
+        for (int i = 0; i < outputFiles.length; i++) {
+            StreamUtil.closeOutputStream(outputStreams[i]);
+            outputStreams[i] = null;
+            if (tmpFiles[i] != null)
+                FileUtil.delete(tmpFiles[i]);
+        }
+    }
+}
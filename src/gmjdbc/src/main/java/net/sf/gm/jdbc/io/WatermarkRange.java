@@ -0,0 +1,189 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.jdbc.io;
+
+import net.sf.gm.core.io.DataIOException;
+import net.sf.gm.core.io.DataTypes.rowType;
+import net.sf.gm.jdbc.common.SqlUtil;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+//
+
+
+/**
+ * The Class WatermarkRange.
+ * <p>
+ * Selects the rows of a table changed since the previous export, using a
+ * watermark column ( a timestamp or a version number, set on each insert and
+ * update ). The rows between the watermark of the previous export and the
+ * current max value of the column are read as modified rows:
+ * <pre>
+ * select ... from T where c &gt; ? and c &lt;= ?
+ * </pre>
+ * If an insert column is given ( e.g. the creation timestamp, using the same
+ * domain as the watermark column ), the rows inserted since the previous
+ * export are read as inserted rows. Without a previous watermark, all rows of
+ * the table are read as current rows.
+ * <p>
+ * A row stamped at or below the max value by a transaction committing after
+ * the export is not seen by the export, and not by the next one either. With
+ * a lag, the rows down to the previous watermark minus the lag are read
+ * again: the rows are exported at least once, repeated rows have to be
+ * applied idempotently ( i.e. upserted ).
+ */
+class WatermarkRange {
+
+    /**
+     * The statements.
+     */
+    private final String[] statements;
+
+    /**
+     * The parameters of the statements.
+     */
+    private final Object[][] parameters;
+
+    /**
+     * The row types of the statements.
+     */
+    private final rowType[] rowTypes;
+
+    /**
+     * The new watermark or null.
+     */
+    private final Object watermark;
+
+    /**
+     * The Constructor.
+     *
+     * @param statements the statements
+     * @param parameters the parameters of the statements
+     * @param rowTypes   the row types of the statements
+     * @param watermark  the new watermark
+     */
+    private WatermarkRange(final String[] statements, final Object[][] parameters,
+        final rowType[] rowTypes, final Object watermark) {
+
+        this.statements = statements;
+        this.parameters = parameters;
+        this.rowTypes = rowTypes;
+        this.watermark = watermark;
+    }
+
+    /**
+     * Create the range of a table.
+     *
+     * @param con          the connection
+     * @param table        the table
+     * @param selectList   the select list of the exported columns
+     * @param column       the watermark column
+     * @param insertColumn the insert column or null
+     * @param previous     the watermark of the previous export or null
+     * @param lag          the lag read again below the previous watermark:
+     *                     seconds for a timestamp, units for a number
+     *                     ( 0: no lag )
+     * @return the range
+     * @throws SQLException    the SQL exception
+     * @throws DataIOException if the watermark does not match the column
+     */
+    static WatermarkRange create(final Connection con, final TableDef table,
+        final String selectList, final String column, final String insertColumn,
+        final Object previous, final long lag)
+        throws SQLException, DataIOException {
+
+        final String fromClause =
+            RangeSplit.getFromClause(table.getFullTableName(), table.getWhereClause());
+        final String select = "select " + selectList + fromClause;
+
+        // rows changed while exporting are left to the next export
+        final Object max;
+        final Statement stmt = con.createStatement();
+        ResultSet rs = null;
+        try {
+            rs = stmt.executeQuery("select max(" + column + ")" + fromClause);
+            max = rs.next() ? WatermarkState.normalize(rs.getObject(1)) : null;
+        } finally {
+            SqlUtil.closeResultSet(rs);
+            SqlUtil.closeStatement(stmt);
+        }
+
+        if (previous == null)
+            return new WatermarkRange(new String[]{select}, new Object[][]{null},
+                new rowType[]{rowType.CURRENT}, max);
+        final boolean advanced = max != null && WatermarkState.compare(max, previous) > 0;
+        if (!advanced && lag == 0)
+            return new WatermarkRange(new String[]{select + " where 1 = 0"},
+                new Object[][]{null}, new rowType[]{rowType.CURRENT}, previous);
+
+        final Object lower = lag > 0 ? WatermarkState.subtract(previous, lag) : previous;
+        final Object upper = advanced ? max : previous;
+        final String changed = " where " + column + " > ? and " + column + " <= ?";
+        if (insertColumn == null)
+            return new WatermarkRange(new String[]{select + changed},
+                new Object[][]{{lower, upper}}, new rowType[]{rowType.UPDATE}, upper);
+        return new WatermarkRange(
+            new String[]{
+                select + changed + " and " + insertColumn + " > ?",
+                select + changed + " and ( " + insertColumn + " <= ? or " +
+                    insertColumn + " is null )"},
+            new Object[][]{{lower, upper, lower}, {lower, upper, lower}},
+            new rowType[]{rowType.INSERT, rowType.UPDATE}, upper);
+    }
+
+    /**
+     * Gets the number of statements.
+     *
+     * @return the statement count
+     */
+    int getStatementCount() {
+        return statements.length;
+    }
+
+    /**
+     * Gets a statement.
+     *
+     * @param idx the index of the statement
+     * @return the statement
+     */
+    String getStatementText(final int idx) {
+        return statements[idx];
+    }
+
+    /**
+     * Gets the parameters of a statement.
+     *
+     * @param idx the index of the statement
+     * @return the parameters or null
+     */
+    Object[] getParameters(final int idx) {
+        return parameters[idx];
+    }
+
+    /**
+     * Gets the type of the rows of a statement.
+     *
+     * @param idx the index of the statement
+     * @return the row type
+     */
+    rowType getRowType(final int idx) {
+        return rowTypes[idx];
+    }
+
+    /**
+     * Gets the watermark stored after the export.
+     *
+     * @return the watermark or null if the table has no value
+     */
+    Object getWatermark() {
+        return watermark;
+    }
+}
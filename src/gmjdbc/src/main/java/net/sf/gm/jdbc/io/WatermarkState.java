@@ -0,0 +1,267 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.jdbc.io;
+
+import net.sf.gm.core.io.DataIOException;
+import net.sf.gm.core.utils.StreamUtil;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Properties;
+
+//
+
+
+/**
+ * The Class WatermarkState.
+ * <p>
+ * The state file of an incremental export: the high-watermark of each table,
+ * the max value of its watermark column ( a timestamp or a version number )
+ * exported so far. The values are kept as properties, the key is the full
+ * table name, the value is prefixed by its type:
+ * <pre>
+ * SCOTT.EMP=timestamp:2007-01-31 23:59:59.0
+ * SCOTT.DEPT=number:4711
+ * </pre>
+ */
+class WatermarkState {
+
+    /**
+     * The file.
+     */
+    private final File file;
+
+    /**
+     * The watermarks.
+     */
+    private final Properties watermarks;
+
+    /**
+     * The Constructor.
+     *
+     * @param file the file
+     */
+    private WatermarkState(final File file) {
+
+        this.file = file;
+        this.watermarks = new Properties();
+    }
+
+    /**
+     * Load a state file.
+     *
+     * @param file the file; a file not existing is an empty state
+     * @return the state
+     * @throws DataIOException the data IO exception
+     */
+    static WatermarkState load(final File file) throws DataIOException {
+
+        final WatermarkState state = new WatermarkState(file);
+        if (!file.exists())
+            return state;
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            state.watermarks.load(in);
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        } finally {
+            StreamUtil.closeInputStream(in);
+        }
+        return state;
+    }
+
+    /**
+     * Gets the file.
+     *
+     * @return the file
+     */
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the watermark of a table.
+     *
+     * @param fullTableName the full table name
+     * @return the watermark ( Timestamp, BigDecimal or String ) or null if
+     * the table has not been exported yet
+     * @throws DataIOException if the value is invalid
+     */
+    synchronized Object get(final String fullTableName) throws DataIOException {
+
+        final String value = watermarks.getProperty(fullTableName);
+        if (value == null)
+            return null;
+        final Object watermark = decode(value);
+        if (watermark == null)
+            throw new DataIOException("state file '" + file.getPath() +
+                "': invalid watermark '" + value + "' of table '" + fullTableName +
+                "'");
+        return watermark;
+    }
+
+    /**
+     * Set the watermark of a table and write the state file.
+     *
+     * @param fullTableName the full table name
+     * @param watermark     the watermark, normalized ( see {@link #normalize} )
+     * @throws DataIOException the data IO exception
+     */
+    synchronized void set(final String fullTableName, final Object watermark)
+        throws DataIOException {
+
+        watermarks.setProperty(fullTableName, encode(watermark));
+        save();
+    }
+
+    /**
+     * Encode a normalized value, prefixed by its type.
+     *
+     * @param value the value, normalized ( see {@link #normalize} )
+     * @return the encoded value
+     */
+    static String encode(final Object value) {
+
+        if (value instanceof Timestamp)
+            return "timestamp:" + value;
+        if (value instanceof BigDecimal)
+            return "number:" + ((BigDecimal) value).toPlainString();
+        if (value instanceof byte[]) {
+            final StringBuilder res = new StringBuilder("bytes:");
+            for (final byte b : (byte[]) value)
+                res.append(String.format("%02x", b & 0xff));
+            return res.toString();
+        }
+        return "string:" + value;
+    }
+
+    /**
+     * Decode a value encoded by {@link #encode}.
+     *
+     * @param value the encoded value
+     * @return the value ( Timestamp, BigDecimal, byte[] or String ) or null if
+     * the value is invalid
+     */
+    static Object decode(final String value) {
+
+        try {
+            if (value.startsWith("timestamp:"))
+                return Timestamp.valueOf(value.substring(10));
+            if (value.startsWith("number:"))
+                return new BigDecimal(value.substring(7));
+            if (value.startsWith("bytes:")) {
+                final byte[] res = new byte[(value.length() - 6) / 2];
+                for (int i = 0; i < res.length; i++)
+                    res[i] = (byte) Integer.parseInt(
+                        value.substring(6 + 2 * i, 8 + 2 * i), 16);
+                return res;
+            }
+            if (value.startsWith("string:"))
+                return value.substring(7);
+        } catch (final IllegalArgumentException ignore) {
+            // invalid
+        }
+        return null;
+    }
+
+    /**
+     * Write the state file; the previous file is replaced when the new one is
+     * complete.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    private void save() throws DataIOException {
+
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(tmpFile));
+            watermarks.store(out, "jdbmigr export watermarks");
+            out.close();
+            out = null;
+            if (file.exists() && !file.delete() || !tmpFile.renameTo(file))
+                throw new DataIOException("failed to write state file '" +
+                    file.getPath() + "'");
+        } catch (final IOException e) {
+            throw new DataIOException(e);
+        } finally {
+            StreamUtil.closeOutputStream(out);
+        }
+    }
+
+    /**
+     * Normalize a value of a watermark column.
+     *
+     * @param value the value read from the database
+     * @return a Timestamp for dates, a BigDecimal for numbers, the bytes of a
+     * binary value, the string value otherwise or null
+     */
+    static Object normalize(final Object value) {
+
+        if (value == null)
+            return null;
+        if (value instanceof byte[])
+            return value;
+        if (value instanceof Timestamp)
+            return value;
+        if (value instanceof java.util.Date)
+            return new Timestamp(((java.util.Date) value).getTime());
+        if (value instanceof BigDecimal)
+            return value;
+        if (value instanceof Number)
+            return new BigDecimal(value.toString());
+        return value.toString();
+    }
+
+    /**
+     * Subtract a lag from a normalized watermark.
+     *
+     * @param watermark the watermark
+     * @param lag       the lag: seconds for a timestamp, units for a number
+     * @return the watermark minus the lag
+     * @throws DataIOException if the watermark is neither a timestamp nor a
+     *                         number
+     */
+    static Object subtract(final Object watermark, final long lag)
+        throws DataIOException {
+
+        if (watermark instanceof Timestamp) {
+            final Timestamp ts = (Timestamp) watermark;
+            final Timestamp lower = new Timestamp(ts.getTime() - lag * 1000L);
+            lower.setNanos(ts.getNanos());
+            return lower;
+        }
+        if (watermark instanceof BigDecimal)
+            return ((BigDecimal) watermark).subtract(BigDecimal.valueOf(lag));
+        throw new DataIOException("watermark '" + watermark +
+            "': a lag requires a timestamp or number column");
+    }
+
+    /**
+     * Compare two normalized watermarks.
+     *
+     * @param a the first watermark
+     * @param b the second watermark
+     * @return a negative number, zero, or a positive number if a is less than,
+     * equal to, or greater than b
+     * @throws DataIOException if the watermarks are not of the same type
+     */
+    static int compare(final Object a, final Object b) throws DataIOException {
+
+        if (a instanceof Timestamp && b instanceof Timestamp)
+            return ((Timestamp) a).compareTo((Timestamp) b);
+        if (a instanceof BigDecimal && b instanceof BigDecimal)
+            return ((BigDecimal) a).compareTo((BigDecimal) b);
+        if (a instanceof String && b instanceof String)
+            return ((String) a).compareTo((String) b);
+        throw new DataIOException("watermark '" + a + "' and '" + b +
+            "' are not comparable");
+    }
+}
@@ -0,0 +1,306 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.jdbc.load;
+
+import net.sf.gm.core.ui.Progress;
+
+//
+
+
+/**
+ * The Class BatchSizeController.
+ * <p>
+ * Controls the batch size and the commit size of a loader. In adaptive mode
+ * the batch size is tuned by hill climbing on the measured row throughput
+ * ( rows per second of wall time ) of a window of batches, and the commit size
+ * is tuned by the share of the commit latency of the elapsed time between two
+ * commits. A commit may also be triggered by the elapsed time since the last
+ * commit. All tuning decisions are logged ( verbose ).
+ */
+public class BatchSizeController {
+
+    /**
+     * The number of batches measured before the batch size is changed.
+     */
+    private static final int WINDOW_BATCHES = 5;
+
+    /**
+     * The relative throughput change regarded as significant.
+     */
+    private static final double THRESHOLD = 0.05;
+
+    /**
+     * The commit latency share above which the commit size is increased.
+     */
+    private static final double COMMIT_SHARE_HIGH = 0.10;
+
+    /**
+     * The commit latency share below which the commit size is decreased.
+     */
+    private static final double COMMIT_SHARE_LOW = 0.01;
+
+    /**
+     * The max number of batches per commit in adaptive mode.
+     */
+    private static final int MAX_COMMIT_BATCHES = 64;
+
+    /**
+     * The progress.
+     */
+    private final Progress progress;
+
+    /**
+     * The adaptive flag.
+     */
+    private final boolean adaptive;
+
+    /**
+     * The initial batch size.
+     */
+    private final int initialBatchSize;
+
+    /**
+     * The min batch size.
+     */
+    private final int minBatchSize;
+
+    /**
+     * The max batch size.
+     */
+    private final int maxBatchSize;
+
+    /**
+     * The max commit size ( 0: commit after each batch ).
+     */
+    private final int maxCommitSize;
+
+    /**
+     * The commit interval in milliseconds ( 0: disabled ).
+     */
+    private final long commitInterval;
+
+    /**
+     * The table name.
+     */
+    private String tableName;
+
+    /**
+     * The current batch size.
+     */
+    private int batchSize;
+
+    /**
+     * The number of batches per commit.
+     */
+    private int commitBatches;
+
+    /**
+     * The direction of the next batch size change.
+     */
+    private int direction;
+
+    /**
+     * The throughput of the last window.
+     */
+    private double lastThroughput;
+
+    /**
+     * The start of the current window.
+     */
+    private long windowStart;
+
+    /**
+     * The number of batches of the current window.
+     */
+    private int windowBatches;
+
+    /**
+     * The number of rows of the current window.
+     */
+    private long windowRows;
+
+    /**
+     * The time of the last commit.
+     */
+    private long lastCommit;
+
+    /**
+     * The Constructor.
+     *
+     * @param progress       the progress
+     * @param adaptive       tune the batch and commit size
+     * @param batchSize      the initial batch size
+     * @param minBatchSize   the min batch size ( adaptive mode )
+     * @param maxBatchSize   the max batch size ( adaptive mode )
+     * @param maxCommitSize  the max commit size ( 0: commit after each batch )
+     * @param commitInterval the commit interval in milliseconds ( 0: disabled )
+     */
+    public BatchSizeController(final Progress progress, final boolean adaptive,
+        final int batchSize, final int minBatchSize, final int maxBatchSize,
+        final int maxCommitSize, final long commitInterval) {
+
+        this.progress = progress;
+        this.adaptive = adaptive;
+        this.minBatchSize = Math.max(1, adaptive ? minBatchSize : batchSize);
+        this.maxBatchSize =
+            Math.max(this.minBatchSize, adaptive ? maxBatchSize : batchSize);
+        this.initialBatchSize =
+            Math.min(this.maxBatchSize, Math.max(this.minBatchSize, batchSize));
+        this.maxCommitSize = maxCommitSize;
+        this.commitInterval = commitInterval;
+        startLoading(null);
+    }
+
+    /**
+     * Start loading a table.
+     *
+     * @param tableName the table name
+     */
+    public void startLoading(final String tableName) {
+
+        this.tableName = tableName;
+        batchSize = initialBatchSize;
+        commitBatches = 1;
+        direction = 1;
+        lastThroughput = 0;
+        windowStart = System.nanoTime();
+        windowBatches = 0;
+        windowRows = 0;
+        lastCommit = windowStart;
+    }
+
+    /**
+     * End loading a table.
+     */
+    public void endLoading() {
+
+        if (adaptive && tableName != null)
+            verboseln("batch size " + batchSize + ", commit size " + getCommitSize() +
+                ", last throughput " + (long) lastThroughput + " rows/s");
+    }
+
+    /**
+     * Gets the batch size.
+     *
+     * @return the batch size
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Gets the commit size.
+     *
+     * @return the commit size
+     */
+    public int getCommitSize() {
+
+        if (!adaptive)
+            return maxCommitSize;
+        final int res = batchSize * commitBatches;
+        return maxCommitSize > 0 ? Math.min(res, Math.max(batchSize, maxCommitSize))
+            : res;
+    }
+
+    /**
+     * Checks if a commit is due.
+     *
+     * @param pendingRows the number of rows not committed yet
+     * @return true, if a commit is due
+     */
+    public boolean isCommitDue(final int pendingRows) {
+
+        if (pendingRows >= getCommitSize())
+            return true;
+        return commitInterval > 0 && pendingRows > 0 &&
+            System.nanoTime() - lastCommit >= commitInterval * 1000000L;
+    }
+
+    /**
+     * Called after a batch has been executed.
+     *
+     * @param rows the number of rows of the batch
+     */
+    public void batchExecuted(final int rows) {
+
+        if (!adaptive)
+            return;
+        windowRows += rows;
+        if (++windowBatches < WINDOW_BATCHES)
+            return;
+
+        final long now = System.nanoTime();
+        final double throughput =
+            windowRows * 1000000000.0 / Math.max(1, now - windowStart);
+        windowStart = now;
+        windowBatches = 0;
+        windowRows = 0;
+
+        if (lastThroughput > 0) {
+            if (throughput < lastThroughput * (1 - THRESHOLD))
+                direction = -direction;
+            else if (throughput < lastThroughput * (1 + THRESHOLD)) {
+                // no significant change: keep the current batch size
+                lastThroughput = throughput;
+                return;
+            }
+        }
+        lastThroughput = throughput;
+
+        int newBatchSize = direction > 0 ? batchSize * 2 : batchSize / 2;
+        newBatchSize = Math.min(maxBatchSize, Math.max(minBatchSize, newBatchSize));
+        if (newBatchSize == batchSize) {
+            direction = -direction;
+            return;
+        }
+        verboseln("batch size " + batchSize + " -> " + newBatchSize + " (" +
+            (long) throughput + " rows/s)");
+        batchSize = newBatchSize;
+    }
+
+    /**
+     * Called after a commit.
+     *
+     * @param commitNanos the latency of the commit in nanoseconds
+     */
+    public void committed(final long commitNanos) {
+
+        final long now = System.nanoTime();
+        final long elapsed = now - lastCommit;
+        lastCommit = now;
+        if (!adaptive || elapsed <= 0)
+            return;
+
+        final double share = (double) commitNanos / elapsed;
+        int newCommitBatches = commitBatches;
+        if (share > COMMIT_SHARE_HIGH && commitBatches < MAX_COMMIT_BATCHES &&
+            (maxCommitSize <= 0 || getCommitSize() < maxCommitSize))
+            newCommitBatches = commitBatches * 2;
+        else if (share < COMMIT_SHARE_LOW && commitBatches > 1)
+            newCommitBatches = commitBatches / 2;
+        if (newCommitBatches == commitBatches)
+            return;
+        final int oldCommitSize = getCommitSize();
+        commitBatches = newCommitBatches;
+        verboseln("commit size " + oldCommitSize + " -> " + getCommitSize() +
+            " (commit " + (commitNanos / 1000000) + " ms of " +
+            (elapsed / 1000000) + " ms)");
+    }
+
+    /**
+     * Log a tuning decision.
+     *
+     * @param message the message
+     */
+    private void verboseln(final String message) {
+
+        if (progress != null)
+            progress.verboseln(" loader: " + (tableName != null ? tableName + ": " : "") +
+                message);
+    }
+}
@@ -0,0 +1,421 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.jdbc.load;
+
+import net.sf.gm.core.io.DataIOException;
+import net.sf.gm.core.io.DataReader;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+//
+
+
+/**
+ * The Class ColumnBinder.
+ * <p>
+ * A column binder reads a typed value from a {@link DataReader} and binds it
+ * to a statement parameter. The binder for a column is resolved once per
+ * table, so the per-row path does not need any type lookups.
+ */
+public abstract class ColumnBinder {
+
+    /**
+     * The sql type.
+     */
+    private final int sqlType;
+
+    /**
+     * The sql type name.
+     */
+    private final String sqlTypeName;
+
+    /**
+     * The Constructor.
+     *
+     * @param sqlType     the sql type
+     * @param sqlTypeName the sql type name
+     */
+    protected ColumnBinder(final int sqlType, final String sqlTypeName) {
+
+        this.sqlType = sqlType;
+        this.sqlTypeName = sqlTypeName;
+    }
+
+    /**
+     * Creates the column binder for the specified sql type.
+     *
+     * @param sqlType     the sql type ( java.sql.Types )
+     * @param sqlTypeName the sql type name
+     * @return the column binder
+     */
+    public static ColumnBinder create(final int sqlType, final String sqlTypeName) {
+
+        switch (sqlType) {
+            case Types.BOOLEAN:
+                return new BooleanBinder(sqlType, sqlTypeName);
+            case Types.BIT:
+                return new ShortBinder(sqlType, sqlTypeName);
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return new IntBinder(sqlType, sqlTypeName);
+            case Types.BIGINT:
+                return new LongBinder(sqlType, sqlTypeName);
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return new DoubleBinder(sqlType, sqlTypeName);
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return new BigDecimalBinder(sqlType, sqlTypeName);
+            case Types.DATE:
+            case Types.TIME:
+            case Types.TIMESTAMP:
+                return new TimestampBinder(sqlType, sqlTypeName);
+            case Types.LONGVARCHAR:
+            case Types.VARCHAR:
+                return new StringBinder(sqlType, sqlTypeName);
+            case Types.CHAR:
+                return new CharBinder(sqlType, sqlTypeName);
+            case Types.LONGVARBINARY:
+            case Types.VARBINARY:
+            case Types.BINARY:
+                return new BytesBinder(sqlType, sqlTypeName);
+            case Types.BLOB:
+                return new BinaryStreamBinder(sqlType, sqlTypeName);
+            case Types.CLOB:
+                return new CharacterStreamBinder(sqlType, sqlTypeName);
+            default:
+                // todo: implement the following sql types: DATALINK,ARRAY,
+                // DISTINCT, NULL, REF, STRUCT, JAVA_OBJECT, OTHER
+                return new UnsupportedBinder(sqlType, sqlTypeName);
+        }
+    }
+
+    /**
+     * Gets the sql type.
+     *
+     * @return the sql type
+     */
+    public int getSqlType() {
+        return sqlType;
+    }
+
+    /**
+     * Gets the sql type name.
+     *
+     * @return the sql type name
+     */
+    public String getSqlTypeName() {
+        return sqlTypeName;
+    }
+
+    /**
+     * Read the value of the column from the reader and bind it to the statement.
+     *
+     * @param stmt     the statement
+     * @param paramIdx the parameter index
+     * @param reader   the reader
+     * @param idx      the column index of the reader
+     * @throws SQLException    the SQL exception
+     * @throws DataIOException the data IO exception
+     */
+    public abstract void bind(PreparedStatement stmt, int paramIdx,
+        DataReader reader, int idx) throws SQLException, DataIOException;
+
+    /**
+     * Bind null.
+     *
+     * @param stmt     the statement
+     * @param paramIdx the parameter index
+     * @throws SQLException the SQL exception
+     */
+    protected void bindNull(final PreparedStatement stmt, final int paramIdx)
+        throws SQLException {
+
+        stmt.setNull(paramIdx, sqlType);
+    }
+
+    /**
+     * The Class BooleanBinder.
+     */
+    private static class BooleanBinder extends ColumnBinder {
+
+        BooleanBinder(final int sqlType, final String sqlTypeName) {
+            super(sqlType, sqlTypeName);
+        }
+
+        public void bind(final PreparedStatement stmt, final int paramIdx,
+            final DataReader reader, final int idx)
+            throws SQLException, DataIOException {
+
+            // "true" or "false"
+            final boolean value = reader.getColumnValueBoolean(idx);
+            if (reader.wasColumnValueNull())
+                bindNull(stmt, paramIdx);
+            else
+                stmt.setBoolean(paramIdx, value);
+        }
+    }
+
+    /**
+     * The Class ShortBinder.
+     */
+    private static class ShortBinder extends ColumnBinder {
+
+        ShortBinder(final int sqlType, final String sqlTypeName) {
+            super(sqlType, sqlTypeName);
+        }
+
+        public void bind(final PreparedStatement stmt, final int paramIdx,
+            final DataReader reader, final int idx)
+            throws SQLException, DataIOException {
+
+            final short value = reader.getColumnValueShort(idx);
+            if (reader.wasColumnValueNull())
+                bindNull(stmt, paramIdx);
+            else
+                stmt.setShort(paramIdx, value);
+        }
+    }
+
+    /**
+     * The Class IntBinder.
+     */
+    private static class IntBinder extends ColumnBinder {
+
+        IntBinder(final int sqlType, final String sqlTypeName) {
+            super(sqlType, sqlTypeName);
+        }
+
+        public void bind(final PreparedStatement stmt, final int paramIdx,
+            final DataReader reader, final int idx)
+            throws SQLException, DataIOException {
+
+            final int value = reader.getColumnValueInt(idx);
+            if (reader.wasColumnValueNull())
+                bindNull(stmt, paramIdx);
+            else
+                stmt.setInt(paramIdx, value);
+        }
+    }
+
+    /**
+     * The Class LongBinder.
+     */
+    private static class LongBinder extends ColumnBinder {
+
+        LongBinder(final int sqlType, final String sqlTypeName) {
+            super(sqlType, sqlTypeName);
+        }
+
+        public void bind(final PreparedStatement stmt, final int paramIdx,
+            final DataReader reader, final int idx)
+            throws SQLException, DataIOException {
+
+            final long value = reader.getColumnValueLong(idx);
+            if (reader.wasColumnValueNull())
+                bindNull(stmt, paramIdx);
+            else
+                stmt.setLong(paramIdx, value);
+        }
+    }
+
+    /**
+     * The Class DoubleBinder.
+     */
+    private static class DoubleBinder extends ColumnBinder {
+
+        DoubleBinder(final int sqlType, final String sqlTypeName) {
+            super(sqlType, sqlTypeName);
+        }
+
+        public void bind(final PreparedStatement stmt, final int paramIdx,
+            final DataReader reader, final int idx)
+            throws SQLException, DataIOException {
+
+            final double value = reader.getColumnValueDouble(idx);
+            if (reader.wasColumnValueNull())
+                bindNull(stmt, paramIdx);
+            else
+                stmt.setDouble(paramIdx, value);
+        }
+    }
+
+    /**
+     * The Class BigDecimalBinder.
+     */
+    private static class BigDecimalBinder extends ColumnBinder {
+
+        BigDecimalBinder(final int sqlType, final String sqlTypeName) {
+            super(sqlType, sqlTypeName);
+        }
+
+        public void bind(final PreparedStatement stmt, final int paramIdx,
+            final DataReader reader, final int idx)
+            throws SQLException, DataIOException {
+
+            final BigDecimal value = reader.getColumnValueBigDecimal(idx);
+            if (reader.wasColumnValueNull())
+                bindNull(stmt, paramIdx);
+            else
+                stmt.setBigDecimal(paramIdx, value);
+        }
+    }
+
+    /**
+     * The Class TimestampBinder.
+     */
+    private static class TimestampBinder extends ColumnBinder {
+
+        TimestampBinder(final int sqlType, final String sqlTypeName) {
+            super(sqlType, sqlTypeName);
+        }
+
+        public void bind(final PreparedStatement stmt, final int paramIdx,
+            final DataReader reader, final int idx)
+            throws SQLException, DataIOException {
+
+            // type long number of milliseconds since January 1, 1970 00:00:00
+            final Timestamp value = reader.getColumnValueTimestamp(idx);
+            if (reader.wasColumnValueNull())
+                bindNull(stmt, paramIdx);
+            else
+                stmt.setTimestamp(paramIdx, value);
+        }
+    }
+
+    /**
+     * The Class StringBinder.
+     */
+    private static class StringBinder extends ColumnBinder {
+
+        StringBinder(final int sqlType, final String sqlTypeName) {
+            super(sqlType, sqlTypeName);
+        }
+
+        public void bind(final PreparedStatement stmt, final int paramIdx,
+            final DataReader reader, final int idx)
+            throws SQLException, DataIOException {
+
+            final String value = reader.getColumnValueString(idx);
+            if (reader.wasColumnValueNull())
+                bindNull(stmt, paramIdx);
+            else
+                stmt.setString(paramIdx, value);
+        }
+    }
+
+    /**
+     * The Class CharBinder.
+     */
+    private static class CharBinder extends ColumnBinder {
+
+        CharBinder(final int sqlType, final String sqlTypeName) {
+            super(sqlType, sqlTypeName);
+        }
+
+        public void bind(final PreparedStatement stmt, final int paramIdx,
+            final DataReader reader, final int idx)
+            throws SQLException, DataIOException {
+
+            final String value = reader.getColumnValueString(idx);
+            if (reader.wasColumnValueNull())
+                bindNull(stmt, paramIdx);
+            else
+                stmt.setString(
+                    paramIdx, value.length() == 0 ? " " : value); // oracle: insert " "
+            // instead of ""
+        }
+    }
+
+    /**
+     * The Class BytesBinder.
+     */
+    private static class BytesBinder extends ColumnBinder {
+
+        BytesBinder(final int sqlType, final String sqlTypeName) {
+            super(sqlType, sqlTypeName);
+        }
+
+        public void bind(final PreparedStatement stmt, final int paramIdx,
+            final DataReader reader, final int idx)
+            throws SQLException, DataIOException {
+
+            final byte[] value = reader.getColumnValueBytes(idx);
+            if (reader.wasColumnValueNull())
+                bindNull(stmt, paramIdx);
+            else
+                stmt.setBytes(paramIdx, value);
+        }
+    }
+
+    /**
+     * The Class BinaryStreamBinder.
+     */
+    private static class BinaryStreamBinder extends ColumnBinder {
+
+        BinaryStreamBinder(final int sqlType, final String sqlTypeName) {
+            super(sqlType, sqlTypeName);
+        }
+
+        public void bind(final PreparedStatement stmt, final int paramIdx,
+            final DataReader reader, final int idx)
+            throws SQLException, DataIOException {
+
+            final InputStream value = reader.getColumnValueBinaryStream(idx);
+            if (reader.wasColumnValueNull())
+                bindNull(stmt, paramIdx);
+            else
+                stmt.setBinaryStream(paramIdx, value);
+        }
+    }
+
+    /**
+     * The Class CharacterStreamBinder.
+     */
+    private static class CharacterStreamBinder extends ColumnBinder {
+
+        CharacterStreamBinder(final int sqlType, final String sqlTypeName) {
+            super(sqlType, sqlTypeName);
+        }
+
+        public void bind(final PreparedStatement stmt, final int paramIdx,
+            final DataReader reader, final int idx)
+            throws SQLException, DataIOException {
+
+            final Reader value = reader.getColumnValueCharacterStream(idx);
+            if (reader.wasColumnValueNull())
+                bindNull(stmt, paramIdx);
+            else
+                stmt.setCharacterStream(paramIdx, value);
+        }
+    }
+
+    /**
+     * The Class UnsupportedBinder.
+     */
+    private static class UnsupportedBinder extends ColumnBinder {
+
+        UnsupportedBinder(final int sqlType, final String sqlTypeName) {
+            super(sqlType, sqlTypeName);
+        }
+
+        public void bind(final PreparedStatement stmt, final int paramIdx,
+            final DataReader reader, final int idx) {
+
+            throw new UnsupportedOperationException("Loader: type '" + getSqlTypeName() + "' is not supported");
+        }
+    }
+}
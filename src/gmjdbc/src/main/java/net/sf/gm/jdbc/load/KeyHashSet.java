@@ -0,0 +1,163 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.jdbc.load;
+
+import java.util.Arrays;
+
+//
+
+
+/**
+ * The Class KeyHashSet.
+ * <p>
+ * A compact set of 64 bit key hashes ( open addressing, linear probing ).
+ * Two different keys may have the same hash, so a key found in the set is
+ * only possibly contained.
+ */
+class KeyHashSet {
+
+    /**
+     * The initial value of a key hash.
+     */
+    static final long SEED = 0xcbf29ce484222325L;
+
+    /**
+     * The value used for empty slots; a hash with this value is remapped.
+     */
+    private static final long EMPTY = 0L;
+
+    /**
+     * The slots.
+     */
+    private long[] slots;
+
+    /**
+     * The size.
+     */
+    private int size;
+
+    /**
+     * The Constructor.
+     */
+    KeyHashSet() {
+
+        slots = new long[64];
+        size = 0;
+    }
+
+    /**
+     * Compute the hash of a key column value.
+     *
+     * @param hash  the hash of the previous key columns or SEED
+     * @param value the string value of the key column or null
+     * @return the hash
+     */
+    static long hash(long hash, final String value) {
+
+        // FNV-1a
+        if (value == null)
+            return (hash ^ 0xff) * 0x100000001b3L;
+        for (int i = 0; i < value.length(); i++)
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        // separator of the key columns
+        return (hash ^ 0xfe) * 0x100000001b3L;
+    }
+
+    /**
+     * Adds a key hash.
+     *
+     * @param hash the hash
+     */
+    void add(final long hash) {
+
+        final long key = hash == EMPTY ? 1L : hash;
+        if ((size + 1) * 2 > slots.length)
+            resize();
+        int idx = index(key, slots.length);
+        while (slots[idx] != EMPTY) {
+            if (slots[idx] == key)
+                return;
+            idx = (idx + 1) & (slots.length - 1);
+        }
+        slots[idx] = key;
+        size++;
+    }
+
+    /**
+     * Checks if a key hash is contained.
+     *
+     * @param hash the hash
+     * @return true, if the hash is contained
+     */
+    boolean contains(final long hash) {
+
+        if (size == 0)
+            return false;
+        final long key = hash == EMPTY ? 1L : hash;
+        int idx = index(key, slots.length);
+        while (slots[idx] != EMPTY) {
+            if (slots[idx] == key)
+                return true;
+            idx = (idx + 1) & (slots.length - 1);
+        }
+        return false;
+    }
+
+    /**
+     * Removes all key hashes.
+     */
+    void clear() {
+
+        if (size == 0)
+            return;
+        if (slots.length > 1024)
+            slots = new long[64];
+        else
+            Arrays.fill(slots, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * Checks if the set is empty.
+     *
+     * @return true, if empty
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Double the number of slots.
+     */
+    private void resize() {
+
+        final long[] old = slots;
+        slots = new long[old.length * 2];
+        for (final long key : old) {
+            if (key == EMPTY)
+                continue;
+            int idx = index(key, slots.length);
+            while (slots[idx] != EMPTY)
+                idx = (idx + 1) & (slots.length - 1);
+            slots[idx] = key;
+        }
+    }
+
+    /**
+     * Gets the slot index of a key.
+     *
+     * @param key    the key
+     * @param length the number of slots
+     * @return the index
+     */
+    private static int index(final long key, final int length) {
+
+        final long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h >>> 32) & (length - 1);
+    }
+}
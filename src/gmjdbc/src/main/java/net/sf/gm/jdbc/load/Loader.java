@@ -8,6 +8,8 @@
 package net.sf.gm.jdbc.load;
 
 import net.sf.gm.core.io.DataWriter;
+import net.sf.gm.jdbc.io.CheckpointJournal;
+import net.sf.gm.jdbc.io.MetaDataSnapshot;
 
 import java.sql.Connection;
 import java.sql.SQLException;
@@ -108,6 +110,91 @@ public interface Loader extends DataWriter {
      */
     void setDoSync(boolean doSync);
 
+    /**
+     * Sets the adaptive batch size bounds.
+     * <p>
+     * If enabled, the batch size and the commit size are tuned within the
+     * given bounds, starting with the max batch size set; the max commit size
+     * set is used as upper bound of the commit size.
+     *
+     * @param minBatchSize the min batch size ( 0: disable adaptive mode )
+     * @param maxBatchSize the max batch size
+     */
+    void setAdaptiveBatchSize(int minBatchSize, int maxBatchSize);
+
+    /**
+     * Sets the commit interval.
+     *
+     * @param commitInterval the max time in milliseconds between two commits
+     *                       ( 0: disabled )
+     */
+    void setCommitInterval(long commitInterval);
+
+    /**
+     * Sets the bisect failed batches flag.
+     *
+     * @param bisectFailedBatches re-execute a failed batch in halves to find
+     *                            the failing rows
+     */
+    void setBisectFailedBatches(boolean bisectFailedBatches);
+
+    /**
+     * Sets the multi-row insert.
+     *
+     * @param multiRowInsert the max number of rows of a multi-row insert
+     *                       statement ( 0: disabled )
+     */
+    void setMultiRowInsert(int multiRowInsert);
+
+    /**
+     * Sets the upsert flag.
+     * <p>
+     * If enabled, imported, inserted and updated rows are written using an
+     * upsert ( e.g. MERGE ) statement, so they can share one batch.
+     *
+     * @param upsert insert rows, or update them if they already exist
+     */
+    void setUpsert(boolean upsert);
+
+    /**
+     * Sets the reorder batches flag.
+     * <p>
+     * If enabled, a pending batch is kept per statement instead of executing
+     * the current batch on each change of the row type. A pending batch is
+     * executed early, if a row touches a primary key pending in this batch.
+     *
+     * @param reorderBatches keep a pending batch per statement
+     */
+    void setReorderBatches(boolean reorderBatches);
+
+    /**
+     * Sets the metadata snapshot used to get the columns and the primary key of
+     * the tables.
+     *
+     * @param metaDataSnapshot the metadata snapshot or null
+     */
+    void setMetaDataSnapshot(MetaDataSnapshot metaDataSnapshot);
+
+    /**
+     * Sets the checkpoint journal: a checkpoint is written after each commit.
+     *
+     * @param checkpointJournal the checkpoint journal or null
+     */
+    void setCheckpointJournal(CheckpointJournal checkpointJournal);
+
+    /**
+     * Resume loading the current table after a checkpoint: the given number of
+     * input rows are skipped, and the row counters are restored. Has to be
+     * called after {@link #startLoading}.
+     *
+     * @param rowCount        the number of input rows to skip
+     * @param writtenRowCount the written row count of the checkpoint
+     * @param failedRowCount  the failed row count of the checkpoint
+     * @param ignoredRowCount the ignored row count of the checkpoint
+     */
+    void resume(long rowCount, long writtenRowCount, long failedRowCount,
+        long ignoredRowCount);
+
     /**
      * Commit.
      *
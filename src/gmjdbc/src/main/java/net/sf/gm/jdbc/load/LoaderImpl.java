@@ -12,14 +12,15 @@ import net.sf.gm.core.io.DataTypes.rowType;
 import net.sf.gm.core.ui.Progress;
 import net.sf.gm.jdbc.common.GMJDBCProperties;
 import net.sf.gm.jdbc.common.SQLState;
+import net.sf.gm.jdbc.common.SqlDialect;
 import net.sf.gm.jdbc.common.SqlUtil;
+import net.sf.gm.jdbc.io.CheckpointJournal;
+import net.sf.gm.jdbc.io.MetaDataSnapshot;
 import net.sf.gm.jdbc.io.TableDef;
 
-import java.io.InputStream;
-import java.io.Reader;
-import java.math.BigDecimal;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -64,6 +65,174 @@ public class LoaderImpl extends DataWriterAbstract implements Loader {
      * The max commit size.
      */
     private int maxCommitSize;
+
+    /**
+     * The min batch size in adaptive mode ( 0: adaptive mode disabled ).
+     */
+    private int minAdaptiveBatchSize;
+
+    /**
+     * The max batch size in adaptive mode.
+     */
+    private int maxAdaptiveBatchSize;
+
+    /**
+     * The commit interval in milliseconds ( 0: disabled ).
+     */
+    private long commitInterval;
+
+    /**
+     * The batch size controller.
+     */
+    private BatchSizeController batchSizeController;
+
+    /**
+     * The bisect failed batches flag.
+     */
+    private boolean bisectFailedBatches;
+
+    /**
+     * The savepoints supported flag.
+     */
+    private boolean savepointsSupported;
+
+    /**
+     * The rows of the current batch ( captured if failed batches are bisected ).
+     */
+    private ArrayList<DataRow> batchRows = new ArrayList<DataRow>();
+
+    /**
+     * The row numbers of the rows of the current batch.
+     */
+    private long[] batchRowNumbers = new long[64];
+
+    /**
+     * The key hashes of the rows of the current batch ( reordered batches ).
+     */
+    private KeyHashSet batchKeys = new KeyHashSet();
+
+    /**
+     * The reorder batches flag.
+     */
+    private boolean reorderBatches;
+
+    /**
+     * The metadata snapshot.
+     */
+    private MetaDataSnapshot metaDataSnapshot;
+
+    /**
+     * The checkpoint journal.
+     */
+    private CheckpointJournal checkpointJournal;
+
+    /**
+     * The number of input rows to skip ( resume ).
+     */
+    private long skipRowCount;
+
+    /**
+     * The current row is skipped.
+     */
+    private boolean skippingRow;
+
+    /**
+     * The primary key flags of the input columns ( null: the primary key is
+     * not complete ).
+     */
+    private boolean[] inputColumnIsKey;
+
+    /**
+     * The key hash of the current row.
+     */
+    private long currentKeyHash;
+
+    /**
+     * The pending batches ( reordered batches ).
+     */
+    private final ArrayList<PendingBatch> pendingBatches =
+        new ArrayList<PendingBatch>();
+
+    /**
+     * The pending batch of the current batch ( reordered batches ).
+     */
+    private PendingBatch currentPendingBatch;
+
+    /**
+     * The reader used to bind the captured rows.
+     */
+    private DataRowReader batchRowReader;
+
+    /**
+     * The max number of rows of a multi-row insert statement ( 0: disabled ).
+     */
+    private int multiRowInsert;
+
+    /**
+     * The insert statement text without values clause.
+     */
+    private String insertStmtPrefix;
+
+    /**
+     * The values clause of one row of the insert statement.
+     */
+    private String insertStmtValues;
+
+    /**
+     * The number of parameters of one row of the insert statement.
+     */
+    private int insertParamCount;
+
+    /**
+     * The number of rows of the multi-row insert statement.
+     */
+    private int insertBlockRows;
+
+    /**
+     * The multi-row insert statement ( null: multi-row insert is not used ).
+     */
+    private PreparedStatement insertBlockStmt;
+
+    /**
+     * The multi-row insert statement for the remaining rows of a batch.
+     */
+    private PreparedStatement insertTailStmt;
+
+    /**
+     * The number of rows of the tail statement.
+     */
+    private int insertTailRows;
+
+    /**
+     * The upsert flag.
+     */
+    private boolean upsert;
+
+    /**
+     * The sql dialect of the connection.
+     */
+    private SqlDialect dialect;
+
+    /**
+     * The upsert statement ( null: native upsert is not used ).
+     */
+    private PreparedStatement upsertRowStmt;
+
+    /**
+     * The emulated upsert flag: update the rows and insert the rows not found.
+     */
+    private boolean upsertEmulated;
+
+    /**
+     * The current rows are upserted using the emulation.
+     */
+    private boolean currentUpsertEmulated;
+
+    /**
+     * The driver returns no update counts for the batched updates of the
+     * emulated upsert, so the updates are executed row by row.
+     */
+    private boolean upsertUpdatesUnbatched;
     /**
      * The map columns by names.
      */
@@ -104,6 +273,10 @@ public class LoaderImpl extends DataWriterAbstract implements Loader {
      * The current commit size.
      */
     private int currentCommitSize;
+    /**
+     * A batch has been executed since the last checkpoint.
+     */
+    private boolean batchExecuted;
 
     // current operation
     /**
@@ -131,6 +304,11 @@ public class LoaderImpl extends DataWriterAbstract implements Loader {
      */
     private int[] currentColumnMap;
 
+    /**
+     * The column binders ( bind plan for all input columns ).
+     */
+    private ColumnBinder[] columnBinders;
+
     // import/insert row operation
 
     /**
@@ -213,6 +391,7 @@ public class LoaderImpl extends DataWriterAbstract implements Loader {
         if (!con.getMetaData().supportsBatchUpdates())
             throw new SQLException(
                 "batch processing is not supported by the selected driver");
+        savepointsSupported = con.getMetaData().supportsSavepoints();
     }
 
     /**
@@ -222,6 +401,8 @@ public class LoaderImpl extends DataWriterAbstract implements Loader {
 
         currentRowStmt = null;
         currentColumnMap = null;
+        columnBinders = null;
+        batchRowReader = null;
         insertColumnMap = null;
         updateColumnMap = null;
         deleteColumnMap = null;
@@ -229,6 +410,22 @@ public class LoaderImpl extends DataWriterAbstract implements Loader {
             SqlUtil.closePreparedStatement(insertRowStmt);
             insertRowStmt = null;
         }
+        if (insertBlockStmt != null) {
+            SqlUtil.closePreparedStatement(insertBlockStmt);
+            insertBlockStmt = null;
+        }
+        if (upsertRowStmt != null) {
+            SqlUtil.closePreparedStatement(upsertRowStmt);
+            upsertRowStmt = null;
+        }
+        upsertEmulated = false;
+        currentUpsertEmulated = false;
+        upsertUpdatesUnbatched = false;
+        if (insertTailStmt != null) {
+            SqlUtil.closePreparedStatement(insertTailStmt);
+            insertTailStmt = null;
+            insertTailRows = 0;
+        }
         if (updateRowStmt != null) {
             SqlUtil.closePreparedStatement(updateRowStmt);
             updateRowStmt = null;
@@ -265,8 +462,11 @@ public class LoaderImpl extends DataWriterAbstract implements Loader {
         ignoredRowCount = 0;
         failedRowCount = 0;
         writtenRowCount = 0;
+        skipRowCount = 0;
+        skippingRow = false;
         currentBatchSize = 0;
         currentCommitSize = 0;
+        batchExecuted = false;
         currentRowType = rowType.UNKNOWN;
         setFullTableName(tableName, schemaName, catalogName);
     }
@@ -340,7 +540,8 @@ public class LoaderImpl extends DataWriterAbstract implements Loader {
 
         // use DatabaseMetaData to get column names and types
 
-        TableDef td = new TableDef(fullTableName);
+        TableDef td = metaDataSnapshot != null
+            ? metaDataSnapshot.getTable(con, fullTableName) : new TableDef(fullTableName);
         dbColumnNames = td.getColumnNames(con);
         dbColumnTypes = td.getColumnTypes(con);
 
@@ -379,6 +580,13 @@ public class LoaderImpl extends DataWriterAbstract implements Loader {
     public void openDataWriting(MetaData metaData) throws DataIOException {
 
         this.metaData = metaData;
+        inputColumnIsKey = null;
+        pendingBatches.clear();
+        currentPendingBatch = null;
+        batchSizeController = new BatchSizeController(getProgress(),
+            minAdaptiveBatchSize > 0, maxBatchSize, minAdaptiveBatchSize,
+            maxAdaptiveBatchSize, maxCommitSize, commitInterval);
+        batchSizeController.startLoading(fullTableName);
         try {
             final int readColumnCount = metaData.getColumnCount();
 
@@ -476,30 +684,46 @@ public class LoaderImpl extends DataWriterAbstract implements Loader {
                 }
                 insertStmtSB.append(" ) ");
             }
-            insertStmtSB.append(" values (");
+            insertStmtPrefix = insertStmtSB.toString();
+            final StringBuilder valuesSB = new StringBuilder();
+            valuesSB.append("(");
             for (int idxStmt = 0, idx = 1; idx <= insertColumnCount; idx++) {
                 if (++idxStmt > 1)
-                    insertStmtSB.append(", ");
-                insertStmtSB.append("?");
+                    valuesSB.append(", ");
+                valuesSB.append("?");
             }
-            insertStmtSB.append(")");
+            valuesSB.append(")");
+            insertStmtValues = valuesSB.toString();
+            insertParamCount = insertColumnCount;
+
+            insertRowStmt = con.prepareStatement(getInsertStatement(1));
 
-            insertRowStmt = con.prepareStatement(insertStmtSB.toString());
+            // resolve the bind plan once per table
+            columnBinders = createColumnBinders(readColumnCount);
+            batchRowReader = new DataRowReader(metaData);
+            prepareMultiRowInsert();
 
             syncErrorCause = null;
-            if (!doSync)
+            if (!doSync && !upsert)
                 return;
 
             if (!mapColumnsByNames) {
                 syncErrorCause =
                     "synchronize not supported using 'map columns by column id'";
+                upsertNotSupported();
                 return;
             }
-            if (dbPrimaryKeyColumnCount != foundPrimaryKeyColumnCount) {
+            if (dbPrimaryKeyColumnCount != foundPrimaryKeyColumnCount ||
+                foundPrimaryKeyColumnCount == 0) {
                 syncErrorCause =
                     "primary key is not included in the set of input columns";
+                upsertNotSupported();
                 return;
             }
+            inputColumnIsKey = inputColumnIsPrimaryKey;
+            if (upsert)
+                prepareUpsert(readColumnCount, inputColumnIsPrimaryKey,
+                    foundNonPrimaryKeyColumnCount);
 
             // build the delete statement
             deleteColumnMap = new int[readColumnCount];
@@ -599,11 +823,13 @@ public class LoaderImpl extends DataWriterAbstract implements Loader {
     public void closeDataWriting() throws DataIOException {
 
         try {
-            doExecuteCurrentBatch();
+            executePendingBatches();
             commit();
         } catch (SQLException e) {
             throw new DataIOException(e);
         }
+        writeCheckpoint();
+        batchSizeController.endLoading();
     }
 
     /**
@@ -693,7 +919,10 @@ public class LoaderImpl extends DataWriterAbstract implements Loader {
      */
     public void commit() throws SQLException {
 
+        final long start = System.nanoTime();
         con.commit();
+        if (batchSizeController != null)
+            batchSizeController.committed(System.nanoTime() - start);
         writtenRowCount += currentCommitSize;
         currentCommitSize = 0;
     }
@@ -727,6 +956,130 @@ public class LoaderImpl extends DataWriterAbstract implements Loader {
         this.maxBatchSize = maxBatchSize;
     }
 
+    /**
+     * Sets the adaptive batch size bounds.
+     *
+     * @param minBatchSize the min batch size ( 0: disable adaptive mode )
+     * @param maxBatchSize the max batch size
+     */
+    public void setAdaptiveBatchSize(int minBatchSize, int maxBatchSize) {
+
+        this.minAdaptiveBatchSize = minBatchSize;
+        this.maxAdaptiveBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Sets the commit interval.
+     *
+     * @param commitInterval the max time in milliseconds between two commits
+     *                       ( 0: disabled )
+     */
+    public void setCommitInterval(long commitInterval) {
+        this.commitInterval = commitInterval;
+    }
+
+    /**
+     * Sets the bisect failed batches flag.
+     *
+     * @param bisectFailedBatches re-execute a failed batch in halves to find
+     *                            the failing rows
+     */
+    public void setBisectFailedBatches(boolean bisectFailedBatches) {
+        this.bisectFailedBatches = bisectFailedBatches;
+    }
+
+    /**
+     * Sets the multi-row insert.
+     *
+     * @param multiRowInsert the max number of rows of a multi-row insert
+     *                       statement ( 0: disabled )
+     */
+    public void setMultiRowInsert(int multiRowInsert) {
+        this.multiRowInsert = multiRowInsert;
+    }
+
+    /**
+     * Sets the upsert flag.
+     *
+     * @param upsert insert rows, or update them if they already exist
+     */
+    public void setUpsert(boolean upsert) {
+        this.upsert = upsert;
+    }
+
+    /**
+     * Sets the reorder batches flag.
+     *
+     * @param reorderBatches keep a pending batch per statement instead of
+     *                       executing the current batch on each change of the
+     *                       row type
+     */
+    public void setReorderBatches(boolean reorderBatches) {
+        this.reorderBatches = reorderBatches;
+    }
+
+    /**
+     * Sets the metadata snapshot.
+     *
+     * @param metaDataSnapshot the metadata snapshot or null
+     */
+    public void setMetaDataSnapshot(MetaDataSnapshot metaDataSnapshot) {
+        this.metaDataSnapshot = metaDataSnapshot;
+    }
+
+    /**
+     * Sets the checkpoint journal.
+     *
+     * @param checkpointJournal the checkpoint journal or null
+     */
+    public void setCheckpointJournal(CheckpointJournal checkpointJournal) {
+        this.checkpointJournal = checkpointJournal;
+    }
+
+    /**
+     * Resume loading the current table after a checkpoint.
+     *
+     * @param rowCount        the number of input rows to skip
+     * @param writtenRowCount the written row count of the checkpoint
+     * @param failedRowCount  the failed row count of the checkpoint
+     * @param ignoredRowCount the ignored row count of the checkpoint
+     */
+    public void resume(long rowCount, long writtenRowCount, long failedRowCount,
+        long ignoredRowCount) {
+
+        this.skipRowCount = rowCount;
+        this.writtenRowCount = writtenRowCount;
+        this.failedRowCount = failedRowCount;
+        this.ignoredRowCount = ignoredRowCount;
+    }
+
+    /**
+     * Write a checkpoint to the journal after a commit. All rows read so far
+     * have been executed.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    private void writeCheckpoint() throws DataIOException {
+
+        batchExecuted = false;
+        if (checkpointJournal != null)
+            checkpointJournal.checkpoint(fullTableName, allRowCount - currentBatchSize,
+                writtenRowCount, failedRowCount, ignoredRowCount);
+    }
+
+    /**
+     * Gets the sql dialect of the connection.
+     *
+     * @return the sql dialect
+     * @throws SQLException the SQL exception
+     */
+    public SqlDialect getDialect() throws SQLException {
+
+        if (dialect == null)
+            dialect = SqlDialect.getDialect(con);
+        return dialect;
+    }
+
     /**
      * Sets the skip columns not found.
      *
@@ -764,259 +1117,390 @@ public class LoaderImpl extends DataWriterAbstract implements Loader {
     public void startRowWriting(rowType type) throws DataIOException {
 
         allRowCount++;
+        // rows committed before the checkpoint are skipped
+        skippingRow = allRowCount <= skipRowCount;
+        if (skippingRow)
+            return;
+        currentKeyHash = KeyHashSet.SEED;
         if (this.currentRowType == type)
             return;
+        if (isUpsertRow(type) && isUpsertRow(currentRowType)) {
+            // insert and update rows share the upsert batch
+            this.currentRowType = type;
+            return;
+        }
 
         try {
+            if (isReorderBatches()) {
+                switchPendingBatch(type);
+                return;
+            }
             // to keep the right order we have to execute the current batch
             doExecuteCurrentBatch();
-            this.currentRowType = type;
-            currentRowStmt = null;
-            currentColumnMap = null;
-            switch (currentRowType) {
-                case CURRENT:
-                    if (doImport) {
-                        currentRowStmt = insertRowStmt;
-                        currentColumnMap = insertColumnMap;
-                    }
-                    currentOperation = "import";
-                    break;
-                case INSERT:
-                    if (doSync) {
-                        currentRowStmt = insertRowStmt;
-                        currentColumnMap = insertColumnMap;
-                    }
-                    currentOperation = "insert";
-                    break;
-                case UPDATE:
-                    if (doSync) {
-                        currentRowStmt = updateRowStmt;
-                        currentColumnMap = updateColumnMap;
-                    }
-                    currentOperation = "update";
-                    break;
-                case DELETE:
-                    if (doSync) {
-                        currentRowStmt = deleteRowStmt;
-                        currentColumnMap = deleteColumnMap;
-                    }
-                    currentOperation = "delete";
-                    break;
-                default:
-                    throw new DataIOException("internal error: unknown row type");
-            }
+            selectStatement(type);
         } catch (SQLException e) {
             throw new DataIOException(e);
         }
     }
 
     /**
-     * End row writing.
-     *
-     * @throws DataIOException the data IO exception
-     */
-    public void endRowWriting() throws DataIOException {
-        executeRow();
-    }
-
-    /**
-     * Sets the column value.
+     * Select the statement for rows of the given type.
      *
-     * @param idx    the idx
-     * @param reader the reader
+     * @param type the row type
      * @throws DataIOException the data IO exception
      */
-    public void setColumnValue(int idx, DataReader reader)
-        throws DataIOException {
-
-        if ((!doImport && currentRowType == rowType.CURRENT) ||
-            (!doSync && currentRowType != rowType.CURRENT))
-            return; // ignored
-
-        if (currentRowStmt == null)
-            return;
-
-        final int idxLoad = currentColumnMap[idx - 1];
-
-        if (idxLoad <= 0)
-            return;
+    protected void selectStatement(final rowType type) throws DataIOException {
 
-        try {
-            int iType = metaData.getColumnType(idx);
-            String sType = metaData.getColumnTypeName(idx);
-            if (iType == DataTypes.UnknownType) {
-                try {
-                    ParameterMetaData pmd = currentRowStmt.getParameterMetaData();
-                    iType = pmd.getParameterType(idxLoad);
-                    sType = pmd.getParameterTypeName(idxLoad);
-                } catch (SQLException e) {
-                    // Oracle 10.2: getParameterType is not supported
-                    iType = Types.VARCHAR;
-                    sType = "VARCHAR";
-                }
-            }
-            if (iType == Types.NULL) {
-                iType = GMJDBCProperties.getJdbcTypes().NativeTypetoInt(sType);
-                if (iType != Types.NULL)
-                    sType = GMJDBCProperties.getJdbcTypes().toString(iType);
-            }
-            switch (iType) {
-                case Types.BOOLEAN: { // "true" or "false"
-                    final boolean value = reader.getColumnValueBoolean(idx);
-                    if (reader.wasColumnValueNull())
-                        setColumnNull(idxLoad, iType);
-                    else
-                        currentRowStmt.setBoolean(idxLoad, value);
-                }
-                break;
-                case Types.BIT: {
-                    // "true" or "false"
-                    final short value = reader.getColumnValueShort(idx);
-                    if (reader.wasColumnValueNull())
-                        setColumnNull(idxLoad, iType);
-                    else
-                        currentRowStmt.setShort(idxLoad, value);
-                }
-                break;
-                case Types.TINYINT:
-                case Types.SMALLINT:
-                case Types.INTEGER: {
-                    final int value = reader.getColumnValueInt(idx);
-                    if (reader.wasColumnValueNull())
-                        setColumnNull(idxLoad, iType);
-                    else
-                        currentRowStmt.setInt(idxLoad, value);
-                }
-                break;
-                case Types.BIGINT: {
-                    final long value = reader.getColumnValueLong(idx);
-                    if (reader.wasColumnValueNull())
-                        setColumnNull(idxLoad, iType);
-                    else
-                        currentRowStmt.setLong(idxLoad, value);
-                }
-                break;
-                case Types.REAL:
-                case Types.FLOAT:
-                case Types.DOUBLE: {
-                    final double value = reader.getColumnValueDouble(idx);
-                    if (reader.wasColumnValueNull())
-                        setColumnNull(idxLoad, iType);
-                    else
-                        currentRowStmt.setDouble(idxLoad, value);
-                }
-                break;
-                case Types.DECIMAL:
-                case Types.NUMERIC: {
-                    final BigDecimal value = reader.getColumnValueBigDecimal(idx);
-                    if (reader.wasColumnValueNull())
-                        setColumnNull(idxLoad, iType);
-                    else
-                        currentRowStmt.setBigDecimal(idxLoad, value);
-                }
-                break;
-                case Types.DATE:
-                case Types.TIME:
-                case Types.TIMESTAMP: {
-                    // type long number of milliseconds since January 1, 1970 00:00:00
-                    final Timestamp value = reader.getColumnValueTimestamp(idx);
-                    if (reader.wasColumnValueNull())
-                        setColumnNull(idxLoad, iType);
-                    else
-                        currentRowStmt.setTimestamp(idxLoad, value);
-                }
-                break;
-                case Types.LONGVARCHAR:
-                case Types.VARCHAR: {
-                    final String value = reader.getColumnValueString(idx);
-                    if (reader.wasColumnValueNull())
-                        setColumnNull(idxLoad, iType);
-                    else
-                        currentRowStmt.setString(idxLoad, value);
-                }
-                break;
-                case Types.CHAR: {
-                    final String value = reader.getColumnValueString(idx);
-                    if (reader.wasColumnValueNull())
-                        setColumnNull(idxLoad, iType);
-                    else
-                        currentRowStmt.setString(
-                            idxLoad, value.length() == 0 ? " " : value); // oracle: insert " "
-                    // instead of ""
+        this.currentRowType = type;
+        currentRowStmt = null;
+        currentColumnMap = null;
+        switch (currentRowType) {
+            case CURRENT:
+                if (doImport) {
+                    currentRowStmt = insertRowStmt;
+                    currentColumnMap = insertColumnMap;
                 }
+                currentOperation = "import";
                 break;
-                case Types.LONGVARBINARY:
-                case Types.VARBINARY:
-                case Types.BINARY: {
-                    final byte[] value = reader.getColumnValueBytes(idx);
-                    if (reader.wasColumnValueNull())
-                        setColumnNull(idxLoad, iType);
-                    else
-                        currentRowStmt.setBytes(idxLoad, value);
+            case INSERT:
+                if (doSync) {
+                    currentRowStmt = insertRowStmt;
+                    currentColumnMap = insertColumnMap;
                 }
+                currentOperation = "insert";
                 break;
-                case Types.BLOB: {
-                    final InputStream value = reader.getColumnValueBinaryStream(idx);
-                    if (reader.wasColumnValueNull())
-                        setColumnNull(idxLoad, iType);
-                    else
-                        currentRowStmt.setBinaryStream(idxLoad, value);
+            case UPDATE:
+                if (doSync) {
+                    currentRowStmt = updateRowStmt;
+                    currentColumnMap = updateColumnMap;
                 }
+                currentOperation = "update";
                 break;
-                case Types.CLOB: {
-                    final Reader value = reader.getColumnValueCharacterStream(idx);
-                    if (reader.wasColumnValueNull())
-                        setColumnNull(idxLoad, iType);
-                    else
-                        currentRowStmt.setCharacterStream(idxLoad, value);
+            case DELETE:
+                if (doSync) {
+                    currentRowStmt = deleteRowStmt;
+                    currentColumnMap = deleteColumnMap;
                 }
+                currentOperation = "delete";
                 break;
-                default:
-                    throw new UnsupportedOperationException("Loader: type '" + sType + "' is not supported");
-                    // todo: implement the following sql types: DATALINK,ARRAY,
-                    // DISTINCT, NULL, REF, STRUCT, JAVA_OBJECT, OTHER
+            default:
+                throw new DataIOException("internal error: unknown row type");
+        }
+        currentUpsertEmulated = false;
+        if (isUpsertRow(currentRowType)) {
+            if (upsertRowStmt != null) {
+                currentRowStmt = upsertRowStmt;
+                currentColumnMap = insertColumnMap;
+            } else {
+                currentRowStmt = updateRowStmt;
+                currentColumnMap = updateColumnMap;
+                currentUpsertEmulated = true;
             }
-
-        } catch (SQLException e) {
-            throw new DataIOException(e);
+            currentOperation = "upsert";
         }
     }
 
     /**
-     * Sets the column null.
+     * Checks if the batches are reordered.
      *
-     * @param type the type
-     * @param idx  the idx
-     * @throws SQLException the SQL exception
+     * @return true, if a pending batch is kept per statement
      */
-    private void setColumnNull(int idx, int type) throws SQLException {
-
-        if ((!doImport && currentRowType == rowType.CURRENT) ||
-            (!doSync && currentRowType != rowType.CURRENT))
-            return; // ignored
-        currentRowStmt.setNull(idx, type);
+    protected boolean isReorderBatches() {
+        return reorderBatches && inputColumnIsKey != null;
     }
 
     /**
-     * execute the row. (batch)
+     * Switch to the pending batch of the statement for rows of the given type;
+     * the current batch is kept pending.
      *
+     * @param type the row type
      * @throws DataIOException the data IO exception
      */
-    public void executeRow() throws DataIOException {
+    private void switchPendingBatch(final rowType type) throws DataIOException {
 
-        try {
+        if (currentPendingBatch == null) {
+            currentPendingBatch = new PendingBatch();
+            pendingBatches.add(currentPendingBatch);
+        }
+        saveCurrentBatch(currentPendingBatch);
+        selectStatement(type);
+        PendingBatch target = null;
+        for (final PendingBatch pending : pendingBatches) {
+            if (currentRowStmt != null ? pending.stmt == currentRowStmt
+                : pending.stmt == null && pending.rowType == type) {
+                target = pending;
+                break;
+            }
+        }
+        if (target == null) {
+            target = new PendingBatch();
+            pendingBatches.add(target);
+        }
+        currentPendingBatch = target;
+        currentBatchSize = target.size;
+        if (target.rows != null) {
+            batchRows = target.rows;
+            batchRowNumbers = target.rowNumbers;
+            batchKeys = target.keys;
+        } else {
+            batchRows = new ArrayList<DataRow>();
+            batchRowNumbers = new long[64];
+            batchKeys = new KeyHashSet();
+        }
+    }
+
+    /**
+     * Save the state of the current batch.
+     *
+     * @param pending the pending batch
+     */
+    private void saveCurrentBatch(final PendingBatch pending) {
+
+        pending.rowType = currentRowType;
+        pending.operation = currentOperation;
+        pending.size = currentBatchSize;
+        pending.stmt = currentRowStmt;
+        pending.columnMap = currentColumnMap;
+        pending.upsertEmulated = currentUpsertEmulated;
+        pending.rows = batchRows;
+        pending.rowNumbers = batchRowNumbers;
+        pending.keys = batchKeys;
+    }
+
+    /**
+     * Restore the state of a pending batch as current batch.
+     *
+     * @param pending the pending batch
+     */
+    private void restoreCurrentBatch(final PendingBatch pending) {
+
+        currentRowType = pending.rowType;
+        currentOperation = pending.operation;
+        currentBatchSize = pending.size;
+        currentRowStmt = pending.stmt;
+        currentColumnMap = pending.columnMap;
+        currentUpsertEmulated = pending.upsertEmulated;
+        batchRows = pending.rows;
+        batchRowNumbers = pending.rowNumbers;
+        batchKeys = pending.keys;
+    }
+
+    /**
+     * Execute a pending batch other than the current batch.
+     *
+     * @param pending the pending batch
+     * @throws SQLException    the SQL exception
+     * @throws DataIOException the data IO exception
+     */
+    private void executePendingBatch(final PendingBatch pending)
+        throws SQLException, DataIOException {
+
+        saveCurrentBatch(currentPendingBatch);
+        restoreCurrentBatch(pending);
+        try {
+            doExecuteCurrentBatch();
+        } finally {
+            saveCurrentBatch(pending);
+            restoreCurrentBatch(currentPendingBatch);
+        }
+    }
+
+    /**
+     * Execute the pending batches containing the key of the current row.
+     *
+     * @throws SQLException    the SQL exception
+     * @throws DataIOException the data IO exception
+     */
+    private void executeConflictingBatches() throws SQLException, DataIOException {
+
+        for (final PendingBatch pending : pendingBatches) {
+            if (pending != currentPendingBatch && pending.size > 0 &&
+                pending.keys.contains(currentKeyHash))
+                executePendingBatch(pending);
+        }
+    }
+
+    /**
+     * Execute the current batch and all pending batches.
+     *
+     * @throws SQLException    the SQL exception
+     * @throws DataIOException the data IO exception
+     */
+    protected void executePendingBatches() throws SQLException, DataIOException {
+
+        for (final PendingBatch pending : pendingBatches) {
+            if (pending != currentPendingBatch && pending.size > 0)
+                executePendingBatch(pending);
+        }
+        doExecuteCurrentBatch();
+    }
+
+    /**
+     * End row writing.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    public void endRowWriting() throws DataIOException {
+
+        if (skippingRow)
+            return;
+        executeRow();
+    }
+
+    /**
+     * Creates the column binders.
+     * <p>
+     * resolves the type of each mapped input column and the binder used to
+     * bind values of this column to the insert, update and delete statement.
+     * the resolved types are written back to the meta data
+     *
+     * @param readColumnCount the read column count
+     * @return the column binders
+     * @throws SQLException the SQL exception
+     */
+    protected ColumnBinder[] createColumnBinders(final int readColumnCount)
+        throws SQLException {
+
+        final ColumnBinder[] binders = new ColumnBinder[readColumnCount];
+        ParameterMetaData pmd = null;
+        boolean pmdSupported = true;
+        for (int idx = 1; idx <= readColumnCount; idx++) {
+            final int idxLoad = insertColumnMap[idx - 1];
+            if (idxLoad <= 0)
+                continue;
+            int iType = metaData.getColumnType(idx);
+            String sType = metaData.getColumnTypeName(idx);
+            if (iType == DataTypes.UnknownType) {
+                iType = Types.VARCHAR;
+                sType = "VARCHAR";
+                try {
+                    if (pmdSupported) {
+                        if (pmd == null)
+                            pmd = insertRowStmt.getParameterMetaData();
+                        iType = pmd.getParameterType(idxLoad);
+                        sType = pmd.getParameterTypeName(idxLoad);
+                    }
+                } catch (SQLException e) {
+                    // Oracle 10.2: getParameterType is not supported
+                    pmdSupported = false;
+                    iType = Types.VARCHAR;
+                    sType = "VARCHAR";
+                }
+            }
+            if (iType == Types.NULL) {
+                iType = GMJDBCProperties.getJdbcTypes().NativeTypetoInt(sType);
+                if (iType != Types.NULL)
+                    sType = GMJDBCProperties.getJdbcTypes().toString(iType);
+            }
+            if (iType != metaData.getColumnType(idx)) {
+                metaData.setColumnType(idx, iType);
+                metaData.setColumnTypeName(idx, sType);
+            }
+            binders[idx - 1] = ColumnBinder.create(iType, sType);
+        }
+        return binders;
+    }
+
+    /**
+     * Checks if the value of a column is read: columns not found in the table
+     * are skipped.
+     *
+     * @param idx the idx
+     * @return true, if the value of the column is read
+     */
+    @Override
+    public boolean isColumnRequested(final int idx) {
+
+        return insertColumnMap == null || idx > insertColumnMap.length ||
+            insertColumnMap[idx - 1] > 0;
+    }
+
+    /**
+     * Sets the column value.
+     *
+     * @param idx    the idx
+     * @param reader the reader
+     * @throws DataIOException the data IO exception
+     */
+    public void setColumnValue(int idx, DataReader reader)
+        throws DataIOException {
+
+        // currentRowStmt is null if the current row type is ignored or not
+        // supported
+        if (currentRowStmt == null || skippingRow)
+            return;
+
+        final int idxLoad = currentColumnMap[idx - 1];
+
+        if (idxLoad <= 0)
+            return;
+
+        try {
+            if (currentPendingBatch != null && inputColumnIsKey[idx - 1])
+                currentKeyHash =
+                    KeyHashSet.hash(currentKeyHash, reader.getColumnValueString(idx));
+            if (isMultiRowInsert()) {
+                // the rows are bound if the batch is executed
+                getBatchRow(currentBatchSize).readValue(idx, reader,
+                    metaData.getColumnType(idx));
+            } else if (bisectFailedBatches || currentUpsertEmulated) {
+                // capture the value, so the row can be bound again
+                final DataRow row = getBatchRow(currentBatchSize);
+                row.readValue(idx, reader, metaData.getColumnType(idx));
+                batchRowReader.setCurrentRow(row);
+                columnBinders[idx - 1].bind(currentRowStmt, idxLoad, batchRowReader, idx);
+            } else
+                columnBinders[idx - 1].bind(currentRowStmt, idxLoad, reader, idx);
+        } catch (SQLException e) {
+            throw new DataIOException(e);
+        }
+    }
+
+    /**
+     * execute the row. (batch)
+     *
+     * @throws DataIOException the data IO exception
+     */
+    public void executeRow() throws DataIOException {
+
+        try {
+
+            if (currentPendingBatch != null && currentRowStmt != null) {
+                // a key pending in another batch has to be written first
+                executeConflictingBatches();
+                batchKeys.add(currentKeyHash);
+            }
 
             // increment always
             // used to calculate the current row in doExecuteCurrentBatch
+            if (currentBatchSize >= batchRowNumbers.length)
+                batchRowNumbers = Arrays.copyOf(batchRowNumbers, currentBatchSize * 2);
+            batchRowNumbers[currentBatchSize] = allRowCount;
             ++currentBatchSize;
 
-            if (currentRowStmt != null)
-                currentRowStmt.addBatch();
+            if (currentRowStmt != null) {
+                if (isMultiRowInsert())
+                    getBatchRow(currentBatchSize - 1);
+                else {
+                    if (bisectFailedBatches || currentUpsertEmulated)
+                        getBatchRow(currentBatchSize - 1);
+                    if (!currentUpsertEmulated || !upsertUpdatesUnbatched)
+                        currentRowStmt.addBatch();
+                }
+            }
 
-            if (currentBatchSize >= maxBatchSize)
+            if (currentBatchSize >= batchSizeController.getBatchSize())
                 doExecuteCurrentBatch();
-            if (currentCommitSize >= maxCommitSize)
-                commit();
+            if (batchSizeController.isCommitDue(currentCommitSize)) {
+                if (checkpointJournal == null)
+                    commit();
+                else if (batchExecuted) {
+                    // the checkpoint covers all rows read so far
+                    executePendingBatches();
+                    commit();
+                    writeCheckpoint();
+                }
+            }
         } catch (SQLException e) {
             throw new DataIOException(e);
         }
@@ -1032,6 +1516,8 @@ public class LoaderImpl extends DataWriterAbstract implements Loader {
 
         if (currentBatchSize < 1)
             return;
+        batchKeys.clear();
+        batchExecuted = true;
 
         if ((!doImport && currentRowType == rowType.CURRENT) ||
             (!doSync && currentRowType != rowType.CURRENT)) {
@@ -1041,7 +1527,7 @@ public class LoaderImpl extends DataWriterAbstract implements Loader {
             return;
         }
 
-        long currentRow = allRowCount - currentBatchSize + 1;
+        final long currentRow = getRowNumber(0);
 
         if (currentRowStmt == null) {
             // operation not supported
@@ -1060,8 +1546,23 @@ public class LoaderImpl extends DataWriterAbstract implements Loader {
             return;
         }
 
-        // final int actBatchSize = currentBatchSize;
+        final int actBatchSize = currentBatchSize;
         currentBatchSize = 0;
+        if (isMultiRowInsert()) {
+            doExecuteMultiRowInsert(actBatchSize);
+            batchSizeController.batchExecuted(actBatchSize);
+            return;
+        }
+        if (currentUpsertEmulated) {
+            doExecuteEmulatedUpsert(actBatchSize);
+            batchSizeController.batchExecuted(actBatchSize);
+            return;
+        }
+        if (bisectFailedBatches) {
+            doExecuteBatchBisected(actBatchSize);
+            batchSizeController.batchExecuted(actBatchSize);
+            return;
+        }
         RuntimeException rte = null;
 
         int[] updateCounts = null;
@@ -1078,9 +1579,11 @@ public class LoaderImpl extends DataWriterAbstract implements Loader {
         } catch (final RuntimeException x) {
             rte = x;
         }
+        int executed = 0;
         if (updateCounts != null) {
             final int currentException = 0;
-            for (int i = 0; i < updateCounts.length; i++, currentRow++) {
+            executed = Math.min(updateCounts.length, actBatchSize);
+            for (int i = 0; i < executed; i++) {
                 if (updateCounts[i] < 0 &&
                     updateCounts[i] != Statement.SUCCESS_NO_INFO) {
                     failedRowCount++;
@@ -1089,34 +1592,719 @@ public class LoaderImpl extends DataWriterAbstract implements Loader {
                         : null;
                     if (e != null) {
                         getProgress().errorln(
-                            " row " + currentRow + ": failed to " + currentOperation + ": " +
+                            " row " + getRowNumber(i) + ": failed to " + currentOperation + ": " +
                                 SQLState.getMessage(e.getSQLState(), e.getErrorCode(),
                                     e.getMessage()));
                     }
-                } else if (updateCounts[i] > 1) {
+                } else if (updateCounts[i] > 1 && currentRowStmt != upsertRowStmt) {
                     throw new DataIOException(
-                        "row " + currentRow +
+                        "row " + getRowNumber(i) +
                             ": update count is greater than 1: " + updateCounts[i]);
                 } else {
                     currentCommitSize++;
                 }
             }
         }
-        if (currentRow <= allRowCount) {
-            long currentFailedRowCount = allRowCount - currentRow + 1;
+        if (executed < actBatchSize) {
+            long currentFailedRowCount = actBatchSize - executed;
             failedRowCount += currentFailedRowCount;
             if (rte != null)
                 getProgress().errorln(
-                    " row " + currentRow + ": failed to " + currentOperation + " " +
+                    " row " + getRowNumber(executed) + ": failed to " + currentOperation + " " +
                         currentFailedRowCount + " row(s): " + rte.getClass().getName(),
                     rte);
             else
-                getProgress().errorln(" row " + currentRow + ": failed to " +
+                getProgress().errorln(" row " + getRowNumber(executed) + ": failed to " +
                     currentOperation + " " + currentFailedRowCount +
                     " row(s)");
         }
 
         currentRowStmt.clearBatch();
+        batchSizeController.batchExecuted(actBatchSize);
+    }
+
+    /**
+     * Gets the text of the insert statement.
+     *
+     * @param rows the number of rows of the values clause
+     * @return the insert statement
+     */
+    protected String getInsertStatement(final int rows) {
+
+        final StringBuilder sb = new StringBuilder(insertStmtPrefix);
+        sb.append(" values ");
+        for (int i = 0; i < rows; i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(insertStmtValues);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets the max number of bind parameters of a statement.
+     *
+     * @return the max number of bind parameters ( 0: multi-row insert is not
+     * supported )
+     * @throws SQLException the SQL exception
+     */
+    protected int getMaxBindParameters() throws SQLException {
+
+        final SqlDialect sqlDialect = getDialect();
+        return sqlDialect.supportsMultiRowValues()
+            ? sqlDialect.getMaxBindParameters()
+            : 0;
+    }
+
+    /**
+     * Prepare the multi-row insert statement.
+     * <p>
+     * the number of rows per statement is limited by the max number of bind
+     * parameters of the database
+     *
+     * @throws SQLException the SQL exception
+     */
+    protected void prepareMultiRowInsert() throws SQLException {
+
+        insertBlockRows = 0;
+        if (multiRowInsert < 2 || insertParamCount < 1)
+            return;
+        insertBlockRows =
+            Math.min(multiRowInsert, getMaxBindParameters() / insertParamCount);
+        if (insertBlockRows < 2) {
+            getProgress().verboseln(" loader: " + fullTableName +
+                ": multi-row insert is not used");
+            insertBlockRows = 0;
+            return;
+        }
+        insertBlockStmt = con.prepareStatement(getInsertStatement(insertBlockRows));
+    }
+
+    /**
+     * Checks if the current rows are inserted using multi-row inserts.
+     *
+     * @return true, if multi-row insert is used for the current rows
+     */
+    protected boolean isMultiRowInsert() {
+        return insertBlockStmt != null && currentRowStmt == insertRowStmt;
+    }
+
+    /**
+     * Execute the captured rows of the current batch using multi-row insert
+     * statements: blocks of full statements are executed as batch, the
+     * remaining rows using a tail statement.
+     * <p>
+     * If the execution fails and failed batches are bisected, the rows are
+     * executed again using the single-row insert statement.
+     *
+     * @param batchSize the number of rows of the current batch
+     * @throws SQLException    the SQL exception
+     * @throws DataIOException the data IO exception
+     */
+    protected void doExecuteMultiRowInsert(final int batchSize)
+        throws SQLException, DataIOException {
+
+        final Savepoint savepoint =
+            bisectFailedBatches && savepointsSupported ? con.setSavepoint() : null;
+        executeMultiRows(savepoint, 0, batchSize);
+    }
+
+    /**
+     * Execute a part of the captured rows of the current batch using multi-row
+     * insert statements.
+     *
+     * @param savepoint the savepoint set before the execution or null
+     * @param from      the index of the first row
+     * @param to        the index after the last row
+     * @throws SQLException    the SQL exception
+     * @throws DataIOException the data IO exception
+     */
+    private void executeMultiRows(final Savepoint savepoint, final int from,
+        final int to) throws SQLException, DataIOException {
+
+        final int blocks = (to - from) / insertBlockRows;
+        final int tailRows = to - from - blocks * insertBlockRows;
+        int executed = from;
+        try {
+            if (blocks > 0) {
+                for (int i = 0; i < blocks; i++) {
+                    bindMultiRow(insertBlockStmt, from + i * insertBlockRows,
+                        insertBlockRows);
+                    insertBlockStmt.addBatch();
+                }
+                final int[] updateCounts = insertBlockStmt.executeBatch();
+                executed = from + blocks * insertBlockRows;
+                countMultiRowUpdates(updateCounts, insertBlockRows, from);
+            }
+            if (tailRows > 0) {
+                if (insertTailRows != tailRows) {
+                    if (insertTailStmt != null)
+                        SqlUtil.closePreparedStatement(insertTailStmt);
+                    insertTailStmt = con.prepareStatement(getInsertStatement(tailRows));
+                    insertTailRows = tailRows;
+                }
+                bindMultiRow(insertTailStmt, executed, tailRows);
+                final int updateCount = insertTailStmt.executeUpdate();
+                countMultiRowUpdates(new int[]{updateCount}, tailRows,
+                    executed);
+            }
+            releaseSavepoint(savepoint);
+        } catch (final SQLException e) {
+            insertBlockStmt.clearBatch();
+            handleMultiRowFailure(savepoint, from, to, executed, e);
+        } catch (final RuntimeException e) {
+            insertBlockStmt.clearBatch();
+            handleMultiRowFailure(savepoint, from, to, executed, e);
+        }
+    }
+
+    /**
+     * Handle a failed multi-row insert.
+     * <p>
+     * Without savepoint, the update counts returned by the driver are used:
+     * the failing statements are reported, and the rows not executed by the
+     * driver are executed again.
+     *
+     * @param savepoint the savepoint set before the execution or null
+     * @param from      the index of the first row
+     * @param to        the index after the last row
+     * @param executed  the index after the rows already counted
+     * @param e         the exception
+     * @throws SQLException    the SQL exception
+     * @throws DataIOException the data IO exception
+     */
+    private void handleMultiRowFailure(final Savepoint savepoint, final int from,
+        final int to, final int executed, final Exception e)
+        throws SQLException, DataIOException {
+
+        if (savepoint != null) {
+            // the counted rows are rolled back too
+            currentCommitSize -= executed - from;
+            con.rollback(savepoint);
+            bisect(from, to, e);
+            return;
+        }
+        final int blocks = (to - from) / insertBlockRows;
+        final int[] updateCounts =
+            executed == from && blocks > 0 && e instanceof BatchUpdateException
+                ? ((BatchUpdateException) e).getUpdateCounts()
+                : null;
+        if (updateCounts == null) {
+            // the tail statement failed, or no information about the blocks
+            reportFailedRows(executed, to, e);
+            return;
+        }
+        // blocks of the batch executed by the driver
+        for (int i = 0; i < updateCounts.length; i++) {
+            final int blockFrom = from + i * insertBlockRows;
+            if (updateCounts[i] == Statement.EXECUTE_FAILED)
+                reportFailedRows(blockFrom, blockFrom + insertBlockRows, e);
+            else
+                currentCommitSize += updateCounts[i] == Statement.SUCCESS_NO_INFO
+                    ? insertBlockRows
+                    : updateCounts[i];
+        }
+        int next = from + updateCounts.length * insertBlockRows;
+        if (updateCounts.length < blocks) {
+            // stopped at the first error: the failing block is reported
+            reportFailedRows(next, next + insertBlockRows, e);
+            next += insertBlockRows;
+        }
+        if (next < to)
+            executeMultiRows(null, next, to);
+    }
+
+    /**
+     * Bind captured rows of the current batch to a multi-row insert statement.
+     *
+     * @param stmt the multi-row insert statement
+     * @param from the index of the first row
+     * @param rows the number of rows
+     * @throws SQLException    the SQL exception
+     * @throws DataIOException the data IO exception
+     */
+    private void bindMultiRow(final PreparedStatement stmt, final int from,
+        final int rows) throws SQLException, DataIOException {
+
+        final int readColumnCount = metaData.getColumnCount();
+        for (int i = 0; i < rows; i++) {
+            final int offset = i * insertParamCount;
+            batchRowReader.setCurrentRow(batchRows.get(from + i));
+            for (int idx = 1; idx <= readColumnCount; idx++) {
+                final int idxLoad = insertColumnMap[idx - 1];
+                if (idxLoad > 0)
+                    columnBinders[idx - 1].bind(stmt, offset + idxLoad, batchRowReader, idx);
+            }
+        }
+    }
+
+    /**
+     * Count the update counts of multi-row insert statements.
+     *
+     * @param updateCounts the update counts
+     * @param rows         the number of rows per statement
+     * @param from         the index of the first row of the statements
+     * @throws DataIOException the data IO exception
+     */
+    private void countMultiRowUpdates(final int[] updateCounts, final int rows,
+        final int from) throws DataIOException {
+
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] == Statement.SUCCESS_NO_INFO || updateCounts[i] == rows)
+                currentCommitSize += rows;
+            else
+                throw new DataIOException(
+                    "row " + getRowNumber(from + i * rows) + ": update count of " + rows +
+                        " row(s) insert is " + updateCounts[i]);
+        }
+    }
+
+    /**
+     * Checks if rows of the given type are upserted.
+     *
+     * @param type the row type
+     * @return true, if rows of this type are upserted
+     */
+    protected boolean isUpsertRow(final rowType type) {
+
+        if (upsertRowStmt == null && !upsertEmulated)
+            return false;
+        switch (type) {
+            case CURRENT:
+                return doImport;
+            case INSERT:
+            case UPDATE:
+                return doSync;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Prepare the upsert statement.
+     * <p>
+     * if the dialect of the database does not support an upsert statement, the
+     * upsert is emulated: the batch is executed using the update statement and
+     * the rows not found are inserted
+     *
+     * @param readColumnCount               the read column count
+     * @param inputColumnIsPrimaryKey       the primary key flags of the input
+     *                                      columns
+     * @param foundNonPrimaryKeyColumnCount the number of non primary key
+     *                                      columns
+     * @throws SQLException the SQL exception
+     */
+    protected void prepareUpsert(final int readColumnCount,
+        final boolean[] inputColumnIsPrimaryKey,
+        final int foundNonPrimaryKeyColumnCount) throws SQLException {
+
+        final String[] columns = new String[insertParamCount];
+        final boolean[] isKey = new boolean[insertParamCount];
+        for (int idx = 1; idx <= readColumnCount; idx++) {
+            final int idxLoad = insertColumnMap[idx - 1];
+            if (idxLoad <= 0)
+                continue;
+            columns[idxLoad - 1] = metaData.getColumnName(idx);
+            isKey[idxLoad - 1] = inputColumnIsPrimaryKey[idx - 1];
+        }
+        final String stmt =
+            getDialect().getUpsertStatement(fullTableName, columns, isKey);
+        if (stmt != null) {
+            upsertRowStmt = con.prepareStatement(stmt);
+            return;
+        }
+        if (foundNonPrimaryKeyColumnCount == 0) {
+            syncErrorCause = "no columns selected for update";
+            upsertNotSupported();
+            return;
+        }
+        getProgress().verboseln(" loader: " + fullTableName +
+            ": upsert is emulated by update and insert");
+        upsertEmulated = true;
+    }
+
+    /**
+     * Report that the upsert is not supported for the current table.
+     */
+    private void upsertNotSupported() {
+
+        if (upsert)
+            getProgress().warningln(" loader: " + fullTableName +
+                ": upsert not supported: " + syncErrorCause);
+    }
+
+    /**
+     * Execute the captured rows of the current batch using the emulated upsert:
+     * the rows are updated, the rows not found are inserted.
+     * <p>
+     * If the driver returns no update counts for the batched updates, the rows
+     * of the batch are updated again one by one to get the counts, and the
+     * updates of the following batches of the table are executed row by row
+     * instead of being batched; the inserts are still batched.
+     *
+     * @param batchSize the number of rows of the current batch
+     * @throws SQLException    the SQL exception
+     * @throws DataIOException the data IO exception
+     */
+    protected void doExecuteEmulatedUpsert(final int batchSize)
+        throws SQLException, DataIOException {
+
+        int[] updateCounts = null;
+        if (!upsertUpdatesUnbatched) {
+            try {
+                updateCounts = updateRowStmt.executeBatch();
+            } catch (final BatchUpdateException e) {
+                updateCounts = e.getUpdateCounts();
+                if (updateCounts == null || updateCounts.length < batchSize) {
+                    // stopped at the first error: executed rows are kept
+                    final int executed =
+                        updateCounts == null ? 0 : updateCounts.length;
+                    reportFailedRows(executed, batchSize, e);
+                    if (executed == 0)
+                        return;
+                    final int[] executedCounts = new int[executed];
+                    System.arraycopy(updateCounts, 0, executedCounts, 0, executed);
+                    updateCounts = executedCounts;
+                }
+            } catch (final SQLException e) {
+                updateRowStmt.clearBatch();
+                reportFailedRows(0, batchSize, e);
+                return;
+            }
+        }
+
+        final int rowCount = updateCounts == null ? batchSize : updateCounts.length;
+        final int[] insertRows = new int[rowCount];
+        int insertCount = 0;
+        for (int i = 0; i < rowCount; i++) {
+            int updateCount;
+            if (updateCounts == null) {
+                bindRow(updateRowStmt, updateColumnMap, batchRows.get(i));
+                try {
+                    updateCount = updateRowStmt.executeUpdate();
+                } catch (final SQLException e) {
+                    reportFailedRows(i, i + 1, e);
+                    continue;
+                }
+            } else
+                updateCount = updateCounts[i];
+            if (updateCount == Statement.SUCCESS_NO_INFO) {
+                // the update has to be repeated to get the update count
+                if (!upsertUpdatesUnbatched) {
+                    getProgress().verboseln(" loader: " + fullTableName +
+                        ": no update counts: the upsert updates are not batched");
+                    upsertUpdatesUnbatched = true;
+                }
+                bindRow(updateRowStmt, updateColumnMap, batchRows.get(i));
+                updateCount = updateRowStmt.executeUpdate();
+            }
+            if (updateCount == 0) {
+                bindRow(insertRowStmt, insertColumnMap, batchRows.get(i));
+                insertRowStmt.addBatch();
+                insertRows[insertCount++] = i;
+            } else if (updateCount == Statement.EXECUTE_FAILED)
+                reportFailedRows(i, i + 1, new SQLException("update failed"));
+            else
+                currentCommitSize++;
+        }
+        if (insertCount == 0)
+            return;
+
+        int[] insertCounts;
+        SQLException insertException = null;
+        try {
+            insertCounts = insertRowStmt.executeBatch();
+        } catch (final BatchUpdateException e) {
+            insertCounts = e.getUpdateCounts();
+            insertException = e;
+        } catch (final SQLException e) {
+            insertCounts = null;
+            insertException = e;
+        }
+        for (int i = 0; i < insertCount; i++) {
+            if (insertCounts == null || i >= insertCounts.length ||
+                insertCounts[i] == Statement.EXECUTE_FAILED)
+                reportFailedRows(insertRows[i], insertRows[i] + 1,
+                    insertException != null ? insertException
+                        : new SQLException("insert failed"));
+            else
+                currentCommitSize++;
+        }
+        insertRowStmt.clearBatch();
+    }
+
+    /**
+     * Gets the row number of a row of the current batch.
+     *
+     * @param idx the index of the row in the current batch
+     * @return the row number
+     */
+    protected long getRowNumber(final int idx) {
+        return batchRowNumbers[idx];
+    }
+
+    /**
+     * Gets the captured row of the current batch.
+     *
+     * @param idx the index of the row in the current batch
+     * @return the data row
+     */
+    protected DataRow getBatchRow(final int idx) {
+
+        while (batchRows.size() <= idx)
+            batchRows.add(new DataRow(metaData.getColumnCount()));
+        return batchRows.get(idx);
+    }
+
+    /**
+     * Execute the current batch; if the batch fails, it is executed again in
+     * halves, down to single rows, so only the failing rows are reported.
+     * <p>
+     * If savepoints are supported, each part is executed within a savepoint
+     * and rolled back on failure. Otherwise the update counts returned by the
+     * driver are used: the rows before the first failing row are regarded as
+     * written, and the rows after it are executed again.
+     *
+     * @param batchSize the number of rows of the current batch
+     * @throws SQLException    the SQL exception
+     * @throws DataIOException the data IO exception
+     */
+    protected void doExecuteBatchBisected(final int batchSize)
+        throws SQLException, DataIOException {
+
+        final Savepoint savepoint = savepointsSupported ? con.setSavepoint() : null;
+        try {
+            countUpdates(currentRowStmt.executeBatch(), 0);
+            releaseSavepoint(savepoint);
+        } catch (final SQLException e) {
+            currentRowStmt.clearBatch();
+            if (savepoint != null) {
+                con.rollback(savepoint);
+                bisect(0, batchSize, e);
+            } else
+                retryAfterFailure(0, batchSize, e);
+        } catch (final RuntimeException e) {
+            currentRowStmt.clearBatch();
+            if (savepoint != null) {
+                con.rollback(savepoint);
+                bisect(0, batchSize, e);
+            } else
+                reportFailedRows(0, batchSize, e);
+        }
+    }
+
+    /**
+     * Execute the rows of the current batch in two halves.
+     *
+     * @param from  the index of the first row
+     * @param to    the index after the last row
+     * @param cause the exception of the failed execution of these rows
+     * @throws SQLException    the SQL exception
+     * @throws DataIOException the data IO exception
+     */
+    private void bisect(final int from, final int to, final Exception cause)
+        throws SQLException, DataIOException {
+
+        if (to - from == 1) {
+            reportFailedRows(from, to, cause);
+            return;
+        }
+        final int mid = (from + to) >>> 1;
+        executeRows(from, mid);
+        executeRows(mid, to);
+    }
+
+    /**
+     * Execute a part of the captured rows of the current batch within a
+     * savepoint.
+     *
+     * @param from the index of the first row
+     * @param to   the index after the last row
+     * @throws SQLException    the SQL exception
+     * @throws DataIOException the data IO exception
+     */
+    private void executeRows(final int from, final int to)
+        throws SQLException, DataIOException {
+
+        final Savepoint savepoint = con.setSavepoint();
+        try {
+            bindRows(from, to);
+            countUpdates(currentRowStmt.executeBatch(), from);
+            releaseSavepoint(savepoint);
+        } catch (final SQLException e) {
+            currentRowStmt.clearBatch();
+            con.rollback(savepoint);
+            bisect(from, to, e);
+        } catch (final RuntimeException e) {
+            currentRowStmt.clearBatch();
+            con.rollback(savepoint);
+            bisect(from, to, e);
+        }
+    }
+
+    /**
+     * Continue after a failed batch without savepoints.
+     * <p>
+     * The update counts of a driver stopping at the first error are used to
+     * find the failing row; the rows after it are executed again.
+     *
+     * @param from the index of the first row
+     * @param to   the index after the last row
+     * @param e    the exception
+     * @throws SQLException    the SQL exception
+     * @throws DataIOException the data IO exception
+     */
+    private void retryAfterFailure(int from, final int to, SQLException e)
+        throws SQLException, DataIOException {
+
+        while (true) {
+            final int[] updateCounts = e instanceof BatchUpdateException
+                ? ((BatchUpdateException) e).getUpdateCounts()
+                : null;
+            if (updateCounts == null || updateCounts.length >= to - from) {
+                // no information about the failing row
+                // or the driver continued after the error
+                int failed = 0;
+                if (updateCounts != null) {
+                    for (final int updateCount : updateCounts)
+                        if (updateCount == Statement.EXECUTE_FAILED)
+                            failed++;
+                    countUpdates(updateCounts, from);
+                } else
+                    failed = to - from;
+                if (failed > 0)
+                    getProgress().errorln(" row " + getRowNumber(from) + ": failed to " +
+                        currentOperation + " " + failed + " row(s): " + getMessage(e));
+                return;
+            }
+            countUpdates(updateCounts, from);
+            final int failedIdx = from + updateCounts.length;
+            reportFailedRows(failedIdx, failedIdx + 1, e);
+            from = failedIdx + 1;
+            if (from >= to)
+                return;
+            try {
+                bindRows(from, to);
+                countUpdates(currentRowStmt.executeBatch(), from);
+                return;
+            } catch (final SQLException next) {
+                currentRowStmt.clearBatch();
+                e = next;
+            }
+        }
+    }
+
+    /**
+     * Bind the captured rows and add them to the batch.
+     *
+     * @param from the index of the first row
+     * @param to   the index after the last row
+     * @throws SQLException    the SQL exception
+     * @throws DataIOException the data IO exception
+     */
+    private void bindRows(final int from, final int to)
+        throws SQLException, DataIOException {
+
+        for (int i = from; i < to; i++) {
+            bindRow(currentRowStmt, currentColumnMap, batchRows.get(i));
+            currentRowStmt.addBatch();
+        }
+    }
+
+    /**
+     * Bind a captured row.
+     *
+     * @param stmt      the statement
+     * @param columnMap the column map of the statement
+     * @param row       the row
+     * @throws SQLException    the SQL exception
+     * @throws DataIOException the data IO exception
+     */
+    private void bindRow(final PreparedStatement stmt, final int[] columnMap,
+        final DataRow row) throws SQLException, DataIOException {
+
+        final int readColumnCount = metaData.getColumnCount();
+        batchRowReader.setCurrentRow(row);
+        for (int idx = 1; idx <= readColumnCount; idx++) {
+            final int idxLoad = columnMap[idx - 1];
+            if (idxLoad > 0)
+                columnBinders[idx - 1].bind(stmt, idxLoad, batchRowReader, idx);
+        }
+    }
+
+    /**
+     * Count the update counts of executed rows.
+     *
+     * @param updateCounts the update counts
+     * @param from         the index of the first row
+     * @throws DataIOException the data IO exception
+     */
+    private void countUpdates(final int[] updateCounts, final int from)
+        throws DataIOException {
+
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] == Statement.EXECUTE_FAILED)
+                failedRowCount++;
+            else if (updateCounts[i] > 1 && currentRowStmt != upsertRowStmt)
+                // e.g. MySQL: the update count of an upsert is 2 if updated
+                throw new DataIOException(
+                    "row " + getRowNumber(from + i) +
+                        ": update count is greater than 1: " + updateCounts[i]);
+            else
+                currentCommitSize++;
+        }
+    }
+
+    /**
+     * Report failed rows.
+     *
+     * @param from the index of the first row
+     * @param to   the index after the last row
+     * @param e    the exception
+     */
+    private void reportFailedRows(final int from, final int to,
+        final Exception e) {
+
+        failedRowCount += to - from;
+        if (to - from == 1)
+            getProgress().errorln(" row " + getRowNumber(from) + ": failed to " +
+                currentOperation + ": " + getMessage(e));
+        else
+            getProgress().errorln(" row " + getRowNumber(from) + ": failed to " +
+                currentOperation + " " + (to - from) + " row(s): " + getMessage(e));
+    }
+
+    /**
+     * Gets the message of an exception.
+     *
+     * @param e the exception
+     * @return the message
+     */
+    private static String getMessage(final Exception e) {
+
+        if (!(e instanceof SQLException))
+            return e.getClass().getName() + ": " + e.getMessage();
+        SQLException sqle = (SQLException) e;
+        if (sqle instanceof BatchUpdateException && sqle.getNextException() != null)
+            sqle = sqle.getNextException();
+        return SQLState.getMessage(sqle.getSQLState(), sqle.getErrorCode(),
+            sqle.getMessage());
+    }
+
+    /**
+     * Release a savepoint.
+     *
+     * @param savepoint the savepoint
+     */
+    private void releaseSavepoint(final Savepoint savepoint) {
+
+        if (savepoint == null)
+            return;
+        try {
+            con.releaseSavepoint(savepoint);
+        } catch (SQLException ignore) {
+            // e.g. Oracle: savepoints are released on commit
+        }
     }
 
     /**
@@ -1146,4 +2334,57 @@ public class LoaderImpl extends DataWriterAbstract implements Loader {
 
         close();
     }
+
+    /**
+     * The Class PendingBatch.
+     * <p>
+     * The state of a batch not executed yet ( reordered batches ).
+     */
+    private static class PendingBatch {
+
+        /**
+         * The row type.
+         */
+        rowType rowType;
+
+        /**
+         * The operation.
+         */
+        String operation;
+
+        /**
+         * The number of rows.
+         */
+        int size;
+
+        /**
+         * The statement.
+         */
+        PreparedStatement stmt;
+
+        /**
+         * The column map.
+         */
+        int[] columnMap;
+
+        /**
+         * The emulated upsert flag.
+         */
+        boolean upsertEmulated;
+
+        /**
+         * The captured rows.
+         */
+        ArrayList<DataRow> rows;
+
+        /**
+         * The row numbers.
+         */
+        long[] rowNumbers;
+
+        /**
+         * The key hashes.
+         */
+        KeyHashSet keys;
+    }
 }
@@ -0,0 +1,814 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.jdbc.load;
+
+import net.sf.gm.core.io.*;
+import net.sf.gm.core.io.DataTypes.rowType;
+import net.sf.gm.core.ui.Progress;
+import net.sf.gm.jdbc.common.ConnectionFactory;
+import net.sf.gm.jdbc.common.SqlUtil;
+import net.sf.gm.jdbc.io.CheckpointJournal;
+import net.sf.gm.jdbc.io.MetaDataSnapshot;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+//
+
+
+/**
+ * The Class ParallelLoaderImpl.
+ * <p>
+ * The input is parsed once and the rows are dispatched in batches to several
+ * {@link LoaderImpl} workers, each using its own connection. Every worker
+ * does its own batch and commit accounting, the row counters are merged.
+ */
+public class ParallelLoaderImpl extends DataWriterAbstract implements Loader {
+
+    /**
+     * The Constant MIN_DISPATCH_ROW_COUNT.
+     */
+    private static final int MIN_DISPATCH_ROW_COUNT = 100;
+
+    /**
+     * The Constant END_OF_DATA.
+     */
+    private static final RowBatch END_OF_DATA = new RowBatch(0);
+
+    /**
+     * The loaders ( the first one is using the primary connection ).
+     */
+    private final LoaderImpl[] loaders;
+
+    /**
+     * The max batch size.
+     */
+    private int maxBatchSize;
+
+    /**
+     * The do sync.
+     */
+    private boolean doSync;
+
+    /**
+     * The column types.
+     */
+    private int[] columnTypes;
+
+    /**
+     * The requested columns.
+     */
+    private boolean[] requestedColumns;
+
+    /**
+     * The dispatch row count.
+     */
+    private int dispatchRowCount;
+
+    /**
+     * The queue of batches to be loaded.
+     */
+    private BlockingQueue<RowBatch> fullQueue;
+
+    /**
+     * The queue of batches to be reused.
+     */
+    private BlockingQueue<RowBatch> freeQueue;
+
+    /**
+     * The worker threads.
+     */
+    private Thread[] workers;
+
+    /**
+     * The aborted.
+     */
+    private volatile boolean aborted;
+
+    /**
+     * The first failure of a worker.
+     */
+    private volatile Throwable failure;
+
+    /**
+     * The current batch.
+     */
+    private RowBatch currentBatch;
+
+    /**
+     * The current row.
+     */
+    private DataRow currentRow;
+
+    /**
+     * The all row count.
+     */
+    private long allRowCount;
+
+    /**
+     * The number of input rows to skip ( resume ).
+     */
+    private long skipRowCount;
+
+    /**
+     * The current row is skipped.
+     */
+    private boolean skippingRow;
+
+    /**
+     * The Constructor.
+     *
+     * @param progress            the progress
+     * @param con                 the primary connection
+     * @param connectionFactory   the connection factory for the additional workers
+     * @param parallel            the number of loader workers ( 1 while
+     *                            synchronizing )
+     * @param maxBatchSize        the max batch size
+     * @param maxCommitSize       the max commit size
+     * @param mapColumnsByNames   the map columns by names
+     * @param skipColumnsNotFound the skip columns not found
+     * @param doImport            the do import
+     * @param doSync              the do sync
+     * @throws SQLException the SQL exception
+     */
+    public ParallelLoaderImpl(final Progress progress, final Connection con,
+        final ConnectionFactory connectionFactory, final int parallel,
+        final int maxBatchSize, final int maxCommitSize,
+        final boolean mapColumnsByNames,
+        final boolean skipColumnsNotFound, final boolean doImport,
+        final boolean doSync) throws SQLException {
+
+        super(progress);
+        // rows of a webrowset document have to be synchronized in document order
+        loaders = new LoaderImpl[doSync ? 1 : Math.max(1, parallel)];
+        loaders[0] = new LoaderImpl(progress, con, maxBatchSize, maxCommitSize,
+            mapColumnsByNames, skipColumnsNotFound, doImport, doSync);
+        try {
+            for (int i = 1; i < loaders.length; i++)
+                loaders[i] = new LoaderImpl(progress, connectionFactory.getConnection(),
+                    maxBatchSize, maxCommitSize, mapColumnsByNames,
+                    skipColumnsNotFound, doImport, doSync);
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.doSync = doSync;
+        workers = null;
+    }
+
+    /**
+     * Gets the connection.
+     *
+     * @return the connection
+     */
+    public Connection getConnection() {
+        return loaders[0].getConnection();
+    }
+
+    /**
+     * Sets the connection.
+     *
+     * @param con the con
+     */
+    public void setConnection(Connection con) {
+        loaders[0].setConnection(con);
+    }
+
+    /**
+     * Delete.
+     *
+     * @param tableName   the table name
+     * @param schemaName  the schema name
+     * @param catalogName the catalog name
+     * @return the long
+     * @throws SQLException the SQL exception
+     */
+    public long delete(String tableName, String schemaName, String catalogName)
+        throws SQLException {
+
+        return loaders[0].delete(tableName, schemaName, catalogName);
+    }
+
+    /**
+     * Start loading.
+     *
+     * @param tableName   the table name
+     * @param schemaName  the schema name
+     * @param catalogName the catalog name
+     */
+    public void startLoading(String tableName, String schemaName,
+        String catalogName) {
+
+        stopWorkers();
+        allRowCount = 0;
+        skipRowCount = 0;
+        skippingRow = false;
+        for (final LoaderImpl loader : loaders)
+            loader.startLoading(tableName, schemaName, catalogName);
+    }
+
+    /**
+     * End loading.
+     */
+    public void endLoading() {
+
+        stopWorkers();
+        for (final LoaderImpl loader : loaders)
+            loader.endLoading();
+    }
+
+    /**
+     * Close.
+     */
+    public void close() {
+
+        stopWorkers();
+        for (int i = 0; i < loaders.length; i++) {
+            if (loaders[i] == null)
+                continue;
+            final Connection con = loaders[i].getConnection();
+            loaders[i].close();
+            if (i > 0 && con != null)
+                SqlUtil.closeConnection(con);
+        }
+    }
+
+    /**
+     * Sets the max batch size.
+     *
+     * @param maxBatchSize the max batch size
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+
+        this.maxBatchSize = maxBatchSize;
+        for (final LoaderImpl loader : loaders)
+            loader.setMaxBatchSize(maxBatchSize);
+    }
+
+    /**
+     * Sets the commit size.
+     *
+     * @param commitSize the commit size
+     */
+    public void setCommitSize(int commitSize) {
+
+        for (final LoaderImpl loader : loaders)
+            loader.setCommitSize(commitSize);
+    }
+
+    /**
+     * Sets the map columns by names.
+     *
+     * @param mapByName the map by name
+     */
+    public void setMapColumnsByNames(boolean mapByName) {
+
+        for (final LoaderImpl loader : loaders)
+            loader.setMapColumnsByNames(mapByName);
+    }
+
+    /**
+     * Sets the skip columns not found.
+     *
+     * @param skipNotFound the skip not found
+     */
+    public void setSkipColumnsNotFound(boolean skipNotFound) {
+
+        for (final LoaderImpl loader : loaders)
+            loader.setSkipColumnsNotFound(skipNotFound);
+    }
+
+    /**
+     * Sets the do import.
+     *
+     * @param doImport the do import
+     */
+    public void setDoImport(boolean doImport) {
+
+        for (final LoaderImpl loader : loaders)
+            loader.setDoImport(doImport);
+    }
+
+    /**
+     * Sets the do sync.
+     *
+     * @param doSync the do sync
+     */
+    public void setDoSync(boolean doSync) {
+
+        this.doSync = doSync;
+        for (final LoaderImpl loader : loaders)
+            loader.setDoSync(doSync);
+    }
+
+    /**
+     * Sets the adaptive batch size bounds.
+     *
+     * @param minBatchSize the min batch size ( 0: disable adaptive mode )
+     * @param maxBatchSize the max batch size
+     */
+    public void setAdaptiveBatchSize(int minBatchSize, int maxBatchSize) {
+
+        for (final LoaderImpl loader : loaders)
+            loader.setAdaptiveBatchSize(minBatchSize, maxBatchSize);
+    }
+
+    /**
+     * Sets the commit interval.
+     *
+     * @param commitInterval the max time in milliseconds between two commits
+     *                       ( 0: disabled )
+     */
+    public void setCommitInterval(long commitInterval) {
+
+        for (final LoaderImpl loader : loaders)
+            loader.setCommitInterval(commitInterval);
+    }
+
+    /**
+     * Sets the bisect failed batches flag.
+     *
+     * @param bisectFailedBatches re-execute a failed batch in halves to find
+     *                            the failing rows
+     */
+    public void setBisectFailedBatches(boolean bisectFailedBatches) {
+
+        for (final LoaderImpl loader : loaders)
+            loader.setBisectFailedBatches(bisectFailedBatches);
+    }
+
+    /**
+     * Sets the multi-row insert.
+     *
+     * @param multiRowInsert the max number of rows of a multi-row insert
+     *                       statement ( 0: disabled )
+     */
+    public void setMultiRowInsert(int multiRowInsert) {
+
+        for (final LoaderImpl loader : loaders)
+            loader.setMultiRowInsert(multiRowInsert);
+    }
+
+    /**
+     * Sets the upsert flag.
+     *
+     * @param upsert insert rows, or update them if they already exist
+     */
+    public void setUpsert(boolean upsert) {
+
+        for (final LoaderImpl loader : loaders)
+            loader.setUpsert(upsert);
+    }
+
+    /**
+     * Sets the reorder batches flag.
+     *
+     * @param reorderBatches keep a pending batch per statement
+     */
+    public void setReorderBatches(boolean reorderBatches) {
+
+        for (final LoaderImpl loader : loaders)
+            loader.setReorderBatches(reorderBatches);
+    }
+
+    /**
+     * Sets the metadata snapshot.
+     *
+     * @param metaDataSnapshot the metadata snapshot or null
+     */
+    public void setMetaDataSnapshot(MetaDataSnapshot metaDataSnapshot) {
+
+        for (final LoaderImpl loader : loaders)
+            loader.setMetaDataSnapshot(metaDataSnapshot);
+    }
+
+    /**
+     * Sets the checkpoint journal. The workers commit their batches
+     * independently, so the committed rows are not a prefix of the input:
+     * no checkpoint is written while loading a table.
+     *
+     * @param checkpointJournal the checkpoint journal or null
+     */
+    public void setCheckpointJournal(CheckpointJournal checkpointJournal) {
+    }
+
+    /**
+     * Resume loading the current table after a checkpoint.
+     *
+     * @param rowCount        the number of input rows to skip
+     * @param writtenRowCount the written row count of the checkpoint
+     * @param failedRowCount  the failed row count of the checkpoint
+     * @param ignoredRowCount the ignored row count of the checkpoint
+     */
+    public void resume(long rowCount, long writtenRowCount, long failedRowCount,
+        long ignoredRowCount) {
+
+        skipRowCount = rowCount;
+        // the counters are merged from the workers
+        loaders[0].resume(0, writtenRowCount, failedRowCount, ignoredRowCount);
+    }
+
+    /**
+     * Sets the progress.
+     *
+     * @param progress the progress
+     */
+    @Override
+    public void setProgress(Progress progress) {
+
+        super.setProgress(progress);
+        for (final LoaderImpl loader : loaders)
+            loader.setProgress(progress);
+    }
+
+    /**
+     * Commit.
+     *
+     * @throws SQLException the SQL exception
+     */
+    public void commit() throws SQLException {
+
+        stopWorkers();
+        for (final LoaderImpl loader : loaders)
+            loader.commit();
+    }
+
+    /**
+     * Rollback.
+     *
+     * @throws SQLException the SQL exception
+     */
+    public void rollback() throws SQLException {
+
+        stopWorkers();
+        for (final LoaderImpl loader : loaders)
+            loader.rollback();
+    }
+
+    /**
+     * Open data writing.
+     *
+     * @param metaData the meta data
+     * @throws DataIOException the data IO exception
+     */
+    public void openDataWriting(MetaData metaData) throws DataIOException {
+
+        stopWorkers();
+        // rows of a webrowset document have to be synchronized in document order
+        final int workerCount = doSync ? 1 : loaders.length;
+        for (int i = 0; i < workerCount; i++)
+            loaders[i].openDataWriting(metaData);
+
+        // the loaders have resolved the column types
+        final int columnCount = metaData.getColumnCount();
+        columnTypes = new int[columnCount];
+        requestedColumns = new boolean[columnCount];
+        for (int idx = 1; idx <= columnCount; idx++) {
+            columnTypes[idx - 1] = metaData.getColumnType(idx);
+            requestedColumns[idx - 1] = loaders[0].isColumnRequested(idx);
+        }
+
+        dispatchRowCount = Math.max(maxBatchSize, MIN_DISPATCH_ROW_COUNT);
+        fullQueue = new ArrayBlockingQueue<RowBatch>(2 * workerCount);
+        freeQueue = new LinkedBlockingQueue<RowBatch>();
+        aborted = false;
+        failure = null;
+        currentBatch = new RowBatch(dispatchRowCount);
+        currentRow = null;
+
+        workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Thread(new Worker(loaders[i], new DataRowReader(metaData)),
+                "loader-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Close data writing.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    public void closeDataWriting() throws DataIOException {
+
+        if (workers == null)
+            return;
+        if (currentBatch.size > 0)
+            dispatch(currentBatch);
+        currentBatch = null;
+        for (int i = 0; i < workers.length; i++)
+            dispatch(END_OF_DATA);
+        joinWorkers();
+        workers = null;
+        checkFailure();
+    }
+
+    /**
+     * Start row writing.
+     *
+     * @param type the type
+     * @throws DataIOException the data IO exception
+     */
+    public void startRowWriting(rowType type) throws DataIOException {
+
+        allRowCount++;
+        // rows committed before the checkpoint are skipped
+        skippingRow = allRowCount <= skipRowCount;
+        if (skippingRow)
+            return;
+        currentRow = currentBatch.nextRow(columnTypes.length);
+        currentRow.reset(type);
+    }
+
+    /**
+     * Sets the column value.
+     *
+     * @param idx    the idx
+     * @param reader the reader
+     * @throws DataIOException the data IO exception
+     */
+    public void setColumnValue(int idx, DataReader reader)
+        throws DataIOException {
+
+        if (!skippingRow && requestedColumns[idx - 1])
+            currentRow.readValue(idx, reader, columnTypes[idx - 1]);
+    }
+
+    /**
+     * Checks if the value of a column is read ( see
+     * {@link LoaderImpl#isColumnRequested} ).
+     *
+     * @param idx the idx
+     * @return true, if the value of the column is read
+     */
+    @Override
+    public boolean isColumnRequested(final int idx) {
+        return loaders[0].isColumnRequested(idx);
+    }
+
+    /**
+     * End row writing.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    public void endRowWriting() throws DataIOException {
+
+        if (skippingRow)
+            return;
+        currentBatch.size++;
+        if (currentBatch.size >= dispatchRowCount) {
+            dispatch(currentBatch);
+            final RowBatch batch = freeQueue.poll();
+            currentBatch = batch != null ? batch : new RowBatch(dispatchRowCount);
+        }
+    }
+
+    /**
+     * Dispatch a batch to the workers.
+     *
+     * @param batch the batch
+     * @throws DataIOException the data IO exception
+     */
+    private void dispatch(final RowBatch batch) throws DataIOException {
+
+        try {
+            if (failure != null) {
+                stopWorkers();
+                checkFailure();
+            }
+            while (!fullQueue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                if (failure != null) {
+                    stopWorkers();
+                    checkFailure();
+                }
+            }
+        } catch (InterruptedException e) {
+            stopWorkers();
+            throw new DataIOException(e);
+        }
+    }
+
+    /**
+     * Check failure.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    private void checkFailure() throws DataIOException {
+
+        final Throwable t = failure;
+        if (t == null)
+            return;
+        if (t instanceof DataIOException)
+            throw (DataIOException) t;
+        throw new DataIOException(t);
+    }
+
+    /**
+     * Stop the workers, rows not loaded yet are discarded.
+     */
+    private void stopWorkers() {
+
+        if (workers == null)
+            return;
+        aborted = true;
+        fullQueue.clear();
+        // the capacity of the queue is greater than the number of workers
+        for (int i = 0; i < workers.length; i++)
+            fullQueue.offer(END_OF_DATA);
+        joinWorkers();
+        workers = null;
+    }
+
+    /**
+     * Join the workers.
+     */
+    private void joinWorkers() {
+
+        for (final Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException ignore) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Gets the row failed count.
+     *
+     * @return the row failed count
+     */
+    public long getRowFailedCount() {
+
+        long res = 0;
+        for (final LoaderImpl loader : loaders)
+            res += loader.getRowFailedCount();
+        return res;
+    }
+
+    /**
+     * Gets the row written count.
+     *
+     * @return the row written count
+     */
+    public long getRowWrittenCount() {
+
+        long res = 0;
+        for (final LoaderImpl loader : loaders)
+            res += loader.getRowWrittenCount();
+        return res;
+    }
+
+    /**
+     * Gets the row ignored count.
+     *
+     * @return the row ignored count
+     */
+    public long getRowIgnoredCount() {
+
+        long res = 0;
+        for (final LoaderImpl loader : loaders)
+            res += loader.getRowIgnoredCount();
+        return res;
+    }
+
+    /**
+     * Gets the row processed count.
+     *
+     * @return the row processed count
+     */
+    public long getRowProcessedCount() {
+        return allRowCount - getRowIgnoredCount();
+    }
+
+    /**
+     * Gets the all row count.
+     *
+     * @return the all row count
+     */
+    public long getAllRowCount() {
+        return allRowCount;
+    }
+
+    /**
+     * Finalize.
+     */
+    @SuppressWarnings("deprecation") @Override
+    protected void finalize() {
+
+        close();
+    }
+
+    /**
+     * The Class RowBatch.
+     */
+    private static class RowBatch {
+
+        /**
+         * The rows.
+         */
+        final DataRow[] rows;
+
+        /**
+         * The size.
+         */
+        int size;
+
+        /**
+         * The Constructor.
+         *
+         * @param capacity the capacity
+         */
+        RowBatch(final int capacity) {
+
+            rows = new DataRow[capacity];
+            size = 0;
+        }
+
+        /**
+         * Gets the next free row.
+         *
+         * @param columnCount the column count
+         * @return the data row
+         */
+        DataRow nextRow(final int columnCount) {
+
+            if (rows[size] == null)
+                rows[size] = new DataRow(columnCount);
+            return rows[size];
+        }
+    }
+
+    /**
+     * The Class Worker.
+     */
+    private class Worker implements Runnable {
+
+        /**
+         * The loader.
+         */
+        private final LoaderImpl loader;
+
+        /**
+         * The reader.
+         */
+        private final DataRowReader reader;
+
+        /**
+         * The Constructor.
+         *
+         * @param loader the loader
+         * @param reader the reader
+         */
+        Worker(final LoaderImpl loader, final DataRowReader reader) {
+
+            this.loader = loader;
+            this.reader = reader;
+        }
+
+        /**
+         * Run.
+         */
+        public void run() {
+
+            try {
+                final int columnCount = columnTypes.length;
+                RowBatch batch;
+                while ((batch = fullQueue.take()) != END_OF_DATA) {
+                    if (aborted || failure != null)
+                        break;
+                    reader.setRows(batch.rows, batch.size);
+                    while (reader.readNextRow()) {
+                        loader.startRowWriting(reader.getCurrentRowType());
+                        for (int idx = 1; idx <= columnCount; idx++)
+                            loader.setColumnValue(idx, reader);
+                        loader.endRowWriting();
+                    }
+                    reader.setRows(null, 0);
+                    batch.size = 0;
+                    freeQueue.offer(batch);
+                }
+                if (!aborted && failure == null)
+                    loader.closeDataWriting();
+            } catch (InterruptedException ignore) {
+                // aborted
+            } catch (Throwable t) {
+                synchronized (ParallelLoaderImpl.this) {
+                    if (failure == null)
+                        failure = t;
+                }
+            }
+        }
+    }
+}
@@ -40,7 +40,12 @@ public class UnloadMetaData extends MetaDataImpl implements MetaData {
     private final ResultSetMetaData rsmd;
 
     /**
-     * The Constructor.
+     * The primary key columns.
+     */
+    private final String[] primaryKey;
+
+    /**
+     * The Constructor. The primary key is read using the connection.
      *
      * @param rsmd          the rsmd
      * @param stmt          the stmt
@@ -57,11 +62,38 @@ public class UnloadMetaData extends MetaDataImpl implements MetaData {
         String tableName, String schemaName, String catalogName,
         String statementText) throws SQLException {
 
+        this(con, stmt, rs, rsmd, tableName, schemaName, catalogName,
+            statementText, TableDef.getPrimaryKey(con, catalogName, schemaName,
+                tableName));
+    }
+
+    /**
+     * The Constructor. The primary key has to be read before the statement is
+     * executed, if the driver does not allow other statements on the
+     * connection while a result set is streamed ( e.g. MySQL ).
+     *
+     * @param rsmd          the rsmd
+     * @param stmt          the stmt
+     * @param con           the con
+     * @param tableName     the table name
+     * @param rs            the rs
+     * @param schemaName    the schema name
+     * @param statementText the statement text
+     * @param catalogName   the catalog name
+     * @param primaryKey    the primary key columns
+     * @throws SQLException the SQL exception
+     */
+    public UnloadMetaData(final Connection con, final Statement stmt,
+        final ResultSet rs, final ResultSetMetaData rsmd,
+        String tableName, String schemaName, String catalogName,
+        String statementText, String[] primaryKey) throws SQLException {
+
         super();
         this.con = con;
         this.stmt = stmt;
         this.rs = rs;
         this.rsmd = rsmd;
+        this.primaryKey = primaryKey;
         setTableName(tableName);
         setSchemaName(schemaName);
         setCatalogName(catalogName);
@@ -434,7 +466,6 @@ public class UnloadMetaData extends MetaDataImpl implements MetaData {
      */
     public void setKeyColumns() {
 
-        setKeyColumns(TableDef.getPrimaryKey(con, getCatalogName(), getSchemaName(),
-            getTableName()));
+        setKeyColumns(primaryKey);
     }
 }
@@ -8,6 +8,7 @@
 package net.sf.gm.jdbc.load;
 
 import net.sf.gm.core.io.DataReader;
+import net.sf.gm.core.io.DataTypes.rowType;
 
 import java.sql.Connection;
 import java.sql.SQLException;
@@ -35,6 +36,20 @@ public interface Unloader extends DataReader {
      */
     void setConnection(Connection con) throws SQLException;
 
+    /**
+     * Gets the fetch size.
+     *
+     * @return the fetch size ( 0: derived from the row width )
+     */
+    int getFetchSize();
+
+    /**
+     * Sets the number of rows fetched per round trip.
+     *
+     * @param fetchSize the fetch size ( 0: derived from the row width )
+     */
+    void setFetchSize(int fetchSize);
+
     /**
      * Start loading.
      *
@@ -47,6 +62,24 @@ public interface Unloader extends DataReader {
         final String catalogName, String statementText)
     ;
 
+    /**
+     * Sets the parameter values of the statement text. The statement is
+     * prepared if parameter values are set. The values are reset by
+     * {@link #startUnLoading}.
+     *
+     * @param parameters the parameter values or null
+     */
+    void setParameters(Object[] parameters);
+
+    /**
+     * Sets the type reported for the rows read ( e.g. UPDATE to export the
+     * rows as modified rows ). The type is reset to CURRENT by
+     * {@link #startUnLoading}.
+     *
+     * @param type the row type
+     */
+    void setRowType(rowType type);
+
     /**
      * End loading.
      */
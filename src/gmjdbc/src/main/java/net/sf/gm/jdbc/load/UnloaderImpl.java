@@ -11,7 +11,10 @@ import net.sf.gm.core.io.DataIOException;
 import net.sf.gm.core.io.DataReaderAbstract;
 import net.sf.gm.core.io.DataTypes.rowType;
 import net.sf.gm.core.io.MetaData;
+import net.sf.gm.core.ui.Progress;
+import net.sf.gm.jdbc.common.SqlDialect;
 import net.sf.gm.jdbc.common.SqlUtil;
+import net.sf.gm.jdbc.io.TableDef;
 
 import java.io.InputStream;
 import java.io.Reader;
@@ -21,9 +24,45 @@ import java.util.Date;
 
 /**
  * The Class UnloaderImpl.
+ * <p>
+ * The result set is read using a forward only, read only cursor. If no fetch
+ * size is set, the first rows are fetched using a small fetch size, and the
+ * fetch size for the remaining rows is derived from the estimated width of a
+ * row. If the driver streams a result set only inside a transaction, auto
+ * commit is switched off while reading.
  */
 public class UnloaderImpl extends DataReaderAbstract implements Unloader {
 
+    /**
+     * The fetch size of the first rows, if the fetch size is derived.
+     */
+    private static final int INITIAL_FETCH_SIZE = 100;
+
+    /**
+     * The min derived fetch size.
+     */
+    private static final int MIN_FETCH_SIZE = 10;
+
+    /**
+     * The max derived fetch size.
+     */
+    private static final int MAX_FETCH_SIZE = 10000;
+
+    /**
+     * The number of bytes to fetch per round trip, if the fetch size is derived.
+     */
+    private static final int FETCH_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The estimated width of a column of unknown or very large size.
+     */
+    private static final int VARIABLE_COLUMN_WIDTH = 256;
+
+    /**
+     * The estimated width of a lob column.
+     */
+    private static final int LOB_COLUMN_WIDTH = 4096;
+
     /**
      * The con.
      */
@@ -34,6 +73,11 @@ public class UnloaderImpl extends DataReaderAbstract implements Unloader {
      */
     private Statement stmt;
 
+    /**
+     * The prepared statement, if parameter values are set.
+     */
+    private PreparedStatement pstmt;
+
     /**
      * The rs.
      */
@@ -69,6 +113,31 @@ public class UnloaderImpl extends DataReaderAbstract implements Unloader {
      */
     private String statementText;
 
+    /**
+     * The parameter values of the statement text or null.
+     */
+    private Object[] parameters;
+
+    /**
+     * The type reported for the rows read.
+     */
+    private rowType type;
+
+    /**
+     * The fetch size ( 0: derived from the row width ).
+     */
+    private int fetchSize;
+
+    /**
+     * The sql dialect.
+     */
+    private SqlDialect dialect;
+
+    /**
+     * The auto commit has been switched off while reading.
+     */
+    private boolean restoreAutoCommit;
+
     /**
      * The Constructor.
      *
@@ -81,6 +150,10 @@ public class UnloaderImpl extends DataReaderAbstract implements Unloader {
         rs = null;
         rsmd = null;
         stmt = null;
+        pstmt = null;
+        parameters = null;
+        type = rowType.CURRENT;
+        fetchSize = 0;
         setConnection(con);
     }
 
@@ -104,10 +177,36 @@ public class UnloaderImpl extends DataReaderAbstract implements Unloader {
         this.con = con;
         if (stmt != null)
             SqlUtil.closeStatement(stmt);
-        this.stmt = con.createStatement();
+        try {
+            this.stmt = con.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+        } catch (final SQLException e) {
+            // result set type or concurrency not supported
+            this.stmt = con.createStatement();
+        }
+        dialect = SqlDialect.getDialect(con);
+        restoreAutoCommit = false;
         allRowCount = 0;
     }
 
+    /**
+     * Gets the fetch size.
+     *
+     * @return the fetch size ( 0: derived from the row width )
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Sets the number of rows fetched per round trip.
+     *
+     * @param fetchSize the fetch size ( 0: derived from the row width )
+     */
+    public void setFetchSize(final int fetchSize) {
+        this.fetchSize = Math.max(0, fetchSize);
+    }
+
     /**
      * Close.
      */
@@ -117,6 +216,9 @@ public class UnloaderImpl extends DataReaderAbstract implements Unloader {
         if (rs != null)
             SqlUtil.closeResultSet(rs);
         rs = null;
+        closePreparedStatement();
+        if (con != null)
+            restoreAutoCommitQuietly();
         SqlUtil.closeStatement(stmt);
         stmt = null;
         con = null;
@@ -150,6 +252,61 @@ public class UnloaderImpl extends DataReaderAbstract implements Unloader {
         this.schemaName = schemaName;
         this.catalogName = catalogName;
         this.statementText = statementText;
+        this.parameters = null;
+        this.type = rowType.CURRENT;
+    }
+
+    /**
+     * Sets the parameter values of the statement text. The statement is
+     * prepared if parameter values are set. The values are reset by
+     * {@link #startUnLoading}.
+     *
+     * @param parameters the parameter values or null
+     */
+    public void setParameters(final Object[] parameters) {
+        this.parameters = parameters;
+    }
+
+    /**
+     * Sets the type reported for the rows read ( e.g. UPDATE to export the
+     * rows as modified rows ). The type is reset to CURRENT by
+     * {@link #startUnLoading}.
+     *
+     * @param type the row type
+     */
+    public void setRowType(final rowType type) {
+        this.type = type;
+    }
+
+    /**
+     * Prepare the statement text and set the parameter values.
+     *
+     * @return the prepared statement
+     * @throws SQLException the SQL exception
+     */
+    private PreparedStatement prepareStatement() throws SQLException {
+
+        closePreparedStatement();
+        try {
+            pstmt = con.prepareStatement(statementText, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+        } catch (final SQLException e) {
+            // result set type or concurrency not supported
+            pstmt = con.prepareStatement(statementText);
+        }
+        for (int idx = 0; idx < parameters.length; idx++)
+            pstmt.setObject(idx + 1, parameters[idx]);
+        return pstmt;
+    }
+
+    /**
+     * Close the prepared statement.
+     */
+    private void closePreparedStatement() {
+
+        if (pstmt != null)
+            SqlUtil.closeStatement(pstmt);
+        pstmt = null;
     }
 
     /**
@@ -161,6 +318,8 @@ public class UnloaderImpl extends DataReaderAbstract implements Unloader {
             SqlUtil.closeResultSet(rs);
         rsmd = null;
         rs = null;
+        closePreparedStatement();
+        restoreAutoCommitQuietly();
     }
 
     /**
@@ -172,25 +331,156 @@ public class UnloaderImpl extends DataReaderAbstract implements Unloader {
     public MetaData openDataReading() throws DataIOException {
 
         try {
-            rs = stmt.executeQuery(statementText);
+            if (dialect.requiresTransactionForStreaming() && con.getAutoCommit()) {
+                con.setAutoCommit(false);
+                restoreAutoCommit = true;
+            }
+            final int requested = fetchSize > 0 ? fetchSize : INITIAL_FETCH_SIZE;
+            final int streaming = dialect.getStreamingFetchSize(requested);
+            // read before a streaming result set blocks the connection
+            final String[] primaryKey =
+                TableDef.getPrimaryKey(con, catalogName, schemaName, tableName);
+            final Statement query = parameters != null ? prepareStatement() : stmt;
+            query.setFetchSize(streaming);
+            if (parameters != null)
+                rs = pstmt.executeQuery();
+            else
+                rs = stmt.executeQuery(statementText);
             rsmd = rs.getMetaData();
+            // a driver specific streaming fetch size must not be changed
+            if (fetchSize == 0 && streaming == requested)
+                setDerivedFetchSize();
             allRowCount = 0;
-            return new UnloadMetaData(con, stmt, rs, rsmd, tableName, schemaName,
-                catalogName, statementText);
+            return new UnloadMetaData(con, query, rs, rsmd, tableName, schemaName,
+                catalogName, statementText, primaryKey);
         } catch (SQLException e) {
             throw new DataIOException(e);
         }
     }
 
+    /**
+     * Set the fetch size for the remaining rows, derived from the estimated
+     * width of a row.
+     *
+     * @throws SQLException the SQL exception
+     */
+    private void setDerivedFetchSize() throws SQLException {
+
+        final int rowWidth = estimateRowWidth(rsmd);
+        final int derived = Math.max(MIN_FETCH_SIZE,
+            Math.min(MAX_FETCH_SIZE, FETCH_BUFFER_SIZE / rowWidth));
+        try {
+            rs.setFetchSize(derived);
+        } catch (final SQLException e) {
+            // the driver does not support changing the fetch size of a result set
+            return;
+        }
+        final Progress progress = getProgress();
+        if (progress != null)
+            progress.verboseln("  fetch size " + derived + " ( estimated row width " +
+                rowWidth + " byte(s) )");
+    }
+
+    /**
+     * Estimate the width of a row in bytes.
+     *
+     * @param rsmd the result set meta data
+     * @return the estimated row width
+     * @throws SQLException the SQL exception
+     */
+    static int estimateRowWidth(final ResultSetMetaData rsmd)
+        throws SQLException {
+
+        long width = 0;
+        final int count = rsmd.getColumnCount();
+        for (int idx = 1; idx <= count; idx++) {
+            // per column overhead of the wire format
+            width += 8;
+            switch (rsmd.getColumnType(idx)) {
+                case Types.BIT:
+                case Types.BOOLEAN:
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                    width += 2;
+                    break;
+                case Types.INTEGER:
+                case Types.REAL:
+                    width += 4;
+                    break;
+                case Types.BIGINT:
+                case Types.FLOAT:
+                case Types.DOUBLE:
+                case Types.DATE:
+                case Types.TIME:
+                case Types.TIMESTAMP:
+                    width += 8;
+                    break;
+                case Types.NUMERIC:
+                case Types.DECIMAL:
+                    width += 16;
+                    break;
+                case Types.CHAR:
+                case Types.VARCHAR:
+                case Types.NCHAR:
+                case Types.NVARCHAR:
+                case Types.BINARY:
+                case Types.VARBINARY:
+                    final int size = rsmd.getPrecision(idx);
+                    width += size > 0 && size < LOB_COLUMN_WIDTH ? size :
+                        VARIABLE_COLUMN_WIDTH;
+                    break;
+                case Types.BLOB:
+                case Types.CLOB:
+                case Types.NCLOB:
+                case Types.LONGVARCHAR:
+                case Types.LONGNVARCHAR:
+                case Types.LONGVARBINARY:
+                    width += LOB_COLUMN_WIDTH;
+                    break;
+                default:
+                    width += 32;
+                    break;
+            }
+        }
+        return (int) Math.max(1, Math.min(width, Integer.MAX_VALUE));
+    }
+
     /**
      * Close data reading.
+     *
+     * @throws DataIOException the data IO exception
      */
-    public void closeDataReading() {
+    public void closeDataReading() throws DataIOException {
 
         if (rs != null)
             SqlUtil.closeResultSet(rs);
         rsmd = null;
         rs = null;
+        closePreparedStatement();
+        if (!restoreAutoCommit)
+            return;
+        restoreAutoCommit = false;
+        try {
+            // ends the read transaction
+            con.setAutoCommit(true);
+        } catch (final SQLException e) {
+            throw new DataIOException(e);
+        }
+    }
+
+    /**
+     * Switch auto commit on again, if it has been switched off while reading.
+     */
+    private void restoreAutoCommitQuietly() {
+
+        if (!restoreAutoCommit)
+            return;
+        restoreAutoCommit = false;
+        try {
+            con.setAutoCommit(true);
+        } catch (final SQLException ignore) {
+            // the connection is closed or broken
+        }
     }
 
     /**
@@ -440,7 +730,7 @@ public class UnloaderImpl extends DataReaderAbstract implements Unloader {
      */
     public rowType getCurrentRowType() {
 
-        return rowType.CURRENT;
+        return type;
     }
 
     /**
@@ -0,0 +1,314 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.jdbc.load;
+
+import junit.framework.TestCase;
+import net.sf.gm.core.app.AppProgress;
+import net.sf.gm.core.ui.OutputTarget;
+import net.sf.gm.io.csv.CSVFormatOptions;
+import net.sf.gm.io.csv.CSVReader;
+import net.sf.gm.jdbc.io.CheckpointJournal;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.Arrays;
+
+//
+
+
+/**
+ * The Class LoaderImplTest.
+ * <p>
+ * A table is loaded through a connection recording the executed batches and
+ * the commits; the connection is a proxy of the JDBC interfaces.
+ */
+public class LoaderImplTest extends TestCase {
+
+    /**
+     * The number of rows.
+     */
+    private static final int ROWS = 1000;
+
+    /**
+     * The default batch size of the importers.
+     */
+    private static final int BATCH_SIZE = 50;
+
+    /**
+     * The number of executed batches.
+     */
+    private int batchCount;
+
+    /**
+     * The number of rows of the executed batches.
+     */
+    private int batchRowCount;
+
+    /**
+     * The number of commits.
+     */
+    private int commitCount;
+
+    /**
+     * The journal file.
+     */
+    private File journalFile;
+
+    /**
+     * Creates the journal file.
+     *
+     * @throws Exception the exception
+     */
+    protected void setUp() throws Exception {
+
+        journalFile = File.createTempFile("loader", ".journal");
+    }
+
+    /**
+     * Deletes the journal file.
+     *
+     * @throws Exception the exception
+     */
+    protected void tearDown() throws Exception {
+
+        journalFile.delete();
+    }
+
+    /**
+     * Test a load with the default options.
+     *
+     * @throws Exception the exception
+     */
+    public void testLoad() throws Exception {
+
+        load(null);
+        assertEquals(ROWS / BATCH_SIZE, batchCount);
+        assertEquals(ROWS, batchRowCount);
+    }
+
+    /**
+     * Test a load with a journal and the default options: the rows are
+     * batched, a checkpoint is written after each batch and at the end.
+     *
+     * @throws Exception the exception
+     */
+    public void testLoadWithJournal() throws Exception {
+
+        final CheckpointJournal journal = CheckpointJournal.open(journalFile, false);
+        try {
+            journal.startTable("T", journalFile);
+            load(journal);
+        } finally {
+            journal.close();
+        }
+        assertEquals(ROWS / BATCH_SIZE, batchCount);
+        assertEquals(ROWS, batchRowCount);
+        assertEquals(ROWS / BATCH_SIZE + 1, countCheckpoints());
+        assertTrue(commitCount <= ROWS / BATCH_SIZE + 2);
+    }
+
+    /**
+     * Load the rows into table T.
+     *
+     * @param journal the journal or null
+     * @throws Exception the exception
+     */
+    private void load(final CheckpointJournal journal) throws Exception {
+
+        final StringBuilder input = new StringBuilder("ID,NAME\n");
+        for (int i = 1; i <= ROWS; i++)
+            input.append(i).append(",name").append(i).append('\n');
+        final CSVFormatOptions options = new CSVFormatOptions();
+        options.setCharset(Charset.forName("UTF-8"));
+        final AppProgress progress = new AppProgress();
+        progress.setMessageLevel(OutputTarget.LEVEL_ERROR);
+        final CSVReader reader = new CSVReader(progress, new ByteArrayInputStream(
+            input.toString().getBytes("UTF-8")), options);
+
+        final LoaderImpl loader = new LoaderImpl(progress, createConnection(),
+            BATCH_SIZE, 0, true, false, true, false);
+        loader.setCheckpointJournal(journal);
+        loader.startLoading("T", null, null);
+        assertEquals(ROWS, reader.readAllData(loader));
+        assertEquals(ROWS, loader.getRowWrittenCount());
+        loader.endLoading();
+        loader.close();
+    }
+
+    /**
+     * Count the checkpoint records of the journal file.
+     *
+     * @return the number of checkpoint records
+     * @throws IOException the IO exception
+     */
+    private int countCheckpoints() throws IOException {
+
+        final BufferedReader reader = new BufferedReader(
+            new InputStreamReader(new FileInputStream(journalFile), "UTF-8"));
+        try {
+            int count = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("checkpoint\t"))
+                    count++;
+            }
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Creates the connection: table T has the columns ID and NAME, and no
+     * primary key.
+     *
+     * @return the connection
+     */
+    private Connection createConnection() {
+
+        final DatabaseMetaData metaData = (DatabaseMetaData) createProxy(
+            DatabaseMetaData.class, new InvocationHandler() {
+
+                public Object invoke(final Object proxy, final Method method,
+                    final Object[] args) {
+
+                    final String name = method.getName();
+                    if (name.equals("supportsBatchUpdates"))
+                        return Boolean.TRUE;
+                    if (name.equals("getDatabaseProductName"))
+                        return "test";
+                    if (name.equals("getColumns"))
+                        return createResultSet(new Object[][]{
+                            {null, null, "T", "ID", Types.INTEGER, "INTEGER", 10},
+                            {null, null, "T", "NAME", Types.VARCHAR, "VARCHAR", 20}});
+                    if (name.equals("getPrimaryKeys") || name.equals("getIndexInfo"))
+                        return createResultSet(new Object[0][]);
+                    return null;
+                }
+            });
+        return (Connection) createProxy(Connection.class, new InvocationHandler() {
+
+            public Object invoke(final Object proxy, final Method method,
+                final Object[] args) {
+
+                final String name = method.getName();
+                if (name.equals("getMetaData"))
+                    return metaData;
+                if (name.equals("prepareStatement"))
+                    return createStatement();
+                if (name.equals("commit"))
+                    commitCount++;
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Creates a prepared statement counting the executed batches.
+     *
+     * @return the prepared statement
+     */
+    private PreparedStatement createStatement() {
+
+        return (PreparedStatement) createProxy(PreparedStatement.class,
+            new InvocationHandler() {
+
+                private int added;
+
+                public Object invoke(final Object proxy, final Method method,
+                    final Object[] args) {
+
+                    final String name = method.getName();
+                    if (name.equals("addBatch"))
+                        added++;
+                    else if (name.equals("executeBatch")) {
+                        batchCount++;
+                        batchRowCount += added;
+                        final int[] res = new int[added];
+                        Arrays.fill(res, 1);
+                        added = 0;
+                        return res;
+                    } else if (name.equals("executeUpdate"))
+                        return 1;
+                    return null;
+                }
+            });
+    }
+
+    /**
+     * Creates a result set of rows.
+     *
+     * @param rows the rows
+     * @return the result set
+     */
+    private static ResultSet createResultSet(final Object[][] rows) {
+
+        return (ResultSet) createProxy(ResultSet.class, new InvocationHandler() {
+
+            private int row = -1;
+
+            public Object invoke(final Object proxy, final Method method,
+                final Object[] args) {
+
+                final String name = method.getName();
+                if (name.equals("next"))
+                    return ++row < rows.length;
+                if (name.equals("getString") || name.equals("getInt")) {
+                    final Object value = rows[row][(Integer) args[0] - 1];
+                    return name.equals("getString") ? value : ((Number) value).intValue();
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Creates a proxy; methods answered with null return the default value of
+     * their primitive return type.
+     *
+     * @param type    the interface
+     * @param handler the handler
+     * @return the proxy
+     */
+    private static Object createProxy(final Class<?> type,
+        final InvocationHandler handler) {
+
+        return Proxy.newProxyInstance(LoaderImplTest.class.getClassLoader(),
+            new Class<?>[]{type}, new InvocationHandler() {
+
+                public Object invoke(final Object proxy, final Method method,
+                    final Object[] args) throws Throwable {
+
+                    final Object res = handler.invoke(proxy, method, args);
+                    final Class<?> returnType = method.getReturnType();
+                    if (res != null || !returnType.isPrimitive() || returnType == void.class)
+                        return res;
+                    if (returnType == boolean.class)
+                        return Boolean.FALSE;
+                    if (returnType == long.class)
+                        return 0L;
+                    if (returnType == short.class)
+                        return (short) 0;
+                    return 0;
+                }
+            });
+    }
+}
@@ -0,0 +1,108 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.app.jdbmigr.common;
+
+import net.sf.gm.core.io.DataWriterFactory;
+import net.sf.gm.io.csv.CSVWriterFactory;
+import net.sf.gm.io.sql.DMLWriterFactory;
+import net.sf.gm.io.xml.FINFWebRowSetWriterFactory;
+import net.sf.gm.io.xml.XMLWebRowSetWriterFactory;
+import net.sf.gm.jdbc.io.Exporter;
+
+//
+
+
+/**
+ * The Class ExportFormats.
+ * <p>
+ * The formats of the additional outputs of the table exporters ( option
+ * "tee" ), written with their default options.
+ */
+public class ExportFormats {
+
+    /**
+     * The format names.
+     */
+    private static final String[] NAMES = {"csv", "xml", "finf", "dml"};
+
+    /**
+     * The file extensions of the formats.
+     */
+    private static final String[] EXTENSIONS = {".csv", ".xml", ".finf", ".sql"};
+
+    /**
+     * Parse a comma separated list of formats.
+     *
+     * @param spec    the list
+     * @param exclude the format of the exporter itself
+     * @return the formats
+     * @throws IllegalArgumentException if a format is unknown, repeated or the
+     *                                  excluded format
+     */
+    public static String[] parse(final String spec, final String exclude) {
+
+        final String[] formats = spec.split(",");
+        for (int i = 0; i < formats.length; i++) {
+            formats[i] = formats[i].trim().toLowerCase();
+            if (indexOf(formats[i]) < 0)
+                throw new IllegalArgumentException("unknown format '" + formats[i] +
+                    "' ( csv, xml, finf, dml )");
+            if (formats[i].equals(exclude))
+                throw new IllegalArgumentException("format '" + formats[i] +
+                    "' is the output format");
+            for (int j = 0; j < i; j++)
+                if (formats[j].equals(formats[i]))
+                    throw new IllegalArgumentException("format '" + formats[i] +
+                        "' repeated");
+        }
+        return formats;
+    }
+
+    /**
+     * Add the outputs of the formats to an exporter.
+     *
+     * @param exporter the exporter
+     * @param formats  the formats ( see {@link #parse} )
+     */
+    public static void addOutputs(final Exporter exporter, final String[] formats) {
+
+        for (final String format : formats)
+            exporter.addOutput(getFactory(format), EXTENSIONS[indexOf(format)]);
+    }
+
+    /**
+     * Gets the writer factory of a format.
+     *
+     * @param format the format
+     * @return the factory
+     */
+    private static DataWriterFactory getFactory(final String format) {
+
+        if (format.equals("csv"))
+            return new CSVWriterFactory();
+        if (format.equals("xml"))
+            return new XMLWebRowSetWriterFactory();
+        if (format.equals("finf"))
+            return new FINFWebRowSetWriterFactory();
+        return new DMLWriterFactory(false, true, false, 0);
+    }
+
+    /**
+     * Gets the index of a format.
+     *
+     * @param format the format
+     * @return the index or -1 if unknown
+     */
+    private static int indexOf(final String format) {
+
+        for (int i = 0; i < NAMES.length; i++)
+            if (NAMES[i].equals(format))
+                return i;
+        return -1;
+    }
+}
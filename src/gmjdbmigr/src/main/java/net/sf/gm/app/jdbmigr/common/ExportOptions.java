@@ -0,0 +1,456 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.app.jdbmigr.common;
+
+import net.sf.gm.core.app.AbstractApplication;
+import net.sf.gm.core.cmdline.CmdLineParser;
+import net.sf.gm.core.cmdline.OptionalArgumentFile;
+import net.sf.gm.core.cmdline.OptionalArgumentInteger;
+import net.sf.gm.core.cmdline.OptionalArgumentString;
+import net.sf.gm.core.cmdline.OptionalFlag;
+import net.sf.gm.core.io.DataIOException;
+import net.sf.gm.jdbc.io.ColumnProjection;
+import net.sf.gm.jdbc.io.Exporter;
+
+import java.io.File;
+
+//
+
+
+/**
+ * The Class ExportOptions.
+ * <p>
+ * The options shared by the table exporters ( csvexptab, xmlexptab,
+ * finfexptab, dmlexptab ): declared on the command line parser, checked after
+ * parsing, and applied to the exporter.
+ */
+public class ExportOptions {
+
+    /**
+     * The format of the exporter.
+     */
+    private final String format;
+
+    /**
+     * The fetch size option.
+     */
+    private final OptionalArgumentInteger optFetchSize;
+
+    /**
+     * The jobs option.
+     */
+    private final OptionalArgumentInteger optJobs;
+
+    /**
+     * The split option.
+     */
+    private final OptionalArgumentInteger optSplit;
+
+    /**
+     * The split column option.
+     */
+    private final OptionalArgumentString optSplitColumn;
+
+    /**
+     * The split files option.
+     */
+    private final OptionalFlag optSplitFiles;
+
+    /**
+     * The snapshot option.
+     */
+    private final OptionalFlag optSnapshot;
+
+    /**
+     * The page size option.
+     */
+    private final OptionalArgumentInteger optPageSize;
+
+    /**
+     * The checkpoint option.
+     */
+    private final OptionalFlag optCheckpoint;
+
+    /**
+     * The columns option.
+     */
+    private final OptionalArgumentString optColumns;
+
+    /**
+     * The watermark option.
+     */
+    private final OptionalArgumentString optWatermark;
+
+    /**
+     * The insert column option.
+     */
+    private final OptionalArgumentString optInsertColumn;
+
+    /**
+     * The watermark lag option.
+     */
+    private final OptionalArgumentInteger optWatermarkLag;
+
+    /**
+     * The state file option.
+     */
+    private final OptionalArgumentFile optStateFile;
+
+    /**
+     * The tee option.
+     */
+    private final OptionalArgumentString optTee;
+
+    /**
+     * The tee threads option.
+     */
+    private final OptionalFlag optTeeThreads;
+
+    /**
+     * The roll rows option.
+     */
+    private final OptionalArgumentInteger optRollRows;
+
+    /**
+     * The roll size option.
+     */
+    private final OptionalArgumentInteger optRollSize;
+
+    /**
+     * The compress option.
+     */
+    private final OptionalArgumentInteger optCompress;
+
+    /**
+     * The fetch size.
+     */
+    private int fetchSize;
+
+    /**
+     * The number of tables exported in parallel.
+     */
+    private int jobs;
+
+    /**
+     * The number of ranges read in parallel.
+     */
+    private int split;
+
+    /**
+     * The split column.
+     */
+    private String splitColumn;
+
+    /**
+     * The split files flag.
+     */
+    private boolean splitFiles;
+
+    /**
+     * The consistent snapshot flag.
+     */
+    private boolean snapshot;
+
+    /**
+     * The page size of a keyset export ( 0: no pages ).
+     */
+    private int pageSize;
+
+    /**
+     * The page checkpoint flag.
+     */
+    private boolean checkpoint;
+
+    /**
+     * The column projection or null for all columns.
+     */
+    private ColumnProjection projection;
+
+    /**
+     * The watermark column of an incremental export or null.
+     */
+    private String watermarkColumn;
+
+    /**
+     * The insert column of an incremental export or null.
+     */
+    private String insertColumn;
+
+    /**
+     * The lag read again below the previous watermark ( 0: no lag ).
+     */
+    private long watermarkLag;
+
+    /**
+     * The state file of an incremental export or null for the default.
+     */
+    private File watermarkFile;
+
+    /**
+     * The formats of the additional outputs or null.
+     */
+    private String[] teeFormats;
+
+    /**
+     * The output threads flag.
+     */
+    private boolean teeThreads;
+
+    /**
+     * The max number of rows of a rolling output file ( 0: no limit ).
+     */
+    private long rollRows;
+
+    /**
+     * The max number of bytes of a rolling output file ( 0: no limit ).
+     */
+    private long rollSize;
+
+    /**
+     * The number of threads compressing the output ( 0: no compression ).
+     */
+    private int compress;
+
+    /**
+     * The Constructor; the options are declared on the parser.
+     *
+     * @param clp    the command line parser
+     * @param format the format of the exporter ( see {@link ExportFormats} )
+     */
+    public ExportOptions(final CmdLineParser clp, final String format) {
+
+        this.format = format;
+        optFetchSize =
+            new OptionalArgumentInteger(clp, "", "fetchsize",
+                "number of rows fetched per round trip\ndefault: derived from the row width");
+        optJobs =
+            new OptionalArgumentInteger(clp, "", "jobs",
+                "number of tables exported at the same time, each using its\nown connection; the largest tables are started first (default: 1)");
+        optSplit =
+            new OptionalArgumentInteger(clp, "", "split",
+                "split each table into ranges of its split column, read in parallel\nusing the given number of connections");
+        optSplitColumn =
+            new OptionalArgumentString(clp, "", "splitcolumn",
+                "numeric, date or timestamp column used to split the tables\ndefault: the first primary key column");
+        optSplitFiles =
+            new OptionalFlag(clp, "", "splitfiles",
+                "write each range to its own part file\ndefault: merge the ranges into one file");
+        optSnapshot =
+            new OptionalFlag(clp, "", "snapshot",
+                "read all tables from one consistent snapshot; connections share\nthe snapshot if supported by the database, otherwise a single\nconnection is used");
+        optPageSize =
+            new OptionalArgumentInteger(clp, "", "pagesize",
+                "read each table in pages of the given number of rows, ordered by\nthe primary key, using short statements seeking past the last key");
+        optCheckpoint =
+            new OptionalFlag(clp, "", "checkpoint",
+                "keep the pages read and the last key of each table, so an\ninterrupted export continues after the last page when started again\nrequires option 'pagesize'");
+        optColumns =
+            new OptionalArgumentString(clp, "", "columns",
+                "comma separated list of exported columns: 'name', '-name' to exclude,\n'*' for all columns not excluded, 'expression as name'\noverridden by a column list in the table list file: table( columns )");
+        optWatermark =
+            new OptionalArgumentString(clp, "", "watermark",
+                "incremental export: export only the rows having a value of the given\ntimestamp or version column above the watermark of the previous\nexport, as modified rows; the first export exports all rows\nrows stamped below the watermark by transactions committing after\nthe export are missed, unless option 'watermarklag' is given");
+        optInsertColumn =
+            new OptionalArgumentString(clp, "", "insertcolumn",
+                "export the rows having a value of the given column above the\nwatermark as inserted rows\nrequires option 'watermark'");
+        optWatermarkLag =
+            new OptionalArgumentInteger(clp, "", "watermarklag",
+                "export the rows down to the previous watermark minus the given lag\nagain (seconds of a timestamp column, units of a version column),\nso rows committed late are not missed; rows are exported at least\nonce, apply them using '--sync --upsert'\nrequires option 'watermark'");
+        optStateFile = new OptionalArgumentFile(
+            clp, "", "statefile",
+            "file keeping the watermark of each table\ndefault: watermark.properties in the output directory");
+        optStateFile.setParentMustExist(true);
+        optTee =
+            new OptionalArgumentString(clp, "", "tee",
+                "also write the given formats in the same pass, named like the output\nfiles: comma separated list of csv, xml, finf, dml");
+        optTeeThreads =
+            new OptionalFlag(clp, "", "teethreads",
+                "write each output on its own thread\nrequires option 'tee'");
+        optRollRows =
+            new OptionalArgumentInteger(clp, "", "rollrows",
+                "write each table to part files of the given number of rows, listed\nin a manifest file: output file name + '.manifest'");
+        optRollSize =
+            new OptionalArgumentInteger(clp, "", "rollsize",
+                "write each table to part files of about the given size in megabytes,\nlisted in a manifest file: output file name + '.manifest'");
+        optCompress =
+            new OptionalArgumentInteger(clp, "", "compress",
+                "write the output files gzip compressed, compressing blocks in\nparallel on the given number of threads; compressed input files\nare detected by the importers");
+    }
+
+    /**
+     * Check the options after parsing; the application exits on an invalid
+     * option.
+     */
+    public void parse() {
+
+        fetchSize = optFetchSize.getValue(0);
+        if (fetchSize < 0) {
+            AbstractApplication.errorln(
+                "option '" + optFetchSize.getLongNames()[0] + "' must not be negative");
+            System.exit(1);
+        }
+        if (optJobs.isSelected() && optSplit.isSelected()) {
+            AbstractApplication.errorln(
+                "option '" + optJobs.getLongNames()[0] +
+                    "' not allowed in conjunction with option '" +
+                    optSplit.getLongNames()[0] + "'");
+            System.exit(1);
+        }
+        jobs = Math.max(1, optJobs.getValue(1));
+        split = Math.max(1, optSplit.getValue(1));
+        splitColumn = optSplitColumn.getValue();
+        splitFiles = optSplitFiles.getValue(false);
+        snapshot = optSnapshot.getValue(false);
+        pageSize = optPageSize.getValue(0);
+        if (pageSize < 0) {
+            AbstractApplication.errorln(
+                "option '" + optPageSize.getLongNames()[0] + "' must not be negative");
+            System.exit(1);
+        }
+        if (optPageSize.isSelected() && optSplit.isSelected()) {
+            AbstractApplication.errorln(
+                "option '" + optPageSize.getLongNames()[0] +
+                    "' not allowed in conjunction with option '" +
+                    optSplit.getLongNames()[0] + "'");
+            System.exit(1);
+        }
+        checkpoint = optCheckpoint.getValue(false);
+        projection = null;
+        if (optColumns.isSelected())
+            try {
+                projection = ColumnProjection.parse(optColumns.getValue());
+            } catch (final DataIOException e) {
+                AbstractApplication.errorln(
+                    "option '" + optColumns.getLongNames()[0] + "': " + e.getMessage());
+                System.exit(1);
+            }
+        if (checkpoint && pageSize == 0) {
+            AbstractApplication.errorln(
+                "option '" + optCheckpoint.getLongNames()[0] + "' requires option '" +
+                    optPageSize.getLongNames()[0] + "'");
+            System.exit(1);
+        }
+        watermarkColumn = optWatermark.getValue();
+        insertColumn = optInsertColumn.getValue();
+        watermarkFile = optStateFile.getValue();
+        if (watermarkColumn == null &&
+            (optInsertColumn.isSelected() || optStateFile.isSelected() ||
+                optWatermarkLag.isSelected())) {
+            AbstractApplication.errorln(
+                "options '" + optInsertColumn.getLongNames()[0] + "', '" +
+                    optWatermarkLag.getLongNames()[0] + "' and '" +
+                    optStateFile.getLongNames()[0] + "' require option '" +
+                    optWatermark.getLongNames()[0] + "'");
+            System.exit(1);
+        }
+        watermarkLag = optWatermarkLag.getValue(0);
+        if (watermarkLag < 0) {
+            AbstractApplication.errorln(
+                "option '" + optWatermarkLag.getLongNames()[0] + "' must not be negative");
+            System.exit(1);
+        }
+        if (watermarkColumn != null && (optSplit.isSelected() || pageSize > 0)) {
+            AbstractApplication.errorln(
+                "option '" + optWatermark.getLongNames()[0] +
+                    "' not allowed in conjunction with option '" +
+                    optSplit.getLongNames()[0] + "' or '" +
+                    optPageSize.getLongNames()[0] + "'");
+            System.exit(1);
+        }
+        teeFormats = null;
+        if (optTee.isSelected())
+            try {
+                teeFormats = ExportFormats.parse(optTee.getValue(), format);
+            } catch (final IllegalArgumentException e) {
+                AbstractApplication.errorln(
+                    "option '" + optTee.getLongNames()[0] + "': " + e.getMessage());
+                System.exit(1);
+            }
+        teeThreads = optTeeThreads.getValue(false);
+        if (teeThreads && teeFormats == null) {
+            AbstractApplication.errorln(
+                "option '" + optTeeThreads.getLongNames()[0] + "' requires option '" +
+                    optTee.getLongNames()[0] + "'");
+            System.exit(1);
+        }
+        if (teeFormats != null && splitFiles) {
+            AbstractApplication.errorln(
+                "option '" + optTee.getLongNames()[0] +
+                    "' not allowed in conjunction with option '" +
+                    optSplitFiles.getLongNames()[0] + "'");
+            System.exit(1);
+        }
+        compress = optCompress.getValue(0);
+        if (compress < 0) {
+            AbstractApplication.errorln(
+                "option '" + optCompress.getLongNames()[0] + "' must not be negative");
+            System.exit(1);
+        }
+        rollRows = optRollRows.getValue(0);
+        rollSize = optRollSize.getValue(0) * 1024L * 1024L;
+        if (rollRows < 0 || rollSize < 0) {
+            AbstractApplication.errorln(
+                "options '" + optRollRows.getLongNames()[0] + "' and '" +
+                    optRollSize.getLongNames()[0] + "' must not be negative");
+            System.exit(1);
+        }
+        if ((rollRows > 0 || rollSize > 0) && (splitFiles || teeFormats != null)) {
+            AbstractApplication.errorln(
+                "options '" + optRollRows.getLongNames()[0] + "' and '" +
+                    optRollSize.getLongNames()[0] +
+                    "' not allowed in conjunction with option '" +
+                    optSplitFiles.getLongNames()[0] + "' or '" +
+                    optTee.getLongNames()[0] + "'");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Gets the fetch size.
+     *
+     * @return the fetch size ( 0: derived from the row width )
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Gets the number of connections used by the exporter.
+     *
+     * @return the connection count
+     */
+    public int getConnectionCount() {
+        return Math.max(jobs, split);
+    }
+
+    /**
+     * Apply the options to an exporter.
+     *
+     * @param exporter the exporter
+     */
+    public void apply(final Exporter exporter) {
+
+        exporter.setSplit(split > 1);
+        exporter.setSplitColumn(splitColumn);
+        exporter.setSplitFiles(splitFiles);
+        exporter.setConsistentSnapshot(snapshot);
+        exporter.setPageSize(pageSize);
+        exporter.setPageCheckpoint(checkpoint);
+        exporter.setProjection(projection);
+        exporter.setWatermarkColumn(watermarkColumn);
+        exporter.setInsertColumn(insertColumn);
+        exporter.setWatermarkLag(watermarkLag);
+        exporter.setWatermarkFile(watermarkFile);
+        if (teeFormats != null)
+            ExportFormats.addOutputs(exporter, teeFormats);
+        exporter.setOutputThreads(teeThreads);
+        exporter.setRollRows(rollRows);
+        exporter.setRollSize(rollSize);
+        exporter.setCompressThreads(compress);
+    }
+}
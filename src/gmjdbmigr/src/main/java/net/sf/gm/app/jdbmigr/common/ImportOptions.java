@@ -0,0 +1,432 @@
+/*******************************************************************
+ * Copyright (c) 2006, All rights reserved
+ *
+ * This software is licensed under the terms of the MIT License,
+ * see the LICENSE file for details.
+ *
+ ******************************************************************/
+package net.sf.gm.app.jdbmigr.common;
+
+import net.sf.gm.core.app.AbstractApplication;
+import net.sf.gm.core.cmdline.CmdLineParser;
+import net.sf.gm.core.cmdline.OptionalArgumentFile;
+import net.sf.gm.core.cmdline.OptionalArgumentInteger;
+import net.sf.gm.core.cmdline.OptionalFlag;
+import net.sf.gm.core.io.DataIOException;
+import net.sf.gm.core.ui.Progress;
+import net.sf.gm.jdbc.common.ConnectionFactory;
+import net.sf.gm.jdbc.io.CheckpointJournal;
+import net.sf.gm.jdbc.io.Importer;
+import net.sf.gm.jdbc.io.MetaDataSnapshot;
+import net.sf.gm.jdbc.load.Loader;
+import net.sf.gm.jdbc.load.LoaderImpl;
+import net.sf.gm.jdbc.load.ParallelLoaderImpl;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+//
+
+
+/**
+ * The Class ImportOptions.
+ * <p>
+ * The options shared by the table importers ( csvimptab, xmlimptab,
+ * finfimptab ): declared on the command line parser, checked after parsing,
+ * and applied to the loaders and the importer. The metadata cache and the
+ * checkpoint journal of the options are opened and closed here as well.
+ */
+public class ImportOptions {
+
+    /**
+     * The adaptive option.
+     */
+    private final OptionalFlag optAdaptive;
+
+    /**
+     * The min batch size option.
+     */
+    private final OptionalArgumentInteger optMinBatchSize;
+
+    /**
+     * The max batch size option.
+     */
+    private final OptionalArgumentInteger optMaxBatchSize;
+
+    /**
+     * The commit interval option.
+     */
+    private final OptionalArgumentInteger optCommitInterval;
+
+    /**
+     * The bisect option.
+     */
+    private final OptionalFlag optBisect;
+
+    /**
+     * The multi-row option.
+     */
+    private final OptionalArgumentInteger optMultiRow;
+
+    /**
+     * The upsert option.
+     */
+    private final OptionalFlag optUpsert;
+
+    /**
+     * The reorder option or null, if the importer does not synchronize.
+     */
+    private final OptionalFlag optReorder;
+
+    /**
+     * The parallel option.
+     */
+    private final OptionalArgumentInteger optParallel;
+
+    /**
+     * The jobs option.
+     */
+    private final OptionalArgumentInteger optJobs;
+
+    /**
+     * The pipeline option.
+     */
+    private final OptionalArgumentInteger optPipeline;
+
+    /**
+     * The part readers option.
+     */
+    private final OptionalArgumentInteger optPartReaders;
+
+    /**
+     * The metadata cache option.
+     */
+    private final OptionalFlag optMetaCache;
+
+    /**
+     * The metadata cache file option.
+     */
+    private final OptionalArgumentFile optMetaCacheFile;
+
+    /**
+     * The metadata cache age option.
+     */
+    private final OptionalArgumentInteger optMetaCacheAge;
+
+    /**
+     * The journal option.
+     */
+    private final OptionalArgumentFile optJournal;
+
+    /**
+     * The resume option.
+     */
+    private final OptionalFlag optResume;
+
+    /**
+     * The adaptive batch size flag.
+     */
+    private boolean adaptive;
+
+    /**
+     * The min batch size ( adaptive mode ).
+     */
+    private int minBatchSize;
+
+    /**
+     * The max batch size ( adaptive mode ).
+     */
+    private int maxBatchSize;
+
+    /**
+     * The commit interval in seconds.
+     */
+    private int commitInterval;
+
+    /**
+     * The bisect failed batches flag.
+     */
+    private boolean bisect;
+
+    /**
+     * The max number of rows of a multi-row insert statement.
+     */
+    private int multiRow;
+
+    /**
+     * The upsert flag.
+     */
+    private boolean upsert;
+
+    /**
+     * The reorder batches flag.
+     */
+    private boolean reorder;
+
+    /**
+     * The number of parallel loader connections.
+     */
+    private int parallel;
+
+    /**
+     * The number of tables imported at the same time.
+     */
+    private int jobs;
+
+    /**
+     * The number of row buffers queued between the reader and the loader.
+     */
+    private int pipeline;
+
+    /**
+     * The max number of part files read in parallel.
+     */
+    private int partReaders;
+
+    /**
+     * The metadata cache flag.
+     */
+    private boolean metaCache;
+
+    /**
+     * The metadata cache file.
+     */
+    private File metaCacheFile;
+
+    /**
+     * The max age of the metadata cache file in hours.
+     */
+    private int metaCacheAge;
+
+    /**
+     * The checkpoint journal file.
+     */
+    private File journalFile;
+
+    /**
+     * The resume flag.
+     */
+    private boolean resume;
+
+    /**
+     * The metadata snapshot.
+     */
+    private MetaDataSnapshot metaDataSnapshot;
+
+    /**
+     * The checkpoint journal.
+     */
+    private CheckpointJournal checkpointJournal;
+
+    /**
+     * The Constructor; the options are declared on the parser.
+     *
+     * @param clp  the command line parser
+     * @param sync the importer synchronizes the changes of a document
+     */
+    public ImportOptions(final CmdLineParser clp, final boolean sync) {
+
+        optAdaptive =
+            new OptionalFlag(clp, "", "adaptive",
+                "tune batch size and commit count while loading\n(batch size: initial value, commit count: upper bound)");
+        optMinBatchSize =
+            new OptionalArgumentInteger(clp, "", "minbatchsize",
+                "min batch size (adaptive mode, default: 10)");
+        optMaxBatchSize =
+            new OptionalArgumentInteger(clp, "", "maxbatchsize",
+                "max batch size (adaptive mode, default: 5000)");
+        optCommitInterval =
+            new OptionalArgumentInteger(clp, "", "commitinterval",
+                "commit at least every given number of seconds");
+        optBisect =
+            new OptionalFlag(clp, "", "bisect",
+                "re-execute failed batches in halves to report only the failing rows");
+        optMultiRow =
+            new OptionalArgumentInteger(clp, "", "multirow",
+                "insert up to the given number of rows per statement\n(multi-row values clause, default: 0 = off)");
+        optUpsert =
+            new OptionalFlag(clp, "", "upsert",
+                "insert rows or update existing rows using a single\nmerge/upsert statement (requires the primary key)");
+        optReorder = !sync ? null
+            : new OptionalFlag(clp, "", "reorder",
+                "keep a batch per row type while synchronizing;\nrows are reordered unless they touch the same primary key");
+        optParallel =
+            new OptionalArgumentInteger(clp, "", "parallel",
+                sync ? "number of parallel loader connections per table, ignored while\nsynchronizing (default: 1)"
+                    : "number of parallel loader connections per table\n(default: 1)");
+        optJobs =
+            new OptionalArgumentInteger(clp, "", "jobs",
+                "number of tables imported at the same time, each using its\nown connection; a table is started as soon as its parent\ntables are imported (default: 1)");
+        optPipeline =
+            new OptionalArgumentInteger(clp, "", "pipeline",
+                "read the input on a separate thread, using the given number\nof row buffers (default: 0 = off)");
+        optPartReaders =
+            new OptionalArgumentInteger(clp, "", "partreaders",
+                "number of part files of a manifest read in parallel, if the input\nfile of a table is missing; rows of different parts are loaded\nin any order (default: 1)");
+
+        optMetaCache =
+            new OptionalFlag(clp, "", "metacache",
+                "read the table metadata in bulk, once per schema");
+        optMetaCacheFile =
+            new OptionalArgumentFile(clp, "", "metacachefile",
+                "read the table metadata in bulk and keep it in the given file\nfor later runs; a schema whose number of tables has changed\nis read again (delete the file after column changes)");
+        optMetaCacheFile.setParentMustExist(true);
+        optMetaCacheAge =
+            new OptionalArgumentInteger(clp, "", "metacacheage",
+                "max age in hours of the metadata cache file (0: no limit,\ndefault: 24)");
+        optJournal =
+            new OptionalArgumentFile(clp, "", "journal",
+                "write a checkpoint journal after each commit");
+        optJournal.setParentMustExist(true);
+        optResume =
+            new OptionalFlag(clp, "", "resume",
+                "resume the import of the checkpoint journal: skip finished\ntables and the committed rows of a partially loaded table\nrows committed after the last journal record are loaded again:\nuse option 'upsert' to load them without duplicate key errors");
+    }
+
+    /**
+     * Check the options after parsing; the application exits on an invalid
+     * option.
+     *
+     * @param doSync the changes of a document are synchronized
+     */
+    public void parse(final boolean doSync) {
+
+        if (optResume.isSelected() && !optJournal.isSelected()) {
+            AbstractApplication.errorln(
+                "option '" + optResume.getLongNames()[0] +
+                    "' requires option '" + optJournal.getLongNames()[0] + "'");
+            System.exit(1);
+        }
+        parallel = optParallel.getValue(1);
+        if (doSync && parallel > 1) {
+            // rows of a webrowset document are synchronized in document order
+            AbstractApplication.warningln("option '" + optParallel.getLongNames()[0] +
+                "' is ignored while synchronizing");
+            parallel = 1;
+        }
+        jobs = Math.max(1, optJobs.getValue(1));
+        adaptive = optAdaptive.getValue(false);
+        minBatchSize = optMinBatchSize.getValue(10);
+        maxBatchSize = optMaxBatchSize.getValue(5000);
+        commitInterval = optCommitInterval.getValue(0);
+        bisect = optBisect.getValue(false);
+        multiRow = optMultiRow.getValue(0);
+        upsert = optUpsert.getValue(false);
+        reorder = optReorder != null && optReorder.getValue(false);
+        pipeline = optPipeline.getValue(0);
+        partReaders = Math.max(1, optPartReaders.getValue(1));
+        metaCacheFile = optMetaCacheFile.getValue();
+        metaCacheAge = optMetaCacheAge.getValue(24);
+        if (metaCacheAge < 0) {
+            AbstractApplication.errorln(
+                "option '" + optMetaCacheAge.getLongNames()[0] +
+                    "' must not be negative");
+            System.exit(1);
+        }
+        metaCache = optMetaCache.getValue(false) || metaCacheFile != null;
+        journalFile = optJournal.getValue();
+        resume = optResume.getValue(false);
+    }
+
+    /**
+     * Gets the number of tables imported at the same time.
+     *
+     * @return the number of loaders
+     */
+    public int getJobs() {
+        return jobs;
+    }
+
+    /**
+     * Open the metadata cache and the checkpoint journal.
+     *
+     * @param dataSourceKey the key of the data source of the metadata cache
+     * @throws DataIOException the data IO exception
+     */
+    public void open(final String dataSourceKey) throws DataIOException {
+
+        if (metaCache)
+            metaDataSnapshot = metaCacheFile == null
+                ? new MetaDataSnapshot(dataSourceKey)
+                : MetaDataSnapshot.load(metaCacheFile, dataSourceKey,
+                metaCacheAge * 3600000L);
+        if (journalFile != null)
+            checkpointJournal = CheckpointJournal.open(journalFile, resume);
+    }
+
+    /**
+     * Creates a loader.
+     *
+     * @param progress            the progress
+     * @param connection          the connection
+     * @param connectionFactory   the connection factory for parallel loaders
+     * @param batchSize           the batch size
+     * @param commitCount         the commit count
+     * @param mapColumnsByNames   the map columns by names
+     * @param skipColumnsNotFound the skip columns not found
+     * @param doImport            the do import
+     * @param doSync              the do sync
+     * @return the loader
+     * @throws SQLException the SQL exception
+     */
+    public Loader createLoader(final Progress progress, final Connection connection,
+        final ConnectionFactory connectionFactory, final int batchSize,
+        final int commitCount, final boolean mapColumnsByNames,
+        final boolean skipColumnsNotFound, final boolean doImport,
+        final boolean doSync) throws SQLException {
+
+        final Loader res;
+        if (parallel > 1)
+            res = new ParallelLoaderImpl(progress, connection, connectionFactory,
+                parallel, batchSize, commitCount, mapColumnsByNames,
+                skipColumnsNotFound, doImport, doSync);
+        else
+            res = new LoaderImpl(progress, connection, batchSize, commitCount,
+                mapColumnsByNames, skipColumnsNotFound, doImport, doSync);
+        res.setPipelineQueueSize(pipeline);
+        if (adaptive)
+            res.setAdaptiveBatchSize(minBatchSize, maxBatchSize);
+        res.setCommitInterval(commitInterval * 1000L);
+        res.setBisectFailedBatches(bisect);
+        res.setMultiRowInsert(multiRow);
+        res.setUpsert(upsert);
+        res.setReorderBatches(reorder);
+        res.setMetaDataSnapshot(metaDataSnapshot);
+        res.setCheckpointJournal(checkpointJournal);
+        return res;
+    }
+
+    /**
+     * Apply the options to an importer.
+     *
+     * @param importer the importer
+     */
+    public void apply(final Importer importer) {
+
+        importer.setMetaDataSnapshot(metaDataSnapshot);
+        importer.setCheckpointJournal(checkpointJournal);
+        importer.setPartReaders(partReaders);
+    }
+
+    /**
+     * Save the metadata cache file, if the metadata has been read.
+     *
+     * @throws DataIOException the data IO exception
+     */
+    public void saveMetaDataCache() throws DataIOException {
+
+        if (metaCacheFile != null && metaDataSnapshot.isModified())
+            metaDataSnapshot.save(metaCacheFile);
+    }
+
+    /**
+     * Close the checkpoint journal.
+     */
+    public void close() {
+
+        if (checkpointJournal != null)
+            checkpointJournal.close();
+        checkpointJournal = null;
+    }
+}
@@ -7,6 +7,7 @@
  ******************************************************************/
 package net.sf.gm.app.jdbmigr;
 
+import net.sf.gm.app.jdbmigr.common.ExportOptions;
 import net.sf.gm.app.jdbmigr.common.JDbMigrApplicationBase;
 import net.sf.gm.core.app.AbstractApplication;
 import net.sf.gm.core.app.AppProgress;
@@ -15,6 +16,7 @@ import net.sf.gm.core.ui.OutputLogFile;
 import net.sf.gm.core.ui.Progress;
 import net.sf.gm.io.csv.CSVFormatOptions;
 import net.sf.gm.io.csv.CSVWriterFactory;
+import net.sf.gm.jdbc.common.ConnectionFactory;
 import net.sf.gm.jdbc.common.SqlUtil;
 import net.sf.gm.jdbc.datasource.DataSourceManager;
 import net.sf.gm.jdbc.io.Exporter;
@@ -90,6 +92,16 @@ public class csvexptab extends JDbMigrApplicationBase {
      */
     private File logFile;
 
+    /**
+     * The export options.
+     */
+    private ExportOptions exportOptions;
+
+    /**
+     * The connection factory.
+     */
+    private ConnectionFactory connectionFactory;
+
     /**
      * The con.
      */
@@ -147,6 +159,7 @@ public class csvexptab extends JDbMigrApplicationBase {
         final OptionalArgumentFile optLogFile =
             new OptionalArgumentFile(clp, "l", "logfile", "log file");
         optLogFile.setParentMustExist(true);
+        exportOptions = new ExportOptions(clp, "csv");
 
         new OptionDelimiter(clp, "csv format options:");
         final OptionalArgumentChar optRowDel =
@@ -191,6 +204,7 @@ public class csvexptab extends JDbMigrApplicationBase {
         tableList = optTableListFile.getValue();
         output = optFile.getValue();
         logFile = optLogFile.getValue();
+        exportOptions.parse();
 
         force = optForce.getValue(false);
 
@@ -227,8 +241,8 @@ public class csvexptab extends JDbMigrApplicationBase {
             setLogTarget(new OutputLogFile(pw));
         }
         final DataSource ds = DataSourceManager.lookup(args[0], url);
-        con = ds.getConnection(userName, userPassword);
-        con.setAutoCommit(false);
+        connectionFactory = new ConnectionFactory(ds, userName, userPassword);
+        con = connectionFactory.getConnection();
         return 0;
     }
 
@@ -242,19 +256,37 @@ public class csvexptab extends JDbMigrApplicationBase {
     protected int runInstance() throws Exception {
 
         Progress progress = new AppProgress();
-        final Unloader unloader = new UnloaderImpl(con);
-
-        final Exporter exp = new ExporterImpl(new CSVWriterFactory(formatOptions));
-
-        boolean res;
-        if (tableList == null)
-            res = exp.process(progress, output, ".csv", unloader, force, catalogName,
-                schemaName, tableName);
-        else
-            res = exp.process(progress, output, ".csv", unloader, force, tableList);
-
-        unloader.close();
-        return res ? 0 : 1;
+        final int connections = exportOptions.getConnectionCount();
+        final Unloader[] unloaders = new Unloader[connections];
+        try {
+            for (int i = 0; i < connections; i++) {
+                unloaders[i] = new UnloaderImpl(
+                    i == 0 ? con : connectionFactory.getConnection());
+                unloaders[i].setFetchSize(exportOptions.getFetchSize());
+            }
+
+            final Exporter exp =
+                new ExporterImpl(new CSVWriterFactory(formatOptions));
+            exportOptions.apply(exp);
+
+            boolean res;
+            if (tableList == null)
+                res = exp.process(progress, output, ".csv", unloaders, force,
+                    catalogName, schemaName, tableName);
+            else
+                res = exp.process(progress, output, ".csv", unloaders, force,
+                    tableList);
+
+            return res ? 0 : 1;
+        } finally {
+            // the extra connections are closed even if the export failed
+            for (int i = 0; i < connections && unloaders[i] != null; i++) {
+                final Connection connection = unloaders[i].getConnection();
+                unloaders[i].close();
+                if (i > 0)
+                    SqlUtil.closeConnection(connection);
+            }
+        }
     }
 
     /**
@@ -7,6 +7,7 @@
  ******************************************************************/
 package net.sf.gm.app.jdbmigr;
 
+import net.sf.gm.app.jdbmigr.common.ImportOptions;
 import net.sf.gm.app.jdbmigr.common.JDbMigrApplicationBase;
 import net.sf.gm.core.app.AbstractApplication;
 import net.sf.gm.core.app.AppProgress;
@@ -15,12 +16,12 @@ import net.sf.gm.core.ui.OutputLogFile;
 import net.sf.gm.core.ui.Progress;
 import net.sf.gm.io.csv.CSVFormatOptions;
 import net.sf.gm.io.csv.CSVReaderFactory;
+import net.sf.gm.jdbc.common.ConnectionFactory;
 import net.sf.gm.jdbc.common.SqlUtil;
 import net.sf.gm.jdbc.datasource.DataSourceManager;
 import net.sf.gm.jdbc.io.Importer;
 import net.sf.gm.jdbc.io.ImporterImpl;
 import net.sf.gm.jdbc.load.Loader;
-import net.sf.gm.jdbc.load.LoaderImpl;
 
 import javax.sql.DataSource;
 import java.io.File;
@@ -85,6 +86,11 @@ public class csvimptab extends JDbMigrApplicationBase {
      */
     private int commitCount;
 
+    /**
+     * The number of threads parsing a large input file.
+     */
+    private int parseThreads;
+
     /**
      * The delete.
      */
@@ -115,11 +121,21 @@ public class csvimptab extends JDbMigrApplicationBase {
      */
     private File logFile;
 
+    /**
+     * The import options.
+     */
+    private ImportOptions importOptions;
+
     /**
      * The con.
      */
     private Connection con;
 
+    /**
+     * The connection factory.
+     */
+    private ConnectionFactory connectionFactory;
+
     /**
      * The Constructor.
      */
@@ -182,6 +198,10 @@ public class csvimptab extends JDbMigrApplicationBase {
             new OptionalArgumentInteger(clp, "b", "batchsize", "batch size");
         final OptionalArgumentInteger optCommitCount =
             new OptionalArgumentInteger(clp, "n", "commitcount", "commit count");
+        importOptions = new ImportOptions(clp, false);
+        final OptionalArgumentInteger optParseThreads =
+            new OptionalArgumentInteger(clp, "", "parsethreads",
+                "number of threads parsing a large uncompressed input file in\nchunks; rows are loaded in file order (default: 1)");
 
         final OptionalArgumentFile optLogFile =
             new OptionalArgumentFile(clp, "l", "logfile", "log file");
@@ -236,6 +256,8 @@ public class csvimptab extends JDbMigrApplicationBase {
         mapRelaxed = optMapRelaxed.getValue(false);
         noSort = optNoSort.getValue(false);
         commitCount = optCommitCount.getValue(0);
+        importOptions.parse(false);
+        parseThreads = Math.max(1, optParseThreads.getValue(1));
         /**
          * The default batch size.
          */
@@ -278,8 +300,10 @@ public class csvimptab extends JDbMigrApplicationBase {
             setLogTarget(new OutputLogFile(pw));
         }
         final DataSource ds = DataSourceManager.lookup(args[0], url);
-        con = ds.getConnection(userName, userPassword);
-        con.setAutoCommit(false);
+        connectionFactory = new ConnectionFactory(ds, userName, userPassword);
+        con = connectionFactory.getConnection();
+        importOptions.open(args[0] + (url == null ? "" : " " + url) +
+            (userName == null ? "" : " " + userName));
 
         return 0;
     }
@@ -294,21 +318,34 @@ public class csvimptab extends JDbMigrApplicationBase {
     protected int runInstance() throws Exception {
 
         Progress progress = new AppProgress();
-        final Loader loader =
-            new LoaderImpl(progress, con, batchSize, commitCount,
-                !mapColumnsByColumnId, mapRelaxed, true, false);
-
-        final Importer imp = new ImporterImpl(new CSVReaderFactory(formatOptions));
+        final int jobs = importOptions.getJobs();
+        final Loader[] loaders = new Loader[jobs];
+        for (int i = 0; i < jobs; i++)
+            loaders[i] = importOptions.createLoader(progress,
+                i == 0 ? con : connectionFactory.getConnection(), connectionFactory,
+                batchSize, commitCount, !mapColumnsByColumnId, mapRelaxed,
+                true, false);
+
+        final CSVReaderFactory readerFactory = new CSVReaderFactory(formatOptions);
+        readerFactory.setParseThreads(parseThreads);
+        final Importer imp = new ImporterImpl(readerFactory);
+        importOptions.apply(imp);
 
         boolean res;
         if (tableList == null)
-            res = imp.process(progress, input, ".csv", loader, !noSort, delete,
+            res = imp.process(progress, input, ".csv", loaders, !noSort, delete,
                 catalogName, schemaName, tableName);
         else
-            res = imp.process(progress, input, ".csv", loader, !noSort, delete,
+            res = imp.process(progress, input, ".csv", loaders, !noSort, delete,
                 tableList);
-        loader.close();
+        for (int i = 0; i < jobs; i++) {
+            final Connection connection = loaders[i].getConnection();
+            loaders[i].close();
+            if (i > 0)
+                SqlUtil.closeConnection(connection);
+        }
         con.commit(); // end transaction
+        importOptions.saveMetaDataCache();
         return res ? 0 : 1;
     }
 
@@ -321,6 +358,7 @@ public class csvimptab extends JDbMigrApplicationBase {
     @Override
     protected int exitInstance(final int exit) {
 
+        importOptions.close();
         SqlUtil.closeConnection(con);
         super.exitInstance(exit);
         return exit;
@@ -7,6 +7,7 @@
  ******************************************************************/
 package net.sf.gm.app.jdbmigr;
 
+import net.sf.gm.app.jdbmigr.common.ExportOptions;
 import net.sf.gm.app.jdbmigr.common.JDbMigrApplicationBase;
 import net.sf.gm.core.app.AbstractApplication;
 import net.sf.gm.core.app.AppProgress;
@@ -14,6 +15,7 @@ import net.sf.gm.core.cmdline.*;
 import net.sf.gm.core.ui.OutputLogFile;
 import net.sf.gm.core.ui.Progress;
 import net.sf.gm.io.xml.FINFWebRowSetWriterFactory;
+import net.sf.gm.jdbc.common.ConnectionFactory;
 import net.sf.gm.jdbc.common.SqlUtil;
 import net.sf.gm.jdbc.datasource.DataSourceManager;
 import net.sf.gm.jdbc.io.Exporter;
@@ -84,6 +86,16 @@ public class finfexptab extends JDbMigrApplicationBase {
      */
     private File logFile;
 
+    /**
+     * The export options.
+     */
+    private ExportOptions exportOptions;
+
+    /**
+     * The connection factory.
+     */
+    private ConnectionFactory connectionFactory;
+
     /**
      * The con.
      */
@@ -141,6 +153,7 @@ public class finfexptab extends JDbMigrApplicationBase {
         final OptionalArgumentFile optLogFile =
             new OptionalArgumentFile(clp, "l", "logfile", "log file");
         optLogFile.setParentMustExist(true);
+        exportOptions = new ExportOptions(clp, "finf");
 
         clp.setArgumentDescription("datasource", 1, 1, null);
 
@@ -166,6 +179,7 @@ public class finfexptab extends JDbMigrApplicationBase {
         tableList = optTableListFile.getValue();
         output = optFile.getValue();
         logFile = optLogFile.getValue();
+        exportOptions.parse();
 
         force = optForce.getValue(false);
         return argv;
@@ -189,8 +203,8 @@ public class finfexptab extends JDbMigrApplicationBase {
             setLogTarget(new OutputLogFile(pw));
         }
         final DataSource ds = DataSourceManager.lookup(args[0], url);
-        con = ds.getConnection(userName, userPassword);
-        con.setAutoCommit(false);
+        connectionFactory = new ConnectionFactory(ds, userName, userPassword);
+        con = connectionFactory.getConnection();
 
         return 0;
     }
@@ -205,19 +219,37 @@ public class finfexptab extends JDbMigrApplicationBase {
     protected int runInstance() throws Exception {
 
         Progress progress = new AppProgress();
-        final Unloader unloader = new UnloaderImpl(con);
-
-        final Exporter exp = new ExporterImpl(new FINFWebRowSetWriterFactory());
-
-        boolean res;
-        if (tableList == null)
-            res = exp.process(progress, output, ".finf", unloader, force, catalogName,
-                schemaName, tableName);
-        else
-            res = exp.process(progress, output, ".finf", unloader, force, tableList);
-
-        unloader.close();
-        return res ? 0 : 1;
+        final int connections = exportOptions.getConnectionCount();
+        final Unloader[] unloaders = new Unloader[connections];
+        try {
+            for (int i = 0; i < connections; i++) {
+                unloaders[i] = new UnloaderImpl(
+                    i == 0 ? con : connectionFactory.getConnection());
+                unloaders[i].setFetchSize(exportOptions.getFetchSize());
+            }
+
+            final Exporter exp =
+                new ExporterImpl(new FINFWebRowSetWriterFactory());
+            exportOptions.apply(exp);
+
+            boolean res;
+            if (tableList == null)
+                res = exp.process(progress, output, ".finf", unloaders, force,
+                    catalogName, schemaName, tableName);
+            else
+                res = exp.process(progress, output, ".finf", unloaders, force,
+                    tableList);
+
+            return res ? 0 : 1;
+        } finally {
+            // the extra connections are closed even if the export failed
+            for (int i = 0; i < connections && unloaders[i] != null; i++) {
+                final Connection connection = unloaders[i].getConnection();
+                unloaders[i].close();
+                if (i > 0)
+                    SqlUtil.closeConnection(connection);
+            }
+        }
     }
 
     /**
@@ -7,6 +7,7 @@
  ******************************************************************/
 package net.sf.gm.app.jdbmigr;
 
+import net.sf.gm.app.jdbmigr.common.ImportOptions;
 import net.sf.gm.app.jdbmigr.common.JDbMigrApplicationBase;
 import net.sf.gm.core.app.AbstractApplication;
 import net.sf.gm.core.app.AppProgress;
@@ -14,12 +15,12 @@ import net.sf.gm.core.cmdline.*;
 import net.sf.gm.core.ui.OutputLogFile;
 import net.sf.gm.core.ui.Progress;
 import net.sf.gm.io.xml.FINFWebRowSetReaderFactory;
+import net.sf.gm.jdbc.common.ConnectionFactory;
 import net.sf.gm.jdbc.common.SqlUtil;
 import net.sf.gm.jdbc.datasource.DataSourceManager;
 import net.sf.gm.jdbc.io.Importer;
 import net.sf.gm.jdbc.io.ImporterImpl;
 import net.sf.gm.jdbc.load.Loader;
-import net.sf.gm.jdbc.load.LoaderImpl;
 
 import javax.sql.DataSource;
 import java.io.File;
@@ -119,11 +120,21 @@ public class finfimptab extends JDbMigrApplicationBase {
      */
     private File logFile;
 
+    /**
+     * The import options.
+     */
+    private ImportOptions importOptions;
+
     /**
      * The con.
      */
     private Connection con;
 
+    /**
+     * The connection factory.
+     */
+    private ConnectionFactory connectionFactory;
+
     /**
      * The Constructor.
      */
@@ -193,6 +204,7 @@ public class finfimptab extends JDbMigrApplicationBase {
             new OptionalArgumentInteger(clp, "b", "batchsize", "batch size");
         final OptionalArgumentInteger optCommitCount =
             new OptionalArgumentInteger(clp, "n", "commitcount", "commit count");
+        importOptions = new ImportOptions(clp, true);
 
         final OptionalArgumentFile optLogFile =
             new OptionalArgumentFile(clp, "l", "logfile", "log file");
@@ -231,6 +243,7 @@ public class finfimptab extends JDbMigrApplicationBase {
         mapRelaxed = optMapRelaxed.getValue(false);
         noSort = optNoSort.getValue(false);
         commitCount = optCommitCount.getValue(0);
+        importOptions.parse(doSync);
         /**
          * The default batch size.
          */
@@ -257,8 +270,10 @@ public class finfimptab extends JDbMigrApplicationBase {
             setLogTarget(new OutputLogFile(pw));
         }
         final DataSource ds = DataSourceManager.lookup(args[0], url);
-        con = ds.getConnection(userName, userPassword);
-        con.setAutoCommit(false);
+        connectionFactory = new ConnectionFactory(ds, userName, userPassword);
+        con = connectionFactory.getConnection();
+        importOptions.open(args[0] + (url == null ? "" : " " + url) +
+            (userName == null ? "" : " " + userName));
 
         return 0;
     }
@@ -273,21 +288,32 @@ public class finfimptab extends JDbMigrApplicationBase {
     protected int runInstance() throws Exception {
 
         Progress progress = new AppProgress();
-        final Loader loader =
-            new LoaderImpl(progress, con, batchSize, commitCount,
-                !mapColumnsByColumnId, mapRelaxed, doImport, doSync);
+        final int jobs = importOptions.getJobs();
+        final Loader[] loaders = new Loader[jobs];
+        for (int i = 0; i < jobs; i++)
+            loaders[i] = importOptions.createLoader(progress,
+                i == 0 ? con : connectionFactory.getConnection(), connectionFactory,
+                batchSize, commitCount, !mapColumnsByColumnId, mapRelaxed,
+                doImport, doSync);
 
         final Importer imp = new ImporterImpl(new FINFWebRowSetReaderFactory());
+        importOptions.apply(imp);
 
         boolean res;
         if (tableList == null)
-            res = imp.process(progress, input, ".finf", loader, !noSort, doDelete,
+            res = imp.process(progress, input, ".finf", loaders, !noSort, doDelete,
                 catalogName, schemaName, tableName);
         else
-            res = imp.process(progress, input, ".finf", loader, !noSort, doDelete,
+            res = imp.process(progress, input, ".finf", loaders, !noSort, doDelete,
                 tableList);
-        loader.close();
+        for (int i = 0; i < jobs; i++) {
+            final Connection connection = loaders[i].getConnection();
+            loaders[i].close();
+            if (i > 0)
+                SqlUtil.closeConnection(connection);
+        }
         con.commit(); // end transaction
+        importOptions.saveMetaDataCache();
         return res ? 0 : 1;
     }
 
@@ -300,6 +326,7 @@ public class finfimptab extends JDbMigrApplicationBase {
     @Override
     protected int exitInstance(final int exit) {
 
+        importOptions.close();
         SqlUtil.closeConnection(con);
         super.exitInstance(exit);
         return exit;
@@ -35,6 +35,11 @@ public class finftocsv extends JDbMigrApplicationBase {
      */
     private boolean force;
 
+    /**
+     * The number of threads compressing the output ( 0: no compression ).
+     */
+    private int compress;
+
     /**
      * The format options.
      */
@@ -69,6 +74,9 @@ public class finftocsv extends JDbMigrApplicationBase {
         optHelp.forHelpUsage();
         final OptionalFlag optForce =
             new OptionalFlag(clp, "f", "force", "force overwrite");
+        final OptionalArgumentInteger optCompress =
+            new OptionalArgumentInteger(clp, "", "compress",
+                "write the output gzip compressed, compressing blocks in parallel\non the given number of threads; compressed input files are detected");
 
         new OptionDelimiter(clp, "csv format options:");
         final OptionalArgumentChar optRowDel =
@@ -95,6 +103,12 @@ public class finftocsv extends JDbMigrApplicationBase {
         final String[] argv = clp.getOptions(args);
 
         force = optForce.getValue(false);
+        compress = optCompress.getValue(0);
+        if (compress < 0) {
+            AbstractApplication.errorln(
+                "option '" + optCompress.getLongNames()[0] + "' must not be negative");
+            System.exit(1);
+        }
 
         formatOptions.setRowDelimiter(
             optRowDel.getValue(formatOptions.getRowDelimiter()));
@@ -123,6 +137,7 @@ public class finftocsv extends JDbMigrApplicationBase {
 
         setShowElapsed(false);
         fileList = new FileFilterList(args, ".csv", force, false);
+        fileList.setCompressThreads(compress);
 
         if (fileList.size() == 1 && fileList.get(0).isStdOut())
             AbstractApplication.setMessageLevel(OutputTarget.LEVEL_WARNING);
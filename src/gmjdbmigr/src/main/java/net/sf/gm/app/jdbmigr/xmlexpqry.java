@@ -58,6 +58,16 @@ public class xmlexpqry extends JDbMigrApplicationBase {
      */
     private File logFile;
 
+    /**
+     * The fetch size.
+     */
+    private int fetchSize;
+
+    /**
+     * The number of threads compressing the output ( 0: no compression ).
+     */
+    private int compress;
+
     /**
      * The con.
      */
@@ -106,6 +116,12 @@ public class xmlexpqry extends JDbMigrApplicationBase {
         final OptionalArgumentFile optLogFile =
             new OptionalArgumentFile(clp, "l", "logfile", "log file");
         optLogFile.setParentMustExist(true);
+        final OptionalArgumentInteger optFetchSize =
+            new OptionalArgumentInteger(clp, "", "fetchsize",
+                "number of rows fetched per round trip\ndefault: derived from the row width");
+        final OptionalArgumentInteger optCompress =
+            new OptionalArgumentInteger(clp, "", "compress",
+                "write the output file gzip compressed, compressing blocks in\nparallel on the given number of threads\nrequires option 'output'");
 
         clp.setArgumentDescription("datasource \"select-statement\"", 2, 2, null);
 
@@ -117,6 +133,24 @@ public class xmlexpqry extends JDbMigrApplicationBase {
 
         outputFile = optFile.getValue();
         logFile = optLogFile.getValue();
+        compress = optCompress.getValue(0);
+        if (compress < 0) {
+            AbstractApplication.errorln(
+                "option '" + optCompress.getLongNames()[0] + "' must not be negative");
+            System.exit(1);
+        }
+        if (compress > 0 && outputFile == null) {
+            AbstractApplication.errorln(
+                "option '" + optCompress.getLongNames()[0] + "' requires option '" +
+                    optFile.getLongNames()[0] + "'");
+            System.exit(1);
+        }
+        fetchSize = optFetchSize.getValue(0);
+        if (fetchSize < 0) {
+            AbstractApplication.errorln(
+                "option '" + optFetchSize.getLongNames()[0] + "' must not be negative");
+            System.exit(1);
+        }
         return argv;
     }
 
@@ -157,7 +191,9 @@ public class xmlexpqry extends JDbMigrApplicationBase {
     protected int runInstance() throws Exception {
 
         final Exporter exp = new ExporterImpl(new XMLWebRowSetWriterFactory());
+        exp.setCompressThreads(compress);
         final Unloader unloader = new UnloaderImpl(con);
+        unloader.setFetchSize(fetchSize);
         boolean res;
         if (outputFile != null)
             res = exp.process(null, unloader, outputFile, queryString);
@@ -34,6 +34,11 @@ public class xmltodml extends JDbMigrApplicationBase {
      */
     private boolean force;
 
+    /**
+     * The number of threads compressing the output ( 0: no compression ).
+     */
+    private int compress;
+
     /**
      * The doDelete.
      */
@@ -81,6 +86,9 @@ public class xmltodml extends JDbMigrApplicationBase {
         optHelp.forHelpUsage();
         final OptionalFlag optForce =
             new OptionalFlag(clp, "f", "force", "force overwrite");
+        final OptionalArgumentInteger optCompress =
+            new OptionalArgumentInteger(clp, "", "compress",
+                "write the output gzip compressed, compressing blocks in parallel\non the given number of threads; compressed input files are detected");
         final OptionalFlag optDelete =
             new OptionalFlag(clp, "d", "delete", "delete the table content first");
         final OptionalFlag optAll = new OptionalFlag(
@@ -98,6 +106,12 @@ public class xmltodml extends JDbMigrApplicationBase {
         final String[] argv = clp.getOptions(args);
 
         force = optForce.getValue(false);
+        compress = optCompress.getValue(0);
+        if (compress < 0) {
+            AbstractApplication.errorln(
+                "option '" + optCompress.getLongNames()[0] + "' must not be negative");
+            System.exit(1);
+        }
         doDelete = optDelete.getValue(false);
         doSync = optAll.getValue(false) || optSync.getValue(false);
         doImport = optAll.getValue(false) || !optSync.getValue(false);
@@ -118,6 +132,7 @@ public class xmltodml extends JDbMigrApplicationBase {
 
         setShowElapsed(false);
         fileList = new FileFilterList(args, ".sql", force, false);
+        fileList.setCompressThreads(compress);
 
         if (fileList.size() == 1 && fileList.get(0).isStdOut())
             AbstractApplication.setMessageLevel(OutputTarget.LEVEL_WARNING);
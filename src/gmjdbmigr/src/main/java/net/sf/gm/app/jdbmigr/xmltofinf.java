@@ -14,6 +14,7 @@ import net.sf.gm.core.app.AppProgress;
 import net.sf.gm.core.cmdline.CmdLineParser;
 import net.sf.gm.core.cmdline.FileFilterItem;
 import net.sf.gm.core.cmdline.FileFilterList;
+import net.sf.gm.core.cmdline.OptionalArgumentInteger;
 import net.sf.gm.core.cmdline.OptionalFlag;
 import net.sf.gm.core.ui.OutputTarget;
 import net.sf.gm.core.ui.Progress;
@@ -36,6 +37,11 @@ public class xmltofinf extends JDbMigrApplicationBase {
      */
     private boolean force;
 
+    /**
+     * The number of threads compressing the output ( 0: no compression ).
+     */
+    private int compress;
+
     /**
      * The file list.
      */
@@ -63,6 +69,9 @@ public class xmltofinf extends JDbMigrApplicationBase {
         optHelp.forHelpUsage();
         final OptionalFlag optForce =
             new OptionalFlag(clp, "f", "force", "force overwrite");
+        final OptionalArgumentInteger optCompress =
+            new OptionalArgumentInteger(clp, "", "compress",
+                "write the output gzip compressed, compressing blocks in parallel\non the given number of threads; compressed input files are detected");
 
         clp.setArgumentDescription(
             "[[sourcefile [destinationfile]]\n[sourcefile... targetdirectory]]", -1,
@@ -70,6 +79,12 @@ public class xmltofinf extends JDbMigrApplicationBase {
         final String[] argv = clp.getOptions(args);
 
         force = optForce.getValue(false);
+        compress = optCompress.getValue(0);
+        if (compress < 0) {
+            AbstractApplication.errorln(
+                "option '" + optCompress.getLongNames()[0] + "' must not be negative");
+            System.exit(1);
+        }
 
         return argv;
     }
@@ -86,6 +101,7 @@ public class xmltofinf extends JDbMigrApplicationBase {
 
         setShowElapsed(false);
         fileList = new FileFilterList(args, ".finf", force, false);
+        fileList.setCompressThreads(compress);
 
         if (fileList.size() == 1 && fileList.get(0).isStdOut())
             AbstractApplication.setMessageLevel(OutputTarget.LEVEL_WARNING);